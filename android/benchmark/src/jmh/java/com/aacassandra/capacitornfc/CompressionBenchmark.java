@@ -0,0 +1,86 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Compressed records (configureCompression) against plain ones. The setup prints each
+ * payload's message size with and without compression; write is the end-to-end cost of a
+ * write, building the message included, to an NTAG216 whose commands take latencyUs each, and
+ * readEvent the nfcTag event for the message on the tag.
+ *
+ * payloadBytes 32 is below the default threshold, so compress does nothing there.
+ */
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    @Param({ "manifest", "text" })
+    public String payload;
+
+    @Param({ "32", "300", "700" })
+    public int payloadBytes;
+
+    @Param({ "false", "true" })
+    public boolean compress;
+
+    @Param({ "0", "1000" })
+    public long latencyUs;
+
+    private JSONArray records;
+    private byte[][] written;
+    private SimulatedTag tag;
+    private final NFCMetrics metrics = new NFCMetrics(System::nanoTime);
+    private final TagPipeline pipeline = new TagPipeline(metrics, JSONObject::new);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        JSONObject record = new JSONObject();
+        if ("manifest".equals(payload)) {
+            record.put("type", "application/json");
+            record.put("payload", TagFixtures.manifest(payloadBytes));
+        } else {
+            record.put("type", "T");
+            record.put("payload", TagFixtures.records(1, payloadBytes).getJSONObject(0).getString("payload"));
+        }
+        records = new JSONArray().put(record);
+
+        int plainBytes = NdefCodec.encode(NdefJson.toMessage(records)).length;
+        int compressedBytes = NdefCodec.encode(NdefCompression.compress(NdefJson.toMessage(records), NdefCompression.DEFAULT_MIN_BYTES)).length;
+        System.out.printf("%n%s %d: %d bytes plain, %d bytes compressed (%.0f%%)%n",
+            payload, payloadBytes, plainBytes, compressedBytes, 100.0 * compressedBytes / plainBytes);
+
+        byte[] message = createMessage();
+        tag = new SimulatedTag(SimulatedTag.Layout.NTAG216, TagFixtures.uid(7));
+        pipeline.write(tag, message, false, false, NFCMetrics.OP_WRITE);
+        tag.setCommandLatencyNanos(latencyUs * 1000L);
+        written = new byte[][] { message };
+    }
+
+    // NFC.createNdefMessage with compression on or off
+    private byte[] createMessage() {
+        NdefCodec.Message message = NdefJson.toMessage(records);
+        if (compress) {
+            message = NdefCompression.compress(message, NdefCompression.DEFAULT_MIN_BYTES);
+        }
+        return NdefCodec.encode(message);
+    }
+
+    @Benchmark
+    public JSONObject write() throws IOException {
+        tag.tap();
+        return pipeline.write(tag, createMessage(), false, false, NFCMetrics.OP_WRITE);
+    }
+
+    @Benchmark
+    public JSONObject readEvent() throws NdefCodec.MalformedNdefException {
+        return pipeline.readNdef(written);
+    }
+}
@@ -0,0 +1,58 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of a scan filter per tap. rejectedByUid and rejectedByRecord are foreign tags dropped
+ * before an event is built; unfiltered is what each of them costs without a filter (decode and
+ * nfcTag payload). rejectedByUid should not allocate at all.
+ */
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+
+    @Param({ "1", "10" })
+    public int records;
+
+    @Param({ "16", "512" })
+    public int messageBytes;
+
+    private byte[] uid;
+    private String[] techList;
+    private byte[][] messages;
+    private TagFilter uidFilter;
+    private TagFilter recordFilter;
+    private final NFCMetrics metrics = new NFCMetrics(System::nanoTime);
+    private final TagPipeline pipeline = new TagPipeline(metrics, JSONObject::new);
+
+    @Setup
+    public void setUp() {
+        uid = TagFixtures.uid(7);
+        techList = TagFixtures.techList(7);
+        messages = new byte[][] { TagFixtures.encoded(records, messageBytes) };
+        uidFilter = new TagFilter.Builder().uidPrefix(new byte[] { 0x1D }, null).build();
+        recordFilter = new TagFilter.Builder()
+            .requireTech("NfcA")
+            .record(NdefCodec.TNF_EXTERNAL_TYPE, "example.com:badge", null)
+            .build();
+    }
+
+    @Benchmark
+    public boolean rejectedByUid() {
+        return uidFilter.matches(uid, techList, messages);
+    }
+
+    @Benchmark
+    public boolean rejectedByRecord() {
+        return recordFilter.matches(uid, techList, messages);
+    }
+
+    @Benchmark
+    public JSONObject unfiltered() throws Exception {
+        return pipeline.readNdef(messages);
+    }
+}
@@ -0,0 +1,52 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-tap work of an inventory scan over a stock of `items` tags that are all counted already:
+ * the tally lookup alone (countRepeat), and with the summary delta drained every 100 taps
+ * (countWithSummary). gc.alloc.rate.norm of countRepeat should be 0. Compare with
+ * UidBenchmark.distinctTaps, what every tap cost when each one became an nfcUID event.
+ */
+@State(Scope.Benchmark)
+public class InventoryBenchmark {
+
+    @Param({ "100", "1000", "10000" })
+    public int items;
+
+    private byte[][] uids;
+    private InventoryTally tally;
+    private int next;
+    private final long now = System.currentTimeMillis();
+
+    @Setup
+    public void setUp() {
+        uids = new byte[items][];
+        tally = new InventoryTally();
+        for (int i = 0; i < items; i++) {
+            uids[i] = TagFixtures.uid(7);
+            uids[i][5] = (byte) (i >>> 8);
+            uids[i][6] = (byte) i;
+            tally.record(uids[i], now);
+        }
+    }
+
+    @Benchmark
+    public int countRepeat() {
+        return tally.record(uids[next++ % items], now);
+    }
+
+    @Benchmark
+    public int countWithSummary() {
+        int item = tally.record(uids[next++ % items], now);
+        if (next % 100 == 0) {
+            tally.putDelta(new JSONObject());
+        }
+        return item;
+    }
+}
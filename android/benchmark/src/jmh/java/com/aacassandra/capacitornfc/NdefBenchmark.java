@@ -0,0 +1,86 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-tap work of an NDEF scan (decode and nfcTag payload) and of arming a write (message
+ * construction, or a lookup of a message prepared with prepareNDEF).
+ *
+ * decodeToSerializedEvent is the full cost of an nfcTag event in the default format: the
+ * JSONObject tree plus the bridge serializing it. decodeToJsonEvent is the same event streamed
+ * into a string with eventFormat: 'json'.
+ */
+@State(Scope.Benchmark)
+public class NdefBenchmark {
+
+    @Param({ "1", "10", "50" })
+    public int records;
+
+    @Param({ "16", "512", "8192" })
+    public int messageBytes;
+
+    private byte[] encoded;
+    private JSONArray jsonRecords;
+    private final NdefCodec.Message reuse = new NdefCodec.Message();
+    private final PreparedMessageCache prepared = new PreparedMessageCache(PreparedMessageCache.DEFAULT_CAPACITY);
+    private String handle;
+    private final JsonEventWriter jsonWriter = new JsonEventWriter(1024);
+
+    @Setup
+    public void setUp() {
+        encoded = TagFixtures.encoded(records, messageBytes);
+        jsonRecords = TagFixtures.records(records, messageBytes);
+        handle = prepared.put(NdefCodec.encode(NdefJson.toMessage(jsonRecords)));
+    }
+
+    @Benchmark
+    public NdefCodec.Message decode() throws NdefCodec.MalformedNdefException {
+        return NdefCodec.decode(encoded, 0, encoded.length, reuse);
+    }
+
+    // Same shape as NFC.processNdefMessages builds for nfcTag
+    @Benchmark
+    public JSONObject decodeToEvent() throws NdefCodec.MalformedNdefException {
+        NdefCodec.Message decoded = NdefCodec.decode(encoded, 0, encoded.length, reuse);
+        JSONObject message = new JSONObject();
+        message.put("records", NdefJson.toJson(decoded));
+        JSONObject result = new JSONObject();
+        result.put("messages", new JSONArray().put(message));
+        return result;
+    }
+
+    @Benchmark
+    public String decodeToSerializedEvent() throws NdefCodec.MalformedNdefException {
+        return decodeToEvent().toString();
+    }
+
+    @Benchmark
+    public String decodeToJsonEvent() throws NdefCodec.MalformedNdefException {
+        NdefCodec.Message decoded = NdefCodec.decode(encoded, 0, encoded.length, reuse);
+        JsonEventWriter json = jsonWriter.reset();
+        json.beginObject().name("messages").beginArray();
+        json.beginObject().name("records");
+        NdefJson.writeRecords(json, decoded, PayloadEncoding.TEXT, -1);
+        json.endObject();
+        json.endArray();
+        return json.endObject().finish();
+    }
+
+    // Same work as NFC.createNdefMessage, minus the android.nfc.NdefMessage wrapper
+    @Benchmark
+    public byte[] createMessage() {
+        return NdefCodec.encode(NdefJson.toMessage(jsonRecords));
+    }
+
+    // Arming a write with a prepareNDEF handle instead
+    @Benchmark
+    public byte[] preparedMessage() {
+        return prepared.get(handle);
+    }
+}
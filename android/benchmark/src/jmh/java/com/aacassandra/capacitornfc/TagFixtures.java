@@ -0,0 +1,81 @@
+package com.aacassandra.capacitornfc;
+
+import java.util.Random;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Deterministic tag contents shaped like what the plugin sees in the field.
+ */
+final class TagFixtures {
+    private static final String TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. \u00dcn\u00efc\u00f6d\u00e9 \u2713 ";
+
+    private TagFixtures() {
+    }
+
+    // 4 bytes: MIFARE Classic, 7: NTAG / Ultralight, 10: triple-size UID
+    static byte[] uid(int length) {
+        byte[] uid = new byte[length];
+        new Random(length).nextBytes(uid);
+        uid[0] = 0x04; // NXP manufacturer code
+        return uid;
+    }
+
+    static String[] techList(int uidLength) {
+        if (uidLength == 4) {
+            return new String[] { "android.nfc.tech.NfcA", "android.nfc.tech.MifareClassic", "android.nfc.tech.NdefFormatable" };
+        }
+        return new String[] { "android.nfc.tech.NfcA", "android.nfc.tech.MifareUltralight", "android.nfc.tech.Ndef" };
+    }
+
+    // Alternating text and JSON records, `messageBytes` of payload spread over `records` records
+    static JSONArray records(int records, int messageBytes) {
+        int perRecord = Math.max(1, messageBytes / records);
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < records; i++) {
+            JSONObject record = new JSONObject();
+            if (i % 2 == 0) {
+                record.put("type", "T");
+                record.put("payload", text(perRecord));
+            } else {
+                record.put("type", "application/json");
+                record.put("payload", json(perRecord));
+            }
+            array.put(record);
+        }
+        return array;
+    }
+
+    static byte[] encoded(int records, int messageBytes) {
+        return NdefCodec.encode(NdefJson.toMessage(records(records, messageBytes)));
+    }
+
+    // A JSON manifest of about `length` characters: repeated keys, varying values, like asset or shipment data
+    static String manifest(int length) {
+        Random random = new Random(length);
+        StringBuilder builder = new StringBuilder(length + 64).append("{\"id\":\"asset-").append(1000 + random.nextInt(9000)).append("\",\"items\":[");
+        for (int i = 0; builder.length() < length - 2; i++) {
+            if (i > 0) builder.append(',');
+            builder.append("{\"sku\":\"SKU-").append(10000 + random.nextInt(90000))
+                .append("\",\"qty\":").append(1 + random.nextInt(20))
+                .append(",\"lot\":\"L2024-").append(random.nextInt(1000)).append("\"}");
+        }
+        return builder.append("]}").toString();
+    }
+
+    private static String text(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append(TEXT);
+        }
+        return builder.substring(0, length);
+    }
+
+    private static String json(int length) {
+        StringBuilder builder = new StringBuilder(length).append("{\"sku\":\"");
+        while (builder.length() < length - 2) {
+            builder.append('A');
+        }
+        return builder.append("\"}").toString();
+    }
+}
@@ -0,0 +1,296 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load test of the tap paths against simulated tags: arms a mode on the same {@link TagRouter}
+ * NFC uses and hands it one simulated tag after another, so every tap goes through the routing,
+ * dedup, ScanState checks and provisioning queue NFC runs. Tag I/O runs inline instead of on
+ * the NFC I/O thread, and event delivery is stood in for by serializing the event to JSON.
+ * Prints throughput plus the NFCMetrics breakdown.
+ *
+ *   ./gradlew :benchmark:tapHarness --args="--mode diffWrite --taps 20000 --layout NTAG215 --latencyUs 200"
+ *
+ * Options: --mode uid|read|inventory|write|diffWrite|provision|rawRead|classicRead|session (uid),
+ * --taps (10000), --tags distinct tags cycled through (64),
+ * --layout NTAG213|NTAG215|NTAG216|ULTRALIGHT|ULTRALIGHT_C|CLASSIC_1K (NTAG215),
+ * --latencyUs per tag command (0), --failureRate per tag command (0), --dedupMs (0, off),
+ * --skipWritten provisioning skips tags it already wrote (false), --seed (1).
+ */
+public class TapHarness {
+    private static final Map<String, SimulatedTag.Layout> LAYOUTS = new HashMap<>();
+
+    static {
+        LAYOUTS.put("NTAG213", SimulatedTag.Layout.NTAG213);
+        LAYOUTS.put("NTAG215", SimulatedTag.Layout.NTAG215);
+        LAYOUTS.put("NTAG216", SimulatedTag.Layout.NTAG216);
+        LAYOUTS.put("ULTRALIGHT", SimulatedTag.Layout.ULTRALIGHT);
+        LAYOUTS.put("ULTRALIGHT_C", SimulatedTag.Layout.ULTRALIGHT_C);
+        LAYOUTS.put("CLASSIC_1K", SimulatedTag.Layout.CLASSIC_1K);
+    }
+
+    // Runs each operation right away on the tapping thread, as if the NFC I/O queue were always empty
+    private static final class InlineIO implements TagRouter.TagIO {
+        private int generation = 0;
+
+        @Override
+        public boolean execute(TagRouter.Operation operation) {
+            int started = generation;
+            TagRouter.Ticket ticket = new TagRouter.Ticket() {
+                @Override
+                public boolean isCancelled() {
+                    return generation != started;
+                }
+
+                @Override
+                public void complete(Runnable completion) {
+                    if (!isCancelled()) {
+                        completion.run();
+                    }
+                }
+
+                @Override
+                public TagTransport bind(TagTransport tag) {
+                    return tag;
+                }
+            };
+            try {
+                operation.run(ticket);
+            } catch (Exception e) {
+                throw new IllegalStateException("Unhandled error in tag I/O", e);
+            }
+            return true;
+        }
+
+        @Override
+        public void cancelAll() {
+            generation++;
+        }
+    }
+
+    // Counts what NFCPlugin would hand to the bridge
+    private final class CountingListener implements TagRouter.Listener {
+        @Override
+        public void onNdefDiscovered(JSONObject data) {
+            deliver(data);
+        }
+
+        @Override
+        public void onNdefJson(JSONObject data) {
+            deliver(data);
+        }
+
+        @Override
+        public void onUIDDiscovered(JSONObject data) {
+            deliver(data);
+        }
+
+        @Override
+        public void onInventoryItem(JSONObject data) {
+            deliver(data);
+        }
+
+        @Override
+        public void onInventorySummary(JSONObject data) {
+            serializedBytes += data.toString().length();
+        }
+
+        @Override
+        public void onError(String error) {
+            failed++;
+        }
+
+        @Override
+        public void onWriteSuccess(JSONObject data) {
+            deliver(data);
+        }
+
+        @Override
+        public void onWriteRejected(JSONObject data) {
+            failed++;
+        }
+
+        @Override
+        public void onProvisionProgress(JSONObject data) {
+            String status = data.optString("status");
+            if ("skipped".equals(status)) {
+                skipped++;
+                serializedBytes += data.toString().length();
+            } else if ("failed".equals(status)) {
+                failed++;
+            } else {
+                deliver(data);
+            }
+        }
+
+        @Override
+        public void onProvisionComplete(JSONObject data) {
+            provisionSummary = data;
+        }
+
+        @Override
+        public void onRawRead(JSONObject data) {
+            deliver(data);
+        }
+
+        @Override
+        public void onClassicRead(JSONObject data) {
+            deliver(data);
+        }
+
+        @Override
+        public void onSessionComplete(JSONObject data) {
+            if (TagSession.STATUS_FAILED.equals(data.optString("status"))) {
+                failed++;
+            } else {
+                deliver(data);
+            }
+        }
+
+        @Override
+        public void onWarning(String message, Exception cause) {
+            System.err.println(message + ": " + cause);
+        }
+
+        private void deliver(JSONObject data) {
+            delivered++;
+            serializedBytes += data.toString().length();
+        }
+    }
+
+    private final NFCMetrics metrics = new NFCMetrics(System::nanoTime);
+    private final TagPipeline pipeline = new TagPipeline(metrics, JSONObject::new);
+    private int tapIndex = 0;
+    // Set when the armed session ends by itself, e.g. provisioning wrote its last message
+    private boolean finished = false;
+    private final TagRouter router = new TagRouter(pipeline, new InlineIO(), () -> finished = true);
+    private long delivered = 0;
+    private long failed = 0;
+    private long skipped = 0;
+    private long serializedBytes = 0;
+    private JSONObject provisionSummary;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        new TapHarness().run(options);
+    }
+
+    private void run(Map<String, String> options) throws Exception {
+        String mode = options.getOrDefault("mode", "uid");
+        int taps = Integer.parseInt(options.getOrDefault("taps", "10000"));
+        int tagCount = Integer.parseInt(options.getOrDefault("tags", "64"));
+        SimulatedTag.Layout layout = LAYOUTS.get(options.getOrDefault("layout", "NTAG215"));
+        if (layout == null) {
+            throw new IllegalArgumentException("Unknown layout, use one of " + LAYOUTS.keySet());
+        }
+        long latencyNanos = Long.parseLong(options.getOrDefault("latencyUs", "0")) * 1000L;
+        double failureRate = Double.parseDouble(options.getOrDefault("failureRate", "0"));
+        long dedupMillis = Long.parseLong(options.getOrDefault("dedupMs", "0"));
+        boolean skipWritten = Boolean.parseBoolean(options.getOrDefault("skipWritten", "false"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        TagDedupCache dedupCache = null;
+        if (dedupMillis > 0) {
+            dedupCache = new TagDedupCache(dedupMillis, TagDedupCache.DEFAULT_CAPACITY, false);
+            router.setDedupCache(dedupCache);
+        }
+        router.setListener(new CountingListener());
+
+        SimulatedTag[] tags = new SimulatedTag[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            byte[] uid = layout.isType2() ? new byte[] { 0x04, 0x11, 0x22, 0x33, 0x44, 0x55, (byte) i } : new byte[] { 0x11, 0x22, 0x33, (byte) i };
+            tags[i] = new SimulatedTag(layout, uid);
+            // Every tag starts out holding a message, for read mode and for diff writes to compare against
+            pipeline.write(tags[i], message(i, 0), false, false, NFCMetrics.OP_WRITE);
+            tags[i].setCommandLatencyNanos(latencyNanos).setFailureRate(failureRate, seed + i);
+        }
+        metrics.reset();
+
+        arm(mode, taps, skipWritten);
+        long commands = 0;
+        long startedAt = System.nanoTime();
+        for (tapIndex = 0; tapIndex < taps && !finished; tapIndex++) {
+            SimulatedTag tag = tags[tapIndex % tagCount];
+            if ("write".equals(mode) || "diffWrite".equals(mode)) {
+                // Like an app starting a write for each tag, with a serial that changes every few taps
+                router.arm(ScanState.Mode.WRITE, new TagRouter.WriteSettings(message(tapIndex, tapIndex / 4), "diffWrite".equals(mode), false));
+            }
+            tag.tap();
+            router.onTagDiscovered(tag, metrics.now());
+            commands += tag.getCommandCount();
+        }
+        long elapsedNanos = System.nanoTime() - startedAt;
+        int tapped = tapIndex;
+        ScanState.Mode armed = router.getScanState().current().mode;
+        if (armed != ScanState.Mode.IDLE) {
+            // Releases the session, e.g. for the last inventory summary
+            router.stop(armed);
+        }
+
+        JSONObject report = new JSONObject();
+        metrics.putJson(report);
+        System.out.println("mode=" + mode + " layout=" + layout + " taps=" + tapped + " tags=" + tagCount);
+        System.out.printf("delivered=%d failed=%d skipped=%d suppressed=%d staleDropped=%d tagCommands=%d eventBytes=%d%n",
+            delivered, failed, skipped, dedupCache != null ? dedupCache.getSuppressed() : 0,
+            router.getScanState().getStaleDropped(), commands, serializedBytes);
+        System.out.printf("elapsed=%.1f ms, %.0f taps/s%n", elapsedNanos / 1e6, tapped * 1e9 / elapsedNanos);
+        if (provisionSummary != null) {
+            System.out.println(provisionSummary);
+        }
+        System.out.println(report);
+    }
+
+    // What the plugin's start* call arms for the mode
+    private void arm(String mode, int taps, boolean skipWritten) {
+        switch (mode) {
+            case "uid":
+                router.arm(ScanState.Mode.UID, null);
+                break;
+            case "read":
+                router.arm(ScanState.Mode.READ, null);
+                break;
+            case "inventory":
+                router.arm(ScanState.Mode.INVENTORY, new TagRouter.InventorySettings(null, 0));
+                break;
+            case "write":
+            case "diffWrite":
+                // Armed again for every tap
+                break;
+            case "provision":
+                // One message per tap, written to whichever tag comes next
+                byte[][] messages = new byte[taps][];
+                for (int i = 0; i < taps; i++) {
+                    messages[i] = message(i, i);
+                }
+                router.arm(ScanState.Mode.PROVISION, new ProvisioningSession(messages, skipWritten, metrics::now, pipeline.getEvents()));
+                break;
+            case "session":
+                // Read-modify-write with a native updater that bumps the serial
+                router.arm(ScanState.Mode.SESSION, new TagRouter.SessionSettings(
+                    (uid, current, hash) -> new TagSession.Update(message(tapIndex, tapIndex), hash), null));
+                break;
+            case "rawRead":
+                router.arm(ScanState.Mode.RAW_READ, new TagRouter.RawReadSettings(true, true));
+                break;
+            case "classicRead":
+                // Default candidate keys, only the first card of the profile has to try them
+                router.arm(ScanState.Mode.CLASSIC_READ, new MifareClassicReader.Options());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+
+    // A typical provisioning payload: a URL plus a serial that changes every few taps
+    private static byte[] message(int tag, int serial) {
+        NdefCodec.Message message = new NdefCodec.Message();
+        message.add(NdefCodec.uriRecord("https://example.com/asset/" + tag));
+        message.add(NdefCodec.textRecord("en", "Serial " + serial));
+        return NdefCodec.encode(message);
+    }
+}
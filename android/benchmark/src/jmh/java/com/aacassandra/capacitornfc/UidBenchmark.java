@@ -0,0 +1,61 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-tap work of a UID scan: hex formatting and the nfcUID payload.
+ * repeatedTap is a badge left on / tapped again at the same station, distinctTaps a queue of
+ * different badges. Compare gc.alloc.rate.norm of both against the JSONObject alone (emptyPayload).
+ */
+@State(Scope.Benchmark)
+public class UidBenchmark {
+
+    @Param({ "4", "7", "10" })
+    public int uidLength;
+
+    private byte[][] uids;
+    private String[] techList;
+    private int next;
+    private final UidEncoder encoder = new UidEncoder();
+    private final long now = System.currentTimeMillis();
+
+    @Setup
+    public void setUp() {
+        uids = new byte[64][];
+        for (int i = 0; i < uids.length; i++) {
+            uids[i] = TagFixtures.uid(uidLength);
+            uids[i][uidLength - 1] = (byte) i;
+        }
+        techList = TagFixtures.techList(uidLength);
+    }
+
+    @Benchmark
+    public String hex() {
+        return UidEncoder.toHex(uids[0]);
+    }
+
+    @Benchmark
+    public JSONObject emptyPayload() {
+        return new JSONObject();
+    }
+
+    @Benchmark
+    public JSONObject repeatedTap() {
+        JSONObject result = new JSONObject();
+        encoder.putUidData(result, uids[0], techList, now);
+        return result;
+    }
+
+    @Benchmark
+    public JSONObject distinctTaps() {
+        JSONObject result = new JSONObject();
+        // Real tag UIDs come fresh out of each Tag, so hand over a new array every time too
+        encoder.putUidData(result, uids[next++ & 63].clone(), techList, now);
+        return result;
+    }
+}
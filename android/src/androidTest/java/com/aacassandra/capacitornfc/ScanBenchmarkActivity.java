@@ -0,0 +1,46 @@
+package com.aacassandra.capacitornfc;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+/**
+ * Bare host activity for {@link ScanModeLatencyBenchmark}, standing in for the Capacitor bridge activity.
+ */
+public class ScanBenchmarkActivity extends Activity {
+    final NFC nfc = new NFC();
+
+    // Foreground dispatch pauses the activity before delivering onNewIntent
+    volatile long pausedAtNanos;
+
+    // Re-arms scanning after the pause/resume cycle of an intent delivery
+    volatile Runnable onResumeAction;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        nfc.init(this);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        Runnable action = onResumeAction;
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        pausedAtNanos = SystemClock.elapsedRealtimeNanos();
+        super.onPause();
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        nfc.onNewIntent(intent);
+    }
+}
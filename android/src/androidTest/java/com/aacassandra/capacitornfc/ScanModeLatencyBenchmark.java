@@ -0,0 +1,151 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.getcapacitor.JSObject;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares tap-to-event latency of foreground dispatch against reader mode.
+ *
+ * Needs a device with NFC and someone tapping a tag, so it only runs when asked for:
+ *
+ *   ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.nfcBenchmarkTaps=20
+ *
+ * For dispatch, latency is measured from the activity pause that precedes onNewIntent,
+ * so it includes the intent round trip. For reader mode it is measured from the binder callback.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScanModeLatencyBenchmark {
+    private static final String TAG = "NFCBenchmark";
+    private static final long TAP_TIMEOUT_SECONDS = 30;
+
+    @Test
+    public void compareDispatchWithReaderMode() throws Exception {
+        Bundle args = InstrumentationRegistry.getArguments();
+        int taps = Integer.parseInt(args.getString("nfcBenchmarkTaps", "0"));
+        assumeTrue("Set nfcBenchmarkTaps to run the NFC latency benchmark", taps > 0);
+
+        try (ActivityScenario<ScanBenchmarkActivity> scenario = ActivityScenario.launch(ScanBenchmarkActivity.class)) {
+            long[] dispatch = measure(scenario, taps, null);
+            long[] readerMode = measure(scenario, taps, new ReaderModeOptions().setNoPlatformSounds(true));
+
+            report("dispatch", dispatch);
+            report("readerMode", readerMode);
+            assertTrue("Reader mode should not be slower than dispatch", percentile(readerMode, 50) <= percentile(dispatch, 50));
+        }
+    }
+
+    private long[] measure(ActivityScenario<ScanBenchmarkActivity> scenario, int taps, ReaderModeOptions options)
+        throws InterruptedException {
+        long[] samples = new long[taps];
+        String mode = options != null ? "reader mode" : "foreground dispatch";
+
+        for (int i = 0; i < taps; i++) {
+            CountDownLatch tapped = new CountDownLatch(1);
+            long[] sample = new long[1];
+            long armedAt = SystemClock.elapsedRealtimeNanos();
+
+            scenario.onActivity(activity -> {
+                activity.nfc.setCallback(new UIDCallback() {
+                    @Override
+                    public void onUIDDiscovered(JSObject data) {
+                        long now = SystemClock.elapsedRealtimeNanos();
+                        long start = activity.nfc.lastTagHandOffNanos;
+                        if (options == null && activity.pausedAtNanos > armedAt) {
+                            start = activity.pausedAtNanos;
+                        }
+                        sample[0] = now - start;
+                        tapped.countDown();
+                    }
+                });
+                activity.onResumeAction = options == null ? activity.nfc::startUIDReading : null;
+                activity.nfc.startUIDReading(options);
+            });
+
+            Log.i(TAG, "Tap a tag (" + mode + " " + (i + 1) + "/" + taps + ")");
+            assertTrue("No tap within " + TAP_TIMEOUT_SECONDS + "s", tapped.await(TAP_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            samples[i] = sample[0];
+
+            scenario.onActivity(activity -> {
+                activity.onResumeAction = null;
+                activity.nfc.stopReading();
+            });
+            // Give the user time to take the tag out of the field
+            SystemClock.sleep(1000);
+        }
+        return samples;
+    }
+
+    // Only UID events matter here, everything else is logged or ignored
+    private abstract static class UIDCallback implements NFC.NFCCallback {
+        @Override
+        public void onNdefDiscovered(JSObject data) {}
+
+        @Override
+        public void onError(String error) {
+            Log.w(TAG, error);
+        }
+
+        @Override
+        public void onWriteSuccess(JSObject data) {}
+
+        @Override
+        public void onProvisionProgress(JSObject data) {}
+
+        @Override
+        public void onProvisionComplete(JSObject data) {}
+
+        @Override
+        public void onRawRead(JSObject data) {}
+
+        @Override
+        public void onClassicRead(JSObject data) {}
+
+        @Override
+        public void onSessionRead(JSObject data) {}
+
+        @Override
+        public void onSessionComplete(JSObject data) {}
+
+        @Override
+        public void onWriteRejected(JSObject data) {}
+
+        @Override
+        public void onNdefJson(JSObject data) {}
+
+        @Override
+        public void onInventoryItem(JSObject data) {}
+
+        @Override
+        public void onInventorySummary(JSObject data) {}
+    }
+
+    private static void report(String mode, long[] samples) {
+        Log.i(
+            TAG,
+            mode +
+            ": p50=" + percentile(samples, 50) / 1000 + "us" +
+            " p95=" + percentile(samples, 95) / 1000 + "us" +
+            " max=" + percentile(samples, 100) / 1000 + "us"
+        );
+    }
+
+    private static long percentile(long[] samples, int p) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
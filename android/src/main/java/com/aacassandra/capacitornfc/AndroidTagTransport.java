@@ -0,0 +1,215 @@
+package com.aacassandra.capacitornfc;
+
+import android.nfc.FormatException;
+import android.nfc.NdefMessage;
+import android.nfc.Tag;
+import android.nfc.tech.MifareClassic;
+import android.nfc.tech.MifareUltralight;
+import android.nfc.tech.Ndef;
+import android.nfc.tech.NdefFormatable;
+import android.nfc.tech.NfcA;
+import android.nfc.tech.TagTechnology;
+
+import java.io.IOException;
+
+/**
+ * {@link TagTransport} over an android.nfc.Tag. Connections go through the NFC I/O executor
+ * ticket, so cancelling the executor aborts blocking calls; without a ticket (on the discovery
+ * thread) only the tag's id, tech list and cached message are available.
+ */
+class AndroidTagTransport implements TagTransport {
+    private final Tag tag;
+    private final NFCIOExecutor.Ticket ticket;
+    private Ndef ndef;
+    private NdefFormatable ndefFormatable;
+    private NfcA nfcA;
+    private MifareClassic mifareClassic;
+    private TagTechnology connected;
+
+    AndroidTagTransport(Tag tag, NFCIOExecutor.Ticket ticket) {
+        this.tag = tag;
+        this.ticket = ticket;
+    }
+
+    // Same tag, connected through the given I/O ticket
+    AndroidTagTransport withTicket(NFCIOExecutor.Ticket ticket) {
+        return new AndroidTagTransport(tag, ticket);
+    }
+
+    @Override
+    public byte[] getId() {
+        return tag.getId();
+    }
+
+    @Override
+    public String[] getTechList() {
+        return tag.getTechList();
+    }
+
+    @Override
+    public boolean hasTechnology(Technology technology) {
+        switch (technology) {
+            case NFC_A:
+                return NfcA.get(tag) != null;
+            case MIFARE_ULTRALIGHT:
+                return MifareUltralight.get(tag) != null;
+            case MIFARE_CLASSIC:
+                return MifareClassic.get(tag) != null;
+            case NDEF:
+                return Ndef.get(tag) != null;
+            case NDEF_FORMATABLE:
+                return NdefFormatable.get(tag) != null;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public byte[] getCachedNdefMessage() {
+        Ndef cachedNdef = Ndef.get(tag);
+        NdefMessage cached = cachedNdef != null ? cachedNdef.getCachedNdefMessage() : null;
+        return cached != null ? cached.toByteArray() : null;
+    }
+
+    // Ndef answers these from the discovery extras, without talking to the tag
+    @Override
+    public TagCapability getCapability() {
+        Ndef discovered = Ndef.get(tag);
+        if (discovered != null) {
+            return new TagCapability(discovered.getMaxSize(), discovered.isWritable(), true, discovered.getType());
+        }
+        if (NdefFormatable.get(tag) != null) {
+            return new TagCapability(TagCapability.UNKNOWN_SIZE, true, false, "NdefFormatable");
+        }
+        return null;
+    }
+
+    @Override
+    public int getFallbackPageCount() {
+        MifareUltralight ultralight = MifareUltralight.get(tag);
+        return ultralight != null && ultralight.getType() == MifareUltralight.TYPE_ULTRALIGHT_C ? 44 : 16;
+    }
+
+    @Override
+    public void connect(Technology technology) throws IOException {
+        if (ticket == null) {
+            throw new IllegalStateException("Tag I/O needs an NFC I/O ticket");
+        }
+        close();
+        TagTechnology target;
+        switch (technology) {
+            case NFC_A:
+                target = nfcA = NfcA.get(tag);
+                break;
+            case MIFARE_CLASSIC:
+                target = mifareClassic = MifareClassic.get(tag);
+                break;
+            case NDEF:
+                target = ndef = Ndef.get(tag);
+                break;
+            case NDEF_FORMATABLE:
+                target = ndefFormatable = NdefFormatable.get(tag);
+                break;
+            default:
+                target = null;
+                break;
+        }
+        if (target == null) {
+            throw new IOException("Tag doesn't support " + technology);
+        }
+        ticket.connect(target);
+        connected = target;
+    }
+
+    @Override
+    public void close() {
+        if (connected != null) {
+            ticket.close(connected);
+            connected = null;
+        }
+    }
+
+    @Override
+    public void setTimeout(int millis) {
+        if (connected != null && connected == nfcA) {
+            nfcA.setTimeout(millis);
+        }
+    }
+
+    @Override
+    public boolean isWritable() {
+        return ndef.isWritable();
+    }
+
+    @Override
+    public byte[] readNdefMessage() throws IOException {
+        try {
+            NdefMessage message = ndef.getNdefMessage();
+            return message != null ? message.toByteArray() : null;
+        } catch (FormatException e) {
+            throw new IOException("Invalid NDEF message: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void writeNdefMessage(byte[] message) throws IOException {
+        try {
+            ndef.writeNdefMessage(new NdefMessage(message));
+        } catch (FormatException e) {
+            throw new IOException("Invalid NDEF message: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void format(byte[] message) throws IOException {
+        try {
+            ndefFormatable.format(new NdefMessage(message));
+        } catch (FormatException e) {
+            throw new IOException("Failed to format tag: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int getSectorCount() {
+        return mifareClassic.getSectorCount();
+    }
+
+    @Override
+    public int getBlockCountInSector(int sector) {
+        return mifareClassic.getBlockCountInSector(sector);
+    }
+
+    @Override
+    public int sectorToBlock(int sector) {
+        return mifareClassic.sectorToBlock(sector);
+    }
+
+    @Override
+    public boolean authenticateSector(int sector, byte[] key, boolean keyA) throws IOException {
+        return keyA ? mifareClassic.authenticateSectorWithKeyA(sector, key) : mifareClassic.authenticateSectorWithKeyB(sector, key);
+    }
+
+    @Override
+    public byte[] readBlock(int block) throws IOException {
+        return mifareClassic.readBlock(block);
+    }
+
+    @Override
+    public byte[] transceive(byte[] command) throws IOException {
+        return nfcA.transceive(command);
+    }
+
+    // After a NAK or a refused Classic read the tag drops back to idle and needs a fresh connection
+    @Override
+    public void reconnect() throws IOException {
+        TagTechnology technology = connected != null ? connected : nfcA;
+        ticket.close(technology);
+        ticket.connect(technology);
+        connected = technology;
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return nfcA.getMaxTransceiveLength();
+    }
+}
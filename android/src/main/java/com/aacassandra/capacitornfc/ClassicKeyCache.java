@@ -0,0 +1,73 @@
+package com.aacassandra.capacitornfc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The MIFARE Classic key that last authenticated each sector, per card profile, so the next
+ * card with the same layout is authenticated on the first try. A key is packed into a long
+ * with its type, 0 meaning no key is known. Profiles are kept in LRU order, the least
+ * recently read one is evicted first.
+ */
+public class ClassicKeyCache {
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private static final long KEY_MASK = 0xFFFFFFFFFFFFL;
+    private static final long KEY_B = 1L << 48;
+    private static final long KNOWN = 1L << 49;
+
+    private final LinkedHashMap<String, long[]> profiles;
+
+    public ClassicKeyCache(int capacity) {
+        int maxEntries = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        this.profiles = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // The packed key of the sector, 0 when none is known
+    public synchronized long get(String profile, int sector) {
+        long[] sectors = profiles.get(profile);
+        return sectors != null && sector < sectors.length ? sectors[sector] : 0;
+    }
+
+    public synchronized void put(String profile, int sector, int sectorCount, byte[] key, boolean keyA) {
+        long[] sectors = profiles.get(profile);
+        if (sectors == null || sectors.length < sectorCount) {
+            long[] grown = new long[Math.max(sectorCount, sector + 1)];
+            if (sectors != null) {
+                System.arraycopy(sectors, 0, grown, 0, sectors.length);
+            }
+            sectors = grown;
+            profiles.put(profile, sectors);
+        }
+        sectors[sector] = pack(key, keyA);
+    }
+
+    public synchronized void clear() {
+        profiles.clear();
+    }
+
+    public synchronized int size() {
+        return profiles.size();
+    }
+
+    static long pack(byte[] key, boolean keyA) {
+        long packed = 0;
+        for (int i = 0; i < MifareClassicReader.KEY_LENGTH; i++) {
+            packed = (packed << 8) | (key[i] & 0xFF);
+        }
+        return packed | KNOWN | (keyA ? 0 : KEY_B);
+    }
+
+    static boolean isKeyA(long packed) {
+        return (packed & KEY_B) == 0;
+    }
+
+    static boolean matches(long packed, byte[] key) {
+        return (packed & KNOWN) != 0 && (packed & KEY_MASK) == (pack(key, true) & KEY_MASK);
+    }
+}
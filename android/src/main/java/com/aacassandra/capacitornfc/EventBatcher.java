@@ -0,0 +1,196 @@
+package com.aacassandra.capacitornfc;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers discovery events and hands them to the bridge as one nfcBatch event, either when
+ * maxBatchSize events are waiting or maxLatencyMs after the first one arrived.
+ *
+ * Backpressure: with maxUnackedBatches > 0, no new batch is flushed while that many batches
+ * haven't been acknowledged by JS. Events keep buffering up to maxBuffered, after which the
+ * overflow policy drops the oldest event, drops the new one, or aggregates repeats of the same
+ * tag into a single entry with a count.
+ *
+ * Batches are taken and handed to the sink under the same lock, so whichever thread flushes
+ * (the tap, the latency timer, flushEvents or ackEvents), JS sees them in batchId order.
+ */
+public class EventBatcher {
+    public static final String OVERFLOW_DROP_OLDEST = "dropOldest";
+    public static final String OVERFLOW_DROP_NEWEST = "dropNewest";
+    public static final String OVERFLOW_AGGREGATE = "aggregate";
+
+    public interface Sink {
+        void emit(JSObject batch);
+    }
+
+    private static final class Entry {
+        final String event;
+        final JSObject data;
+        int count = 1;
+        String key;
+
+        Entry(String event, JSObject data) {
+            this.event = event;
+            this.data = data;
+        }
+
+        // Identity used for aggregation, computed only when the buffer overflows
+        String key() {
+            if (key == null) {
+                String uid = data.getString("uid");
+                key = event + ":" + (uid != null ? uid : data.toString());
+            }
+            return key;
+        }
+    }
+
+    private final Sink sink;
+    private final int maxBatchSize;
+    private final long maxLatencyMs;
+    private final int maxBuffered;
+    private final String overflow;
+    private final int maxUnackedBatches;
+
+    private final ArrayDeque<Entry> buffer = new ArrayDeque<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "NFC-Batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ScheduledFuture<?> pendingFlush;
+    private long nextBatchId = 1;
+    private long lastAckedBatchId = 0;
+    private long dropped = 0;
+    private long aggregated = 0;
+    private boolean closed = false;
+
+    public EventBatcher(Sink sink, int maxBatchSize, long maxLatencyMs, int maxBuffered, String overflow, int maxUnackedBatches) {
+        this.sink = sink;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLatencyMs = Math.max(0, maxLatencyMs);
+        this.maxBuffered = Math.max(this.maxBatchSize, maxBuffered);
+        this.overflow = overflow != null ? overflow : OVERFLOW_DROP_OLDEST;
+        this.maxUnackedBatches = Math.max(0, maxUnackedBatches);
+    }
+
+    public synchronized void add(String event, JSObject data) {
+        if (buffer.size() >= maxBuffered && !makeRoom(event, data)) {
+            return;
+        }
+        if (buffer.size() < maxBuffered) {
+            buffer.add(new Entry(event, data));
+        }
+        if (closed) {
+            // A discovery that raced shutdown() still goes out
+            drain();
+        } else if (buffer.size() >= maxBatchSize) {
+            emit(takeBatch(false));
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    // Flush whatever is buffered, ignoring the size and latency thresholds but not backpressure
+    public synchronized void flush() {
+        emit(takeBatch(false));
+    }
+
+    // JS has processed every batch up to and including batchId
+    public synchronized void ack(long batchId) {
+        lastAckedBatchId = Math.max(lastAckedBatchId, Math.min(batchId, nextBatchId - 1));
+        flush();
+    }
+
+    // Emits everything still buffered, backpressure or not, so no event is lost on the way out
+    public synchronized void shutdown() {
+        closed = true;
+        drain();
+        timer.shutdownNow();
+    }
+
+    // Applies the overflow policy to a full buffer. Returns false when the new event is consumed.
+    private boolean makeRoom(String event, JSObject data) {
+        if (OVERFLOW_AGGREGATE.equals(overflow)) {
+            Entry incoming = new Entry(event, data);
+            Iterator<Entry> iterator = buffer.descendingIterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.event.equals(event) && entry.key().equals(incoming.key())) {
+                    entry.count++;
+                    aggregated++;
+                    return false;
+                }
+            }
+        }
+        dropped++;
+        if (OVERFLOW_DROP_NEWEST.equals(overflow)) {
+            return false;
+        }
+        buffer.pollFirst();
+        return true;
+    }
+
+    private void drain() {
+        while (!buffer.isEmpty()) {
+            emit(takeBatch(true));
+        }
+    }
+
+    // Called with the lock held, so batches reach the sink in batchId order
+    private void emit(JSObject batch) {
+        if (batch != null) {
+            sink.emit(batch);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (pendingFlush == null || pendingFlush.isDone()) {
+            pendingFlush = timer.schedule(this::flush, maxLatencyMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private JSObject takeBatch(boolean force) {
+        if (buffer.isEmpty()) return null;
+        if (!force && maxUnackedBatches > 0 && nextBatchId - 1 - lastAckedBatchId >= maxUnackedBatches) {
+            // JS is behind: keep buffering, the next ack() flushes
+            return null;
+        }
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+
+        JSArray events = new JSArray();
+        for (int i = 0; i < maxBatchSize && !buffer.isEmpty(); i++) {
+            Entry entry = buffer.pollFirst();
+            JSObject item = new JSObject();
+            item.put("event", entry.event);
+            item.put("data", entry.data);
+            if (entry.count > 1) {
+                item.put("count", entry.count);
+            }
+            events.put(item);
+        }
+
+        JSObject batch = new JSObject();
+        batch.put("batchId", nextBatchId++);
+        batch.put("events", events);
+        batch.put("dropped", dropped);
+        batch.put("aggregated", aggregated);
+        dropped = 0;
+        aggregated = 0;
+
+        if (!buffer.isEmpty() && !closed) {
+            scheduleFlush();
+        }
+        return batch;
+    }
+}
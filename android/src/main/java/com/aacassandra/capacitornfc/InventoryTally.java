@@ -0,0 +1,285 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+/**
+ * The items seen by an inventory scan: how often each UID was tapped, when it was first and
+ * last seen, and an optional item key taken from its NDEF content.
+ *
+ * UIDs are kept as bytes in one shared array and found through an open-addressing table of
+ * item indexes (linear probing, at most half full), so counting a tap of a known item allocates
+ * nothing. Per-item data lives in parallel arrays indexed the same way. Items changed since the
+ * last delta are tracked in a list, so a summary only covers what changed rather than the whole
+ * tally.
+ */
+public class InventoryTally {
+    private static final int INITIAL_ITEMS = 64;
+
+    // Reads the item key of the tapped tag, only asked while its item has none
+    public interface ItemKeySource {
+        String itemKey();
+    }
+
+    // Item index + 1 per slot, 0 for an empty slot
+    private int[] slots = new int[INITIAL_ITEMS * 2];
+    private int[] hashes = new int[INITIAL_ITEMS];
+    private byte[] uidBytes = new byte[INITIAL_ITEMS * 7];
+    private int[] uidOffsets = new int[INITIAL_ITEMS];
+    private byte[] uidLengths = new byte[INITIAL_ITEMS];
+    private int[] counts = new int[INITIAL_ITEMS];
+    private long[] firstSeen = new long[INITIAL_ITEMS];
+    private long[] lastSeen = new long[INITIAL_ITEMS];
+    private String[] itemKeys = new String[INITIAL_ITEMS];
+    private int size = 0;
+    private int uidBytesUsed = 0;
+    private long taps = 0;
+
+    // Items changed since the last delta, each listed once
+    private int[] changed = new int[INITIAL_ITEMS];
+    private boolean[] isChanged = new boolean[INITIAL_ITEMS];
+    private int changedCount = 0;
+    private long tapsAtLastDelta = 0;
+
+    /**
+     * Counts a tap of the UID and returns the index of its item. A new item has a count of 1.
+     */
+    public synchronized int record(byte[] uid, long nowMillis) {
+        int length = Math.min(uid.length, 255);
+        int hash = hash(uid, length);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            int item = slots[slot] - 1;
+            if (hashes[item] == hash && uidEquals(item, uid, length)) {
+                counts[item]++;
+                lastSeen[item] = nowMillis;
+                taps++;
+                markChanged(item);
+                return item;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int item = add(uid, length, hash, nowMillis);
+        slots[slot] = item + 1;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        taps++;
+        markChanged(item);
+        return item;
+    }
+
+    /**
+     * Counts a tap like record, and within the same lock fills in a missing item key from
+     * itemKey (when not null) and builds the event of a new item as putItem does. Returns that
+     * event, null for a repeat tap, so a clear() in between can't leave it pointing at a
+     * forgotten item.
+     */
+    public synchronized JSONObject recordItem(byte[] uid, long nowMillis, ItemKeySource itemKey, TagPipeline.EventFactory events)
+        throws JSONException {
+        int item = record(uid, nowMillis);
+        if (itemKey != null && itemKeys[item] == null) {
+            itemKeys[item] = itemKey.itemKey();
+        }
+        if (counts[item] != 1) return null;
+        JSONObject event = events.newEvent();
+        putItem(item, event);
+        return event;
+    }
+
+    // The item as { uid, count, firstSeen, lastSeen, itemKey }, plus the number of items so far
+    public synchronized void putItem(int item, JSONObject out) throws JSONException {
+        out.put("uid", uidHex(item));
+        out.put("count", counts[item]);
+        out.put("firstSeen", firstSeen[item]);
+        out.put("lastSeen", lastSeen[item]);
+        if (itemKeys[item] != null) {
+            out.put("itemKey", itemKeys[item]);
+        }
+        out.put("items", size);
+    }
+
+    // Whether any tap was counted since the last delta
+    public synchronized boolean hasDelta() {
+        return changedCount > 0;
+    }
+
+    /**
+     * The items tapped since the last delta, as columns of uids, counts and lastSeen times, plus
+     * the totals. Starts the next delta.
+     */
+    public synchronized void putDelta(JSONObject out) throws JSONException {
+        JSONArray uids = new JSONArray();
+        JSONArray itemCounts = new JSONArray();
+        JSONArray itemLastSeen = new JSONArray();
+        for (int i = 0; i < changedCount; i++) {
+            int item = changed[i];
+            uids.put(uidHex(item));
+            itemCounts.put(counts[item]);
+            itemLastSeen.put(lastSeen[item]);
+            isChanged[item] = false;
+        }
+        out.put("items", size);
+        out.put("taps", taps);
+        out.put("newTaps", taps - tapsAtLastDelta);
+        out.put("uids", uids);
+        out.put("counts", itemCounts);
+        out.put("lastSeen", itemLastSeen);
+        changedCount = 0;
+        tapsAtLastDelta = taps;
+    }
+
+    /**
+     * The whole tally as columns: uids, counts, firstSeen, lastSeen and itemKeys (null for items
+     * without one), in the order the items were first seen.
+     */
+    public synchronized void putJson(JSONObject out) throws JSONException {
+        JSONArray uids = new JSONArray();
+        JSONArray itemCounts = new JSONArray();
+        JSONArray itemFirstSeen = new JSONArray();
+        JSONArray itemLastSeen = new JSONArray();
+        JSONArray keys = new JSONArray();
+        for (int item = 0; item < size; item++) {
+            uids.put(uidHex(item));
+            itemCounts.put(counts[item]);
+            itemFirstSeen.put(firstSeen[item]);
+            itemLastSeen.put(lastSeen[item]);
+            keys.put(itemKeys[item] != null ? itemKeys[item] : JSONObject.NULL);
+        }
+        out.put("items", size);
+        out.put("taps", taps);
+        out.put("uids", uids);
+        out.put("counts", itemCounts);
+        out.put("firstSeen", itemFirstSeen);
+        out.put("lastSeen", itemLastSeen);
+        out.put("itemKeys", keys);
+    }
+
+    // Forgets every item, the arrays keep their size for the next count
+    public synchronized void clear() {
+        Arrays.fill(slots, 0);
+        Arrays.fill(itemKeys, 0, size, null);
+        Arrays.fill(isChanged, 0, size, false);
+        size = 0;
+        uidBytesUsed = 0;
+        taps = 0;
+        changedCount = 0;
+        tapsAtLastDelta = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getTaps() {
+        return taps;
+    }
+
+    /**
+     * The item key of a tag: the content of the first record of the given type, e.g. "T" or
+     * "example.com:sku". Text and URI records are decoded, anything else is read as UTF-8. Null
+     * when no record has the type or the message is malformed.
+     */
+    public static String itemKey(byte[] message, String recordType) {
+        if (message == null || recordType == null) return null;
+
+        try {
+            NdefCodec.Message decoded = NdefCodec.decode(message, 0, message.length, null);
+            NdefCompression.expand(decoded);
+            for (int i = 0; i < decoded.size(); i++) {
+                NdefCodec.Record record = decoded.get(i);
+                if (!recordType.equals(record.typeString())) continue;
+
+                if (record.isWellKnown(NdefCodec.RTD_TEXT)) {
+                    return RecordDecoders.text(record).getString("text");
+                }
+                if (record.isWellKnown(NdefCodec.RTD_URI)) {
+                    return RecordDecoders.uri(record);
+                }
+                return record.payloadString();
+            }
+        } catch (NdefCodec.MalformedNdefException | JSONException e) {
+            return null;
+        }
+        return null;
+    }
+
+    private int add(byte[] uid, int length, int hash, long nowMillis) {
+        if (size == counts.length) {
+            grow(size * 2);
+        }
+        if (uidBytesUsed + length > uidBytes.length) {
+            uidBytes = Arrays.copyOf(uidBytes, Math.max(uidBytes.length * 2, uidBytesUsed + length));
+        }
+        int item = size++;
+        System.arraycopy(uid, 0, uidBytes, uidBytesUsed, length);
+        uidOffsets[item] = uidBytesUsed;
+        uidLengths[item] = (byte) length;
+        uidBytesUsed += length;
+        hashes[item] = hash;
+        counts[item] = 1;
+        firstSeen[item] = nowMillis;
+        lastSeen[item] = nowMillis;
+        itemKeys[item] = null;
+        return item;
+    }
+
+    private void grow(int capacity) {
+        hashes = Arrays.copyOf(hashes, capacity);
+        uidOffsets = Arrays.copyOf(uidOffsets, capacity);
+        uidLengths = Arrays.copyOf(uidLengths, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        firstSeen = Arrays.copyOf(firstSeen, capacity);
+        lastSeen = Arrays.copyOf(lastSeen, capacity);
+        itemKeys = Arrays.copyOf(itemKeys, capacity);
+        changed = Arrays.copyOf(changed, capacity);
+        isChanged = Arrays.copyOf(isChanged, capacity);
+    }
+
+    private void rehash(int slotCount) {
+        int[] rehashed = new int[slotCount];
+        int mask = slotCount - 1;
+        for (int item = 0; item < size; item++) {
+            int slot = hashes[item] & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = item + 1;
+        }
+        slots = rehashed;
+    }
+
+    private void markChanged(int item) {
+        if (!isChanged[item]) {
+            isChanged[item] = true;
+            changed[changedCount++] = item;
+        }
+    }
+
+    private boolean uidEquals(int item, byte[] uid, int length) {
+        if ((uidLengths[item] & 0xFF) != length) return false;
+        int offset = uidOffsets[item];
+        for (int i = 0; i < length; i++) {
+            if (uidBytes[offset + i] != uid[i]) return false;
+        }
+        return true;
+    }
+
+    private String uidHex(int item) {
+        byte[] uid = new byte[uidLengths[item] & 0xFF];
+        System.arraycopy(uidBytes, uidOffsets[item], uid, 0, uid.length);
+        return UidEncoder.toHex(uid);
+    }
+
+    // FNV-1a folded to an int, with the high bits spread into the low ones used for the slot
+    private static int hash(byte[] uid, int length) {
+        long fingerprint = TagDedupCache.mix(TagDedupCache.fingerprint(null), uid, 0, length);
+        int hash = (int) (fingerprint ^ (fingerprint >>> 32));
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,361 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * Writes a JSON document straight into a reused char buffer, for events that would otherwise
+ * be built as a JSONObject tree and serialized again by the bridge.
+ *
+ * Strings are escaped as they're appended, and UTF-8 byte ranges are decoded directly into the
+ * buffer (malformed sequences become U+FFFD like new String(bytes, UTF_8) does), so no
+ * intermediate String is made for payloads. Commas are handled by the writer; nesting is not
+ * validated. Not thread-safe.
+ */
+public class JsonEventWriter {
+    // Larger buffers are dropped after use, so one huge tag doesn't pin the memory
+    private static final int MAX_RETAINED_CHARS = 64 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final char REPLACEMENT = '\uFFFD';
+    // Characters that have to be escaped: control characters, '"' and '\'
+    private static final boolean[] ESCAPE = new boolean[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPE[c] = true;
+        }
+        ESCAPE['"'] = true;
+        ESCAPE['\\'] = true;
+    }
+
+    private final int initialCapacity;
+    private char[] buf;
+    private int len = 0;
+    private boolean[] first = new boolean[8];
+    private int depth = 0;
+    private boolean afterName = false;
+
+    public JsonEventWriter(int initialCapacity) {
+        this.initialCapacity = Math.max(16, initialCapacity);
+        this.buf = new char[this.initialCapacity];
+    }
+
+    public JsonEventWriter reset() {
+        if (buf.length > MAX_RETAINED_CHARS) {
+            buf = new char[initialCapacity];
+        }
+        len = 0;
+        depth = 0;
+        afterName = false;
+        return this;
+    }
+
+    public String finish() {
+        return new String(buf, 0, len);
+    }
+
+    public JsonEventWriter beginObject() {
+        separator();
+        append('{');
+        push();
+        return this;
+    }
+
+    public JsonEventWriter endObject() {
+        depth--;
+        append('}');
+        return this;
+    }
+
+    public JsonEventWriter beginArray() {
+        separator();
+        append('[');
+        push();
+        return this;
+    }
+
+    public JsonEventWriter endArray() {
+        depth--;
+        append(']');
+        return this;
+    }
+
+    public JsonEventWriter name(String name) {
+        separator();
+        string(name);
+        append(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonEventWriter value(String value) {
+        separator();
+        if (value == null) {
+            raw("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    public JsonEventWriter value(long value) {
+        separator();
+        raw(Long.toString(value));
+        return this;
+    }
+
+    public JsonEventWriter value(boolean value) {
+        separator();
+        raw(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * A value built with org.json: JSONObject, JSONArray, String, Boolean, Number or null.
+     * Numbers that JSON can't represent (NaN, infinities) are written as null, like
+     * JSON.stringify does.
+     */
+    public JsonEventWriter value(Object value) {
+        if (value instanceof String) return value((String) value);
+        if (value instanceof Boolean) return value(((Boolean) value).booleanValue());
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        }
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            beginObject();
+            for (Iterator<String> keys = object.keys(); keys.hasNext(); ) {
+                String key = keys.next();
+                name(key).value(object.opt(key));
+            }
+            return endObject();
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                value(array.opt(i));
+            }
+            return endArray();
+        }
+
+        separator();
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            raw(Double.isNaN(number) || Double.isInfinite(number) ? "null" : value.toString());
+        } else if (value == null || value == JSONObject.NULL) {
+            raw("null");
+        } else {
+            string(value.toString());
+        }
+        return this;
+    }
+
+    // A string decoded from UTF-8 bytes, without an intermediate String
+    public JsonEventWriter utf8Value(byte[] buffer, int offset, int length) {
+        separator();
+        // Every byte is at most one UTF-16 unit, escapes aside
+        ensure(length + 2);
+        buf[len++] = '"';
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int b = buffer[i];
+            if (b >= 0 && !ESCAPE[b]) {
+                buf[len++] = (char) b;
+                i++;
+                continue;
+            }
+            if (b >= 0) {
+                escape((char) b);
+                i++;
+            } else {
+                i += decodeSequence(buffer, i, end);
+            }
+            // Escapes may have used up the room reserved for the rest
+            ensure(end - i + 1);
+        }
+        ensure(1);
+        buf[len++] = '"';
+        return this;
+    }
+
+    public JsonEventWriter hexValue(byte[] buffer, int offset, int length) {
+        separator();
+        ensure(length * 2 + 2);
+        buf[len++] = '"';
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int b = buffer[i] & 0xFF;
+            buf[len++] = HEX_DIGITS[b >>> 4];
+            buf[len++] = HEX_DIGITS[b & 0x0F];
+        }
+        buf[len++] = '"';
+        return this;
+    }
+
+    public JsonEventWriter base64Value(byte[] buffer, int offset, int length) {
+        separator();
+        StringBuilder encoded = new StringBuilder((length + 2) / 3 * 4);
+        PayloadEncoding.appendBase64(encoded, buffer, offset, length);
+        ensure(encoded.length() + 2);
+        buf[len++] = '"';
+        encoded.getChars(0, encoded.length(), buf, len);
+        len += encoded.length();
+        buf[len++] = '"';
+        return this;
+    }
+
+    /**
+     * Decodes the multi-byte sequence at i and returns the bytes consumed. An invalid or cut
+     * off sequence becomes a single U+FFFD for its longest valid prefix, as the JDK decoder does.
+     */
+    private int decodeSequence(byte[] buffer, int i, int end) {
+        int lead = buffer[i] & 0xFF;
+        int extra;
+        int min = 0x80;
+        int max = 0xBF;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            extra = 1;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            extra = 2;
+            if (lead == 0xE0) min = 0xA0;
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            extra = 3;
+            if (lead == 0xF0) min = 0x90;
+            if (lead == 0xF4) max = 0x8F;
+        } else {
+            replacement();
+            return 1;
+        }
+
+        int codePoint = lead & (0x3F >> extra);
+        for (int k = 1; k <= extra; k++) {
+            int next = i + k < end ? buffer[i + k] & 0xFF : -1;
+            if (next < min || next > max) {
+                replacement();
+                return k;
+            }
+            codePoint = (codePoint << 6) | (next & 0x3F);
+            min = 0x80;
+            max = 0xBF;
+        }
+
+        if (codePoint >= 0xD800 && codePoint <= 0xDFFF) {
+            // Encoded surrogate
+            replacement();
+        } else if (codePoint >= 0x10000) {
+            ensure(2);
+            buf[len++] = Character.highSurrogate(codePoint);
+            buf[len++] = Character.lowSurrogate(codePoint);
+        } else if (codePoint == 0x2028 || codePoint == 0x2029) {
+            escape((char) codePoint);
+        } else {
+            ensure(1);
+            buf[len++] = (char) codePoint;
+        }
+        return extra + 1;
+    }
+
+    private void replacement() {
+        ensure(1);
+        buf[len++] = REPLACEMENT;
+    }
+
+    private void string(String value) {
+        int n = value.length();
+        ensure(n + 2);
+        buf[len++] = '"';
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if ((c < 128 && ESCAPE[c]) || c == '\u2028' || c == '\u2029') {
+                escape(c);
+            } else {
+                ensure(1);
+                buf[len++] = c;
+            }
+        }
+        ensure(1);
+        buf[len++] = '"';
+    }
+
+    private void escape(char c) {
+        switch (c) {
+            case '"':
+                raw("\\\"");
+                break;
+            case '\\':
+                raw("\\\\");
+                break;
+            case '\n':
+                raw("\\n");
+                break;
+            case '\r':
+                raw("\\r");
+                break;
+            case '\t':
+                raw("\\t");
+                break;
+            case '\b':
+                raw("\\b");
+                break;
+            case '\f':
+                raw("\\f");
+                break;
+            default:
+                // Other control characters, and the line / paragraph separators JS source doesn't allow raw
+                ensure(6);
+                buf[len++] = '\\';
+                buf[len++] = 'u';
+                buf[len++] = HEX_DIGITS[c >>> 12];
+                buf[len++] = HEX_DIGITS[(c >>> 8) & 0x0F];
+                buf[len++] = HEX_DIGITS[(c >>> 4) & 0x0F];
+                buf[len++] = HEX_DIGITS[c & 0x0F];
+                break;
+        }
+    }
+
+    private void separator() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (first[depth - 1]) {
+                first[depth - 1] = false;
+            } else {
+                append(',');
+            }
+        }
+    }
+
+    private void push() {
+        if (depth == first.length) {
+            boolean[] grown = new boolean[depth * 2];
+            System.arraycopy(first, 0, grown, 0, depth);
+            first = grown;
+        }
+        first[depth++] = true;
+    }
+
+    private void append(char c) {
+        ensure(1);
+        buf[len++] = c;
+    }
+
+    private void raw(String s) {
+        int n = s.length();
+        ensure(n);
+        s.getChars(0, n, buf, len);
+        len += n;
+    }
+
+    private void ensure(int extra) {
+        if (len + extra > buf.length) {
+            char[] grown = new char[Math.max(buf.length * 2, len + extra)];
+            System.arraycopy(buf, 0, grown, 0, len);
+            buf = grown;
+        }
+    }
+}
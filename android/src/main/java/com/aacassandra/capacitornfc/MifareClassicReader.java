@@ -0,0 +1,240 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * Sector dump of MIFARE Classic cards over one connection.
+ *
+ * Each sector is authenticated with the first candidate key that works (as key A, then as key
+ * B when allowed), then its blocks are read back to back. A failed authentication halts the
+ * card until it's reactivated, which costs about as much as the attempt itself, so the key that
+ * worked is kept per card profile in a {@link ClassicKeyCache} and tried first on the next card
+ * with that profile. Cached keys are only used while they're among the candidates.
+ *
+ * Works against {@link Connection} rather than android.nfc so it runs on a plain JVM too.
+ */
+public class MifareClassicReader {
+    public static final int KEY_LENGTH = 6;
+    public static final int BLOCK_SIZE = 16;
+
+    // Transport keys, the MAD key and the NFC Forum key of NDEF formatted cards
+    public static final byte[][] DEFAULT_KEYS = {
+        { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF },
+        { (byte) 0xA0, (byte) 0xA1, (byte) 0xA2, (byte) 0xA3, (byte) 0xA4, (byte) 0xA5 },
+        { (byte) 0xD3, (byte) 0xF7, (byte) 0xD3, (byte) 0xF7, (byte) 0xD3, (byte) 0xF7 },
+        { 0x00, 0x00, 0x00, 0x00, 0x00, 0x00 },
+    };
+
+    public interface Connection {
+        int getSectorCount();
+
+        int getBlockCountInSector(int sector);
+
+        int sectorToBlock(int sector);
+
+        // False when the key is wrong, throws when the card is gone
+        boolean authenticateSector(int sector, byte[] key, boolean keyA) throws IOException;
+
+        // Needs the block's sector authenticated
+        byte[] readBlock(int block) throws IOException;
+
+        // A refused read halts the card until it's activated again
+        void reconnect() throws IOException;
+    }
+
+    // What to read and with which keys
+    public static final class Options {
+        // Cache profile, null for the card size
+        public String profile;
+        public byte[][] keys = DEFAULT_KEYS;
+        // Also try every key as key B once none worked as key A
+        public boolean tryKeyB = false;
+        // Sectors to read, null for all
+        public int[] sectors;
+        public boolean includeTrailers = false;
+    }
+
+    public static final class Sector {
+        public int sector;
+        // Index of the key in the candidates, -1 when no key worked
+        public int keyIndex = -1;
+        public boolean keyA;
+        public boolean cachedKey;
+        public int authentications;
+        public byte[] data;
+        // First block read the access bits refused, unreadable blocks are left as zeros
+        public String readError;
+        public int unreadableBlocks;
+        public long nanos;
+
+        public void putJson(JSONObject out) throws JSONException {
+            out.put("sector", sector);
+            out.put("authenticated", keyIndex >= 0);
+            if (keyIndex >= 0) {
+                out.put("keyIndex", keyIndex);
+                out.put("keyType", keyA ? "A" : "B");
+                out.put("cachedKey", cachedKey);
+                out.put("data", UidEncoder.toHex(data));
+            }
+            if (readError != null) {
+                out.put("readError", readError);
+                out.put("unreadableBlocks", unreadableBlocks);
+            }
+            out.put("authentications", authentications);
+            out.put("durationMs", nanos / 1e6);
+        }
+    }
+
+    public static final class Dump {
+        public String profile;
+        public int sectorCount;
+        public Sector[] sectors;
+        public int authentications;
+        public int failedAuthentications;
+        public int cachedKeys;
+
+        public void putJson(JSONObject out) throws JSONException {
+            out.put("profile", profile);
+            out.put("sectorCount", sectorCount);
+            JSONArray sectorsArray = new JSONArray();
+            for (Sector sector : sectors) {
+                JSONObject sectorObj = new JSONObject();
+                sector.putJson(sectorObj);
+                sectorsArray.put(sectorObj);
+            }
+            out.put("sectors", sectorsArray);
+            out.put("authentications", authentications);
+            out.put("failedAuthentications", failedAuthentications);
+            out.put("cachedKeys", cachedKeys);
+        }
+    }
+
+    private final Connection connection;
+    private final ClassicKeyCache keyCache;
+    private final NFCMetrics metrics;
+
+    public MifareClassicReader(Connection connection, ClassicKeyCache keyCache, NFCMetrics metrics) {
+        this.connection = connection;
+        this.keyCache = keyCache;
+        this.metrics = metrics;
+    }
+
+    // The cache profile of cards that don't name one: their size
+    public static String defaultProfile(int sectorCount) {
+        return "classic-" + sectorCount;
+    }
+
+    /**
+     * Reads the sectors of the card. Sectors no candidate key opens are reported unauthenticated,
+     * and blocks whose access bits refuse the key that opened the sector are reported in the
+     * sector's readError, rather than failing the read. Only losing the card fails it. Sector
+     * trailers are left out of the data unless includeTrailers is set; their keys read back as
+     * zeros either way.
+     */
+    public Dump read(Options options) throws IOException {
+        int sectorCount = connection.getSectorCount();
+        Dump dump = new Dump();
+        dump.profile = options.profile != null ? options.profile : defaultProfile(sectorCount);
+        dump.sectorCount = sectorCount;
+
+        int count = 0;
+        int[] wanted = options.sectors;
+        if (wanted == null) {
+            wanted = new int[sectorCount];
+            for (int i = 0; i < sectorCount; i++) {
+                wanted[i] = i;
+            }
+        }
+        Sector[] results = new Sector[wanted.length];
+        for (int sector : wanted) {
+            if (sector < 0 || sector >= sectorCount) continue;
+            results[count++] = readSector(dump, sector, options.keys, options.tryKeyB, options.includeTrailers);
+        }
+        if (count < results.length) {
+            Sector[] trimmed = new Sector[count];
+            System.arraycopy(results, 0, trimmed, 0, count);
+            results = trimmed;
+        }
+        dump.sectors = results;
+        return dump;
+    }
+
+    private Sector readSector(Dump dump, int sector, byte[][] keys, boolean tryKeyB, boolean includeTrailers)
+        throws IOException {
+        long startedAt = metrics.now();
+        Sector result = new Sector();
+        result.sector = sector;
+
+        // The key that opened this sector on the last card of the profile goes first
+        long cached = keyCache.get(dump.profile, sector);
+        int cachedIndex = -1;
+        for (int i = 0; cached != 0 && i < keys.length; i++) {
+            if (ClassicKeyCache.matches(cached, keys[i])) {
+                cachedIndex = i;
+                break;
+            }
+        }
+        boolean cachedKeyA = ClassicKeyCache.isKeyA(cached);
+        if (cachedIndex >= 0 && (cachedKeyA || tryKeyB)
+            && authenticate(dump, result, sector, keys, cachedIndex, cachedKeyA)) {
+            result.cachedKey = true;
+            dump.cachedKeys++;
+        } else {
+            for (int pass = 0; pass < (tryKeyB ? 2 : 1) && result.keyIndex < 0; pass++) {
+                boolean keyA = pass == 0;
+                for (int i = 0; i < keys.length; i++) {
+                    if (i == cachedIndex && keyA == cachedKeyA) continue;
+                    if (authenticate(dump, result, sector, keys, i, keyA)) {
+                        keyCache.put(dump.profile, sector, dump.sectorCount, keys[i], keyA);
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (result.keyIndex >= 0) {
+            int firstBlock = connection.sectorToBlock(sector);
+            int blocks = connection.getBlockCountInSector(sector) - (includeTrailers ? 0 : 1);
+            result.data = new byte[blocks * BLOCK_SIZE];
+            for (int i = 0; i < blocks; i++) {
+                try {
+                    byte[] block = connection.readBlock(firstBlock + i);
+                    if (block == null || block.length < BLOCK_SIZE) {
+                        throw new IOException("short response");
+                    }
+                    System.arraycopy(block, 0, result.data, i * BLOCK_SIZE, BLOCK_SIZE);
+                } catch (IOException e) {
+                    if (result.readError == null) {
+                        result.readError = "Reading block " + (firstBlock + i) + " failed: " + e.getMessage();
+                    }
+                    result.unreadableBlocks++;
+                    // Throws when the card is gone rather than refusing the block
+                    connection.reconnect();
+                    if (i + 1 < blocks && !authenticate(dump, result, sector, keys, result.keyIndex, result.keyA)) {
+                        result.unreadableBlocks += blocks - i - 1;
+                        break;
+                    }
+                }
+            }
+        }
+        result.nanos = metrics.now() - startedAt;
+        return result;
+    }
+
+    private boolean authenticate(Dump dump, Sector result, int sector, byte[][] keys, int index, boolean keyA)
+        throws IOException {
+        result.authentications++;
+        dump.authentications++;
+        if (connection.authenticateSector(sector, keys[index], keyA)) {
+            result.keyIndex = index;
+            result.keyA = keyA;
+            return true;
+        }
+        dump.failedAuthentications++;
+        return false;
+    }
+}
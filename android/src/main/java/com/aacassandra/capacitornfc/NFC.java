@@ -4,9 +4,7 @@ import android.app.Activity;
 import android.app.PendingIntent;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.nfc.FormatException;
 import android.nfc.NdefMessage;
-import android.nfc.NdefRecord;
 import android.nfc.NfcAdapter;
 import android.nfc.Tag;
 import android.nfc.tech.Ndef;
@@ -14,21 +12,17 @@ import android.nfc.tech.NdefFormatable;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class NFC {
     private static final String TAG = "NFCPlugin";
@@ -37,24 +31,127 @@ public class NFC {
     private IntentFilter[] intentFiltersArray;
     private PendingIntent pendingIntent;
     private String[][] techList;
-    private boolean isReading = false;
-    private boolean isUIDReading = false;
-    private boolean isWriting = false;
-    private NdefMessage messageToWrite;
     private NFCCallback nfcCallback;
+    private volatile int compressAboveBytes = -1;
+    private ReaderModeOptions readerModeOptions;
+    private final NfcAdapter.ReaderCallback readerCallback = this::onTagDiscovered;
+    private final NFCIOExecutor ioExecutor = new NFCIOExecutor();
+    private final NFCMetrics metrics = new NFCMetrics(SystemClock::elapsedRealtimeNanos);
+    private final TagPipeline pipeline = new TagPipeline(metrics, JSObject::new);
+    private final PreparedMessageCache preparedMessages = new PreparedMessageCache(PreparedMessageCache.DEFAULT_CAPACITY);
+    // Arms and stops sessions and routes each tap to the work of the armed mode
+    private final TagRouter router = new TagRouter(pipeline, ioExecutor, this::disableForegroundDispatch);
+
+    // elapsedRealtimeNanos() of the last tag handed to us, for latency measurements
+    volatile long lastTagHandOffNanos;
 
     public NFC() {
     }
 
     public interface NFCCallback {
         void onNdefDiscovered(JSObject data);
+        // The nfcTag event pre-serialized, as { json }
+        void onNdefJson(JSObject data);
         void onUIDDiscovered(JSObject data);
+        // First tap of an item in an inventory scan
+        void onInventoryItem(JSObject data);
+        // Items tapped since the last summary of an inventory scan
+        void onInventorySummary(JSObject data);
         void onError(String error);
-        void onWriteSuccess();
+        void onWriteSuccess(JSObject data);
+        void onProvisionProgress(JSObject data);
+        void onProvisionComplete(JSObject data);
+        void onRawRead(JSObject data);
+        void onClassicRead(JSObject data);
+        void onSessionRead(JSObject data);
+        void onSessionComplete(JSObject data);
+        // A write refused before any tag I/O, with a machine-readable reason
+        void onWriteRejected(JSObject data);
+    }
+
+    // Router events go to the bridge as JSObjects, the pipeline makes every event as one
+    private static final class RouterListener implements TagRouter.Listener {
+        private final NFCCallback nfcCallback;
+
+        RouterListener(NFCCallback nfcCallback) {
+            this.nfcCallback = nfcCallback;
+        }
+
+        @Override
+        public void onNdefDiscovered(JSONObject data) {
+            nfcCallback.onNdefDiscovered((JSObject) data);
+        }
+
+        @Override
+        public void onNdefJson(JSONObject data) {
+            nfcCallback.onNdefJson((JSObject) data);
+        }
+
+        @Override
+        public void onUIDDiscovered(JSONObject data) {
+            Log.d(TAG, "UID detected: " + data.optString("uid") + " (" + data.optInt("uidLength") + " bytes)");
+            nfcCallback.onUIDDiscovered((JSObject) data);
+        }
+
+        @Override
+        public void onInventoryItem(JSONObject data) {
+            nfcCallback.onInventoryItem((JSObject) data);
+        }
+
+        @Override
+        public void onInventorySummary(JSONObject data) {
+            nfcCallback.onInventorySummary((JSObject) data);
+        }
+
+        @Override
+        public void onError(String error) {
+            nfcCallback.onError(error);
+        }
+
+        @Override
+        public void onWriteSuccess(JSONObject data) {
+            nfcCallback.onWriteSuccess((JSObject) data);
+        }
+
+        @Override
+        public void onWriteRejected(JSONObject data) {
+            nfcCallback.onWriteRejected((JSObject) data);
+        }
+
+        @Override
+        public void onProvisionProgress(JSONObject data) {
+            nfcCallback.onProvisionProgress((JSObject) data);
+        }
+
+        @Override
+        public void onProvisionComplete(JSONObject data) {
+            nfcCallback.onProvisionComplete((JSObject) data);
+        }
+
+        @Override
+        public void onRawRead(JSONObject data) {
+            nfcCallback.onRawRead((JSObject) data);
+        }
+
+        @Override
+        public void onClassicRead(JSONObject data) {
+            nfcCallback.onClassicRead((JSObject) data);
+        }
+
+        @Override
+        public void onSessionComplete(JSONObject data) {
+            nfcCallback.onSessionComplete((JSObject) data);
+        }
+
+        @Override
+        public void onWarning(String message, Exception cause) {
+            Log.w(TAG, message, cause);
+        }
     }
 
     public void setCallback(NFCCallback callback) {
         this.nfcCallback = callback;
+        this.router.setListener(callback != null ? new RouterListener(callback) : null);
     }
 
     public void init(Activity activity) {
@@ -84,6 +181,91 @@ public class NFC {
         };
     }
 
+    // nfcUID timestamps as epoch milliseconds instead of a formatted local time
+    public void setEpochMillisTimestamps(boolean epochMillisTimestamps) {
+        this.pipeline.getUidEncoder().setEpochMillisTimestamps(epochMillisTimestamps);
+    }
+
+    // Suppress repeated taps of the same tag, null turns suppression off
+    public void setDedupCache(TagDedupCache dedupCache) {
+        this.router.setDedupCache(dedupCache);
+    }
+
+    // Drop tags the app isn't interested in before any event is built, null delivers every tag
+    public void setTagFilter(TagFilter tagFilter) {
+        this.router.setTagFilter(tagFilter);
+    }
+
+    // Record every delivered tag durably, null turns the journal off. The previous one is closed.
+    public void setJournal(ScanJournal journal) {
+        this.router.setJournal(journal);
+    }
+
+    public ScanJournal getJournal() {
+        return this.router.getJournal();
+    }
+
+    // Deliver NDEF discoveries as one pre-serialized JSON string instead of a JSObject tree
+    public void setJsonEvents(boolean jsonEvents) {
+        this.router.setJsonEvents(jsonEvents);
+    }
+
+    // Encoding of nfcTag records, and the payload size above which they're only sent on request
+    public void setPayloadOutput(String encoding, int deferAboveBytes) {
+        this.pipeline.setPayloadOutput(encoding, deferAboveBytes);
+    }
+
+    // Record types decoded into nfcTag events, null decodes none
+    public void setRecordDecoders(RecordDecoders decoders) {
+        this.pipeline.setRecordDecoders(decoders);
+    }
+
+    // A payload left out of an nfcTag event, see TagPipeline.getPayload
+    public JSObject getPayload(long readId, int messageIndex, int recordIndex, String encoding)
+        throws NdefCodec.MalformedNdefException, JSONException {
+        return (JSObject) pipeline.getPayload(readId, messageIndex, recordIndex, encoding);
+    }
+
+    // Timeouts and retries of writes, raw reads and sessions, taking effect with the next tap
+    public void setIOPolicy(TagIOPolicy policy) {
+        this.pipeline.setPolicy(policy);
+    }
+
+    // Payloads of at least minBytes are written as compressed records from now on, negative turns it off
+    public void setCompression(int minBytes) {
+        this.compressAboveBytes = minBytes;
+    }
+
+    public JSObject getScanStats() {
+        TagDedupCache cache = this.router.getDedupCache();
+        TagFilter filter = this.router.getTagFilter();
+        JSObject stats = new JSObject();
+        stats.put("delivered", cache != null ? cache.getDelivered() : 0);
+        stats.put("suppressed", cache != null ? cache.getSuppressed() : 0);
+        stats.put("dedupCacheSize", cache != null ? cache.size() : 0);
+        stats.put("dedupEvictions", cache != null ? cache.getEvicted() : 0);
+        stats.put("filtered", filter != null ? filter.getRejected() : 0);
+        stats.put("transceiveTimeoutMs", pipeline.getPolicy().getTransceiveTimeoutMillis());
+        stats.put("classicKeyProfiles", pipeline.getClassicKeys().size());
+        stats.put("scanId", router.getScanState().current().id);
+        stats.put("staleDropped", router.getScanState().getStaleDropped());
+        return stats;
+    }
+
+    public JSObject getMetrics() {
+        JSObject result = new JSObject();
+        try {
+            metrics.putJson(result);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error building metrics", e);
+        }
+        return result;
+    }
+
+    public void resetMetrics() {
+        metrics.reset();
+    }
+
     public boolean isAvailable() {
         return this.nfcAdapter != null;
     }
@@ -92,71 +274,171 @@ public class NFC {
         return this.nfcAdapter != null && this.nfcAdapter.isEnabled();
     }
 
-    public void startReading() {
+    public long startReading() {
+        return startReading(null);
+    }
+
+    public long startReading(ReaderModeOptions readerModeOptions) {
         if (!isAvailable()) {
             if (nfcCallback != null) {
                 nfcCallback.onError("NFC is not available on this device");
             }
-            return;
+            return 0;
         }
 
         if (!isEnabled()) {
             if (nfcCallback != null) {
                 nfcCallback.onError("NFC is not enabled");
             }
-            return;
+            return 0;
         }
 
-        // Reset status to start clean reading
-        this.isReading = true;
-        this.isUIDReading = false;
-        this.isWriting = false;
-        
+        long scanId = this.arm(ScanState.Mode.READ, null);
+
         // Log for debug purposes
-        Log.d(TAG, "Starting NFC reading mode");
+        Log.d(TAG, "Starting NFC reading mode " + scanId + (readerModeOptions != null ? " (reader mode)" : ""));
         
-        this.enableForegroundDispatch();
+        this.enableScanning(readerModeOptions);
+        return scanId;
     }
 
-    public void startUIDReading() {
+    public long startUIDReading() {
+        return startUIDReading(null);
+    }
+
+    public long startUIDReading(ReaderModeOptions readerModeOptions) {
         if (!isAvailable()) {
             if (nfcCallback != null) {
                 nfcCallback.onError("NFC is not available on this device");
             }
-            return;
+            return 0;
         }
 
         if (!isEnabled()) {
             if (nfcCallback != null) {
                 nfcCallback.onError("NFC is not enabled");
             }
-            return;
+            return 0;
         }
 
-        // Reset status to start clean UID reading
-        this.isUIDReading = true;
-        this.isReading = false;
-        this.isWriting = false;
-        
+        long scanId = this.arm(ScanState.Mode.UID, null);
+
         // Log for debug purposes
-        Log.d(TAG, "Starting NFC UID reading mode");
+        Log.d(TAG, "Starting NFC UID reading mode " + scanId + (readerModeOptions != null ? " (reader mode)" : ""));
         
-        this.enableForegroundDispatch();
+        this.enableScanning(readerModeOptions);
+        return scanId;
     }
 
-    public void startWriting(JSONArray records) {
+    /**
+     * UID scan that counts items natively: only the first tap of each item is emitted, repeats
+     * are tallied and reported in summaries at most every summaryIntervalMillis and when the
+     * scan stops. itemKeyType names the record type the item key is read from, null for none.
+     */
+    public long startInventory(String itemKeyType, long summaryIntervalMillis, ReaderModeOptions readerModeOptions) {
         if (!isAvailable()) {
             if (nfcCallback != null) {
                 nfcCallback.onError("NFC is not available on this device");
             }
-            return;
+            return 0;
         }
 
         if (!isEnabled()) {
             if (nfcCallback != null) {
                 nfcCallback.onError("NFC is not enabled");
             }
-            return;
+            return 0;
+        }
+
+        long scanId = this.arm(ScanState.Mode.INVENTORY, new TagRouter.InventorySettings(itemKeyType, summaryIntervalMillis));
+
+        Log.d(TAG, "Starting NFC inventory " + scanId + " with " + router.getInventory().size() + " items counted");
+
+        this.enableScanning(readerModeOptions);
+        return scanId;
+    }
+
+    // The full tally of inventory scans as columns, see InventoryTally.putJson
+    public JSObject getInventory() throws JSONException {
+        JSObject result = new JSObject();
+        router.getInventory().putJson(result);
+        return result;
+    }
+
+    public void clearInventory() {
+        router.getInventory().clear();
+    }
+
+    public long startRawReading(boolean readSignature, boolean readCounter, ReaderModeOptions readerModeOptions) {
+        if (!isAvailable()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not available on this device");
+            }
+            return 0;
+        }
+
+        if (!isEnabled()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not enabled");
+            }
+            return 0;
+        }
+
+        long scanId = this.arm(ScanState.Mode.RAW_READ, new TagRouter.RawReadSettings(readSignature, readCounter));
+
+        Log.d(TAG, "Starting NFC raw memory reading mode " + scanId);
+
+        this.enableScanning(readerModeOptions);
+        return scanId;
+    }
+
+    // Reads MIFARE Classic sectors of every card presented, emitting nfcClassicRead
+    public long startClassicReading(MifareClassicReader.Options options, ReaderModeOptions readerModeOptions) {
+        if (!isAvailable()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not available on this device");
+            }
+            return 0;
+        }
+
+        if (!isEnabled()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not enabled");
+            }
+            return 0;
+        }
+
+        long scanId = this.arm(ScanState.Mode.CLASSIC_READ, options);
+
+        Log.d(TAG, "Starting MIFARE Classic reading mode " + scanId + " with " + options.keys.length + " candidate keys");
+
+        this.enableScanning(readerModeOptions);
+        return scanId;
+    }
+
+    // Forgets the keys that worked, e.g. after the key list of a card profile changed
+    public void clearClassicKeys() {
+        this.pipeline.getClassicKeys().clear();
+    }
+
+    public long startWriting(JSONArray records) {
+        return startWriting(records, false, false);
+    }
+
+    // diffWrite only rewrites the NTAG / Ultralight pages that change, verify reads them back
+    public long startWriting(JSONArray records, boolean diffWrite, boolean verify) {
+        if (!isAvailable()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not available on this device");
+            }
+            return 0;
+        }
+
+        if (!isEnabled()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not enabled");
+            }
+            return 0;
         }
 
         try {
@@ -165,35 +447,251 @@ public class NFC {
                 if (nfcCallback != null) {
                     nfcCallback.onError("No records provided for writing");
                 }
-                return;
+                return 0;
             }
             
-            this.messageToWrite = createNdefMessage(records);
-            this.isWriting = true;
-            this.isReading = false;
-            
-            // Log for debug purposes
-            Log.d(TAG, "Starting NFC writing mode with " + records.length() + " records");
-            
+            return this.armWriting(createNdefMessage(records), diffWrite, verify);
+        } catch (Exception e) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("Error creating NDEF message: " + e.getMessage());
+            }
+            return 0;
+        }
+    }
+
+    // Writes an already encoded message, e.g. one from prepareMessage()
+    public long startWriting(byte[] message, boolean diffWrite, boolean verify) {
+        if (!isAvailable()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not available on this device");
+            }
+            return 0;
+        }
+
+        if (!isEnabled()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not enabled");
+            }
+            return 0;
+        }
+
+        return this.armWriting(message, diffWrite, verify);
+    }
+
+    // Validates and encodes a message once: { handle, size }, the handle can be written any number of times
+    public JSObject prepareMessage(JSONArray records) throws JSONException {
+        if (records.length() == 0) {
+            throw new JSONException("No records provided");
+        }
+        byte[] message = createNdefMessage(records);
+        JSObject result = new JSObject();
+        this.preparedMessages.prepare(message, result);
+        return result;
+    }
+
+    // Null when the handle is unknown or was evicted
+    public byte[] getPreparedMessage(String handle) {
+        return this.preparedMessages.get(handle);
+    }
+
+    private long armWriting(byte[] message, boolean diffWrite, boolean verify) {
+        long scanId = this.arm(ScanState.Mode.WRITE, new TagRouter.WriteSettings(message, diffWrite, verify));
+
+        // Log for debug purposes
+        Log.d(TAG, "Starting NFC writing mode " + scanId + " with a " + message.length + " byte message");
+
+        // Writing always goes through foreground dispatch
+        this.disableReaderMode();
+        this.enableForegroundDispatch();
+        return scanId;
+    }
+
+    public long startProvisioning(List<JSONArray> messages, boolean skipWrittenTags) {
+        if (!isAvailable()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not available on this device");
+            }
+            return 0;
+        }
+
+        if (!isEnabled()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not enabled");
+            }
+            return 0;
+        }
+
+        if (messages.isEmpty()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("No messages provided for provisioning");
+            }
+            return 0;
+        }
+
+        try {
+            // Build every message up front so nothing is parsed between taps
+            byte[][] prepared = new byte[messages.size()][];
+            for (int i = 0; i < prepared.length; i++) {
+                prepared[i] = createNdefMessage(messages.get(i));
+            }
+
+            long scanId = this.arm(ScanState.Mode.PROVISION, new ProvisioningSession(prepared, skipWrittenTags, metrics::now, pipeline.getEvents()));
+
+            Log.d(TAG, "Starting NFC provisioning " + scanId + " with " + prepared.length + " messages");
+
+            this.disableReaderMode();
             this.enableForegroundDispatch();
+            return scanId;
         } catch (Exception e) {
             if (nfcCallback != null) {
                 nfcCallback.onError("Error creating NDEF message: " + e.getMessage());
             }
+            return 0;
+        }
+    }
+
+    public void stopProvisioning() {
+        ScanState.Session stopped = this.router.stop(ScanState.Mode.PROVISION);
+        if (stopped == null) return;
+
+        this.disableForegroundDispatch();
+    }
+
+    // Read-modify-write session with a native updater, expectedHash is checked before it's called
+    public long startSession(TagSession.Updater updater, String expectedHash) {
+        return startSession(this.router.getScanState().create(
+            ScanState.Mode.SESSION, new TagRouter.SessionSettings(updater, expectedHash)));
+    }
+
+    // Session updated from JS: each tap emits nfcSessionRead and waits for completeSession()
+    public long startSession(String expectedHash, long timeoutMillis) {
+        // The handoff outlives the call and must report its own session, not whichever is armed
+        // when a tap reaches it, so the session is created first and its id handed in
+        AtomicLong scanId = new AtomicLong();
+        TagSession.Handoff handoff = new TagSession.Handoff((sessionId, uid, current, contentHash) -> {
+            JSObject event = (JSObject) pipeline.sessionRead(sessionId, uid, current, contentHash);
+            event.put("scanId", scanId.get());
+            if (nfcCallback != null) {
+                nfcCallback.onSessionRead(event);
+            }
+        }, timeoutMillis);
+        ScanState.Session session = this.router.getScanState().create(
+            ScanState.Mode.SESSION, new TagRouter.SessionSettings(handoff, expectedHash));
+        scanId.set(session.id);
+        return startSession(session);
+    }
+
+    private long startSession(ScanState.Session session) {
+        if (!isAvailable()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not available on this device");
+            }
+            return 0;
         }
+
+        if (!isEnabled()) {
+            if (nfcCallback != null) {
+                nfcCallback.onError("NFC is not enabled");
+            }
+            return 0;
+        }
+
+        this.router.arm(session);
+
+        Log.d(TAG, "Starting NFC read-modify-write session " + session.id);
+
+        this.disableReaderMode();
+        this.enableForegroundDispatch();
+        return session.id;
+    }
+
+    // Returns false when no tap is waiting for this session id
+    public boolean completeSession(long sessionId, JSONArray records, String expectedHash) throws JSONException {
+        return completeSession(sessionId, records != null ? createNdefMessage(records) : null, expectedHash);
+    }
+
+    // message is an encoded message, null leaves the tag unchanged
+    public boolean completeSession(long sessionId, byte[] message, String expectedHash) {
+        ScanState.Session armed = this.router.getScanState().current();
+        if (armed.mode != ScanState.Mode.SESSION) return false;
+
+        TagSession.Updater updater = ((TagRouter.SessionSettings) armed.settings).updater;
+        if (!(updater instanceof TagSession.Handoff)) return false;
+
+        return ((TagSession.Handoff) updater).complete(sessionId, new TagSession.Update(message, expectedHash));
     }
 
+    public void stopSession() {
+        ScanState.Session stopped = this.router.stop(ScanState.Mode.SESSION);
+        if (stopped == null) return;
+
+        this.disableForegroundDispatch();
+    }
+
+    // Leaves a write, provisioning or session that is armed alone
     public void stopReading() {
-        this.isReading = false;
-        this.isUIDReading = false;
+        ScanState.Session stopped = this.router.stop(ScanState.Mode.READ, ScanState.Mode.UID,
+            ScanState.Mode.INVENTORY, ScanState.Mode.RAW_READ, ScanState.Mode.CLASSIC_READ);
+        if (stopped == null && this.router.getScanState().current() != ScanState.IDLE) return;
+
+        this.disableReaderMode();
         this.disableForegroundDispatch();
     }
 
+    // Also drops the message, a later tap can't write it
     public void stopWriting() {
-        this.isWriting = false;
+        ScanState.Session stopped = this.router.stop(ScanState.Mode.WRITE);
+        if (stopped == null && this.router.getScanState().current() != ScanState.IDLE) return;
+
+        this.ioExecutor.cancelAll();
         this.disableForegroundDispatch();
     }
 
+    // Id of the armed scan, 0 when idle
+    public long getScanId() {
+        return this.router.getScanState().current().id;
+    }
+
+    // Arms a mode in place of the current one, which is released. Returns the new scan id.
+    private long arm(ScanState.Mode mode, Object settings) {
+        return this.router.arm(mode, settings);
+    }
+
+    public void shutdown() {
+        this.ioExecutor.shutdown();
+        this.setJournal(null);
+    }
+
+    private void enableScanning(ReaderModeOptions readerModeOptions) {
+        if (readerModeOptions != null) {
+            // Switching paths: make sure the dispatch path isn't delivering tags too
+            this.disableForegroundDispatch();
+            this.enableReaderMode(readerModeOptions);
+        } else {
+            this.disableReaderMode();
+            this.enableForegroundDispatch();
+        }
+    }
+
+    private void enableReaderMode(ReaderModeOptions options) {
+        if (this.nfcAdapter != null && this.activity != null) {
+            this.readerModeOptions = options;
+            this.nfcAdapter.enableReaderMode(
+                this.activity,
+                this.readerCallback,
+                options.toFlags(),
+                options.toExtras()
+            );
+        }
+    }
+
+    private void disableReaderMode() {
+        if (this.readerModeOptions != null && this.nfcAdapter != null && this.activity != null) {
+            this.nfcAdapter.disableReaderMode(this.activity);
+        }
+        this.readerModeOptions = null;
+    }
+
     private void enableForegroundDispatch() {
         if (this.nfcAdapter != null && this.activity != null) {
             this.nfcAdapter.enableForegroundDispatch(
@@ -215,269 +713,47 @@ public class NFC {
         if (NfcAdapter.ACTION_NDEF_DISCOVERED.equals(intent.getAction()) ||
             NfcAdapter.ACTION_TECH_DISCOVERED.equals(intent.getAction()) ||
             NfcAdapter.ACTION_TAG_DISCOVERED.equals(intent.getAction())) {
+            long handOffNanos = SystemClock.elapsedRealtimeNanos();
+            this.lastTagHandOffNanos = handOffNanos;
+            ScanState.Session armed = this.router.getScanState().current();
             
             Tag tag = intent.getParcelableExtra(NfcAdapter.EXTRA_TAG);
             
-            // Check for multiple tags
-            // Technically Android only sends one tag in a single intent,
-            // but we add this check for consistency with iOS
-            // and in anticipation of changes to the Android API in the future
-            if (tag == null) {
-                if (nfcCallback != null) {
-                    nfcCallback.onError("No NFC tag detected");
-                }
-                return;
-            }
-            
-            if (this.isWriting && this.messageToWrite != null) {
-                writeNdefMessage(tag, this.messageToWrite);
-            } else if (this.isUIDReading) {
-                // Process UID reading
-                processUIDData(tag);
-            } else if (this.isReading) {
-                Parcelable[] rawMessages = intent.getParcelableArrayExtra(NfcAdapter.EXTRA_NDEF_MESSAGES);
-                if (rawMessages != null) {
-                    NdefMessage[] messages = new NdefMessage[rawMessages.length];
-                    for (int i = 0; i < rawMessages.length; i++) {
-                        messages[i] = (NdefMessage) rawMessages[i];
-                    }
-                    
-                    // Additional check - if there is an unusual number of messages
-                    // This could indicate multiple tags detected simultaneously
-                    // In Android, typically one tag = one NDEF message
-                    if (rawMessages.length > 1) {
-                        Log.w(TAG, "Multiple NDEF messages detected: " + rawMessages.length + ". This might indicate multiple tags.");
-                        // We still process all messages, but log a warning
-                    }
-                    
-                    this.processNdefMessages(messages);
+            byte[][] messages = null;
+            Parcelable[] rawMessages = intent.getParcelableArrayExtra(NfcAdapter.EXTRA_NDEF_MESSAGES);
+            if (rawMessages != null) {
+                messages = new byte[rawMessages.length][];
+                for (int i = 0; i < rawMessages.length; i++) {
+                    messages[i] = ((NdefMessage) rawMessages[i]).toByteArray();
                 }
-            } else if (this.isUIDReading) {
-                // Handle UID reading
-                String uid = Arrays.toString(tag.getId());
-                JSObject uidData = new JSObject();
-                uidData.put("uid", uid);
-                
-                if (nfcCallback != null) {
-                    nfcCallback.onUIDDiscovered(uidData);
+                // Android sends one tag per intent, so this could indicate multiple tags
+                if (armed.mode == ScanState.Mode.READ && messages.length > 1) {
+                    Log.w(TAG, "Multiple NDEF messages detected: " + messages.length + ". This might indicate multiple tags.");
                 }
             }
+            
+            this.router.handleTag(armed, tag != null ? new AndroidTagTransport(tag, null) : null, messages, handOffNanos);
         }
     }
 
-    private void processNdefMessages(NdefMessage[] messages) {
-        if (nfcCallback == null) return;
-
-        try {
-            JSObject result = new JSObject();
-            JSArray messagesArray = new JSArray();
-
-            for (NdefMessage ndefMessage : messages) {
-                JSObject messageObj = new JSObject();
-                JSArray recordsArray = new JSArray();
-
-                for (NdefRecord record : ndefMessage.getRecords()) {
-                    JSObject recordObj = new JSObject();
-                    
-                    // Set record type
-                    String type = "";
-                    if (record.getTnf() == NdefRecord.TNF_WELL_KNOWN && 
-                        Arrays.equals(record.getType(), NdefRecord.RTD_TEXT)) {
-                        type = "T"; // Text record
-                    } else if (record.getTnf() == NdefRecord.TNF_WELL_KNOWN && 
-                               Arrays.equals(record.getType(), NdefRecord.RTD_URI)) {
-                        type = "U"; // URI record
-                    } else {
-                        type = new String(record.getType(), Charset.forName("UTF-8"));
-                    }
-                    recordObj.put("type", type);
-                    
-                    // Set record payload
-                    byte[] payload = record.getPayload();
-                    String payloadText = new String(payload, Charset.forName("UTF-8"));
-                    
-                    // For TEXT records, remove the language code
-                    if (type.equals("T") && payload.length > 0) {
-                        int languageCodeLength = payload[0] & 0x3F;
-                        if (payload.length > languageCodeLength + 1) {
-                            payloadText = new String(
-                                Arrays.copyOfRange(payload, languageCodeLength + 1, payload.length),
-                                Charset.forName("UTF-8")
-                            );
-                        }
-                    }
-                    
-                    recordObj.put("payload", payloadText);
-                    recordsArray.put(recordObj);
-                }
-
-                messageObj.put("records", recordsArray);
-                messagesArray.put(messageObj);
-            }
-
-            result.put("messages", messagesArray);
-            nfcCallback.onNdefDiscovered(result);
-        } catch (Exception e) {
-            nfcCallback.onError("Error processing NDEF message: " + e.getMessage());
-        }
+    // Reader mode callback, invoked on a binder thread rather than the main thread
+    private void onTagDiscovered(Tag tag) {
+        onTagDiscovered(tag != null ? new AndroidTagTransport(tag, null) : null);
     }
 
-    private void processUIDData(Tag tag) {
-        if (nfcCallback == null) return;
-
-        try {
-            // Get UID from tag
-            byte[] uid = tag.getId();
-            if (uid == null || uid.length == 0) {
-                nfcCallback.onError("Tag UID tidak dapat dibaca");
-                return;
-            }
-
-            // Convert UID to hex string
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : uid) {
-                String hex = Integer.toHexString(0xFF & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            String uidHex = hexString.toString();
-            
-            // Format UID with spaces for readability
-            StringBuilder formattedUID = new StringBuilder();
-            for (int i = 0; i < uidHex.length(); i += 2) {
-                if (i > 0) formattedUID.append(" ");
-                formattedUID.append(uidHex.substring(i, Math.min(i + 2, uidHex.length())));
-            }
-
-            // Determine card type based on UID length (similar to desktop version)
-            String cardType = "Tidak diketahui";
-            int uidLengthBytes = uid.length;
-            if (uidLengthBytes == 4) {
-                cardType = "Kemungkinan MIFARE Classic 1K/4K, atau kartu 4-byte UID lainnya";
-            } else if (uidLengthBytes == 7) {
-                cardType = "Kemungkinan MIFARE Ultralight, NTAG, atau kartu 7-byte UID lainnya";
-            }
-
-            // Get tech list
-            String[] techList = tag.getTechList();
-            JSArray techArray = new JSArray();
-            for (String tech : techList) {
-                techArray.put(tech);
-            }
-
-            // Create result object
-            JSObject result = new JSObject();
-            result.put("uid", uidHex);
-            result.put("uidFormatted", formattedUID.toString().toUpperCase());
-            result.put("uidLength", uidLengthBytes);
-            result.put("cardType", cardType);
-            result.put("timestamp", new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss", java.util.Locale.getDefault()).format(new java.util.Date()));
-            result.put("techList", techArray);
-
-            Log.d(TAG, "UID detected: " + uidHex + " (" + uidLengthBytes + " bytes)");
-            nfcCallback.onUIDDiscovered(result);
-        } catch (Exception e) {
-            nfcCallback.onError("Error processing UID data: " + e.getMessage());
-        }
-    }
-
-    private NdefMessage createNdefMessage(JSONArray recordsArray) throws JSONException, UnsupportedEncodingException {
-        List<NdefRecord> records = new ArrayList<>();
-
-        for (int i = 0; i < recordsArray.length(); i++) {
-            JSONObject record = recordsArray.getJSONObject(i);
-            String type = record.getString("type");
-            String payload = record.getString("payload");
-
-            if (type.equals("T")) {
-                // Create a TEXT record
-                // Format: [status byte][language code][text]
-                String languageCode = "en";
-                byte[] languageCodeBytes = languageCode.getBytes(Charset.forName("US-ASCII"));
-                byte[] textBytes = payload.getBytes(Charset.forName("UTF-8"));
-                
-                byte[] data = new byte[1 + languageCodeBytes.length + textBytes.length];
-                data[0] = (byte) (languageCodeBytes.length & 0x3F); // Language code length
-                System.arraycopy(languageCodeBytes, 0, data, 1, languageCodeBytes.length);
-                System.arraycopy(textBytes, 0, data, 1 + languageCodeBytes.length, textBytes.length);
-                
-                records.add(NdefRecord.createTextRecord(languageCode, payload));
-            } else if (type.equals("U")) {
-                // Create a URI record
-                records.add(NdefRecord.createUri(payload));
-            } else {
-                // Create a custom record (MIME type)
-                records.add(NdefRecord.createMime(type, payload.getBytes(Charset.forName("UTF-8"))));
-            }
-        }
-
-        NdefRecord[] ndefRecordsArray = new NdefRecord[records.size()];
-        records.toArray(ndefRecordsArray);
-        return new NdefMessage(ndefRecordsArray);
+    // Also the entry point for simulated tags, e.g. in Robolectric tests
+    void onTagDiscovered(TagTransport tag) {
+        long handOffNanos = SystemClock.elapsedRealtimeNanos();
+        this.lastTagHandOffNanos = handOffNanos;
+        this.router.onTagDiscovered(tag, handOffNanos);
     }
 
-    private void writeNdefMessage(Tag tag, NdefMessage message) {
-        try {
-            // Additional check to ensure tag is valid and singular
-            if (tag == null) {
-                if (nfcCallback != null) {
-                    nfcCallback.onError("Tag is null or invalid");
-                }
-                return;
-            }
-
-            // Perform check to ensure only one tag technology is available
-            // This is an approach to detect multiple tags
-            String[] techList = tag.getTechList();
-            if (techList.length == 0) {
-                if (nfcCallback != null) {
-                    nfcCallback.onError("No technologies available on this tag");
-                }
-                return;
-            }
-
-            Ndef ndef = Ndef.get(tag);
-            if (ndef != null) {
-                ndef.connect();
-                if (ndef.isWritable()) {
-                    ndef.writeNdefMessage(message);
-                    if (nfcCallback != null) {
-                        nfcCallback.onWriteSuccess();
-                    }
-                } else {
-                    if (nfcCallback != null) {
-                        nfcCallback.onError("Tag is read-only");
-                    }
-                }
-                ndef.close();
-            } else {
-                NdefFormatable ndefFormatable = NdefFormatable.get(tag);
-                if (ndefFormatable != null) {
-                    try {
-                        ndefFormatable.connect();
-                        ndefFormatable.format(message);
-                        if (nfcCallback != null) {
-                            nfcCallback.onWriteSuccess();
-                        }
-                    } catch (IOException | FormatException e) {
-                        if (nfcCallback != null) {
-                            nfcCallback.onError("Failed to format tag: " + e.getMessage());
-                        }
-                    } finally {
-                        ndefFormatable.close();
-                    }
-                } else {
-                    if (nfcCallback != null) {
-                        nfcCallback.onError("Tag doesn't support NDEF");
-                    }
-                }
-            }
-        } catch (Exception e) {
-            if (nfcCallback != null) {
-                nfcCallback.onError("Error writing to tag: " + e.getMessage());
-            }
+    private byte[] createNdefMessage(JSONArray recordsArray) throws JSONException {
+        NdefCodec.Message message = NdefJson.toMessage(recordsArray);
+        int compressAbove = this.compressAboveBytes;
+        if (compressAbove >= 0) {
+            message = NdefCompression.compress(message, compressAbove);
         }
+        return NdefCodec.encode(message);
     }
 }
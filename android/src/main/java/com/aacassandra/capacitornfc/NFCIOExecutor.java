@@ -0,0 +1,143 @@
+package com.aacassandra.capacitornfc;
+
+import android.nfc.tech.TagTechnology;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking tag I/O (connect, transceive, read, write, format, close) on a single
+ * dedicated thread so it never blocks the main thread. The queue is bounded: when it
+ * is full new work is rejected instead of piling up behind a slow tag.
+ */
+public class NFCIOExecutor implements TagRouter.TagIO {
+    private static final String TAG = "NFCPlugin";
+    public static final int DEFAULT_MAX_QUEUE_DEPTH = 4;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile TagTechnology inFlight;
+
+    public NFCIOExecutor() {
+        this(DEFAULT_MAX_QUEUE_DEPTH);
+    }
+
+    public NFCIOExecutor(int maxQueueDepth) {
+        this.executor = new ThreadPoolExecutor(
+            1,
+            1,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, maxQueueDepth)),
+            runnable -> {
+                Thread thread = new Thread(runnable, "NFC-IO");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    // Returns false when the queue is full or the executor was shut down
+    @Override
+    public boolean execute(TagRouter.Operation operation) {
+        Ticket ticket = new Ticket(generation.get());
+        try {
+            executor.execute(() -> {
+                if (ticket.isCancelled()) return;
+                try {
+                    operation.run(ticket);
+                } catch (Exception e) {
+                    Log.e(TAG, "Unhandled error in NFC I/O operation", e);
+                } finally {
+                    inFlight = null;
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "NFC I/O queue is full, rejecting operation");
+            return false;
+        }
+    }
+
+    // Drops queued work, aborts the operation in flight and suppresses its completion
+    @Override
+    public void cancelAll() {
+        generation.incrementAndGet();
+        executor.getQueue().clear();
+        TagTechnology technology = inFlight;
+        if (technology != null) {
+            // Closing from another thread makes the blocking call fail fast with an IOException
+            closeQuietly(technology);
+        }
+    }
+
+    public void shutdown() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    private static void closeQuietly(TagTechnology technology) {
+        try {
+            technology.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Error closing tag technology", e);
+        }
+    }
+
+    /**
+     * Handle given to each operation: tracks the connected technology and only lets
+     * completions through while the operation hasn't been cancelled.
+     */
+    public final class Ticket implements TagRouter.Ticket {
+        private final int generation;
+
+        private Ticket(int generation) {
+            this.generation = generation;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.generation != NFCIOExecutor.this.generation.get() || executor.isShutdown();
+        }
+
+        // Android tags are connected through the ticket, simulated ones are left as they are
+        @Override
+        public TagTransport bind(TagTransport tag) {
+            return tag instanceof AndroidTagTransport ? ((AndroidTagTransport) tag).withTicket(this) : tag;
+        }
+
+        public <T extends TagTechnology> T connect(T technology) throws IOException {
+            inFlight = technology;
+            if (isCancelled()) {
+                throw new IOException("NFC operation cancelled");
+            }
+            technology.connect();
+            return technology;
+        }
+
+        public void close(TagTechnology technology) {
+            if (technology == null) return;
+            closeQuietly(technology);
+            if (inFlight == technology) {
+                inFlight = null;
+            }
+        }
+
+        @Override
+        public void complete(Runnable completion) {
+            if (!isCancelled()) {
+                completion.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-operation tap metrics: stage latency histograms plus success and failure counts.
+ *
+ * Durations are recorded in nanoseconds of the given clock under "operation.stage" names such
+ * as "write.connect" or "uid.total". Recording never locks: each histogram is a fixed array of
+ * atomic counters over log-linear microsecond buckets (8 per power of two, so percentiles are
+ * within 12.5%). Everything covers the window since the last reset.
+ *
+ * Failures count attempts: an operation that succeeded on a retry counts a failure, a retry and
+ * a success.
+ */
+public class NFCMetrics {
+    public static final String OP_READ = "read";
+    public static final String OP_UID = "uid";
+    public static final String OP_WRITE = "write";
+    public static final String OP_RAW_READ = "rawRead";
+    public static final String OP_CLASSIC_READ = "classicRead";
+    public static final String OP_PROVISION = "provision";
+    public static final String OP_SESSION = "session";
+    public static final String OP_INVENTORY = "inventory";
+
+    // Intent / reader callback hand-off until the I/O thread picks the tag up
+    public static final String STAGE_QUEUE = "queue";
+    public static final String STAGE_CONNECT = "connect";
+    // Reading, writing or formatting the tag once connected
+    public static final String STAGE_IO = "io";
+    // Decoding the tag and building the event JSObject
+    public static final String STAGE_ENCODE = "encode";
+    // Waiting for a session's updater, e.g. the JS round trip
+    public static final String STAGE_UPDATE = "update";
+    // notifyListeners, i.e. handing the event to the bridge
+    public static final String STAGE_NOTIFY = "notify";
+    // Hand-off until the event or error was delivered
+    public static final String STAGE_TOTAL = "total";
+
+    // Monotonic nanosecond clock, SystemClock.elapsedRealtimeNanos on device
+    public interface Clock {
+        long nanos();
+    }
+
+    private final Clock clock;
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counters> operations = new ConcurrentHashMap<>();
+    private volatile long windowStartNanos;
+
+    public NFCMetrics(Clock clock) {
+        this.clock = clock;
+        this.windowStartNanos = clock.nanos();
+    }
+
+    public long now() {
+        return clock.nanos();
+    }
+
+    // Records the time since startNanos under operation.stage and returns the current time
+    public long recordSince(String operation, String stage, long startNanos) {
+        long now = clock.nanos();
+        record(operation, stage, now - startNanos);
+        return now;
+    }
+
+    public void record(String operation, String stage, long durationNanos) {
+        String name = operation + "." + stage;
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) histogram = created;
+        }
+        histogram.record(durationNanos);
+    }
+
+    public void success(String operation) {
+        counters(operation).succeeded.incrementAndGet();
+    }
+
+    // A failed attempt that is tried again on the same tap
+    public void retry(String operation) {
+        counters(operation).retries.incrementAndGet();
+    }
+
+    // errorClass is an exception's simple name, or a short label for errors without one
+    public void failure(String operation, String errorClass) {
+        Counters counters = counters(operation);
+        counters.failed.incrementAndGet();
+        AtomicLong count = counters.errors.get(errorClass);
+        if (count == null) {
+            AtomicLong created = new AtomicLong();
+            count = counters.errors.putIfAbsent(errorClass, created);
+            if (count == null) count = created;
+        }
+        count.incrementAndGet();
+    }
+
+    public void reset() {
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (Counters counters : operations.values()) {
+            counters.reset();
+        }
+        windowStartNanos = clock.nanos();
+    }
+
+    public void putJson(JSONObject out) throws JSONException {
+        long windowNanos = Math.max(1, clock.nanos() - windowStartNanos);
+        out.put("windowMs", windowNanos / 1_000_000L);
+
+        JSONObject operationsJson = new JSONObject();
+        for (Map.Entry<String, Counters> entry : new TreeMap<>(operations).entrySet()) {
+            Counters counters = entry.getValue();
+            JSONObject json = new JSONObject();
+            long succeeded = counters.succeeded.get();
+            json.put("succeeded", succeeded);
+            json.put("failed", counters.failed.get());
+            json.put("retries", counters.retries.get());
+            json.put("perSecond", succeeded * 1e9 / windowNanos);
+            JSONObject errors = new JSONObject();
+            for (Map.Entry<String, AtomicLong> error : counters.errors.entrySet()) {
+                if (error.getValue().get() > 0) {
+                    errors.put(error.getKey(), error.getValue().get());
+                }
+            }
+            json.put("errors", errors);
+            operationsJson.put(entry.getKey(), json);
+        }
+        out.put("operations", operationsJson);
+
+        JSONObject stages = new JSONObject();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            JSONObject json = entry.getValue().toJson();
+            if (json != null) {
+                stages.put(entry.getKey(), json);
+            }
+        }
+        out.put("stages", stages);
+    }
+
+    private Counters counters(String operation) {
+        Counters counters = operations.get(operation);
+        if (counters == null) {
+            Counters created = new Counters();
+            counters = operations.putIfAbsent(operation, created);
+            if (counters == null) counters = created;
+        }
+        return counters;
+    }
+
+    private static final class Counters {
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final ConcurrentHashMap<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+        void reset() {
+            succeeded.set(0);
+            failed.set(0);
+            retries.set(0);
+            for (AtomicLong count : errors.values()) {
+                count.set(0);
+            }
+        }
+    }
+
+    /**
+     * Lock-free histogram of durations. Values below 8us get their own bucket, above that each
+     * power of two is split into 8 linear sub-buckets, up to 2^31us (~35 minutes). Longer
+     * durations are clamped into the last bucket.
+     */
+    public static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int MAX_EXPONENT = 30;
+        private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong sumMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        public void record(long durationNanos) {
+            long micros = Math.min(Math.max(0, durationNanos / 1000L), (1L << (MAX_EXPONENT + 1)) - 1);
+            counts.incrementAndGet(bucketOf(micros));
+            sumMicros.addAndGet(micros);
+            long max = maxMicros.get();
+            while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+                max = maxMicros.get();
+            }
+        }
+
+        public void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts.set(i, 0);
+            }
+            sumMicros.set(0);
+            maxMicros.set(0);
+        }
+
+        // 0 when nothing was recorded since the last reset
+        public long percentileMicros(double fraction) {
+            long[] snapshot = new long[BUCKETS];
+            long total = snapshot(snapshot);
+            if (total == 0) return 0;
+            return (long) Math.min(percentile(snapshot, total, fraction), maxMicros.get());
+        }
+
+        // Returns null when nothing was recorded since the last reset
+        JSONObject toJson() throws JSONException {
+            long[] snapshot = new long[BUCKETS];
+            long total = snapshot(snapshot);
+            if (total == 0) return null;
+
+            // Bucket midpoints can overshoot the largest value actually seen
+            long max = maxMicros.get();
+            JSONObject json = new JSONObject();
+            json.put("count", total);
+            json.put("meanMs", sumMicros.get() / 1000.0 / total);
+            json.put("p50Ms", Math.min(percentile(snapshot, total, 0.50), max) / 1000.0);
+            json.put("p95Ms", Math.min(percentile(snapshot, total, 0.95), max) / 1000.0);
+            json.put("p99Ms", Math.min(percentile(snapshot, total, 0.99), max) / 1000.0);
+            json.put("maxMs", max / 1000.0);
+            return json;
+        }
+
+        private long snapshot(long[] out) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                out[i] = counts.get(i);
+                total += out[i];
+            }
+            return total;
+        }
+
+        // Midpoint of the bucket holding the requested rank, in microseconds
+        static double percentile(long[] snapshot, long total, double fraction) {
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    long low = lowerBound(i);
+                    long high = lowerBound(i + 1);
+                    return (low + high - 1) / 2.0;
+                }
+            }
+            return lowerBound(snapshot.length - 1);
+        }
+
+        static int bucketOf(long micros) {
+            if (micros < SUB_BUCKETS) return (int) micros;
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+            int sub = bucket % SUB_BUCKETS;
+            return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        }
+    }
+}
@@ -11,11 +11,22 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @CapacitorPlugin(name = "NFC")
 public class NFCPlugin extends Plugin {
 
     private NFC implementation;
+    private volatile EventBatcher eventBatcher;
+    private ScheduledExecutorService metricsTimer;
 
     @Override
     public void load() {
@@ -24,12 +35,27 @@ public class NFCPlugin extends Plugin {
         implementation.setCallback(new NFC.NFCCallback() {
             @Override
             public void onNdefDiscovered(JSObject data) {
-                notifyListeners("nfcTag", data);
+                notifyDiscovery("nfcTag", data);
+            }
+
+            @Override
+            public void onNdefJson(JSObject data) {
+                notifyDiscovery("nfcTagJson", data);
             }
 
             @Override
             public void onUIDDiscovered(JSObject data) {
-                notifyListeners("nfcUID", data);
+                notifyDiscovery("nfcUID", data);
+            }
+
+            @Override
+            public void onInventoryItem(JSObject data) {
+                notifyDiscovery("nfcInventoryItem", data);
+            }
+
+            @Override
+            public void onInventorySummary(JSObject data) {
+                notifyListeners("nfcInventorySummary", data);
             }
 
             @Override
@@ -40,8 +66,43 @@ public class NFCPlugin extends Plugin {
             }
 
             @Override
-            public void onWriteSuccess() {
-                notifyListeners("nfcWriteSuccess", new JSObject());
+            public void onWriteSuccess(JSObject data) {
+                notifyListeners("nfcWriteSuccess", data);
+            }
+
+            @Override
+            public void onProvisionProgress(JSObject data) {
+                notifyListeners("nfcProvisionProgress", data);
+            }
+
+            @Override
+            public void onProvisionComplete(JSObject data) {
+                notifyListeners("nfcProvisionComplete", data);
+            }
+
+            @Override
+            public void onRawRead(JSObject data) {
+                notifyListeners("nfcRawRead", data);
+            }
+
+            @Override
+            public void onClassicRead(JSObject data) {
+                notifyListeners("nfcClassicRead", data);
+            }
+
+            @Override
+            public void onWriteRejected(JSObject data) {
+                notifyListeners("nfcError", data);
+            }
+
+            @Override
+            public void onSessionRead(JSObject data) {
+                notifyListeners("nfcSessionRead", data);
+            }
+
+            @Override
+            public void onSessionComplete(JSObject data) {
+                notifyListeners("nfcSessionComplete", data);
             }
         });
     }
@@ -58,8 +119,34 @@ public class NFCPlugin extends Plugin {
             return;
         }
 
-        implementation.startReading();
-        call.resolve();
+        TagFilter filter;
+        try {
+            filter = tagFilterFrom(call);
+        } catch (IllegalArgumentException | JSONException e) {
+            call.reject("Invalid filter: " + e.getMessage());
+            return;
+        }
+
+        String payloadEncoding = call.getString("payloadEncoding", PayloadEncoding.TEXT);
+        if (!PayloadEncoding.isValid(payloadEncoding)) {
+            call.reject("Invalid payloadEncoding: " + payloadEncoding);
+            return;
+        }
+
+        RecordDecoders decoders;
+        try {
+            decoders = recordDecodersFrom(call);
+        } catch (IllegalArgumentException | JSONException e) {
+            call.reject("Invalid decode: " + e.getMessage());
+            return;
+        }
+
+        implementation.setTagFilter(filter);
+        implementation.setPayloadOutput(payloadEncoding, call.getInt("deferPayloadsAbove", -1));
+        implementation.setRecordDecoders(decoders);
+        implementation.setJsonEvents("json".equals(call.getString("eventFormat")));
+        implementation.setDedupCache(dedupCacheFrom(call));
+        call.resolve(scanStarted(implementation.startReading(readerModeOptionsFrom(call))));
     }
 
     @PluginMethod
@@ -74,14 +161,160 @@ public class NFCPlugin extends Plugin {
             return;
         }
 
-        implementation.startUIDReading();
+        TagFilter filter;
+        try {
+            filter = tagFilterFrom(call);
+        } catch (IllegalArgumentException | JSONException e) {
+            call.reject("Invalid filter: " + e.getMessage());
+            return;
+        }
+
+        JSObject inventory = call.getObject("inventory");
+        int summaryIntervalMs = 1000;
+        if (inventory != null) {
+            summaryIntervalMs = inventory.getInteger("summaryIntervalMs", summaryIntervalMs);
+            if (summaryIntervalMs < 0) {
+                call.reject("summaryIntervalMs must not be negative");
+                return;
+            }
+        }
+
+        implementation.setTagFilter(filter);
+        implementation.setEpochMillisTimestamps("epochMillis".equals(call.getString("timestampFormat")));
+        implementation.setDedupCache(dedupCacheFrom(call));
+        if (inventory != null) {
+            if (inventory.getBoolean("clear", false)) {
+                implementation.clearInventory();
+            }
+            call.resolve(scanStarted(implementation.startInventory(
+                inventory.getString("itemKeyType"), summaryIntervalMs, readerModeOptionsFrom(call))));
+            return;
+        }
+        call.resolve(scanStarted(implementation.startUIDReading(readerModeOptionsFrom(call))));
+    }
+
+    @PluginMethod
+    public void startRawRead(PluginCall call) {
+        if (!implementation.isAvailable()) {
+            call.reject("NFC is not available on this device");
+            return;
+        }
+
+        if (!implementation.isEnabled()) {
+            call.reject("NFC is not enabled");
+            return;
+        }
+
+        call.resolve(scanStarted(implementation.startRawReading(
+            call.getBoolean("readSignature", true),
+            call.getBoolean("readCounter", true),
+            readerModeOptionsFrom(call)
+        )));
+    }
+
+    @PluginMethod
+    public void startClassicRead(PluginCall call) {
+        if (!implementation.isAvailable()) {
+            call.reject("NFC is not available on this device");
+            return;
+        }
+
+        if (!implementation.isEnabled()) {
+            call.reject("NFC is not enabled");
+            return;
+        }
+
+        MifareClassicReader.Options options = new MifareClassicReader.Options();
+        try {
+            options.profile = call.getString("profile");
+            options.tryKeyB = call.getBoolean("tryKeyB", false);
+            options.includeTrailers = call.getBoolean("includeTrailers", false);
+            JSArray keys = call.getArray("keys");
+            if (keys != null) {
+                options.keys = new byte[keys.length()][];
+                for (int i = 0; i < keys.length(); i++) {
+                    byte[] key = UidEncoder.fromHex(keys.getString(i));
+                    if (key.length != MifareClassicReader.KEY_LENGTH) {
+                        call.reject("Invalid key: " + keys.getString(i) + ", expected 12 hex digits");
+                        return;
+                    }
+                    options.keys[i] = key;
+                }
+                if (options.keys.length == 0) {
+                    call.reject("keys must not be empty");
+                    return;
+                }
+            }
+            JSArray sectors = call.getArray("sectors");
+            if (sectors != null) {
+                options.sectors = new int[sectors.length()];
+                for (int i = 0; i < sectors.length(); i++) {
+                    options.sectors[i] = sectors.getInt(i);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            call.reject("Invalid key: " + e.getMessage());
+            return;
+        } catch (JSONException e) {
+            call.reject("Invalid options: " + e.getMessage());
+            return;
+        }
+
+        call.resolve(scanStarted(implementation.startClassicReading(options, readerModeOptionsFrom(call))));
+    }
+
+    @PluginMethod
+    public void clearClassicKeys(PluginCall call) {
+        implementation.clearClassicKeys();
         call.resolve();
     }
 
+    // Every item counted by inventory scans so far, as columns
+    @PluginMethod
+    public void getInventory(PluginCall call) {
+        try {
+            call.resolve(implementation.getInventory());
+        } catch (JSONException e) {
+            call.reject("Error building inventory: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void clearInventory(PluginCall call) {
+        implementation.clearInventory();
+        call.resolve();
+    }
+
+    // Payload of a record delivered with deferred: true
+    @PluginMethod
+    public void getPayload(PluginCall call) {
+        Long readId = call.getLong("readId");
+        Integer record = call.getInt("record");
+        if (readId == null || record == null) {
+            call.reject("readId and record are required");
+            return;
+        }
+        String encoding = call.getString("encoding");
+        if (encoding != null && !PayloadEncoding.isValid(encoding)) {
+            call.reject("Invalid encoding: " + encoding);
+            return;
+        }
+
+        try {
+            call.resolve(implementation.getPayload(readId, call.getInt("message", 0), record, encoding));
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+        } catch (NdefCodec.MalformedNdefException | JSONException e) {
+            call.reject("Error reading payload: " + e.getMessage());
+        }
+    }
+
     @PluginMethod
     public void stopScan(PluginCall call) {
         implementation.stopReading();
         implementation.stopWriting();
+        implementation.stopProvisioning();
+        implementation.stopSession();
         call.resolve();
     }
 
@@ -97,17 +330,302 @@ public class NFCPlugin extends Plugin {
             return;
         }
 
+        boolean diffWrite = call.getBoolean("diffWrite", false);
+        boolean verify = call.getBoolean("verify", false);
+        String handle = call.getString("handle");
+        if (handle != null) {
+            // Prepared with prepareNDEF: nothing left to parse or encode
+            byte[] message = implementation.getPreparedMessage(handle);
+            if (message == null) {
+                call.reject("Unknown or evicted NDEF handle, prepare the message again");
+                return;
+            }
+            call.resolve(scanStarted(implementation.startWriting(message, diffWrite, verify)));
+            return;
+        }
+
+        JSArray records = call.getArray("records");
+        if (records == null) {
+            call.reject("Provide either records or a handle");
+            return;
+        }
+        call.resolve(scanStarted(implementation.startWriting(records, diffWrite, verify)));
+    }
+
+    // Validates and encodes a message once, writeNDEF({ handle }) then skips all JSON work
+    @PluginMethod
+    public void prepareNDEF(PluginCall call) {
+        JSArray records = call.getArray("records");
+        if (records == null) {
+            call.reject("records is required");
+            return;
+        }
+
         try {
-            JSArray jsArray = call.getArray("records");
-            JSONArray records = new JSONArray();
-            for (int i = 0; i < jsArray.length(); i++) {
-                records.put(jsArray.get(i));
+            call.resolve(implementation.prepareMessage(records));
+        } catch (JSONException | IllegalArgumentException e) {
+            call.reject("Error preparing NDEF message: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void startProvisioning(PluginCall call) {
+        if (!implementation.isAvailable()) {
+            call.reject("NFC is not available on this device");
+            return;
+        }
+
+        if (!implementation.isEnabled()) {
+            call.reject("NFC is not enabled");
+            return;
+        }
+
+        try {
+            List<JSONArray> messages = new ArrayList<>();
+            JSArray jsMessages = call.getArray("messages");
+            JSObject template = call.getObject("template");
+
+            if (jsMessages != null) {
+                for (int i = 0; i < jsMessages.length(); i++) {
+                    messages.add(jsMessages.getJSONObject(i).getJSONArray("records"));
+                }
+            } else if (template != null) {
+                messages = ProvisioningSession.expandTemplate(
+                    template.getJSONArray("records"),
+                    template.getString("placeholder", ProvisioningSession.DEFAULT_PLACEHOLDER),
+                    template.optLong("start", 1),
+                    template.getInteger("count", 0),
+                    template.getInteger("padding", 0)
+                );
             }
-            implementation.startWriting(records);
-            call.resolve();
+
+            if (messages.isEmpty()) {
+                call.reject("Provide either messages or a template with a count");
+                return;
+            }
+
+            call.resolve(scanStarted(implementation.startProvisioning(messages, call.getBoolean("skipWrittenTags", true))));
         } catch (JSONException e) {
-            call.reject("Error writing NDEF message: " + e.getMessage());
+            call.reject("Error starting provisioning: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void startSession(PluginCall call) {
+        if (!implementation.isAvailable()) {
+            call.reject("NFC is not available on this device");
+            return;
+        }
+
+        if (!implementation.isEnabled()) {
+            call.reject("NFC is not enabled");
+            return;
+        }
+
+        int timeoutMs = call.getInt("timeoutMs", 3000);
+        if (timeoutMs <= 0) {
+            call.reject("timeoutMs must be positive");
+            return;
+        }
+        call.resolve(scanStarted(implementation.startSession(call.getString("expectedHash"), timeoutMs)));
+    }
+
+    // Answers an nfcSessionRead event, without records the tag is left unchanged
+    @PluginMethod
+    public void completeSession(PluginCall call) {
+        Long sessionId = call.getLong("sessionId");
+        if (sessionId == null) {
+            call.reject("sessionId is required");
+            return;
+        }
+
+        String handle = call.getString("handle");
+        byte[] prepared = null;
+        if (handle != null) {
+            prepared = implementation.getPreparedMessage(handle);
+            if (prepared == null) {
+                call.reject("Unknown or evicted NDEF handle, prepare the message again");
+                return;
+            }
+        }
+
+        try {
+            String expectedHash = call.getString("expectedHash");
+            JSArray records = call.getArray("records");
+            boolean waiting = prepared != null
+                ? implementation.completeSession(sessionId, prepared, expectedHash)
+                : implementation.completeSession(sessionId, records, expectedHash);
+            if (!waiting) {
+                call.reject("Session " + sessionId + " is not waiting for an update");
+                return;
+            }
+            call.resolve();
+        } catch (JSONException | IllegalArgumentException e) {
+            call.reject("Error creating NDEF message: " + e.getMessage());
+        }
+    }
+
+    // Opens (or reopens, keeping what's on disk) the scan journal, enabled: false closes it
+    @PluginMethod
+    public void configureJournal(PluginCall call) {
+        if (!call.getBoolean("enabled", true)) {
+            implementation.setJournal(null);
+            call.resolve();
+            return;
+        }
+
+        try {
+            implementation.setJournal(new ScanJournal(
+                new File(getContext().getFilesDir(), "nfc-journal"),
+                call.getInt("segmentBytes", 1024 * 1024),
+                call.getInt("maxSegments", 16),
+                call.getInt("syncEveryEvents", 32),
+                call.getInt("syncIntervalMs", 200),
+                call.getBoolean("includeNdef", false)
+            ));
+            call.resolve();
+        } catch (IOException e) {
+            call.reject("Error opening journal: " + e.getMessage());
+        }
+    }
+
+    // Entries after sinceSeq, by default everything not acknowledged yet
+    @PluginMethod
+    public void readJournal(PluginCall call) {
+        ScanJournal journal = implementation.getJournal();
+        if (journal == null) {
+            call.reject("Journal is not enabled");
+            return;
+        }
+
+        Long sinceSeq = call.getLong("sinceSeq");
+        try {
+            JSObject result = new JSObject();
+            journal.read(sinceSeq != null ? sinceSeq : journal.getAckedSeq(), call.getInt("limit", 500), result);
+            call.resolve(result);
+        } catch (IOException | JSONException e) {
+            call.reject("Error reading journal: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void ackJournal(PluginCall call) {
+        ScanJournal journal = implementation.getJournal();
+        if (journal == null) {
+            call.reject("Journal is not enabled");
+            return;
+        }
+
+        Long seq = call.getLong("seq");
+        if (seq == null) {
+            call.reject("seq is required");
+            return;
+        }
+        try {
+            journal.ack(seq);
+            call.resolve();
+        } catch (IOException e) {
+            call.reject("Error acknowledging journal: " + e.getMessage());
+        }
+    }
+
+    // Timeouts and retries of tag I/O: writes, raw reads and sessions
+    @PluginMethod
+    public void configureRetries(PluginCall call) {
+        implementation.setIOPolicy(new TagIOPolicy(
+            call.getInt("maxRetries", TagIOPolicy.DEFAULT_MAX_RETRIES),
+            call.getInt("minTimeoutMs", TagIOPolicy.DEFAULT_MIN_TIMEOUT_MILLIS),
+            call.getInt("maxTimeoutMs", TagIOPolicy.DEFAULT_MAX_TIMEOUT_MILLIS),
+            call.getBoolean("adaptiveTimeout", true)
+        ));
+        call.resolve();
+    }
+
+    // Applies to messages created after the call; compressed records are always expanded on read
+    @PluginMethod
+    public void configureCompression(PluginCall call) {
+        boolean enabled = call.getBoolean("enabled", true);
+        int minBytes = call.getInt("minBytes", NdefCompression.DEFAULT_MIN_BYTES);
+        if (minBytes < 0) {
+            call.reject("minBytes must not be negative");
+            return;
+        }
+        implementation.setCompression(enabled ? minBytes : -1);
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void getScanStats(PluginCall call) {
+        call.resolve(implementation.getScanStats());
+    }
+
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        call.resolve(implementation.getMetrics());
+    }
+
+    @PluginMethod
+    public void resetMetrics(PluginCall call) {
+        implementation.resetMetrics();
+        call.resolve();
+    }
+
+    // Emits nfcMetrics every intervalMs, 0 turns the event off
+    @PluginMethod
+    public void configureMetricsEvents(PluginCall call) {
+        int intervalMs = call.getInt("intervalMs", 0);
+        boolean resetAfterEvent = call.getBoolean("resetAfterEvent", false);
+        if (intervalMs < 0) {
+            call.reject("intervalMs must not be negative");
+            return;
         }
+        startMetricsTimer(intervalMs, resetAfterEvent);
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void configureEventDelivery(PluginCall call) {
+        EventBatcher previous = eventBatcher;
+        if ("batched".equals(call.getString("mode", "immediate"))) {
+            eventBatcher = new EventBatcher(
+                batch -> notifyListeners("nfcBatch", batch),
+                call.getInt("maxBatchSize", 20),
+                call.getInt("maxLatencyMs", 100),
+                call.getInt("maxBuffered", 500),
+                call.getString("overflow", EventBatcher.OVERFLOW_DROP_OLDEST),
+                call.getInt("maxUnackedBatches", 0)
+            );
+        } else {
+            eventBatcher = null;
+        }
+        if (previous != null) {
+            // Hand over whatever the old batcher still holds
+            previous.shutdown();
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void flushEvents(PluginCall call) {
+        EventBatcher batcher = eventBatcher;
+        if (batcher != null) {
+            batcher.flush();
+        }
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void ackEvents(PluginCall call) {
+        Long batchId = call.getLong("batchId");
+        if (batchId == null) {
+            call.reject("batchId is required");
+            return;
+        }
+        EventBatcher batcher = eventBatcher;
+        if (batcher != null) {
+            batcher.ack(batchId);
+        }
+        call.resolve();
     }
 
     @PluginMethod
@@ -118,6 +636,129 @@ public class NFCPlugin extends Plugin {
         call.resolve(ret);
     }
 
+    private synchronized void startMetricsTimer(int intervalMs, boolean resetAfterEvent) {
+        if (metricsTimer != null) {
+            metricsTimer.shutdownNow();
+            metricsTimer = null;
+        }
+        if (intervalMs == 0) return;
+
+        metricsTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "NFC-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        metricsTimer.scheduleAtFixedRate(() -> {
+            JSObject metrics = implementation.getMetrics();
+            if (resetAfterEvent) {
+                implementation.resetMetrics();
+            }
+            notifyListeners("nfcMetrics", metrics);
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Events of the scan carry this id, 0 when nothing was armed (the reason comes as nfcError)
+    private static JSObject scanStarted(long scanId) {
+        JSObject result = new JSObject();
+        result.put("scanId", scanId);
+        return result;
+    }
+
+    // Tag discoveries go through the batcher when batched delivery is on
+    private void notifyDiscovery(String eventName, JSObject data) {
+        EventBatcher batcher = eventBatcher;
+        if (batcher != null) {
+            batcher.add(eventName, data);
+        } else {
+            notifyListeners(eventName, data);
+        }
+    }
+
+    // Returns null when the caller didn't ask for reader mode (foreground dispatch is used)
+    private ReaderModeOptions readerModeOptionsFrom(PluginCall call) {
+        if (!call.getBoolean("readerMode", false)) {
+            return null;
+        }
+
+        ReaderModeOptions options = new ReaderModeOptions()
+            .setSkipNdefCheck(call.getBoolean("skipNdefCheck", false))
+            .setNoPlatformSounds(call.getBoolean("noPlatformSounds", false))
+            .setPresenceCheckDelay(call.getInt("presenceCheckDelay", 0));
+
+        JSArray technologies = call.getArray("technologies");
+        if (technologies != null) {
+            int flags = 0;
+            for (int i = 0; i < technologies.length(); i++) {
+                flags |= ReaderModeOptions.techFlagFor(technologies.optString(i));
+            }
+            options.setTechFlags(flags);
+        }
+        return options;
+    }
+
+    // Returns null when the caller didn't ask for duplicate suppression
+    private TagDedupCache dedupCacheFrom(PluginCall call) {
+        JSObject dedup = call.getObject("dedup");
+        if (dedup == null) {
+            return null;
+        }
+        return new TagDedupCache(
+            dedup.getInteger("ttlMs", 2000),
+            dedup.getInteger("capacity", TagDedupCache.DEFAULT_CAPACITY),
+            dedup.getBoolean("includePayload", false)
+        );
+    }
+
+    // Null when the caller didn't ask for any record type to be decoded
+    private RecordDecoders recordDecodersFrom(PluginCall call) throws JSONException {
+        JSArray decode = call.getArray("decode");
+        if (decode == null) {
+            return null;
+        }
+
+        String[] types = new String[decode.length()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = decode.getString(i);
+        }
+        return RecordDecoders.of(types);
+    }
+
+    // Compiles the filter option once, null when the caller didn't give one
+    private TagFilter tagFilterFrom(PluginCall call) throws JSONException {
+        JSObject filter = call.getObject("filter");
+        if (filter == null) {
+            return null;
+        }
+
+        TagFilter.Builder builder = new TagFilter.Builder();
+        String uidPrefix = filter.getString("uidPrefix");
+        if (uidPrefix != null) {
+            String uidMask = filter.getString("uidMask");
+            builder.uidPrefix(UidEncoder.fromHex(uidPrefix), uidMask != null ? UidEncoder.fromHex(uidMask) : null);
+        }
+        JSONArray techs = filter.optJSONArray("techs");
+        if (techs != null) {
+            for (int i = 0; i < techs.length(); i++) {
+                builder.requireTech(techs.getString(i));
+            }
+        }
+        if (filter.has("minRecords")) {
+            builder.minRecords(filter.getInt("minRecords"));
+        }
+        JSONArray records = filter.optJSONArray("records");
+        if (records != null) {
+            for (int i = 0; i < records.length(); i++) {
+                JSONObject record = records.getJSONObject(i);
+                builder.record(
+                    record.optInt("tnf", -1),
+                    record.has("type") ? record.getString("type") : null,
+                    record.has("payloadPrefix") ? record.getString("payloadPrefix") : null
+                );
+            }
+        }
+        return builder.build();
+    }
+
     @Override
     protected void handleOnNewIntent(Intent intent) {
         super.handleOnNewIntent(intent);
@@ -128,6 +769,14 @@ public class NFCPlugin extends Plugin {
     protected void handleOnDestroy() {
         implementation.stopReading();
         implementation.stopWriting();
+        implementation.stopProvisioning();
+        implementation.stopSession();
+        implementation.shutdown();
+        EventBatcher batcher = eventBatcher;
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+        startMetricsTimer(0, false);
         super.handleOnDestroy();
     }
 }
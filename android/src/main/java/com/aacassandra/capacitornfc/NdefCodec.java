@@ -0,0 +1,549 @@
+package com.aacassandra.capacitornfc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * NDEF message parser and serializer working directly on byte[] / ByteBuffer slices.
+ * It has no dependency on android.nfc so it can be unit tested and benchmarked on a plain JVM.
+ *
+ * Decoded records don't copy anything: they point into the source buffer. Only chunked
+ * records are reassembled, into a scratch buffer owned by the reusable {@link Message}.
+ */
+public final class NdefCodec {
+    public static final short TNF_EMPTY = 0x00;
+    public static final short TNF_WELL_KNOWN = 0x01;
+    public static final short TNF_MIME_MEDIA = 0x02;
+    public static final short TNF_ABSOLUTE_URI = 0x03;
+    public static final short TNF_EXTERNAL_TYPE = 0x04;
+    public static final short TNF_UNKNOWN = 0x05;
+    public static final short TNF_UNCHANGED = 0x06;
+    public static final short TNF_RESERVED = 0x07;
+
+    public static final byte[] RTD_TEXT = { 0x54 }; // "T"
+    public static final byte[] RTD_URI = { 0x55 }; // "U"
+
+    static final int FLAG_MB = 0x80;
+    static final int FLAG_ME = 0x40;
+    static final int FLAG_CF = 0x20;
+    static final int FLAG_SR = 0x10;
+    static final int FLAG_IL = 0x08;
+
+    public static final int MAX_TYPE_OR_ID_LENGTH = 0xFF;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    // URI identifier codes from the NFC Forum URI RTD, index = code
+    static final String[] URI_PREFIXES = {
+        "",
+        "http://www.",
+        "https://www.",
+        "http://",
+        "https://",
+        "tel:",
+        "mailto:",
+        "ftp://anonymous:anonymous@",
+        "ftp://ftp.",
+        "ftps://",
+        "sftp://",
+        "smb://",
+        "nfs://",
+        "ftp://",
+        "dav://",
+        "news:",
+        "telnet://",
+        "imap:",
+        "rtsp://",
+        "urn:",
+        "pop:",
+        "sip:",
+        "sips:",
+        "tftp:",
+        "btspp://",
+        "btl2cap://",
+        "btgoep://",
+        "tcpobex://",
+        "irdaobex://",
+        "file://",
+        "urn:epc:id:",
+        "urn:epc:tag:",
+        "urn:epc:pat:",
+        "urn:epc:raw:",
+        "urn:epc:",
+        "urn:nfc:",
+    };
+
+    private NdefCodec() {
+    }
+
+    public static class MalformedNdefException extends Exception {
+        public MalformedNdefException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * One NDEF record: a TNF plus type, id and payload slices. The slices may share a buffer.
+     */
+    public static final class Record {
+        short tnf;
+        byte[] type = EMPTY;
+        int typeOffset;
+        int typeLength;
+        byte[] id = EMPTY;
+        int idOffset;
+        int idLength;
+        byte[] payload = EMPTY;
+        int payloadOffset;
+        int payloadLength;
+
+        public Record() {
+        }
+
+        public static Record of(short tnf, byte[] type, byte[] id, byte[] payload) {
+            Record record = new Record();
+            record.tnf = tnf;
+            record.setType(type, 0, type != null ? type.length : 0);
+            record.setId(id, 0, id != null ? id.length : 0);
+            record.setPayload(payload, 0, payload != null ? payload.length : 0);
+            return record;
+        }
+
+        public short getTnf() {
+            return tnf;
+        }
+
+        public int getTypeLength() {
+            return typeLength;
+        }
+
+        public int getIdLength() {
+            return idLength;
+        }
+
+        public int getPayloadLength() {
+            return payloadLength;
+        }
+
+        // Backing arrays and offsets, for callers that want to read without copying
+        public byte[] typeBuffer() {
+            return type;
+        }
+
+        public int typeOffset() {
+            return typeOffset;
+        }
+
+        public byte[] payloadBuffer() {
+            return payload;
+        }
+
+        public int payloadOffset() {
+            return payloadOffset;
+        }
+
+        public byte[] idBuffer() {
+            return id;
+        }
+
+        public int idOffset() {
+            return idOffset;
+        }
+
+        public boolean typeEquals(byte[] expected) {
+            // Arrays.equals with ranges needs API 33, compare by hand
+            if (typeLength != expected.length) return false;
+            for (int i = 0; i < typeLength; i++) {
+                if (type[typeOffset + i] != expected[i]) return false;
+            }
+            return true;
+        }
+
+        public boolean isWellKnown(byte[] rtd) {
+            return tnf == TNF_WELL_KNOWN && typeEquals(rtd);
+        }
+
+        public byte[] copyType() {
+            return Arrays.copyOfRange(type, typeOffset, typeOffset + typeLength);
+        }
+
+        public byte[] copyId() {
+            return Arrays.copyOfRange(id, idOffset, idOffset + idLength);
+        }
+
+        public byte[] copyPayload() {
+            return Arrays.copyOfRange(payload, payloadOffset, payloadOffset + payloadLength);
+        }
+
+        public String typeString() {
+            return new String(type, typeOffset, typeLength, StandardCharsets.UTF_8);
+        }
+
+        public String idString() {
+            return new String(id, idOffset, idLength, StandardCharsets.UTF_8);
+        }
+
+        public String payloadString() {
+            return new String(payload, payloadOffset, payloadLength, StandardCharsets.UTF_8);
+        }
+
+        // Payload decoded as UTF-8, starting `skip` bytes in
+        public String payloadString(int skip) {
+            skip = Math.min(Math.max(skip, 0), payloadLength);
+            return new String(payload, payloadOffset + skip, payloadLength - skip, StandardCharsets.UTF_8);
+        }
+
+        // Type and id lengths are a single byte on the wire, longer ones are rejected here
+        public Record setType(byte[] buffer, int offset, int length) {
+            if (length > MAX_TYPE_OR_ID_LENGTH) {
+                throw new IllegalArgumentException("Record type is " + length + " bytes, at most " + MAX_TYPE_OR_ID_LENGTH + " fit");
+            }
+            this.type = buffer != null ? buffer : EMPTY;
+            this.typeOffset = offset;
+            this.typeLength = length;
+            return this;
+        }
+
+        public Record setId(byte[] buffer, int offset, int length) {
+            if (length > MAX_TYPE_OR_ID_LENGTH) {
+                throw new IllegalArgumentException("Record id is " + length + " bytes, at most " + MAX_TYPE_OR_ID_LENGTH + " fit");
+            }
+            this.id = buffer != null ? buffer : EMPTY;
+            this.idOffset = offset;
+            this.idLength = length;
+            return this;
+        }
+
+        public Record setPayload(byte[] buffer, int offset, int length) {
+            this.payload = buffer != null ? buffer : EMPTY;
+            this.payloadOffset = offset;
+            this.payloadLength = length;
+            return this;
+        }
+
+        int encodedSize() {
+            boolean shortRecord = payloadLength < 256;
+            return 2 + (shortRecord ? 1 : 4) + (idLength > 0 ? 1 : 0) + typeLength + idLength + payloadLength;
+        }
+
+        void clear() {
+            tnf = TNF_EMPTY;
+            setType(EMPTY, 0, 0);
+            setId(EMPTY, 0, 0);
+            setPayload(EMPTY, 0, 0);
+        }
+    }
+
+    /**
+     * Decoded records. Keep one instance around and pass it back to decode() to reuse
+     * its record slots and chunk scratch buffer.
+     */
+    public static final class Message {
+        private Record[] records = new Record[4];
+        private int size;
+        private byte[] scratch = EMPTY;
+        private int scratchUsed;
+
+        public int size() {
+            return size;
+        }
+
+        public Record get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Record " + index + " of " + size);
+            }
+            return records[index];
+        }
+
+        public Message add(Record record) {
+            ensureCapacity(size + 1);
+            records[size++] = record;
+            return this;
+        }
+
+        public void clear() {
+            size = 0;
+            scratchUsed = 0;
+        }
+
+        private Record nextSlot() {
+            ensureCapacity(size + 1);
+            Record record = records[size];
+            if (record == null) {
+                record = new Record();
+                records[size] = record;
+            }
+            record.clear();
+            size++;
+            return record;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > records.length) {
+                records = Arrays.copyOf(records, Math.max(capacity, records.length * 2));
+            }
+        }
+
+        // Reserves room in the scratch buffer for reassembled chunk payloads
+        private void reserveScratch(int length) {
+            if (scratch.length - scratchUsed < length) {
+                scratch = Arrays.copyOf(scratch, Math.max(scratchUsed + length, scratch.length * 2));
+            }
+        }
+    }
+
+    public static Message decode(byte[] data) throws MalformedNdefException {
+        return decode(data, 0, data.length, new Message());
+    }
+
+    public static Message decode(ByteBuffer buffer, Message reuse) throws MalformedNdefException {
+        if (buffer.hasArray()) {
+            return decode(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), reuse);
+        }
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return decode(copy, 0, copy.length, reuse);
+    }
+
+    public static Message decode(byte[] data, int offset, int length, Message reuse) throws MalformedNdefException {
+        Message message = reuse != null ? reuse : new Message();
+        message.clear();
+
+        int end = offset + length;
+        if (offset < 0 || length < 0 || end > data.length) {
+            throw new MalformedNdefException("Slice is outside the buffer");
+        }
+
+        int position = offset;
+        boolean inChunk = false;
+        Record chunked = null;
+        // Chunk payloads are collected into the message scratch buffer. Its start is kept as
+        // an offset because growing the scratch buffer can move it.
+        int chunkStart = 0;
+
+        while (position < end) {
+            int header = data[position++] & 0xFF;
+            boolean mb = (header & FLAG_MB) != 0;
+            boolean me = (header & FLAG_ME) != 0;
+            boolean cf = (header & FLAG_CF) != 0;
+            boolean sr = (header & FLAG_SR) != 0;
+            boolean il = (header & FLAG_IL) != 0;
+            short tnf = (short) (header & 0x07);
+
+            if (position == offset + 1 && !mb) {
+                throw new MalformedNdefException("First record is missing the MB flag");
+            }
+            if (position != offset + 1 && mb && !inChunk) {
+                throw new MalformedNdefException("Unexpected MB flag");
+            }
+
+            int typeLength = readLength(data, position, end, 1);
+            position += 1;
+            int payloadLength = readLength(data, position, end, sr ? 1 : 4);
+            position += sr ? 1 : 4;
+            int idLength = 0;
+            if (il) {
+                idLength = readLength(data, position, end, 1);
+                position += 1;
+            }
+
+            int typeOffset = position;
+            int idOffset = typeOffset + typeLength;
+            int payloadOffset = idOffset + idLength;
+            long recordEnd = (long) payloadOffset + payloadLength;
+            if (recordEnd > end) {
+                throw new MalformedNdefException("Record extends past the end of the message");
+            }
+            position = (int) recordEnd;
+
+            validateTnf(tnf, typeLength, idLength, payloadLength, inChunk);
+
+            if (inChunk) {
+                // Continuation chunk: TNF_UNCHANGED, no type, no id
+                if (tnf != TNF_UNCHANGED) {
+                    throw new MalformedNdefException("Chunk continuation must use TNF_UNCHANGED");
+                }
+                message.reserveScratch(payloadLength);
+                System.arraycopy(data, payloadOffset, message.scratch, message.scratchUsed, payloadLength);
+                message.scratchUsed += payloadLength;
+                if (!cf) {
+                    inChunk = false;
+                    chunked.setPayload(message.scratch, chunkStart, message.scratchUsed - chunkStart);
+                }
+            } else {
+                if (tnf == TNF_UNCHANGED) {
+                    throw new MalformedNdefException("TNF_UNCHANGED outside of a chunked record");
+                }
+                Record record = message.nextSlot();
+                record.tnf = tnf;
+                record.setType(data, typeOffset, typeLength);
+                record.setId(data, idOffset, idLength);
+                record.setPayload(data, payloadOffset, payloadLength);
+                if (cf) {
+                    inChunk = true;
+                    chunked = record;
+                    chunkStart = message.scratchUsed;
+                    message.reserveScratch(payloadLength);
+                    System.arraycopy(data, payloadOffset, message.scratch, message.scratchUsed, payloadLength);
+                    message.scratchUsed += payloadLength;
+                }
+            }
+
+            if (me) {
+                if (inChunk) {
+                    throw new MalformedNdefException("Message ends inside a chunked record");
+                }
+                if (position != end) {
+                    throw new MalformedNdefException("Trailing data after the ME record");
+                }
+                return message;
+            }
+        }
+
+        throw new MalformedNdefException(message.size == 0 ? "Empty NDEF message" : "Last record is missing the ME flag");
+    }
+
+    private static int readLength(byte[] data, int position, int end, int width) throws MalformedNdefException {
+        if (position + width > end) {
+            throw new MalformedNdefException("Truncated record header");
+        }
+        if (width == 1) {
+            return data[position] & 0xFF;
+        }
+        long value =
+            ((long) (data[position] & 0xFF) << 24) |
+            ((data[position + 1] & 0xFF) << 16) |
+            ((data[position + 2] & 0xFF) << 8) |
+            (data[position + 3] & 0xFF);
+        if (value > Integer.MAX_VALUE) {
+            throw new MalformedNdefException("Record payload too large");
+        }
+        return (int) value;
+    }
+
+    private static void validateTnf(short tnf, int typeLength, int idLength, int payloadLength, boolean inChunk)
+        throws MalformedNdefException {
+        switch (tnf) {
+            case TNF_EMPTY:
+                if (typeLength != 0 || idLength != 0 || payloadLength != 0) {
+                    throw new MalformedNdefException("TNF_EMPTY record must be empty");
+                }
+                break;
+            case TNF_UNKNOWN:
+            case TNF_UNCHANGED:
+                if (typeLength != 0) {
+                    throw new MalformedNdefException("TNF_UNKNOWN and TNF_UNCHANGED records have no type");
+                }
+                if (inChunk && idLength != 0) {
+                    throw new MalformedNdefException("Chunk continuation must not have an id");
+                }
+                break;
+            case TNF_RESERVED:
+                throw new MalformedNdefException("Reserved TNF");
+            default:
+                break;
+        }
+    }
+
+    public static int encodedSize(Message message) {
+        int size = 0;
+        for (int i = 0; i < message.size; i++) {
+            size += message.records[i].encodedSize();
+        }
+        return size;
+    }
+
+    public static byte[] encode(Message message) {
+        if (message.size == 0) {
+            throw new IllegalArgumentException("An NDEF message needs at least one record");
+        }
+        byte[] out = new byte[encodedSize(message)];
+        encode(message, out, 0);
+        return out;
+    }
+
+    // Serializes into `out` starting at `offset`, returns the number of bytes written
+    public static int encode(Message message, byte[] out, int offset) {
+        int position = offset;
+        for (int i = 0; i < message.size; i++) {
+            Record record = message.records[i];
+            boolean shortRecord = record.payloadLength < 256;
+            int header = record.tnf & 0x07;
+            if (i == 0) header |= FLAG_MB;
+            if (i == message.size - 1) header |= FLAG_ME;
+            if (shortRecord) header |= FLAG_SR;
+            if (record.idLength > 0) header |= FLAG_IL;
+
+            out[position++] = (byte) header;
+            out[position++] = (byte) record.typeLength;
+            if (shortRecord) {
+                out[position++] = (byte) record.payloadLength;
+            } else {
+                out[position++] = (byte) (record.payloadLength >>> 24);
+                out[position++] = (byte) (record.payloadLength >>> 16);
+                out[position++] = (byte) (record.payloadLength >>> 8);
+                out[position++] = (byte) record.payloadLength;
+            }
+            if (record.idLength > 0) {
+                out[position++] = (byte) record.idLength;
+            }
+            System.arraycopy(record.type, record.typeOffset, out, position, record.typeLength);
+            position += record.typeLength;
+            System.arraycopy(record.id, record.idOffset, out, position, record.idLength);
+            position += record.idLength;
+            System.arraycopy(record.payload, record.payloadOffset, out, position, record.payloadLength);
+            position += record.payloadLength;
+        }
+        return position - offset;
+    }
+
+    // Text record: [status byte][language code][UTF-8 text]
+    public static Record textRecord(String languageCode, String text) {
+        byte[] language = languageCode.getBytes(StandardCharsets.US_ASCII);
+        if (language.length > 0x3F) {
+            throw new IllegalArgumentException("Language code too long");
+        }
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[1 + language.length + textBytes.length];
+        payload[0] = (byte) language.length;
+        System.arraycopy(language, 0, payload, 1, language.length);
+        System.arraycopy(textBytes, 0, payload, 1 + language.length, textBytes.length);
+        return Record.of(TNF_WELL_KNOWN, RTD_TEXT, null, payload);
+    }
+
+    // URI record with the longest matching identifier code abbreviated, like NdefRecord.createUri
+    public static Record uriRecord(String uri) {
+        if (uri == null || uri.isEmpty()) {
+            throw new IllegalArgumentException("URI is empty");
+        }
+        int code = 0;
+        for (int i = 1; i < URI_PREFIXES.length; i++) {
+            if (uri.startsWith(URI_PREFIXES[i]) && URI_PREFIXES[i].length() > URI_PREFIXES[code].length()) {
+                code = i;
+            }
+        }
+        byte[] rest = uri.substring(URI_PREFIXES[code].length()).getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[1 + rest.length];
+        payload[0] = (byte) code;
+        System.arraycopy(rest, 0, payload, 1, rest.length);
+        return Record.of(TNF_WELL_KNOWN, RTD_URI, null, payload);
+    }
+
+    // MIME record, type normalized the same way as NdefRecord.createMime
+    public static Record mimeRecord(String mimeType, byte[] payload) {
+        String normalized = mimeType.trim().toLowerCase(Locale.ROOT);
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("mimeType is empty");
+        }
+        int slash = normalized.indexOf('/');
+        if (slash == 0) {
+            throw new IllegalArgumentException("mimeType must have major type");
+        }
+        if (slash == normalized.length() - 1) {
+            throw new IllegalArgumentException("mimeType must have minor type");
+        }
+        return Record.of(TNF_MIME_MEDIA, normalized.getBytes(StandardCharsets.US_ASCII), null, payload);
+    }
+}
@@ -0,0 +1,204 @@
+package com.aacassandra.capacitornfc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate-compressed records, to fit larger payloads on small tags and shorten writes.
+ *
+ * A compressed record is an external type record ({@link #TYPE}) that keeps the original
+ * record's id. Its payload is a header followed by the raw deflate stream of the original
+ * payload:
+ *
+ *   format (1 byte, 1 = raw deflate) | original TNF (1) | original type length (1) |
+ *   original type | original payload length (unsigned LEB128) | deflate data
+ *
+ * {@link #compress} only replaces records whose payload reaches the threshold and that come
+ * out smaller, so short or incompressible payloads stay as they are. {@link #expand} turns
+ * compressed records back into the original ones after decoding.
+ */
+public final class NdefCompression {
+    public static final String TYPE = "capacitor-nfc:z";
+    public static final int DEFAULT_MIN_BYTES = 64;
+
+    private static final byte[] TYPE_BYTES = TYPE.getBytes(StandardCharsets.UTF_8);
+    private static final int FORMAT_DEFLATE = 1;
+    // More than any tag holds, so a corrupt length can't make us allocate without bound
+    private static final int MAX_EXPANDED_BYTES = 1024 * 1024;
+
+    private NdefCompression() {
+    }
+
+    public static boolean isCompressed(NdefCodec.Record record) {
+        return record.getTnf() == NdefCodec.TNF_EXTERNAL_TYPE && record.typeEquals(TYPE_BYTES);
+    }
+
+    /**
+     * The message with every record whose payload has at least minBytes compressed, if that
+     * makes it smaller. Returns the message itself when nothing was compressed.
+     */
+    public static NdefCodec.Message compress(NdefCodec.Message message, int minBytes) {
+        NdefCodec.Message result = null;
+        Deflater deflater = null;
+        try {
+            for (int i = 0; i < message.size(); i++) {
+                NdefCodec.Record record = message.get(i);
+                NdefCodec.Record compressed = null;
+                if (isCompressible(record, minBytes)) {
+                    if (deflater == null) {
+                        deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+                    } else {
+                        deflater.reset();
+                    }
+                    compressed = compress(record, deflater);
+                }
+                if (compressed != null && result == null) {
+                    // First record that shrinks, copy the ones before it
+                    result = new NdefCodec.Message();
+                    for (int j = 0; j < i; j++) {
+                        result.add(message.get(j));
+                    }
+                }
+                if (result != null) {
+                    result.add(compressed != null ? compressed : record);
+                }
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        return result != null ? result : message;
+    }
+
+    /**
+     * Replaces the compressed records of a decoded message with the original ones, in place.
+     * Returns how many were expanded.
+     */
+    public static int expand(NdefCodec.Message message) throws NdefCodec.MalformedNdefException {
+        int expanded = 0;
+        Inflater inflater = null;
+        try {
+            for (int i = 0; i < message.size(); i++) {
+                NdefCodec.Record record = message.get(i);
+                if (!isCompressed(record)) continue;
+                if (inflater == null) {
+                    inflater = new Inflater(true);
+                } else {
+                    inflater.reset();
+                }
+                expand(record, inflater);
+                expanded++;
+            }
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+        return expanded;
+    }
+
+    private static boolean isCompressible(NdefCodec.Record record, int minBytes) {
+        short tnf = record.getTnf();
+        return record.getPayloadLength() >= minBytes
+            && record.getTypeLength() <= 255
+            && tnf != NdefCodec.TNF_EMPTY && tnf != NdefCodec.TNF_UNCHANGED && tnf != NdefCodec.TNF_RESERVED
+            && !isCompressed(record);
+    }
+
+    // Null when compressing doesn't pay for the header and the longer type
+    private static NdefCodec.Record compress(NdefCodec.Record record, Deflater deflater) {
+        int payloadLength = record.getPayloadLength();
+        int typeLength = record.getTypeLength();
+        int headerLength = 3 + typeLength + varintLength(payloadLength);
+        int budget = payloadLength + typeLength - TYPE_BYTES.length - headerLength;
+        if (budget <= 0) return null;
+
+        // The stream has to come out shorter than budget, filling the buffer means it didn't
+        byte[] out = new byte[headerLength + budget];
+        int position = 0;
+        out[position++] = FORMAT_DEFLATE;
+        out[position++] = (byte) record.getTnf();
+        out[position++] = (byte) typeLength;
+        System.arraycopy(record.typeBuffer(), record.typeOffset(), out, position, typeLength);
+        position += typeLength;
+        for (int value = payloadLength; ; value >>>= 7) {
+            if (value < 0x80) {
+                out[position++] = (byte) value;
+                break;
+            }
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+        }
+
+        deflater.setInput(record.payloadBuffer(), record.payloadOffset(), payloadLength);
+        deflater.finish();
+        while (!deflater.finished() && position < out.length) {
+            position += deflater.deflate(out, position, out.length - position);
+        }
+        if (!deflater.finished() || position >= headerLength + budget) return null;
+
+        NdefCodec.Record compressed = new NdefCodec.Record();
+        compressed.tnf = NdefCodec.TNF_EXTERNAL_TYPE;
+        compressed.setType(TYPE_BYTES, 0, TYPE_BYTES.length);
+        compressed.setId(record.idBuffer(), record.idOffset(), record.getIdLength());
+        compressed.setPayload(out, 0, position);
+        return compressed;
+    }
+
+    private static void expand(NdefCodec.Record record, Inflater inflater) throws NdefCodec.MalformedNdefException {
+        byte[] data = record.payloadBuffer();
+        int position = record.payloadOffset();
+        int end = position + record.getPayloadLength();
+        if (end - position < 4 || data[position] != FORMAT_DEFLATE) {
+            throw new NdefCodec.MalformedNdefException("Unsupported compressed record");
+        }
+        short tnf = (short) (data[position + 1] & 0x07);
+        int typeLength = data[position + 2] & 0xFF;
+        int typeOffset = position + 3;
+        position = typeOffset + typeLength;
+
+        int expandedLength = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (position >= end || shift > 21) {
+                throw new NdefCodec.MalformedNdefException("Truncated compressed record");
+            }
+            int b = data[position++];
+            expandedLength |= (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        if (expandedLength > MAX_EXPANDED_BYTES) {
+            throw new NdefCodec.MalformedNdefException("Compressed record expands to " + expandedLength + " bytes");
+        }
+
+        byte[] payload = new byte[expandedLength];
+        inflater.setInput(data, position, end - position);
+        try {
+            int length = 0;
+            while (length < expandedLength && !inflater.finished()) {
+                int n = inflater.inflate(payload, length, expandedLength - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                length += n;
+            }
+            // A stream longer than announced doesn't finish within the buffer
+            if (length != expandedLength || (!inflater.finished() && inflater.inflate(new byte[1]) > 0)) {
+                throw new NdefCodec.MalformedNdefException("Compressed record doesn't match its length");
+            }
+        } catch (DataFormatException e) {
+            throw new NdefCodec.MalformedNdefException("Corrupt compressed record: " + e.getMessage());
+        }
+
+        record.tnf = tnf;
+        record.setType(data, typeOffset, typeLength);
+        record.setPayload(payload, 0, expandedLength);
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,201 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Conversion between the plugin's JSON record format ({ type, payload }) and NdefCodec records.
+ * Only depends on org.json so the benchmark module can run it on a plain JVM.
+ */
+public final class NdefJson {
+
+    private NdefJson() {
+    }
+
+    public static JSONArray toJson(NdefCodec.Message message) throws JSONException {
+        return toJson(message, null);
+    }
+
+    // decoders add a decoded value to the records they take, null for none
+    public static JSONArray toJson(NdefCodec.Message message, RecordDecoders decoders) throws JSONException {
+        JSONArray recordsArray = new JSONArray();
+        for (int i = 0; i < message.size(); i++) {
+            NdefCodec.Record record = message.get(i);
+            JSONObject recordObj = new JSONObject();
+
+            // Set record type
+            String type;
+            if (record.isWellKnown(NdefCodec.RTD_TEXT)) {
+                type = "T"; // Text record
+            } else if (record.isWellKnown(NdefCodec.RTD_URI)) {
+                type = "U"; // URI record
+            } else {
+                type = record.typeString();
+            }
+            recordObj.put("type", type);
+
+            // Set record payload
+            recordObj.put("payload", payloadText(record, type));
+            if (decoders != null) {
+                decoders.put(record, recordObj);
+            }
+            recordsArray.put(recordObj);
+        }
+        return recordsArray;
+    }
+
+    /**
+     * Records with TNF, raw type and id, and the payload in the given {@link PayloadEncoding}.
+     * Payloads larger than deferAboveBytes (negative for never) are left out: payload is empty
+     * and deferred is set, and they aren't decoded. Returns how many were left out.
+     */
+    public static int toJson(NdefCodec.Message message, String encoding, int deferAboveBytes, RecordDecoders decoders,
+        JSONArray recordsArray) throws JSONException {
+        boolean text = PayloadEncoding.TEXT.equals(encoding);
+        int deferred = 0;
+        for (int i = 0; i < message.size(); i++) {
+            NdefCodec.Record record = message.get(i);
+            JSONObject recordObj = new JSONObject();
+
+            String type = record.isWellKnown(NdefCodec.RTD_TEXT) ? "T"
+                : record.isWellKnown(NdefCodec.RTD_URI) ? "U"
+                : record.typeString();
+            recordObj.put("type", type);
+            recordObj.put("tnf", record.getTnf());
+            if (!text) {
+                recordObj.put("rawType", PayloadEncoding.encode(encoding, record.typeBuffer(), record.typeOffset(), record.getTypeLength()));
+            }
+            if (record.getIdLength() > 0) {
+                recordObj.put("id", PayloadEncoding.encode(encoding, record.idBuffer(), record.idOffset(), record.getIdLength()));
+            }
+
+            int payloadLength = record.getPayloadLength();
+            recordObj.put("payloadSize", payloadLength);
+            if (deferAboveBytes >= 0 && payloadLength > deferAboveBytes) {
+                recordObj.put("payload", "");
+                recordObj.put("deferred", true);
+                deferred++;
+            } else {
+                // Binary encodings keep the whole payload, language code of Text records included
+                recordObj.put("payload", text ? payloadText(record, type)
+                    : PayloadEncoding.encode(encoding, record.payloadBuffer(), record.payloadOffset(), payloadLength));
+                if (decoders != null) {
+                    decoders.put(record, recordObj);
+                }
+            }
+            recordsArray.put(recordObj);
+        }
+        return deferred;
+    }
+
+    /**
+     * Streams the records of a message into json, in the same shape as the JSONArray versions:
+     * toJson(message) when encoding is text and nothing is deferred, the raw record format
+     * otherwise. Returns how many payloads were left out.
+     */
+    public static int writeRecords(JsonEventWriter json, NdefCodec.Message message, String encoding, int deferAboveBytes) {
+        return writeRecords(json, message, encoding, deferAboveBytes, null);
+    }
+
+    public static int writeRecords(JsonEventWriter json, NdefCodec.Message message, String encoding, int deferAboveBytes,
+        RecordDecoders decoders) {
+        boolean text = PayloadEncoding.TEXT.equals(encoding);
+        boolean raw = !text || deferAboveBytes >= 0;
+        int deferred = 0;
+        json.beginArray();
+        for (int i = 0; i < message.size(); i++) {
+            NdefCodec.Record record = message.get(i);
+            boolean textRecord = record.isWellKnown(NdefCodec.RTD_TEXT);
+            json.beginObject().name("type");
+            if (textRecord) {
+                json.value("T");
+            } else if (record.isWellKnown(NdefCodec.RTD_URI)) {
+                json.value("U");
+            } else {
+                json.utf8Value(record.typeBuffer(), record.typeOffset(), record.getTypeLength());
+            }
+
+            int payloadLength = record.getPayloadLength();
+            if (raw) {
+                json.name("tnf").value(record.getTnf());
+                if (!text) {
+                    bytes(json.name("rawType"), encoding, record.typeBuffer(), record.typeOffset(), record.getTypeLength());
+                }
+                if (record.getIdLength() > 0) {
+                    bytes(json.name("id"), encoding, record.idBuffer(), record.idOffset(), record.getIdLength());
+                }
+                json.name("payloadSize").value(payloadLength);
+            }
+
+            boolean deferPayload = deferAboveBytes >= 0 && payloadLength > deferAboveBytes;
+            json.name("payload");
+            if (deferPayload) {
+                json.value("");
+                json.name("deferred").value(true);
+                deferred++;
+            } else if (text) {
+                int skip = 0;
+                int languageCodeLength = payloadLength > 0 ? record.payloadBuffer()[record.payloadOffset()] & 0x3F : 0;
+                if (textRecord && payloadLength > languageCodeLength + 1) {
+                    skip = languageCodeLength + 1;
+                }
+                json.utf8Value(record.payloadBuffer(), record.payloadOffset() + skip, payloadLength - skip);
+            } else {
+                bytes(json, encoding, record.payloadBuffer(), record.payloadOffset(), payloadLength);
+            }
+            if (decoders != null && !deferPayload) {
+                decoders.write(record, json);
+            }
+            json.endObject();
+        }
+        json.endArray();
+        return deferred;
+    }
+
+    private static void bytes(JsonEventWriter json, String encoding, byte[] buffer, int offset, int length) {
+        if (PayloadEncoding.BASE64.equals(encoding)) {
+            json.base64Value(buffer, offset, length);
+        } else if (PayloadEncoding.HEX.equals(encoding)) {
+            json.hexValue(buffer, offset, length);
+        } else {
+            json.utf8Value(buffer, offset, length);
+        }
+    }
+
+    // UTF-8 payload as delivered in text mode, without the language code of TEXT records
+    static String payloadText(NdefCodec.Record record, String type) {
+        int payloadLength = record.getPayloadLength();
+        int languageCodeLength = payloadLength > 0 ? record.payloadBuffer()[record.payloadOffset()] & 0x3F : 0;
+        if (type.equals("T") && payloadLength > languageCodeLength + 1) {
+            return record.payloadString(languageCodeLength + 1);
+        }
+        return record.payloadString();
+    }
+
+    public static NdefCodec.Message toMessage(JSONArray recordsArray) throws JSONException {
+        NdefCodec.Message records = new NdefCodec.Message();
+
+        for (int i = 0; i < recordsArray.length(); i++) {
+            JSONObject record = recordsArray.getJSONObject(i);
+            String type = record.getString("type");
+            String payload = record.getString("payload");
+
+            if (type.equals("T")) {
+                // Create a TEXT record
+                // Format: [status byte][language code][text]
+                records.add(NdefCodec.textRecord("en", payload));
+            } else if (type.equals("U")) {
+                // Create a URI record
+                records.add(NdefCodec.uriRecord(payload));
+            } else {
+                // Create a custom record (MIME type)
+                records.add(NdefCodec.mimeRecord(type, payload.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+
+        return records;
+    }
+}
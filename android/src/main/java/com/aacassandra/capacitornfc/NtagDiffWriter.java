@@ -0,0 +1,289 @@
+package com.aacassandra.capacitornfc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes an NDEF message to an NFC Forum Type 2 tag (NTAG / Ultralight) by only sending WRITE
+ * commands for the 4-byte pages whose content actually changes.
+ *
+ * The capability container (page 3) gives the size of the data area starting at page 4. The
+ * area is read with FAST_READ (READ on tags without it) and its TLV chain walked up to the NDEF
+ * TLV, so Lock Control, Memory Control and proprietary TLVs in front of it stay where they are;
+ * the new message replaces only the NDEF TLV and is followed by a terminator TLV. Differing
+ * pages are written in the order of the Type 2 Tag spec: the NDEF TLV length is set to 0 first,
+ * then the body is written and the real length last, so a tag pulled away mid-update reads as
+ * an empty message rather than the old length over a partly written body. An update touching a
+ * single page is written as it is.
+ */
+public class NtagDiffWriter {
+    static final byte CMD_WRITE = (byte) 0xA2;
+    static final int ACK = 0x0A;
+    static final int CC_PAGE = 3;
+    static final int DATA_START_PAGE = 4;
+    static final byte TLV_NULL = 0x00;
+    static final byte TLV_LOCK_CONTROL = 0x01;
+    static final byte TLV_MEMORY_CONTROL = 0x02;
+    static final byte TLV_NDEF = 0x03;
+    static final byte TLV_TERMINATOR = (byte) 0xFE;
+
+    public static final class Result {
+        public int pagesWritten;
+        public int pagesCompared;
+        public int dataAreaPages;
+        public boolean verified;
+        public int transceives;
+    }
+
+    public static class NotFormattedException extends IOException {
+        public NotFormattedException(String message) {
+            super(message);
+        }
+    }
+
+    private final NtagReader.Connection connection;
+    private final NtagReader reader;
+    private int transceives = 0;
+    // The data area from page 4, as far as it has been read
+    private byte[] current = new byte[0];
+    private int dataAreaPages;
+    // Original Ultralight / Ultralight C have no FAST_READ
+    private boolean fastReadUnsupported = false;
+
+    public NtagDiffWriter(NtagReader.Connection connection) {
+        this.connection = connection;
+        this.reader = new NtagReader(new NtagReader.Connection() {
+            @Override
+            public byte[] transceive(byte[] command) throws IOException {
+                transceives++;
+                return connection.transceive(command);
+            }
+
+            @Override
+            public void reconnect() throws IOException {
+                connection.reconnect();
+            }
+
+            @Override
+            public int getMaxTransceiveLength() {
+                return connection.getMaxTransceiveLength();
+            }
+        });
+    }
+
+    public Result write(byte[] ndefMessage, boolean verify) throws IOException {
+        byte[] cc = readPages(CC_PAGE, CC_PAGE);
+        if ((cc[0] & 0xFF) != 0xE1) {
+            throw new NotFormattedException("Tag has no NDEF capability container");
+        }
+        // Write access is the low nibble, read access the high one
+        if ((cc[3] & 0x0F) != 0) {
+            throw new TagIOPolicy.NotRetryableException("Tag is read-only");
+        }
+        int dataAreaBytes = (cc[2] & 0xFF) * 8;
+        dataAreaPages = dataAreaBytes / NtagReader.PAGE_SIZE;
+
+        List<int[]> reserved = new ArrayList<>();
+        int ndefOffset = findNdefTlv(dataAreaBytes, reserved);
+        int available = dataAreaBytes - ndefOffset;
+
+        byte[] tlv = layout(ndefMessage);
+        if (tlv.length == available + 1) {
+            // A message filling the rest of the area goes without terminator
+            tlv = Arrays.copyOf(tlv, available);
+        }
+        if (tlv.length > available) {
+            throw new TagIOPolicy.NotRetryableException("Message is " + tlv.length + " bytes, the tag holds " + available);
+        }
+        for (int[] range : reserved) {
+            if (range[0] < ndefOffset + tlv.length && ndefOffset < range[1]) {
+                throw new TagIOPolicy.NotRetryableException("Message would overlap memory reserved by a control TLV");
+            }
+        }
+
+        int firstPage = ndefOffset / NtagReader.PAGE_SIZE;
+        int pages = (ndefOffset + tlv.length + NtagReader.PAGE_SIZE - 1) / NtagReader.PAGE_SIZE;
+        ensureRead(pages * NtagReader.PAGE_SIZE);
+        // Pad the new layout to whole pages with what's already on the tag
+        byte[] target = Arrays.copyOf(current, pages * NtagReader.PAGE_SIZE);
+        System.arraycopy(tlv, 0, target, ndefOffset, tlv.length);
+
+        Result result = new Result();
+        result.dataAreaPages = dataAreaPages;
+        result.pagesCompared = pages - firstPage;
+
+        // Pages holding the NDEF TLV length field, 1 or 3 bytes after the type
+        int lengthBytes = tlv.length > 1 && tlv[1] == (byte) 0xFF ? 3 : 1;
+        int lengthFirstPage = (ndefOffset + 1) / NtagReader.PAGE_SIZE;
+        int lengthLastPage = (ndefOffset + lengthBytes) / NtagReader.PAGE_SIZE;
+
+        int changedPages = 0;
+        for (int i = firstPage; i < pages; i++) {
+            if (pageDiffers(i, current, target)) changedPages++;
+        }
+        // A single page write is atomic, only longer updates go through an empty message
+        if (changedPages > 1) {
+            // L = 0 first, so until the real length is written the tag holds an empty message
+            byte[] empty = target.clone();
+            Arrays.fill(empty, ndefOffset + 1 + (lengthBytes == 3 ? 1 : 0), ndefOffset + 1 + lengthBytes, (byte) 0);
+            for (int i = lengthFirstPage; i <= lengthLastPage; i++) {
+                if (writeIfChanged(i, empty)) result.pagesWritten++;
+            }
+        }
+        for (int i = firstPage; i < pages; i++) {
+            if (i < lengthFirstPage || i > lengthLastPage) {
+                if (writeIfChanged(i, target)) result.pagesWritten++;
+            }
+        }
+        for (int i = lengthFirstPage; i <= lengthLastPage; i++) {
+            if (writeIfChanged(i, target)) result.pagesWritten++;
+        }
+
+        if (verify && result.pagesWritten > 0) {
+            int from = firstPage * NtagReader.PAGE_SIZE;
+            byte[] readBack = readPages(DATA_START_PAGE + firstPage, DATA_START_PAGE + pages - 1);
+            for (int i = from; i < target.length; i++) {
+                if (readBack[i - from] != target[i]) {
+                    throw new IOException("Verification failed at page " + (DATA_START_PAGE + i / NtagReader.PAGE_SIZE));
+                }
+            }
+            result.verified = true;
+        }
+        result.transceives = transceives;
+        return result;
+    }
+
+    // Offset of the NDEF TLV in the data area, or of the terminator / end of the TLVs in front of
+    // it when there is none yet. Collects the byte ranges (data area offsets) reserved by Lock
+    // Control and Memory Control TLVs.
+    private int findNdefTlv(int dataAreaBytes, List<int[]> reserved) throws IOException {
+        int offset = 0;
+        while (offset < dataAreaBytes) {
+            ensureRead(Math.min(offset + 4, dataAreaBytes));
+            int type = current[offset] & 0xFF;
+            if (type == TLV_NULL) {
+                offset++;
+                continue;
+            }
+            if (type == TLV_NDEF || type == (TLV_TERMINATOR & 0xFF) || offset + 1 >= dataAreaBytes) {
+                return offset;
+            }
+            int length = current[offset + 1] & 0xFF;
+            int header = 2;
+            if (length == 0xFF) {
+                if (offset + 3 >= dataAreaBytes) break;
+                length = ((current[offset + 2] & 0xFF) << 8) | (current[offset + 3] & 0xFF);
+                header = 4;
+            }
+            if ((type == TLV_LOCK_CONTROL || type == TLV_MEMORY_CONTROL) && length == 3) {
+                ensureRead(Math.min(offset + header + 3, dataAreaBytes));
+                if (offset + header + 3 <= dataAreaBytes) {
+                    reserved.add(reservedRange(type, current, offset + header));
+                }
+            }
+            offset += header + length;
+        }
+        throw new NotFormattedException("Tag has no room for an NDEF TLV");
+    }
+
+    // Position byte (page address, byte offset), size (bits for lock control, bytes for memory
+    // control, 0 meaning 256) and page size exponent, as data area offsets [start, end)
+    static int[] reservedRange(int type, byte[] value, int offset) {
+        int position = value[offset] & 0xFF;
+        int size = value[offset + 1] & 0xFF;
+        int bytesPerPage = 1 << (value[offset + 2] & 0x0F);
+        if (size == 0) size = 256;
+        int bytes = type == TLV_LOCK_CONTROL ? (size + 7) / 8 : size;
+        int start = (position >>> 4) * bytesPerPage + (position & 0x0F) - DATA_START_PAGE * NtagReader.PAGE_SIZE;
+        return new int[] { start, start + bytes };
+    }
+
+    // Reads whole pages of the data area until at least the given number of bytes is known
+    private void ensureRead(int bytes) throws IOException {
+        if (bytes <= current.length) return;
+        int knownPages = current.length / NtagReader.PAGE_SIZE;
+        int neededPages = (bytes + NtagReader.PAGE_SIZE - 1) / NtagReader.PAGE_SIZE;
+        // At least 4 pages at a time, which a single READ returns anyway
+        int endPages = Math.min(Math.max(neededPages, knownPages + 4), Math.max(dataAreaPages, neededPages));
+        byte[] more = readPages(DATA_START_PAGE + knownPages, DATA_START_PAGE + endPages - 1);
+        byte[] grown = Arrays.copyOf(current, endPages * NtagReader.PAGE_SIZE);
+        System.arraycopy(more, 0, grown, knownPages * NtagReader.PAGE_SIZE, more.length);
+        current = grown;
+    }
+
+    // FAST_READ, or 4-page READs once the tag turned out not to support it
+    private byte[] readPages(int startPage, int endPage) throws IOException {
+        if (!fastReadUnsupported) {
+            try {
+                return reader.fastRead(startPage, endPage);
+            } catch (IOException e) {
+                // A NAK leaves the tag idle
+                fastReadUnsupported = true;
+                connection.reconnect();
+            }
+        }
+        byte[] pages = new byte[(endPage - startPage + 1) * NtagReader.PAGE_SIZE];
+        for (int page = startPage; page <= endPage; page += 4) {
+            transceives++;
+            byte[] response = connection.transceive(new byte[] { NtagReader.CMD_READ, (byte) page });
+            if (response == null || response.length < 16) {
+                throw new IOException("READ of page " + page + " failed");
+            }
+            int offset = (page - startPage) * NtagReader.PAGE_SIZE;
+            System.arraycopy(response, 0, pages, offset, Math.min(16, pages.length - offset));
+        }
+        return pages;
+    }
+
+    // NDEF TLV (1 or 3 byte length) followed by a terminator TLV
+    static byte[] layout(byte[] ndefMessage) {
+        int length = ndefMessage.length;
+        boolean longLength = length >= 0xFF;
+        byte[] tlv = new byte[1 + (longLength ? 3 : 1) + length + 1];
+        int position = 0;
+        tlv[position++] = TLV_NDEF;
+        if (longLength) {
+            tlv[position++] = (byte) 0xFF;
+            tlv[position++] = (byte) (length >>> 8);
+            tlv[position++] = (byte) length;
+        } else {
+            tlv[position++] = (byte) length;
+        }
+        System.arraycopy(ndefMessage, 0, tlv, position, length);
+        position += length;
+        tlv[position] = TLV_TERMINATOR;
+        return tlv;
+    }
+
+    private static boolean pageDiffers(int index, byte[] current, byte[] target) {
+        int offset = index * NtagReader.PAGE_SIZE;
+        for (int i = offset; i < offset + NtagReader.PAGE_SIZE; i++) {
+            if (current[i] != target[i]) return true;
+        }
+        return false;
+    }
+
+    // Writes the page if it differs and keeps current in step with the tag
+    private boolean writeIfChanged(int index, byte[] target) throws IOException {
+        if (!pageDiffers(index, current, target)) return false;
+        int offset = index * NtagReader.PAGE_SIZE;
+
+        byte[] command = {
+            CMD_WRITE,
+            (byte) (DATA_START_PAGE + index),
+            target[offset],
+            target[offset + 1],
+            target[offset + 2],
+            target[offset + 3],
+        };
+        transceives++;
+        byte[] response = connection.transceive(command);
+        if (response != null && response.length == 1 && (response[0] & 0x0F) != ACK) {
+            throw new IOException("WRITE of page " + (DATA_START_PAGE + index) + " failed: NAK " + (response[0] & 0x0F));
+        }
+        System.arraycopy(target, offset, current, offset, NtagReader.PAGE_SIZE);
+        return true;
+    }
+}
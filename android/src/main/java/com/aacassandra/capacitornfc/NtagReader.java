@@ -0,0 +1,204 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Raw memory dump of NTAG21x / MIFARE Ultralight tags over one connection.
+ *
+ * GET_VERSION tells how many pages the tag has, then FAST_READ fetches them in as few page
+ * ranges as the transceive buffer allows (an NTAG216 takes 4 reads instead of ~230 single
+ * page READs). READ_SIG and READ_CNT are added on request. Tags without GET_VERSION (original
+ * Ultralight / Ultralight C) fall back to 4-page READs.
+ *
+ * Works against {@link Connection} rather than android.nfc so it runs on a plain JVM too.
+ */
+public class NtagReader {
+    static final byte CMD_GET_VERSION = 0x60;
+    static final byte CMD_READ = 0x30;
+    static final byte CMD_FAST_READ = 0x3A;
+    static final byte CMD_READ_CNT = 0x39;
+    static final byte CMD_READ_SIG = 0x3C;
+
+    static final int PAGE_SIZE = 4;
+    // NTAG21x keeps its NFC counter in counter 2
+    private static final int NFC_COUNTER = 0x02;
+
+    public interface Connection {
+        byte[] transceive(byte[] command) throws IOException;
+
+        // After a NAK the tag drops back to idle and needs a fresh connection
+        void reconnect() throws IOException;
+
+        int getMaxTransceiveLength();
+    }
+
+    public static final class Dump {
+        public byte[] version;
+        public String product = "Unknown";
+        public int pageCount;
+        public byte[] memory;
+        public int counter = -1;
+        public byte[] signature;
+        public int transceives;
+
+        public void putJson(JSONObject out) throws JSONException {
+            out.put("product", product);
+            out.put("pageCount", pageCount);
+            out.put("memory", UidEncoder.toHex(memory));
+            if (version != null) {
+                out.put("version", UidEncoder.toHex(version));
+            }
+            if (counter >= 0) {
+                out.put("counter", counter);
+            }
+            if (signature != null) {
+                out.put("signature", UidEncoder.toHex(signature));
+            }
+            out.put("transceives", transceives);
+        }
+    }
+
+    private final Connection connection;
+    private int transceives = 0;
+
+    public NtagReader(Connection connection) {
+        this.connection = connection;
+    }
+
+    // fallbackPageCount is used when the tag doesn't answer GET_VERSION (0 = 16 pages)
+    public Dump read(boolean readSignature, boolean readCounter, int fallbackPageCount) throws IOException {
+        Dump dump = new Dump();
+        dump.version = getVersion();
+
+        if (dump.version != null) {
+            identify(dump);
+        }
+
+        if (dump.version != null && dump.pageCount > 0) {
+            dump.memory = fastRead(0, dump.pageCount - 1);
+        } else {
+            if (dump.version == null) {
+                connection.reconnect();
+            }
+            dump.pageCount = fallbackPageCount > 0 ? fallbackPageCount : 16;
+            dump.memory = readPages(dump.pageCount);
+        }
+
+        if (readSignature && dump.version != null) {
+            dump.signature = readOptional(new byte[] { CMD_READ_SIG, 0x00 }, 32);
+        }
+        if (readCounter && dump.version != null && dump.product.startsWith("NTAG21")) {
+            // Fails unless NFC_CNT_EN is set in the tag configuration, which isn't an error
+            byte[] count = readOptional(new byte[] { CMD_READ_CNT, NFC_COUNTER }, 3);
+            if (count != null) {
+                dump.counter = (count[0] & 0xFF) | ((count[1] & 0xFF) << 8) | ((count[2] & 0xFF) << 16);
+            }
+        }
+
+        dump.transceives = transceives;
+        return dump;
+    }
+
+    // FAST_READ of an inclusive page range, split to fit the transceive buffer
+    public byte[] fastRead(int startPage, int endPage) throws IOException {
+        int pagesPerRead = Math.max(1, Math.min(connection.getMaxTransceiveLength(), 252) / PAGE_SIZE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream((endPage - startPage + 1) * PAGE_SIZE);
+
+        for (int page = startPage; page <= endPage; page += pagesPerRead) {
+            int last = Math.min(endPage, page + pagesPerRead - 1);
+            int expected = (last - page + 1) * PAGE_SIZE;
+            byte[] response = transceive(new byte[] { CMD_FAST_READ, (byte) page, (byte) last });
+            checkLength(response, expected, "FAST_READ");
+            out.write(response, 0, expected);
+        }
+        return out.toByteArray();
+    }
+
+    byte[] getVersion() {
+        try {
+            byte[] response = transceive(new byte[] { CMD_GET_VERSION });
+            return response != null && response.length == 8 ? response : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // READ returns 4 pages (16 bytes) per command
+    private byte[] readPages(int pageCount) throws IOException {
+        byte[] memory = new byte[pageCount * PAGE_SIZE];
+        for (int page = 0; page < pageCount; page += 4) {
+            byte[] response = transceive(new byte[] { CMD_READ, (byte) page });
+            checkLength(response, 16, "READ");
+            System.arraycopy(response, 0, memory, page * PAGE_SIZE, Math.min(16, memory.length - page * PAGE_SIZE));
+        }
+        return memory;
+    }
+
+    private byte[] readOptional(byte[] command, int expected) throws IOException {
+        try {
+            byte[] response = transceive(command);
+            if (response != null && response.length >= expected) {
+                return response;
+            }
+        } catch (IOException e) {
+            // NAK, handled below
+        }
+        connection.reconnect();
+        return null;
+    }
+
+    private byte[] transceive(byte[] command) throws IOException {
+        transceives++;
+        return connection.transceive(command);
+    }
+
+    private static void checkLength(byte[] response, int expected, String command) throws IOException {
+        if (response == null || response.length < expected) {
+            // A single byte answer is a NAK
+            String detail = response != null && response.length == 1 ? "NAK " + (response[0] & 0x0F) : "short response";
+            throw new IOException(command + " failed: " + detail);
+        }
+    }
+
+    // Page counts by product type and storage size byte of the GET_VERSION response
+    static void identify(Dump dump) {
+        int productType = dump.version[2] & 0xFF;
+        int storageSize = dump.version[6] & 0xFF;
+        if (productType == 0x04) {
+            switch (storageSize) {
+                case 0x0B:
+                    setProduct(dump, "NTAG210", 20);
+                    break;
+                case 0x0E:
+                    setProduct(dump, "NTAG212", 41);
+                    break;
+                case 0x0F:
+                    setProduct(dump, "NTAG213", 45);
+                    break;
+                case 0x11:
+                    setProduct(dump, "NTAG215", 135);
+                    break;
+                case 0x13:
+                    setProduct(dump, "NTAG216", 231);
+                    break;
+                default:
+                    break;
+            }
+        } else if (productType == 0x03) {
+            if (storageSize == 0x0B) {
+                setProduct(dump, "MIFARE Ultralight EV1 (MF0UL11)", 20);
+            } else if (storageSize == 0x0E) {
+                setProduct(dump, "MIFARE Ultralight EV1 (MF0UL21)", 41);
+            }
+        }
+    }
+
+    private static void setProduct(Dump dump, String product, int pageCount) {
+        dump.product = product;
+        dump.pageCount = pageCount;
+    }
+}
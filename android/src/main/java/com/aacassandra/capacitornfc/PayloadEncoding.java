@@ -0,0 +1,72 @@
+package com.aacassandra.capacitornfc;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * How record payloads, types and ids are put into events: "text" decodes them as UTF-8 like
+ * the plugin always did, "base64" and "hex" keep binary content intact. Plain Java so the
+ * benchmark module can use it (android.util.Base64 isn't available there, java.util.Base64
+ * needs API 26).
+ */
+public final class PayloadEncoding {
+    public static final String TEXT = "text";
+    public static final String BASE64 = "base64";
+    public static final String HEX = "hex";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final char[] BASE64_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private PayloadEncoding() {
+    }
+
+    public static boolean isValid(String encoding) {
+        return TEXT.equals(encoding) || BASE64.equals(encoding) || HEX.equals(encoding);
+    }
+
+    // base64 or hex of the range, anything else is UTF-8 decoded
+    public static String encode(String encoding, byte[] buffer, int offset, int length) {
+        if (BASE64.equals(encoding)) return base64(buffer, offset, length);
+        if (HEX.equals(encoding)) return hex(buffer, offset, length);
+        return new String(buffer, offset, length, StandardCharsets.UTF_8);
+    }
+
+    public static String hex(byte[] buffer, int offset, int length) {
+        StringBuilder out = new StringBuilder(length * 2);
+        appendHex(out, buffer, offset, length);
+        return out.toString();
+    }
+
+    // Standard alphabet, padded
+    public static String base64(byte[] buffer, int offset, int length) {
+        StringBuilder out = new StringBuilder((length + 2) / 3 * 4);
+        appendBase64(out, buffer, offset, length);
+        return out.toString();
+    }
+
+    public static void appendHex(StringBuilder out, byte[] buffer, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int b = buffer[i] & 0xFF;
+            out.append(HEX_DIGITS[b >>> 4]).append(HEX_DIGITS[b & 0x0F]);
+        }
+    }
+
+    public static void appendBase64(StringBuilder out, byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        for (; i + 2 < end; i += 3) {
+            int bits = (buffer[i] & 0xFF) << 16 | (buffer[i + 1] & 0xFF) << 8 | (buffer[i + 2] & 0xFF);
+            out.append(BASE64_DIGITS[bits >>> 18])
+                .append(BASE64_DIGITS[(bits >>> 12) & 0x3F])
+                .append(BASE64_DIGITS[(bits >>> 6) & 0x3F])
+                .append(BASE64_DIGITS[bits & 0x3F]);
+        }
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (buffer[i] & 0xFF) << 16 | (remaining == 2 ? (buffer[i + 1] & 0xFF) << 8 : 0);
+            out.append(BASE64_DIGITS[bits >>> 18])
+                .append(BASE64_DIGITS[(bits >>> 12) & 0x3F])
+                .append(remaining == 2 ? BASE64_DIGITS[(bits >>> 6) & 0x3F] : '=')
+                .append('=');
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.aacassandra.capacitornfc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Encoded NDEF messages ready to be written, keyed by their content hash.
+ *
+ * The handle given out for a message is its {@link TagSession#contentHash}, so preparing the
+ * same message twice returns the same handle and entry, and the handle doubles as the hash the
+ * tag has once the message is written. Entries are kept in LRU order; the least recently used
+ * one is evicted once the capacity is reached.
+ */
+public class PreparedMessageCache {
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final LinkedHashMap<String, byte[]> messages;
+
+    public PreparedMessageCache(int capacity) {
+        int maxEntries = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        this.messages = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    // Returns the handle of the message
+    public String put(byte[] message) {
+        String handle = TagSession.contentHash(message);
+        synchronized (this) {
+            if (messages.get(handle) == null) {
+                messages.put(handle, message);
+            }
+        }
+        return handle;
+    }
+
+    // Puts the message and its { handle, size } into result
+    public JSONObject prepare(byte[] message, JSONObject result) throws JSONException {
+        result.put("handle", put(message));
+        // From the bytes in hand, the entry may already be evicted by a concurrent prepare
+        result.put("size", message.length);
+        return result;
+    }
+
+    // The encoded message, null when the handle is unknown or was evicted. Callers must not modify it.
+    public synchronized byte[] get(String handle) {
+        return handle != null ? messages.get(handle) : null;
+    }
+
+    public synchronized int size() {
+        return messages.size();
+    }
+}
@@ -0,0 +1,120 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bulk provisioning: a queue of pre-built NDEF messages written to successive tags,
+ * one message per tag, without re-arming from JS in between.
+ * Progress is only mutated from the single NFC I/O thread; the lock covers reads of the
+ * summary from the plugin thread.
+ */
+public class ProvisioningSession {
+    public static final String DEFAULT_PLACEHOLDER = "{serial}";
+
+    private final byte[][] messages;
+    private final boolean skipWrittenTags;
+    private final Set<String> writtenUids = new HashSet<>();
+    private final NFCMetrics.Clock clock;
+    private final TagPipeline.EventFactory events;
+    private final long startedAt;
+    private int next = 0;
+    private int skipped = 0;
+    private int failed = 0;
+
+    // Progress and summaries are made by events, durations are measured with clock
+    public ProvisioningSession(byte[][] messages, boolean skipWrittenTags, NFCMetrics.Clock clock, TagPipeline.EventFactory events) {
+        this.messages = messages;
+        this.skipWrittenTags = skipWrittenTags;
+        this.clock = clock;
+        this.events = events;
+        this.startedAt = clock.nanos();
+    }
+
+    public synchronized boolean isFinished() {
+        return next >= messages.length;
+    }
+
+    public synchronized boolean shouldSkip(String uid) {
+        return skipWrittenTags && writtenUids.contains(uid);
+    }
+
+    // Message for the next tag, or null once every message has been written
+    public synchronized byte[] nextMessage() {
+        return next < messages.length ? messages[next] : null;
+    }
+
+    public synchronized JSONObject markWritten(String uid) throws JSONException {
+        writtenUids.add(uid);
+        next++;
+        return progress(next - 1, uid, "written", null);
+    }
+
+    public synchronized JSONObject markSkipped(String uid) throws JSONException {
+        skipped++;
+        return progress(next, uid, "skipped", null);
+    }
+
+    public synchronized JSONObject markFailed(String uid, String error) throws JSONException {
+        // The same message goes to the next tag presented
+        failed++;
+        return progress(next, uid, "failed", error);
+    }
+
+    public synchronized JSONObject summary() throws JSONException {
+        JSONObject result = events.newEvent();
+        result.put("total", messages.length);
+        result.put("written", next);
+        result.put("skipped", skipped);
+        result.put("failed", failed);
+        result.put("remaining", messages.length - next);
+        result.put("finished", next >= messages.length);
+        result.put("durationMs", (clock.nanos() - startedAt) / 1_000_000L);
+        return result;
+    }
+
+    private JSONObject progress(int index, String uid, String status, String error) throws JSONException {
+        JSONObject result = events.newEvent();
+        result.put("index", index);
+        result.put("total", messages.length);
+        result.put("uid", uid);
+        result.put("status", status);
+        if (error != null) {
+            result.put("error", error);
+        }
+        return result;
+    }
+
+    // Expands a record template into `count` messages, replacing the placeholder in every
+    // payload with start, start + 1, ... zero-padded to `padding` digits
+    public static List<JSONArray> expandTemplate(JSONArray records, String placeholder, long start, int count, int padding)
+        throws JSONException {
+        List<JSONArray> messages = new ArrayList<>(Math.max(0, count));
+        String format = padding > 0 ? "%0" + padding + "d" : "%d";
+
+        for (int i = 0; i < count; i++) {
+            String serial = String.format(java.util.Locale.ROOT, format, start + i);
+            JSONArray message = new JSONArray();
+            for (int r = 0; r < records.length(); r++) {
+                JSONObject template = records.getJSONObject(r);
+                JSONObject record = new JSONObject();
+                Iterator<String> keys = template.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    record.put(key, template.get(key));
+                }
+                record.put("payload", template.getString("payload").replace(placeholder, serial));
+                message.put(record);
+            }
+            messages.add(message);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,102 @@
+package com.aacassandra.capacitornfc;
+
+import android.nfc.NfcAdapter;
+import android.os.Build;
+import android.os.Bundle;
+
+/**
+ * Settings for scanning through {@link NfcAdapter#enableReaderMode} instead of
+ * foreground dispatch. Tags are then handed to {@link NFC} directly on a binder
+ * thread, without the PendingIntent / onNewIntent round trip.
+ */
+public class ReaderModeOptions {
+    public static final int DEFAULT_TECH_FLAGS =
+        NfcAdapter.FLAG_READER_NFC_A |
+        NfcAdapter.FLAG_READER_NFC_B |
+        NfcAdapter.FLAG_READER_NFC_F |
+        NfcAdapter.FLAG_READER_NFC_V;
+
+    private int techFlags = DEFAULT_TECH_FLAGS;
+    private boolean skipNdefCheck = false;
+    private boolean noPlatformSounds = false;
+    private int presenceCheckDelay = 0;
+
+    public ReaderModeOptions() {
+    }
+
+    public int getTechFlags() {
+        return techFlags;
+    }
+
+    public ReaderModeOptions setTechFlags(int techFlags) {
+        this.techFlags = techFlags != 0 ? techFlags : DEFAULT_TECH_FLAGS;
+        return this;
+    }
+
+    public boolean isSkipNdefCheck() {
+        return skipNdefCheck;
+    }
+
+    public ReaderModeOptions setSkipNdefCheck(boolean skipNdefCheck) {
+        this.skipNdefCheck = skipNdefCheck;
+        return this;
+    }
+
+    public boolean isNoPlatformSounds() {
+        return noPlatformSounds;
+    }
+
+    public ReaderModeOptions setNoPlatformSounds(boolean noPlatformSounds) {
+        this.noPlatformSounds = noPlatformSounds;
+        return this;
+    }
+
+    public int getPresenceCheckDelay() {
+        return presenceCheckDelay;
+    }
+
+    public ReaderModeOptions setPresenceCheckDelay(int presenceCheckDelay) {
+        this.presenceCheckDelay = Math.max(0, presenceCheckDelay);
+        return this;
+    }
+
+    // Map a technology name coming from JS to its reader-mode flag, 0 if unknown or not available on this device
+    public static int techFlagFor(String technology) {
+        if (technology == null) return 0;
+        switch (technology) {
+            case "nfcA":
+                return NfcAdapter.FLAG_READER_NFC_A;
+            case "nfcB":
+                return NfcAdapter.FLAG_READER_NFC_B;
+            case "nfcF":
+                return NfcAdapter.FLAG_READER_NFC_F;
+            case "nfcV":
+                return NfcAdapter.FLAG_READER_NFC_V;
+            case "barcode":
+                // Added in API 24
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N ? NfcAdapter.FLAG_READER_NFC_BARCODE : 0;
+            default:
+                return 0;
+        }
+    }
+
+    int toFlags() {
+        int flags = techFlags;
+        if (skipNdefCheck) {
+            flags |= NfcAdapter.FLAG_READER_SKIP_NDEF_CHECK;
+        }
+        if (noPlatformSounds) {
+            flags |= NfcAdapter.FLAG_READER_NO_PLATFORM_SOUNDS;
+        }
+        return flags;
+    }
+
+    Bundle toExtras() {
+        if (presenceCheckDelay <= 0) {
+            return null;
+        }
+        Bundle extras = new Bundle();
+        extras.putInt(NfcAdapter.EXTRA_READER_PRESENCE_CHECK_DELAY, presenceCheckDelay);
+        return extras;
+    }
+}
@@ -0,0 +1,317 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Typed decoding of record payloads, put into events as a record's "decoded" value so JS
+ * doesn't have to parse them again on every tap.
+ *
+ * Decoding is opt-in per type ({@link #URI}, {@link #TEXT}, {@link #SMART_POSTER},
+ * {@link #EXTERNAL}, {@link #JSON}). Only the enabled decoders are consulted, each with a check
+ * of the TNF and type bytes, so records nobody asked for pass through without any work. A record
+ * an enabled decoder can't make sense of gets a "decodeError" instead, the rest of the event is
+ * unaffected. Smart Posters are decoded recursively: their URI, titles, action, size and type
+ * always, and any other nested record through the enabled decoders.
+ */
+public final class RecordDecoders {
+    public static final String URI = "uri";
+    public static final String TEXT = "text";
+    public static final String SMART_POSTER = "smartPoster";
+    public static final String EXTERNAL = "external";
+    public static final String JSON = "json";
+
+    private static final byte[] RTD_SMART_POSTER = { 0x53, 0x70 }; // "Sp"
+    private static final byte[] RTD_ACTION = { 0x61, 0x63, 0x74 }; // "act"
+    private static final byte[] RTD_SIZE = { 0x73 }; // "s"
+    private static final byte[] RTD_TYPE = { 0x74 }; // "t"
+    private static final String[] ACTIONS = { "exec", "save", "edit" };
+    // Smart Posters nested deeper than this get a decodeError
+    private static final int MAX_DEPTH = 4;
+
+    private interface Decoder {
+        boolean accepts(NdefCodec.Record record);
+
+        // decoders are the enabled ones, for records nested in this one
+        Object decode(RecordDecoders decoders, NdefCodec.Record record, int depth)
+            throws NdefCodec.MalformedNdefException, JSONException;
+    }
+
+    private final Decoder[] decoders;
+
+    private RecordDecoders(Decoder[] decoders) {
+        this.decoders = decoders;
+    }
+
+    // Decoders for the given types, null when there are none. Throws on an unknown type.
+    public static RecordDecoders of(String... types) {
+        Decoder[] decoders = new Decoder[types.length];
+        int count = 0;
+        for (String type : types) {
+            Decoder decoder = decoderFor(type);
+            boolean duplicate = false;
+            for (int i = 0; i < count; i++) {
+                duplicate |= decoders[i] == decoder;
+            }
+            if (!duplicate) {
+                decoders[count++] = decoder;
+            }
+        }
+        if (count == 0) return null;
+
+        Decoder[] enabled = new Decoder[count];
+        System.arraycopy(decoders, 0, enabled, 0, count);
+        return new RecordDecoders(enabled);
+    }
+
+    /**
+     * Puts the decoded value of the record into recordObj, or decodeError when it's malformed.
+     * Does nothing when no enabled decoder takes the record.
+     */
+    public void put(NdefCodec.Record record, JSONObject recordObj) throws JSONException {
+        put(record, recordObj, 0);
+    }
+
+    private void put(NdefCodec.Record record, JSONObject recordObj, int depth) throws JSONException {
+        Decoder decoder = find(record);
+        if (decoder == null) return;
+
+        try {
+            recordObj.put("decoded", decoder.decode(this, record, depth));
+        } catch (NdefCodec.MalformedNdefException | JSONException e) {
+            recordObj.put("decodeError", e.getMessage());
+        }
+    }
+
+    // Same as put, into a streamed event
+    public void write(NdefCodec.Record record, JsonEventWriter json) {
+        Decoder decoder = find(record);
+        if (decoder == null) return;
+
+        try {
+            Object decoded = decoder.decode(this, record, 0);
+            json.name("decoded").value(decoded);
+        } catch (NdefCodec.MalformedNdefException | JSONException e) {
+            json.name("decodeError").value(e.getMessage());
+        }
+    }
+
+    private Decoder find(NdefCodec.Record record) {
+        for (Decoder decoder : decoders) {
+            if (decoder.accepts(record)) return decoder;
+        }
+        return null;
+    }
+
+    private static Decoder decoderFor(String type) {
+        switch (type) {
+            case URI:
+                return URI_DECODER;
+            case TEXT:
+                return TEXT_DECODER;
+            case SMART_POSTER:
+                return SMART_POSTER_DECODER;
+            case EXTERNAL:
+                return EXTERNAL_DECODER;
+            case JSON:
+                return JSON_DECODER;
+            default:
+                throw new IllegalArgumentException("Unknown record decoder: " + type);
+        }
+    }
+
+    // { uri } with the identifier code expanded
+    private static final Decoder URI_DECODER = new Decoder() {
+        @Override
+        public boolean accepts(NdefCodec.Record record) {
+            return record.isWellKnown(NdefCodec.RTD_URI);
+        }
+
+        @Override
+        public Object decode(RecordDecoders decoders, NdefCodec.Record record, int depth)
+            throws NdefCodec.MalformedNdefException, JSONException {
+            return new JSONObject().put("uri", uri(record));
+        }
+    };
+
+    // { text, language, encoding }
+    private static final Decoder TEXT_DECODER = new Decoder() {
+        @Override
+        public boolean accepts(NdefCodec.Record record) {
+            return record.isWellKnown(NdefCodec.RTD_TEXT);
+        }
+
+        @Override
+        public Object decode(RecordDecoders decoders, NdefCodec.Record record, int depth)
+            throws NdefCodec.MalformedNdefException, JSONException {
+            return text(record);
+        }
+    };
+
+    // { uri, titles, action, size, mimeType, records }, see smartPoster()
+    private static final Decoder SMART_POSTER_DECODER = new Decoder() {
+        @Override
+        public boolean accepts(NdefCodec.Record record) {
+            return record.isWellKnown(RTD_SMART_POSTER);
+        }
+
+        @Override
+        public Object decode(RecordDecoders decoders, NdefCodec.Record record, int depth)
+            throws NdefCodec.MalformedNdefException, JSONException {
+            return smartPoster(decoders, record, depth);
+        }
+    };
+
+    // { domain, name } of an external type such as example.com:tag
+    private static final Decoder EXTERNAL_DECODER = new Decoder() {
+        @Override
+        public boolean accepts(NdefCodec.Record record) {
+            return record.getTnf() == NdefCodec.TNF_EXTERNAL_TYPE;
+        }
+
+        @Override
+        public Object decode(RecordDecoders decoders, NdefCodec.Record record, int depth)
+            throws NdefCodec.MalformedNdefException, JSONException {
+            String type = record.typeString();
+            int colon = type.lastIndexOf(':');
+            if (colon <= 0 || colon == type.length() - 1) {
+                throw new NdefCodec.MalformedNdefException("External type " + type + " isn't domain:name");
+            }
+            return new JSONObject()
+                .put("domain", type.substring(0, colon).toLowerCase(Locale.ROOT))
+                .put("name", type.substring(colon + 1));
+        }
+    };
+
+    // The parsed payload of application/json and +json MIME records
+    private static final Decoder JSON_DECODER = new Decoder() {
+        @Override
+        public boolean accepts(NdefCodec.Record record) {
+            if (record.getTnf() != NdefCodec.TNF_MIME_MEDIA) return false;
+            String type = record.typeString().toLowerCase(Locale.ROOT);
+            int parameters = type.indexOf(';');
+            if (parameters >= 0) {
+                type = type.substring(0, parameters).trim();
+            }
+            return type.equals("application/json") || type.endsWith("+json");
+        }
+
+        @Override
+        public Object decode(RecordDecoders decoders, NdefCodec.Record record, int depth)
+            throws NdefCodec.MalformedNdefException, JSONException {
+            JSONTokener tokener = new JSONTokener(record.payloadString());
+            Object value = tokener.nextValue();
+            if (tokener.nextClean() != 0) {
+                throw new JSONException("Trailing data after the JSON value");
+            }
+            return value;
+        }
+    };
+
+    /**
+     * The records of a Smart Poster: its URI, the titles in every language, the recommended
+     * action (exec, save or edit), the size and MIME type of what the URI points to, and any
+     * other record (e.g. an icon) as { tnf, type, payloadSize } plus its decoded value when one
+     * of the enabled decoders takes it.
+     */
+    static JSONObject smartPoster(RecordDecoders decoders, NdefCodec.Record record, int depth)
+        throws NdefCodec.MalformedNdefException, JSONException {
+        if (depth >= MAX_DEPTH) {
+            throw new NdefCodec.MalformedNdefException("Smart Poster nested too deep");
+        }
+        NdefCodec.Message nested = NdefCodec.decode(
+            record.payloadBuffer(), record.payloadOffset(), record.getPayloadLength(), null);
+
+        JSONObject result = new JSONObject();
+        JSONArray titles = new JSONArray();
+        JSONArray others = null;
+        for (int i = 0; i < nested.size(); i++) {
+            NdefCodec.Record child = nested.get(i);
+            if (child.isWellKnown(NdefCodec.RTD_URI) && !result.has("uri")) {
+                result.put("uri", uri(child));
+            } else if (child.isWellKnown(NdefCodec.RTD_TEXT)) {
+                titles.put(text(child));
+            } else if (child.isWellKnown(RTD_ACTION) && child.getPayloadLength() == 1) {
+                int action = child.payloadBuffer()[child.payloadOffset()] & 0xFF;
+                if (action < ACTIONS.length) {
+                    result.put("action", ACTIONS[action]);
+                }
+            } else if (child.isWellKnown(RTD_SIZE) && child.getPayloadLength() == 4) {
+                byte[] size = child.payloadBuffer();
+                int offset = child.payloadOffset();
+                result.put("size", (size[offset] & 0xFFL) << 24 | (size[offset + 1] & 0xFF) << 16
+                    | (size[offset + 2] & 0xFF) << 8 | (size[offset + 3] & 0xFF));
+            } else if (child.isWellKnown(RTD_TYPE)) {
+                result.put("mimeType", child.payloadString());
+            } else {
+                JSONObject other = new JSONObject();
+                other.put("tnf", child.getTnf());
+                other.put("type", child.typeString());
+                other.put("payloadSize", child.getPayloadLength());
+                if (decoders != null) {
+                    decoders.put(child, other, depth + 1);
+                }
+                if (others == null) {
+                    others = new JSONArray();
+                }
+                others.put(other);
+            }
+        }
+        if (!result.has("uri")) {
+            throw new NdefCodec.MalformedNdefException("Smart Poster has no URI record");
+        }
+        result.put("titles", titles);
+        if (others != null) {
+            result.put("records", others);
+        }
+        return result;
+    }
+
+    static String uri(NdefCodec.Record record) throws NdefCodec.MalformedNdefException {
+        if (record.getPayloadLength() == 0) {
+            throw new NdefCodec.MalformedNdefException("URI record is empty");
+        }
+        int code = record.payloadBuffer()[record.payloadOffset()] & 0xFF;
+        // Codes beyond the table are reserved, the rest of the URI is kept as it is
+        String prefix = code < NdefCodec.URI_PREFIXES.length ? NdefCodec.URI_PREFIXES[code] : "";
+        return prefix + record.payloadString(1);
+    }
+
+    static JSONObject text(NdefCodec.Record record) throws NdefCodec.MalformedNdefException, JSONException {
+        byte[] payload = record.payloadBuffer();
+        int offset = record.payloadOffset();
+        int length = record.getPayloadLength();
+        if (length == 0) {
+            throw new NdefCodec.MalformedNdefException("Text record is empty");
+        }
+        int status = payload[offset] & 0xFF;
+        boolean utf16 = (status & 0x80) != 0;
+        int languageLength = status & 0x3F;
+        if (1 + languageLength > length) {
+            throw new NdefCodec.MalformedNdefException("Text record language code runs past the payload");
+        }
+
+        int textOffset = offset + 1 + languageLength;
+        int textLength = length - 1 - languageLength;
+        String text;
+        if (!utf16) {
+            text = new String(payload, textOffset, textLength, StandardCharsets.UTF_8);
+        } else if (textLength >= 2 && (payload[textOffset] & 0xFF) == 0xFF && (payload[textOffset + 1] & 0xFF) == 0xFE) {
+            text = new String(payload, textOffset + 2, textLength - 2, StandardCharsets.UTF_16LE);
+        } else if (textLength >= 2 && (payload[textOffset] & 0xFF) == 0xFE && (payload[textOffset + 1] & 0xFF) == 0xFF) {
+            text = new String(payload, textOffset + 2, textLength - 2, StandardCharsets.UTF_16BE);
+        } else {
+            // Big endian without a byte order mark, as the Text RTD specifies
+            text = new String(payload, textOffset, textLength, StandardCharsets.UTF_16BE);
+        }
+        return new JSONObject()
+            .put("text", text)
+            .put("language", new String(payload, offset + 1, languageLength, StandardCharsets.US_ASCII))
+            .put("encoding", utf16 ? "UTF-16" : "UTF-8");
+    }
+}
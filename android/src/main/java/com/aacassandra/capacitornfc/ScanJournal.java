@@ -0,0 +1,427 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of delivered tags, so discoveries survive a busy, reloading or
+ * backgrounded WebView and the app can catch up with {@link #read} / {@link #ack}.
+ *
+ * Entries get increasing sequence numbers and are appended to segment files named after their
+ * first sequence number. Each entry is length-prefixed and ends with a CRC32, so a torn write at
+ * the end of the last segment is cut off when the journal is opened again. Appends only go to a
+ * buffer; the buffer is flushed and fsynced on a background thread once syncEveryEvents entries
+ * are pending or syncIntervalMillis after the first pending one, whichever comes first. A segment
+ * is closed once it reaches segmentBytes, and fsynced on that same thread; segments whose entries
+ * are all acknowledged are deleted, and beyond maxSegments the oldest is deleted even when it
+ * isn't.
+ */
+public class ScanJournal {
+    public static final String KIND_TAG = "tag";
+    public static final String KIND_UID = "uid";
+
+    private static final byte KIND_TAG_CODE = 1;
+    private static final byte KIND_UID_CODE = 2;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String ACK_FILE = "journal.ack";
+    // seq, timestamp, kind, uid length, digest, NDEF length
+    private static final int FIXED_BODY_BYTES = 8 + 8 + 1 + 1 + 8 + 4;
+    // Anything longer is taken for a corrupt length prefix
+    private static final int MAX_BODY_BYTES = FIXED_BODY_BYTES + 255 + 1024 * 1024;
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private final File directory;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final int syncEveryEvents;
+    private final long syncIntervalMillis;
+    private final boolean includeNdef;
+    private final ScheduledExecutorService syncer;
+    private final CRC32 crc = new CRC32();
+    private final List<Long> segments = new ArrayList<>();
+
+    private FileOutputStream segmentFile;
+    private BufferedOutputStream segmentOut;
+    private long segmentSize;
+    private byte[] scratch = new byte[256];
+    private long nextSeq = 1;
+    private long ackedSeq = 0;
+    private int pending = 0;
+    private boolean syncScheduled = false;
+    private boolean closed = false;
+
+    public ScanJournal(File directory, long segmentBytes, int maxSegments, int syncEveryEvents, long syncIntervalMillis,
+                       boolean includeNdef) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = Math.max(4096, segmentBytes);
+        this.maxSegments = Math.max(2, maxSegments);
+        this.syncEveryEvents = Math.max(1, syncEveryEvents);
+        this.syncIntervalMillis = Math.max(0, syncIntervalMillis);
+        this.includeNdef = includeNdef;
+        this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "NFC-Journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+        open();
+    }
+
+    // Records a delivered tag and returns its sequence number
+    public synchronized long append(String kind, byte[] uid, byte[][] messages, long timestampMillis) throws IOException {
+        if (closed) throw new IOException("Journal is closed");
+
+        byte[] id = uid != null ? uid : NO_BYTES;
+        long digest = TagDedupCache.fingerprint(NO_BYTES);
+        int ndefLength = 0;
+        if (messages != null) {
+            for (byte[] message : messages) {
+                digest = TagDedupCache.mix(digest, message, 0, message.length);
+                ndefLength += message.length;
+            }
+        }
+        if (!includeNdef) ndefLength = 0;
+
+        int bodyLength = FIXED_BODY_BYTES + Math.min(id.length, 255) + ndefLength;
+        if (scratch.length < 4 + bodyLength + 4) {
+            scratch = new byte[Math.max(scratch.length * 2, 4 + bodyLength + 4)];
+        }
+        long seq = nextSeq;
+        ByteBuffer buffer = ByteBuffer.wrap(scratch);
+        buffer.putInt(bodyLength);
+        buffer.putLong(seq);
+        buffer.putLong(timestampMillis);
+        buffer.put(KIND_UID.equals(kind) ? KIND_UID_CODE : KIND_TAG_CODE);
+        buffer.put((byte) Math.min(id.length, 255));
+        buffer.put(id, 0, Math.min(id.length, 255));
+        buffer.putLong(digest);
+        buffer.putInt(ndefLength);
+        if (ndefLength > 0) {
+            for (byte[] message : messages) {
+                buffer.put(message);
+            }
+        }
+        crc.reset();
+        crc.update(scratch, 4, bodyLength);
+        buffer.putInt((int) crc.getValue());
+
+        if (segmentSize > 0 && segmentSize + buffer.position() > segmentBytes) {
+            rotate(seq);
+        }
+        segmentOut.write(scratch, 0, buffer.position());
+        segmentSize += buffer.position();
+        nextSeq++;
+
+        pending++;
+        if (pending >= syncEveryEvents) {
+            scheduleSync(0);
+        } else if (!syncScheduled) {
+            scheduleSync(syncIntervalMillis);
+        }
+        return seq;
+    }
+
+    /**
+     * Puts up to limit entries after sinceSeq into out, plus firstSeq (oldest entry still
+     * kept, a larger value than sinceSeq + 1 means entries were dropped), lastSeq, ackedSeq
+     * and hasMore. Segment files are scanned without holding the lock appends take, so a tap
+     * never waits for a read; entries appended meanwhile are left for the next read.
+     */
+    public void read(long sinceSeq, int limit, JSONObject out) throws IOException, JSONException {
+        List<Long> segmentsSnapshot;
+        long lastSeq;
+        long acked;
+        synchronized (this) {
+            if (closed) throw new IOException("Journal is closed");
+            segmentOut.flush();
+            segmentsSnapshot = new ArrayList<>(segments);
+            lastSeq = nextSeq - 1;
+            acked = ackedSeq;
+        }
+
+        CRC32 readCrc = new CRC32();
+        JSONArray entries = new JSONArray();
+        boolean hasMore = false;
+        int start = 0;
+        for (int i = 0; i < segmentsSnapshot.size(); i++) {
+            if (segmentsSnapshot.get(i) <= sinceSeq + 1) start = i;
+        }
+        for (int i = start; i < segmentsSnapshot.size() && !hasMore; i++) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentPath(segmentsSnapshot.get(i)))))) {
+                Entry entry;
+                while ((entry = readEntry(in, readCrc)) != null && entry.seq <= lastSeq) {
+                    if (entry.seq <= sinceSeq) continue;
+                    if (entries.length() >= limit) {
+                        hasMore = true;
+                        break;
+                    }
+                    entries.put(entry.toJson());
+                }
+            } catch (FileNotFoundException e) {
+                // Acknowledged or dropped since the snapshot
+            }
+        }
+
+        out.put("entries", entries);
+        out.put("firstSeq", segmentsSnapshot.isEmpty() ? lastSeq + 1 : segmentsSnapshot.get(0));
+        out.put("lastSeq", lastSeq);
+        out.put("ackedSeq", acked);
+        out.put("hasMore", hasMore);
+    }
+
+    // Everything up to seq was processed: persists the ack and deletes fully acknowledged segments
+    public synchronized void ack(long seq) throws IOException {
+        if (closed) throw new IOException("Journal is closed");
+        long acked = Math.min(seq, nextSeq - 1);
+        if (acked <= ackedSeq) return;
+
+        ackedSeq = acked;
+        try (FileOutputStream ackOut = new FileOutputStream(new File(directory, ACK_FILE))) {
+            ackOut.write(ByteBuffer.allocate(8).putLong(ackedSeq).array());
+            ackOut.getFD().sync();
+        }
+        // The open segment stays, whatever its acknowledgement
+        while (segments.size() > 1 && segments.get(1) - 1 <= ackedSeq) {
+            deleteOldestSegment();
+        }
+    }
+
+    public synchronized long getLastSeq() {
+        return nextSeq - 1;
+    }
+
+    public synchronized long getAckedSeq() {
+        return ackedSeq;
+    }
+
+    // Syncs what's pending and stops the sync thread
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        // Segments still waiting to be sealed get it now
+        for (Runnable task : syncer.shutdownNow()) {
+            task.run();
+        }
+        synchronized (this) {
+            try {
+                segmentOut.flush();
+                segmentFile.getFD().sync();
+                segmentOut.close();
+            } catch (IOException e) {
+                // Nothing left to do about it
+            }
+        }
+    }
+
+    private void open() throws IOException {
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        Collections.sort(segments);
+
+        File ackFile = new File(directory, ACK_FILE);
+        if (ackFile.length() == 8) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(ackFile))) {
+                ackedSeq = in.readLong();
+            }
+        }
+
+        long lastSeq = ackedSeq;
+        if (!segments.isEmpty()) {
+            long first = segments.get(segments.size() - 1);
+            File last = segmentPath(first);
+            long validLength = 0;
+            lastSeq = Math.max(lastSeq, first - 1);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(last)))) {
+                Entry entry;
+                while ((entry = readEntry(in, crc)) != null) {
+                    validLength += entry.encodedLength;
+                    lastSeq = Math.max(lastSeq, entry.seq);
+                }
+            }
+            if (validLength < last.length()) {
+                // Cut off a torn write from a crash
+                try (RandomAccessFile file = new RandomAccessFile(last, "rw")) {
+                    file.setLength(validLength);
+                }
+            }
+        }
+        nextSeq = lastSeq + 1;
+
+        if (segments.isEmpty()) {
+            segments.add(nextSeq);
+        }
+        long current = segments.get(segments.size() - 1);
+        File file = segmentPath(current);
+        segmentFile = new FileOutputStream(file, true);
+        segmentOut = new BufferedOutputStream(segmentFile, 8192);
+        segmentSize = file.length();
+    }
+
+    // The full segment is flushed here and fsynced and closed on the sync thread, off the tap
+    private void rotate(long firstSeq) throws IOException {
+        segmentOut.flush();
+        FileOutputStream sealed = segmentFile;
+        try {
+            syncer.execute(() -> seal(sealed));
+        } catch (RejectedExecutionException e) {
+            seal(sealed);
+        }
+        pending = 0;
+
+        segments.add(firstSeq);
+        segmentFile = new FileOutputStream(segmentPath(firstSeq), true);
+        segmentOut = new BufferedOutputStream(segmentFile, 8192);
+        segmentSize = 0;
+        while (segments.size() > maxSegments) {
+            deleteOldestSegment();
+        }
+    }
+
+    private static void seal(FileOutputStream segment) {
+        try {
+            segment.getFD().sync();
+        } catch (IOException e) {
+            // Nothing left to do about it
+        } finally {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                // Same
+            }
+        }
+    }
+
+    private void deleteOldestSegment() {
+        File oldest = segmentPath(segments.remove(0));
+        if (!oldest.delete()) {
+            oldest.deleteOnExit();
+        }
+    }
+
+    private void scheduleSync(long delayMillis) {
+        syncScheduled = true;
+        try {
+            syncer.schedule(this::sync, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            syncScheduled = false;
+        }
+    }
+
+    // Group commit: one flush and fsync for everything appended since the last one
+    private void sync() {
+        FileOutputStream file;
+        synchronized (this) {
+            syncScheduled = false;
+            if (closed || pending == 0) return;
+            try {
+                segmentOut.flush();
+            } catch (IOException e) {
+                return;
+            }
+            pending = 0;
+            file = segmentFile;
+        }
+        try {
+            file.getFD().sync();
+        } catch (IOException e) {
+            // The segment was sealed in the meantime, which synced it
+        }
+    }
+
+    private File segmentPath(long firstSeq) {
+        return new File(directory, SEGMENT_PREFIX + String.format(Locale.ROOT, "%020d", firstSeq) + SEGMENT_SUFFIX);
+    }
+
+    // Null at the end of the segment, including a torn or corrupt last entry
+    private static Entry readEntry(DataInputStream in, CRC32 crc) throws IOException {
+        int bodyLength;
+        try {
+            bodyLength = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (bodyLength < FIXED_BODY_BYTES || bodyLength > MAX_BODY_BYTES) return null;
+
+        byte[] body = new byte[bodyLength];
+        try {
+            in.readFully(body);
+            int storedCrc = in.readInt();
+            crc.reset();
+            crc.update(body, 0, bodyLength);
+            if ((int) crc.getValue() != storedCrc) return null;
+        } catch (EOFException e) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        Entry entry = new Entry();
+        entry.encodedLength = 4 + bodyLength + 4;
+        entry.seq = buffer.getLong();
+        entry.timestamp = buffer.getLong();
+        entry.kind = buffer.get() == KIND_UID_CODE ? KIND_UID : KIND_TAG;
+        entry.uid = new byte[buffer.get() & 0xFF];
+        buffer.get(entry.uid);
+        entry.digest = buffer.getLong();
+        int ndefLength = buffer.getInt();
+        entry.ndef = ndefLength > 0 ? Arrays.copyOfRange(body, buffer.position(), buffer.position() + ndefLength) : null;
+        return entry;
+    }
+
+    private static final class Entry {
+        long seq;
+        long timestamp;
+        String kind;
+        byte[] uid;
+        long digest;
+        byte[] ndef;
+        int encodedLength;
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("seq", seq);
+            json.put("timestamp", timestamp);
+            json.put("kind", kind);
+            json.put("uid", UidEncoder.toHex(uid));
+            json.put("digest", String.format(Locale.ROOT, "%016x", digest));
+            if (ndef != null) {
+                json.put("ndef", UidEncoder.toHex(ndef));
+            }
+            return json;
+        }
+    }
+}
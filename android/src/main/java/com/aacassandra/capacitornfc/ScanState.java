@@ -0,0 +1,106 @@
+package com.aacassandra.capacitornfc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * What the plugin does with the next tag: one immutable {@link Session}, replaced atomically.
+ *
+ * Sessions are armed and stopped from the plugin thread, while taps arrive on the main thread
+ * (foreground dispatch) or a binder thread (reader mode) and finish on the NFC I/O thread. A tap
+ * reads the armed session once, is handled with that session's settings only, and its result is
+ * delivered only while that same session is still armed. A tap that straddles a stop or a
+ * restart is dropped rather than reported as an event of the next session.
+ *
+ * Every armed session gets a new id; the idle state has id 0. No locks are taken, so taps
+ * never wait on a transition.
+ */
+public final class ScanState {
+    public enum Mode {
+        IDLE,
+        READ,
+        UID,
+        INVENTORY,
+        RAW_READ,
+        CLASSIC_READ,
+        WRITE,
+        PROVISION,
+        SESSION
+    }
+
+    public static final class Session {
+        public final long id;
+        public final Mode mode;
+        // Whatever the mode works with, e.g. the message to write. Null for plain reads.
+        public final Object settings;
+
+        private Session(long id, Mode mode, Object settings) {
+            this.id = id;
+            this.mode = mode;
+            this.settings = settings;
+        }
+    }
+
+    public static final Session IDLE = new Session(0, Mode.IDLE, null);
+
+    private final AtomicReference<Session> current = new AtomicReference<>(IDLE);
+    private final AtomicLong lastId = new AtomicLong();
+    private final AtomicLong staleDropped = new AtomicLong();
+
+    public Session current() {
+        return current.get();
+    }
+
+    // A session with the next id, not armed yet
+    public Session create(Mode mode, Object settings) {
+        if (mode == Mode.IDLE) throw new IllegalArgumentException("Use stop() to go idle");
+        return new Session(lastId.incrementAndGet(), mode, settings);
+    }
+
+    /**
+     * Arms the session in place of whatever was armed, and returns the one it replaced so the
+     * caller can release it.
+     */
+    public Session arm(Session session) {
+        return current.getAndSet(session);
+    }
+
+    /**
+     * Goes idle if the armed session has one of the given modes. Returns the stopped session, or
+     * null when another mode was armed, which is left alone.
+     */
+    public Session stop(Mode... modes) {
+        while (true) {
+            Session session = current.get();
+            if (!hasMode(session, modes)) return null;
+            if (current.compareAndSet(session, IDLE)) return session;
+        }
+    }
+
+    // Goes idle only if this exact session is still armed, e.g. when it ends by itself
+    public boolean finish(Session session) {
+        return session != IDLE && current.compareAndSet(session, IDLE);
+    }
+
+    /**
+     * Whether a result of a tap handled for this session can still be delivered. Counts the ones
+     * that can't as stale.
+     */
+    public boolean isArmed(Session session) {
+        if (session != IDLE && current.get() == session) return true;
+        staleDropped.incrementAndGet();
+        return false;
+    }
+
+    // Tap results dropped because their session was stopped or replaced
+    public long getStaleDropped() {
+        return staleDropped.get();
+    }
+
+    private static boolean hasMode(Session session, Mode[] modes) {
+        for (Mode mode : modes) {
+            if (session.mode == mode) return true;
+        }
+        return false;
+    }
+}
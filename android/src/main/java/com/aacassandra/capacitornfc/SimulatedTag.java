@@ -0,0 +1,592 @@
+package com.aacassandra.capacitornfc;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory {@link TagTransport} for load tests and CI, where there's no reader and no tags.
+ *
+ * Type 2 layouts (NTAG21x, Ultralight) keep their whole memory in pages and answer GET_VERSION,
+ * READ, FAST_READ, WRITE, READ_SIG and READ_CNT like the real chips; NDEF reads and writes go
+ * through the same pages, so diff writes and raw reads see what NDEF writes left behind. The
+ * Classic layout keeps its NDEF area in the data blocks of sectors 1 and up, behind the
+ * manufacturer and MAD blocks of sector 0, and protects each sector with key A (the MAD key for
+ * sector 0, the NFC Forum key for the others) and key B (the transport key) like a freshly NDEF
+ * formatted card. A failed authentication costs a second command for the reactivation after it.
+ *
+ * Every command (connect, transceive, each page or block of an NDEF write) costs the configured
+ * latency and may fail with the configured error rate or command budget. A failure takes the tag
+ * out of the field until the next {@link #tap()}, like a card pulled away mid-write, or with
+ * transient failures only until it's connected again, like a glitch in a marginal field. Not
+ * thread-safe: one tap is handled at a time.
+ */
+public class SimulatedTag implements TagTransport {
+    private static final byte[] ACK = { 0x0A };
+    private static final int BLOCK_SIZE = 16;
+
+    public static final class Layout {
+        public static final Layout NTAG213 = new Layout("NTAG213", 45, 144, ntagVersion(0x0F));
+        public static final Layout NTAG215 = new Layout("NTAG215", 135, 504, ntagVersion(0x11));
+        public static final Layout NTAG216 = new Layout("NTAG216", 231, 872, ntagVersion(0x13));
+        // Original Ultralight: no GET_VERSION / FAST_READ
+        public static final Layout ULTRALIGHT = new Layout("MIFARE Ultralight", 16, 48, null);
+        // No GET_VERSION either, and pages 0x2C-0x2F hold the 3DES key, which READ refuses
+        public static final Layout ULTRALIGHT_C = new Layout("MIFARE Ultralight C", 48, 144, null, 44);
+        // 15 sectors of 3 data blocks behind the MAD sector
+        public static final Layout CLASSIC_1K = new Layout("MIFARE Classic 1K", 0, 720, null);
+
+        final String name;
+        final int pageCount;
+        final int dataAreaBytes;
+        final byte[] version;
+        // Pages READ answers for, the rest can only be written
+        final int readablePages;
+
+        // Custom Type 2 layout, or a Classic-like one with pageCount 0. dataAreaBytes must be a multiple of 8.
+        public Layout(String name, int pageCount, int dataAreaBytes, byte[] version) {
+            this(name, pageCount, dataAreaBytes, version, pageCount);
+        }
+
+        public Layout(String name, int pageCount, int dataAreaBytes, byte[] version, int readablePages) {
+            this.name = name;
+            this.pageCount = pageCount;
+            this.dataAreaBytes = dataAreaBytes;
+            this.version = version;
+            this.readablePages = readablePages;
+        }
+
+        public boolean isType2() {
+            return pageCount > 0;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+        private static byte[] ntagVersion(int storageSize) {
+            return new byte[] { 0x00, 0x04, 0x04, 0x02, 0x01, 0x00, (byte) storageSize, 0x03 };
+        }
+    }
+
+    // Same simple name as android.nfc.TagLostException, so metrics group them together
+    public static class TagLostException extends IOException {
+        public TagLostException() {
+            super("Tag was lost.");
+        }
+    }
+
+    private final Layout layout;
+    private final byte[] uid;
+    // Type 2: all pages. Classic: only the NDEF data area.
+    private final byte[] memory;
+    private final byte[] signature;
+
+    private long commandLatencyNanos = 0;
+    private double failureRate = 0;
+    private Random random = new Random(0);
+    private int commandBudget = -1;
+    private boolean transientFailures = false;
+    private boolean readOnly = false;
+    private int maxTransceiveLength = 253;
+    private int timeoutMillis = 0;
+
+    private Technology connected;
+    private boolean lost = false;
+    private boolean halted = false;
+    private int nfcCounter = 0;
+    private int authenticatedSector = -1;
+    private byte[][] sectorKeysA;
+    private byte[][] sectorKeysB;
+    private boolean[] readDenied;
+    private long commands = 0;
+
+    public SimulatedTag(Layout layout, byte[] uid) {
+        this.layout = layout;
+        this.uid = uid.clone();
+        this.memory = new byte[layout.isType2() ? layout.pageCount * NtagReader.PAGE_SIZE : layout.dataAreaBytes];
+        this.signature = new byte[32];
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = (byte) (uid[i % uid.length] * 31 + i);
+        }
+        if (layout.isType2()) {
+            writeUidPages();
+        } else {
+            int sectorCount = getSectorCount();
+            sectorKeysA = new byte[sectorCount][];
+            sectorKeysB = new byte[sectorCount][];
+            readDenied = new boolean[sectorCount * 4];
+            for (int sector = 0; sector < sectorCount; sector++) {
+                sectorKeysA[sector] = MifareClassicReader.DEFAULT_KEYS[sector == 0 ? 1 : 2];
+                sectorKeysB[sector] = MifareClassicReader.DEFAULT_KEYS[0];
+            }
+        }
+        formatEmpty();
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    public SimulatedTag setCommandLatencyNanos(long commandLatencyNanos) {
+        this.commandLatencyNanos = commandLatencyNanos;
+        return this;
+    }
+
+    // Probability of each command losing the tag, drawn from a seeded generator
+    public SimulatedTag setFailureRate(double failureRate, long seed) {
+        this.failureRate = failureRate;
+        this.random = new Random(seed);
+        return this;
+    }
+
+    // Failed commands drop the tag only until the next connect, instead of until the next tap
+    public SimulatedTag setTransientFailures(boolean transientFailures) {
+        this.transientFailures = transientFailures;
+        return this;
+    }
+
+    // Classic layout: the keys a sector accepts, null keeps the current one
+    public SimulatedTag setSectorKeys(int sector, byte[] keyA, byte[] keyB) {
+        if (keyA != null) sectorKeysA[sector] = keyA.clone();
+        if (keyB != null) sectorKeysB[sector] = keyB.clone();
+        return this;
+    }
+
+    // Classic layout: the access bits refuse reading the block with either key
+    public SimulatedTag setReadDenied(int block, boolean denied) {
+        readDenied[block] = denied;
+        return this;
+    }
+
+    // Loses the tag after this many commands of the current tap, -1 for never
+    public SimulatedTag setCommandBudget(int commandBudget) {
+        this.commandBudget = commandBudget;
+        return this;
+    }
+
+    public SimulatedTag setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+        if (layout.isType2() && isFormatted()) {
+            // Write access nibble of the capability container
+            memory[NtagDiffWriter.CC_PAGE * NtagReader.PAGE_SIZE + 3] = (byte) (readOnly ? 0x0F : 0x00);
+        }
+        return this;
+    }
+
+    public SimulatedTag setMaxTransceiveLength(int maxTransceiveLength) {
+        this.maxTransceiveLength = maxTransceiveLength;
+        return this;
+    }
+
+    // Wipes the NDEF area and capability container, so the tag only offers NdefFormatable
+    public SimulatedTag erase() {
+        int start = layout.isType2() ? NtagDiffWriter.CC_PAGE * NtagReader.PAGE_SIZE : 0;
+        Arrays.fill(memory, start, dataAreaOffset() + layout.dataAreaBytes, (byte) 0);
+        return this;
+    }
+
+    // The tag (re)enters the field: clears lost / halted state and the per-tap command budget
+    public void tap() {
+        lost = false;
+        halted = false;
+        connected = null;
+        commands = 0;
+        authenticatedSector = -1;
+    }
+
+    public long getCommandCount() {
+        return commands;
+    }
+
+    public byte[] getMemory() {
+        return memory.clone();
+    }
+
+    @Override
+    public byte[] getId() {
+        return uid.clone();
+    }
+
+    @Override
+    public String[] getTechList() {
+        String ndefTech = isFormatted() ? "android.nfc.tech.Ndef" : "android.nfc.tech.NdefFormatable";
+        String familyTech = layout.isType2() ? "android.nfc.tech.MifareUltralight" : "android.nfc.tech.MifareClassic";
+        return new String[] { "android.nfc.tech.NfcA", familyTech, ndefTech };
+    }
+
+    @Override
+    public boolean hasTechnology(Technology technology) {
+        switch (technology) {
+            case NFC_A:
+                return true;
+            case MIFARE_ULTRALIGHT:
+                return layout.isType2();
+            case MIFARE_CLASSIC:
+                return !layout.isType2();
+            case NDEF:
+                return isFormatted();
+            case NDEF_FORMATABLE:
+                return !isFormatted();
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public byte[] getCachedNdefMessage() {
+        if (!isFormatted()) return null;
+        int offset = ndefTlvOffset();
+        int end = dataAreaOffset() + layout.dataAreaBytes;
+        if (offset < 0 || memory[offset] != NtagDiffWriter.TLV_NDEF || offset + 1 >= end) return null;
+        int length = memory[offset + 1] & 0xFF;
+        int header = 2;
+        if (length == 0xFF) {
+            if (offset + 3 >= end) return null;
+            length = ((memory[offset + 2] & 0xFF) << 8) | (memory[offset + 3] & 0xFF);
+            header = 4;
+        }
+        if (length == 0 || offset + header + length > end) return null;
+        return Arrays.copyOfRange(memory, offset + header, offset + header + length);
+    }
+
+    @Override
+    public TagCapability getCapability() {
+        if (!isFormatted()) {
+            return new TagCapability(TagCapability.UNKNOWN_SIZE, true, false, "NdefFormatable");
+        }
+        // Room for the NDEF TLV header, 3 length bytes once the message is 255 bytes or more
+        int maxSize = layout.dataAreaBytes - 2;
+        if (maxSize >= 0xFF) maxSize = layout.dataAreaBytes - 4;
+        return new TagCapability(maxSize, !readOnly, true, layout.toString());
+    }
+
+    // What Android reports: the readable pages of tags without GET_VERSION, which only the
+    // Ultralight C has more than 16 of
+    @Override
+    public int getFallbackPageCount() {
+        return layout.isType2() && layout.version == null ? layout.readablePages : 16;
+    }
+
+    @Override
+    public void connect(Technology technology) throws IOException {
+        if (transientFailures) {
+            lost = false;
+        }
+        command();
+        if (!hasTechnology(technology)) {
+            throw new IOException("Tag doesn't support " + technology);
+        }
+        if (technology == Technology.NFC_A) {
+            nfcCounter++;
+        }
+        halted = false;
+        connected = technology;
+        timeoutMillis = 0;
+        authenticatedSector = -1;
+    }
+
+    @Override
+    public void close() {
+        connected = null;
+        timeoutMillis = 0;
+        authenticatedSector = -1;
+    }
+
+    // A transceive slower than the timeout fails, the tag stays in the field
+    @Override
+    public void setTimeout(int millis) {
+        if (connected == Technology.NFC_A) {
+            timeoutMillis = millis;
+        }
+    }
+
+    @Override
+    public boolean isWritable() throws IOException {
+        requireConnected(Technology.NDEF);
+        return !readOnly;
+    }
+
+    // Costs one command per 16 bytes read, like Type 2 READ
+    @Override
+    public byte[] readNdefMessage() throws IOException {
+        requireConnected(Technology.NDEF);
+        byte[] message = getCachedNdefMessage();
+        int length = message != null ? message.length + 4 : 1;
+        for (int read = 0; read < length; read += BLOCK_SIZE) {
+            command();
+        }
+        return message;
+    }
+
+    @Override
+    public void writeNdefMessage(byte[] message) throws IOException {
+        requireConnected(Technology.NDEF);
+        if (readOnly) {
+            throw new IOException("Tag is read-only");
+        }
+        writeDataArea(NtagDiffWriter.layout(message));
+    }
+
+    @Override
+    public void format(byte[] message) throws IOException {
+        requireConnected(Technology.NDEF_FORMATABLE);
+        if (readOnly) {
+            throw new IOException("Tag is read-only");
+        }
+        command();
+        writeCapabilityContainer();
+        writeDataArea(NtagDiffWriter.layout(message));
+    }
+
+    // Sector 0 plus one sector per 3 data blocks of the NDEF area, 0 for Type 2 layouts
+    @Override
+    public int getSectorCount() {
+        return layout.isType2() ? 0 : 1 + layout.dataAreaBytes / (3 * BLOCK_SIZE);
+    }
+
+    @Override
+    public int getBlockCountInSector(int sector) {
+        return 4;
+    }
+
+    @Override
+    public int sectorToBlock(int sector) {
+        return sector * 4;
+    }
+
+    @Override
+    public boolean authenticateSector(int sector, byte[] key, boolean keyA) throws IOException {
+        requireConnected(Technology.MIFARE_CLASSIC);
+        command();
+        if (sector < 0 || sector >= getSectorCount()) {
+            throw new IOException("Sector out of bounds: " + sector);
+        }
+        if (!halted && Arrays.equals(keyA ? sectorKeysA[sector] : sectorKeysB[sector], key)) {
+            authenticatedSector = sector;
+            return true;
+        }
+        // The card halts and has to be woken up again
+        authenticatedSector = -1;
+        command();
+        return false;
+    }
+
+    // Trailers read back with both keys as zeros, like cards whose key B isn't readable
+    @Override
+    public byte[] readBlock(int block) throws IOException {
+        requireConnected(Technology.MIFARE_CLASSIC);
+        command();
+        int sector = block / 4;
+        if (sector != authenticatedSector || halted) {
+            throw new IOException("Transceive failed");
+        }
+        if (readDenied[block]) {
+            // The card halts until it's activated again
+            authenticatedSector = -1;
+            halted = true;
+            throw new IOException("Transceive failed");
+        }
+        byte[] data = new byte[BLOCK_SIZE];
+        int index = block % 4;
+        if (index == 3) {
+            data[6] = (byte) 0xFF;
+            data[7] = 0x07;
+            data[8] = (byte) 0x80;
+            data[9] = 0x69;
+        } else if (sector > 0) {
+            System.arraycopy(memory, ((sector - 1) * 3 + index) * BLOCK_SIZE, data, 0, BLOCK_SIZE);
+        } else if (index == 0) {
+            // Manufacturer block: UID, BCC, SAK, ATQA
+            System.arraycopy(uid, 0, data, 0, Math.min(4, uid.length));
+            data[4] = (byte) (data[0] ^ data[1] ^ data[2] ^ data[3]);
+            data[5] = 0x08;
+            data[6] = 0x04;
+        }
+        return data;
+    }
+
+    @Override
+    public byte[] transceive(byte[] command) throws IOException {
+        requireConnected(Technology.NFC_A);
+        command();
+        if (timeoutMillis > 0 && commandLatencyNanos > timeoutMillis * 1_000_000L) {
+            throw new IOException("Transceive timed out");
+        }
+        if (halted || !layout.isType2() || command.length == 0) {
+            throw nak();
+        }
+
+        switch (command[0]) {
+            case NtagReader.CMD_GET_VERSION:
+                if (layout.version == null) throw nak();
+                return layout.version.clone();
+            case NtagReader.CMD_READ:
+                return read(command[1] & 0xFF);
+            case NtagReader.CMD_FAST_READ:
+                return fastRead(command[1] & 0xFF, command[2] & 0xFF);
+            case NtagDiffWriter.CMD_WRITE:
+                return writePage(command);
+            case NtagReader.CMD_READ_SIG:
+                if (layout.version == null) throw nak();
+                return signature.clone();
+            case NtagReader.CMD_READ_CNT:
+                if (layout.version == null || command[1] != 0x02) throw nak();
+                return new byte[] { (byte) nfcCounter, (byte) (nfcCounter >>> 8), (byte) (nfcCounter >>> 16) };
+            default:
+                throw nak();
+        }
+    }
+
+    @Override
+    public void reconnect() throws IOException {
+        Technology technology = connected;
+        close();
+        connect(technology != null ? technology : Technology.NFC_A);
+    }
+
+    @Override
+    public int getMaxTransceiveLength() {
+        return maxTransceiveLength;
+    }
+
+    private byte[] read(int page) throws IOException {
+        if (page >= layout.readablePages) throw nak();
+        byte[] response = new byte[BLOCK_SIZE];
+        for (int i = 0; i < 4; i++) {
+            // READ rolls over to page 0 past the end of readable memory
+            int source = ((page + i) % layout.readablePages) * NtagReader.PAGE_SIZE;
+            System.arraycopy(memory, source, response, i * NtagReader.PAGE_SIZE, NtagReader.PAGE_SIZE);
+        }
+        return response;
+    }
+
+    private byte[] fastRead(int start, int end) throws IOException {
+        if (layout.version == null || start > end || end >= layout.readablePages
+            || (end - start + 1) * NtagReader.PAGE_SIZE > maxTransceiveLength) {
+            throw nak();
+        }
+        return Arrays.copyOfRange(memory, start * NtagReader.PAGE_SIZE, (end + 1) * NtagReader.PAGE_SIZE);
+    }
+
+    private byte[] writePage(byte[] command) throws IOException {
+        int page = command[1] & 0xFF;
+        if (command.length != 6 || page < 2 || page >= layout.pageCount || readOnly) throw nak();
+        int offset = page * NtagReader.PAGE_SIZE;
+        for (int i = 0; i < NtagReader.PAGE_SIZE; i++) {
+            if (page == 2 && i < 2) continue;
+            // Lock bytes and the capability container are one-time programmable
+            boolean otp = page == NtagDiffWriter.CC_PAGE || page == 2;
+            memory[offset + i] = otp ? (byte) (memory[offset + i] | command[2 + i]) : command[2 + i];
+        }
+        return ACK.clone();
+    }
+
+    // NDEF writes replace the NDEF TLV in place, leaving control TLVs in front of it alone, and
+    // cost one command per Type 2 page or Classic block touched
+    private void writeDataArea(byte[] tlv) throws IOException {
+        int offset = ndefTlvOffset();
+        if (offset < 0) offset = dataAreaOffset();
+        int available = dataAreaOffset() + layout.dataAreaBytes - offset;
+        if (tlv.length > available + 1) {
+            throw new IOException("Not enough space on tag: " + tlv.length + " > " + available);
+        }
+        int length = Math.min(tlv.length, available);
+        int unit = layout.isType2() ? NtagReader.PAGE_SIZE : BLOCK_SIZE;
+        for (int start = 0; start < length; start += unit) {
+            command();
+            System.arraycopy(tlv, start, memory, offset + start, Math.min(unit, length - start));
+        }
+    }
+
+    // Index of the NDEF TLV in memory, or of the terminator when there is none, -1 if neither
+    private int ndefTlvOffset() {
+        int offset = dataAreaOffset();
+        int end = offset + layout.dataAreaBytes;
+        while (offset < end) {
+            int type = memory[offset] & 0xFF;
+            if (type == NtagDiffWriter.TLV_NULL) {
+                offset++;
+                continue;
+            }
+            if (type == NtagDiffWriter.TLV_NDEF || type == (NtagDiffWriter.TLV_TERMINATOR & 0xFF)) return offset;
+            if (offset + 1 >= end) return -1;
+            int length = memory[offset + 1] & 0xFF;
+            int header = 2;
+            if (length == 0xFF) {
+                if (offset + 3 >= end) return -1;
+                length = ((memory[offset + 2] & 0xFF) << 8) | (memory[offset + 3] & 0xFF);
+                header = 4;
+            }
+            offset += header + length;
+        }
+        return -1;
+    }
+
+    private void command() throws IOException {
+        if (lost) throw new TagLostException();
+        commands++;
+        if (commandLatencyNanos > 0) {
+            LockSupport.parkNanos(commandLatencyNanos);
+        }
+        if ((commandBudget >= 0 && commands > commandBudget) || (failureRate > 0 && random.nextDouble() < failureRate)) {
+            lost = true;
+            connected = null;
+            throw new TagLostException();
+        }
+    }
+
+    private void requireConnected(Technology technology) throws IOException {
+        if (lost) throw new TagLostException();
+        if (connected != technology) {
+            throw new IllegalStateException(technology + " is not connected");
+        }
+    }
+
+    // A NAK drops a Type 2 tag back to idle until it's reconnected
+    private IOException nak() {
+        halted = true;
+        return new IOException("Transceive failed");
+    }
+
+    private boolean isFormatted() {
+        if (!layout.isType2()) {
+            return memory[0] != 0;
+        }
+        return (memory[NtagDiffWriter.CC_PAGE * NtagReader.PAGE_SIZE] & 0xFF) == 0xE1;
+    }
+
+    private int dataAreaOffset() {
+        return layout.isType2() ? NtagDiffWriter.DATA_START_PAGE * NtagReader.PAGE_SIZE : 0;
+    }
+
+    private void writeUidPages() {
+        byte[] id = Arrays.copyOf(uid, 7);
+        memory[0] = id[0];
+        memory[1] = id[1];
+        memory[2] = id[2];
+        memory[3] = (byte) (0x88 ^ id[0] ^ id[1] ^ id[2]);
+        System.arraycopy(id, 3, memory, 4, 4);
+        memory[8] = (byte) (id[3] ^ id[4] ^ id[5] ^ id[6]);
+    }
+
+    private void writeCapabilityContainer() {
+        if (!layout.isType2()) return;
+        int cc = NtagDiffWriter.CC_PAGE * NtagReader.PAGE_SIZE;
+        memory[cc] = (byte) 0xE1;
+        memory[cc + 1] = 0x10;
+        memory[cc + 2] = (byte) (layout.dataAreaBytes / 8);
+        memory[cc + 3] = 0x00;
+    }
+
+    // Formatted, holding an empty NDEF message
+    private void formatEmpty() {
+        writeCapabilityContainer();
+        int offset = dataAreaOffset();
+        memory[offset] = NtagDiffWriter.TLV_NDEF;
+        memory[offset + 1] = 0;
+        memory[offset + 2] = NtagDiffWriter.TLV_TERMINATOR;
+    }
+}
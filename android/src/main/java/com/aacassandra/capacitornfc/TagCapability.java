@@ -0,0 +1,42 @@
+package com.aacassandra.capacitornfc;
+
+/**
+ * What a tag can take as NDEF, as known without talking to it: maximum message size,
+ * writability and type, from the discovery data or from an earlier presentation.
+ */
+public final class TagCapability {
+    public static final int UNKNOWN_SIZE = -1;
+
+    private final int maxSize;
+    private final boolean writable;
+    private final boolean formatted;
+    private final String type;
+
+    public TagCapability(int maxSize, boolean writable, boolean formatted, String type) {
+        this.maxSize = maxSize;
+        this.writable = writable;
+        this.formatted = formatted;
+        this.type = type;
+    }
+
+    // Largest NDEF message the tag holds, UNKNOWN_SIZE until it's formatted
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public boolean isWritable() {
+        return writable;
+    }
+
+    public boolean isFormatted() {
+        return formatted;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public TagCapability asReadOnly() {
+        return new TagCapability(maxSize, false, formatted, type);
+    }
+}
@@ -0,0 +1,56 @@
+package com.aacassandra.capacitornfc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Capabilities of recently presented tags by UID, so a tag seen again can be checked without
+ * probing it. Entries are kept in LRU order, the least recently seen tag is evicted first.
+ */
+public class TagCapabilityCache {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final LinkedHashMap<Long, TagCapability> capabilities;
+    private long hits = 0;
+    private long misses = 0;
+
+    public TagCapabilityCache(int capacity) {
+        int maxEntries = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        this.capabilities = new LinkedHashMap<Long, TagCapability>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, TagCapability> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized TagCapability get(byte[] uid) {
+        TagCapability capability = capabilities.get(TagDedupCache.fingerprint(uid));
+        if (capability != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return capability;
+    }
+
+    public synchronized void put(byte[] uid, TagCapability capability) {
+        capabilities.put(TagDedupCache.fingerprint(uid), capability);
+    }
+
+    public synchronized void clear() {
+        capabilities.clear();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return capabilities.size();
+    }
+}
@@ -0,0 +1,91 @@
+package com.aacassandra.capacitornfc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Suppresses repeated discoveries of the same tag within a time window, so a card left on the
+ * reader or tapped twice produces a single event. Tags are identified by a 64-bit fingerprint of
+ * the UID, optionally mixed with a hash of the NDEF payload so a rewritten tag counts as new.
+ *
+ * The window slides: every sighting, suppressed or not, restarts it. Entries are kept in LRU
+ * order and the least recently seen tag is evicted once the capacity is reached.
+ */
+public class TagDedupCache {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long ttlMillis;
+    private final boolean includePayload;
+    private final LinkedHashMap<Long, Long> lastSeen;
+    private long delivered = 0;
+    private long suppressed = 0;
+    private long evicted = 0;
+
+    public TagDedupCache(long ttlMillis, int capacity, boolean includePayload) {
+        this.ttlMillis = Math.max(0, ttlMillis);
+        this.includePayload = includePayload;
+        int maxEntries = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        this.lastSeen = new LinkedHashMap<Long, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                if (size() > maxEntries) {
+                    evicted++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isIncludePayload() {
+        return includePayload;
+    }
+
+    public static long fingerprint(byte[] uid) {
+        return mix(FNV_OFFSET, uid, 0, uid != null ? uid.length : 0);
+    }
+
+    // Folds more bytes (e.g. an NDEF message) into a fingerprint
+    public static long mix(long fingerprint, byte[] data, int offset, int length) {
+        long hash = fingerprint;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= data[i] & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // Returns true when the tag should be delivered, false when it's a repeat inside the window
+    public synchronized boolean shouldDeliver(long fingerprint, long nowMillis) {
+        Long previous = lastSeen.put(fingerprint, nowMillis);
+        if (previous != null && nowMillis - previous < ttlMillis) {
+            suppressed++;
+            return false;
+        }
+        delivered++;
+        return true;
+    }
+
+    public synchronized void clear() {
+        lastSeen.clear();
+    }
+
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    public synchronized long getSuppressed() {
+        return suppressed;
+    }
+
+    public synchronized long getEvicted() {
+        return evicted;
+    }
+
+    public synchronized int size() {
+        return lastSeen.size();
+    }
+}
@@ -0,0 +1,211 @@
+package com.aacassandra.capacitornfc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scan filter evaluated on the raw tag, before any event object is built.
+ *
+ * The declarative options are compiled once by the {@link Builder} into a chain of predicates:
+ * UID and tech list checks first, then the NDEF checks, which decode the message into a reused
+ * buffer and only when every cheaper check passed. A tag matches when every predicate does;
+ * record rules match when any record of the tag matches any one of them. Compressed records
+ * are matched on the records they expand to.
+ */
+public class TagFilter {
+    private static final String TECH_PACKAGE = "android.nfc.tech.";
+
+    interface Predicate {
+        boolean test(byte[] uid, String[] techList, NdefCodec.Message[] messages);
+    }
+
+    private final Predicate[] tagPredicates;
+    private final Predicate[] ndefPredicates;
+    private NdefCodec.Message[] decoded = new NdefCodec.Message[1];
+    private long matched = 0;
+    private long rejected = 0;
+
+    private TagFilter(List<Predicate> tagPredicates, List<Predicate> ndefPredicates) {
+        this.tagPredicates = tagPredicates.toArray(new Predicate[0]);
+        this.ndefPredicates = ndefPredicates.toArray(new Predicate[0]);
+    }
+
+    // True when the filter looks at NDEF content, so the caller has to pass the messages
+    public boolean needsNdef() {
+        return ndefPredicates.length > 0;
+    }
+
+    // messages may be null for a tag without NDEF message, which fails every NDEF check
+    public synchronized boolean matches(byte[] uid, String[] techList, byte[][] messages) {
+        for (Predicate predicate : tagPredicates) {
+            if (!predicate.test(uid, techList, null)) return reject();
+        }
+        if (ndefPredicates.length == 0) return match();
+        if (messages == null || messages.length == 0) return reject();
+
+        if (decoded.length != messages.length) {
+            // Almost always a single message, keep the buffers we already have
+            NdefCodec.Message[] resized = new NdefCodec.Message[messages.length];
+            System.arraycopy(decoded, 0, resized, 0, Math.min(decoded.length, resized.length));
+            decoded = resized;
+        }
+        for (int i = 0; i < messages.length; i++) {
+            if (decoded[i] == null) decoded[i] = new NdefCodec.Message();
+            try {
+                NdefCodec.decode(messages[i], 0, messages[i].length, decoded[i]);
+                NdefCompression.expand(decoded[i]);
+            } catch (NdefCodec.MalformedNdefException e) {
+                return reject();
+            }
+        }
+        for (Predicate predicate : ndefPredicates) {
+            if (!predicate.test(uid, techList, decoded)) return reject();
+        }
+        return match();
+    }
+
+    public synchronized long getMatched() {
+        return matched;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    private boolean match() {
+        matched++;
+        return true;
+    }
+
+    private boolean reject() {
+        rejected++;
+        return false;
+    }
+
+    public static final class Builder {
+        private final List<Predicate> tagPredicates = new ArrayList<>();
+        private final List<Predicate> ndefPredicates = new ArrayList<>();
+        private final List<RecordRule> recordRules = new ArrayList<>();
+
+        // (uid & mask) must equal (prefix & mask) over the prefix length, a null mask compares every bit
+        public Builder uidPrefix(byte[] prefix, byte[] mask) {
+            if (mask != null && mask.length != prefix.length) {
+                throw new IllegalArgumentException("uidMask must be as long as uidPrefix");
+            }
+            byte[] bits = mask != null ? mask.clone() : filled(prefix.length);
+            byte[] expected = new byte[prefix.length];
+            for (int i = 0; i < prefix.length; i++) {
+                expected[i] = (byte) (prefix[i] & bits[i]);
+            }
+            tagPredicates.add((uid, techList, messages) -> {
+                if (uid == null || uid.length < expected.length) return false;
+                for (int i = 0; i < expected.length; i++) {
+                    if ((uid[i] & bits[i]) != expected[i]) return false;
+                }
+                return true;
+            });
+            return this;
+        }
+
+        // Either a full class name or a short one such as "MifareUltralight"
+        public Builder requireTech(String tech) {
+            String name = tech.indexOf('.') >= 0 ? tech : TECH_PACKAGE + tech;
+            tagPredicates.add((uid, techList, messages) -> {
+                if (techList == null) return false;
+                for (String entry : techList) {
+                    if (name.equals(entry)) return true;
+                }
+                return false;
+            });
+            return this;
+        }
+
+        public Builder minRecords(int count) {
+            ndefPredicates.add((uid, techList, messages) -> {
+                int total = 0;
+                for (NdefCodec.Message message : messages) {
+                    total += message.size();
+                }
+                return total >= count;
+            });
+            return this;
+        }
+
+        /**
+         * Adds a record rule, any of tnf (negative for any), type and payloadPrefix may be left
+         * out. payloadPrefix is compared with the payload as it appears in nfcTag events, i.e.
+         * after the language code of Text records.
+         */
+        public Builder record(int tnf, String type, String payloadPrefix) {
+            recordRules.add(new RecordRule(
+                tnf,
+                type != null ? type.getBytes(StandardCharsets.UTF_8) : null,
+                payloadPrefix != null ? payloadPrefix.getBytes(StandardCharsets.UTF_8) : null
+            ));
+            return this;
+        }
+
+        // Null when nothing was configured, so callers can skip filtering altogether
+        public TagFilter build() {
+            List<Predicate> ndef = new ArrayList<>(ndefPredicates);
+            if (!recordRules.isEmpty()) {
+                RecordRule[] rules = recordRules.toArray(new RecordRule[0]);
+                ndef.add((uid, techList, messages) -> {
+                    for (NdefCodec.Message message : messages) {
+                        for (int i = 0; i < message.size(); i++) {
+                            NdefCodec.Record record = message.get(i);
+                            for (RecordRule rule : rules) {
+                                if (rule.matches(record)) return true;
+                            }
+                        }
+                    }
+                    return false;
+                });
+            }
+            if (tagPredicates.isEmpty() && ndef.isEmpty()) return null;
+            return new TagFilter(tagPredicates, ndef);
+        }
+
+        private static byte[] filled(int length) {
+            byte[] bits = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bits[i] = (byte) 0xFF;
+            }
+            return bits;
+        }
+    }
+
+    private static final class RecordRule {
+        private final int tnf;
+        private final byte[] type;
+        private final byte[] payloadPrefix;
+
+        RecordRule(int tnf, byte[] type, byte[] payloadPrefix) {
+            this.tnf = tnf;
+            this.type = type;
+            this.payloadPrefix = payloadPrefix;
+        }
+
+        boolean matches(NdefCodec.Record record) {
+            if (tnf >= 0 && record.getTnf() != tnf) return false;
+            if (type != null && !record.typeEquals(type)) return false;
+            if (payloadPrefix == null) return true;
+
+            byte[] payload = record.payloadBuffer();
+            int offset = record.payloadOffset();
+            int length = record.getPayloadLength();
+            if (record.isWellKnown(NdefCodec.RTD_TEXT) && length > 0) {
+                // Skip the status byte and language code, like NdefJson does
+                int skip = Math.min((payload[offset] & 0x3F) + 1, length);
+                offset += skip;
+                length -= skip;
+            }
+            if (length < payloadPrefix.length) return false;
+            for (int i = 0; i < payloadPrefix.length; i++) {
+                if (payload[offset + i] != payloadPrefix[i]) return false;
+            }
+            return true;
+        }
+    }
+}
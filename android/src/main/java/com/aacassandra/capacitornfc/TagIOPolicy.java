@@ -0,0 +1,122 @@
+package com.aacassandra.capacitornfc;
+
+import java.io.IOException;
+
+/**
+ * Timeouts and retries of tag I/O.
+ *
+ * The NfcA transceive timeout adapts to the latency of the tags actually presented: once enough
+ * commands succeeded it's a multiple of their p99, kept between a floor and a ceiling, so a
+ * command lost to a marginal field fails in tens of milliseconds rather than after the platform
+ * default. A failed operation is retried while the tag is still there (it can be connected
+ * again) and the retry budget lasts; errors that would fail the same way again are not retried.
+ */
+public class TagIOPolicy {
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final int DEFAULT_MIN_TIMEOUT_MILLIS = 50;
+    public static final int DEFAULT_MAX_TIMEOUT_MILLIS = 500;
+
+    // Commands to observe before the timeout adapts, and how often it's recomputed after that
+    private static final int MIN_SAMPLES = 32;
+    // Older samples are dropped after this many, so the timeout follows changes in tags or reader
+    private static final int WINDOW_SAMPLES = 1024;
+    private static final int P99_MULTIPLIER = 4;
+
+    // Errors a retry can't fix, such as a read-only tag or a message that doesn't fit
+    public static class NotRetryableException extends IOException {
+        public NotRetryableException(String message) {
+            super(message);
+        }
+
+        public NotRetryableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private final int maxRetries;
+    private final int minTimeoutMillis;
+    private final int maxTimeoutMillis;
+    private final boolean adaptiveTimeout;
+    private final NFCMetrics.Histogram transceiveLatency = new NFCMetrics.Histogram();
+    private int samples = 0;
+    private int transceiveTimeoutMillis = 0;
+
+    public TagIOPolicy(int maxRetries, int minTimeoutMillis, int maxTimeoutMillis, boolean adaptiveTimeout) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.minTimeoutMillis = Math.max(1, minTimeoutMillis);
+        this.maxTimeoutMillis = Math.max(this.minTimeoutMillis, maxTimeoutMillis);
+        this.adaptiveTimeout = adaptiveTimeout;
+    }
+
+    public static TagIOPolicy defaults() {
+        return new TagIOPolicy(DEFAULT_MAX_RETRIES, DEFAULT_MIN_TIMEOUT_MILLIS, DEFAULT_MAX_TIMEOUT_MILLIS, true);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    // NfcA transceive timeout to set after connecting, 0 to keep the platform default
+    public synchronized int getTransceiveTimeoutMillis() {
+        return transceiveTimeoutMillis;
+    }
+
+    // Latency of a transceive that succeeded, failed ones say nothing about the tag
+    public void observeTransceive(long durationNanos) {
+        if (!adaptiveTimeout) return;
+        transceiveLatency.record(durationNanos);
+        synchronized (this) {
+            samples++;
+            if (samples % MIN_SAMPLES != 0) return;
+            long p99Micros = transceiveLatency.percentileMicros(0.99);
+            long timeout = (p99Micros * P99_MULTIPLIER + 999) / 1000;
+            transceiveTimeoutMillis = (int) Math.min(Math.max(timeout, minTimeoutMillis), maxTimeoutMillis);
+            if (samples >= WINDOW_SAMPLES) {
+                transceiveLatency.reset();
+                samples = 0;
+            }
+        }
+    }
+
+    // Sets the current transceive timeout on a freshly connected NfcA tag
+    public void applyTimeout(TagTransport tag) {
+        int timeout = getTransceiveTimeoutMillis();
+        if (timeout > 0) {
+            tag.setTimeout(timeout);
+        }
+    }
+
+    // The tag's NfcA connection, with successful transceives feeding the adaptive timeout
+    public NtagReader.Connection timed(TagTransport tag, NFCMetrics metrics) {
+        if (!adaptiveTimeout) return tag;
+        return new NtagReader.Connection() {
+            @Override
+            public byte[] transceive(byte[] command) throws IOException {
+                long startedAt = metrics.now();
+                byte[] response = tag.transceive(command);
+                observeTransceive(metrics.now() - startedAt);
+                return response;
+            }
+
+            // Closing the connection resets the timeout
+            @Override
+            public void reconnect() throws IOException {
+                tag.reconnect();
+                applyTimeout(tag);
+            }
+
+            @Override
+            public int getMaxTransceiveLength() {
+                return tag.getMaxTransceiveLength();
+            }
+        };
+    }
+
+    // False when the error, or anything that caused it, would fail the same way on a retry
+    public static boolean isRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NotRetryableException || cause instanceof RuntimeException) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,605 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The per-tap work of the read, UID, write and raw read paths, over a {@link TagTransport}.
+ *
+ * NFC drives it with Android tags on the NFC I/O thread; the benchmark module drives it with
+ * simulated tags on a plain JVM. Connect, I/O and encode stages, successes and failures are
+ * recorded in the metrics; queueing and delivery are the caller's to record. Operations that
+ * talk to the tag are retried on the same tap as the {@link TagIOPolicy} allows, and report
+ * how often in "retries". Events show compressed records ({@link NdefCompression}) as the
+ * records they were made from.
+ */
+public class TagPipeline {
+    // Reads whose deferred payloads can still be fetched with getPayload
+    private static final int RECENT_READS = 32;
+
+    // Reasons a write is rejected before any tag I/O
+    public static final String REJECT_TOO_LARGE = "tooLarge";
+    public static final String REJECT_READ_ONLY = "readOnly";
+    public static final String REJECT_UNSUPPORTED = "unsupported";
+
+    // Creates the top-level event objects, so NFC can hand out JSObjects without copying
+    public interface EventFactory {
+        JSONObject newEvent();
+    }
+
+    // One try at an operation, run again after a retryable failure
+    private interface Attempt {
+        JSONObject run() throws IOException, JSONException;
+    }
+
+    private final NFCMetrics metrics;
+    private final EventFactory events;
+    private final NdefCodec.Message decodeBuffer = new NdefCodec.Message();
+    private final UidEncoder uidEncoder = new UidEncoder();
+    private final TagCapabilityCache capabilities = new TagCapabilityCache(TagCapabilityCache.DEFAULT_CAPACITY);
+    private final ClassicKeyCache classicKeys = new ClassicKeyCache(ClassicKeyCache.DEFAULT_CAPACITY);
+    private volatile TagIOPolicy policy = TagIOPolicy.defaults();
+    private String payloadEncoding = PayloadEncoding.TEXT;
+    private int deferPayloadsAbove = -1;
+    private RecordDecoders recordDecoders;
+    private long lastReadId = 0;
+    private final JsonEventWriter jsonWriter = new JsonEventWriter(1024);
+    private final LinkedHashMap<Long, byte[][]> recentReads = new LinkedHashMap<Long, byte[][]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[][]> eldest) {
+            return size() > RECENT_READS;
+        }
+    };
+
+    public TagPipeline(NFCMetrics metrics, EventFactory events) {
+        this.metrics = metrics;
+        this.events = events;
+    }
+
+    public NFCMetrics getMetrics() {
+        return metrics;
+    }
+
+    public EventFactory getEvents() {
+        return events;
+    }
+
+    public UidEncoder getUidEncoder() {
+        return uidEncoder;
+    }
+
+    public TagCapabilityCache getCapabilities() {
+        return capabilities;
+    }
+
+    public ClassicKeyCache getClassicKeys() {
+        return classicKeys;
+    }
+
+    public TagIOPolicy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(TagIOPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * How nfcTag events carry records: "text" (the default) or the raw records with base64 /
+     * hex content, see {@link NdefJson#toJson(NdefCodec.Message, String, int, JSONArray)}.
+     * Payloads over deferAboveBytes (negative for never) are left out and can be fetched with
+     * {@link #getPayload} while the read is among the last few.
+     */
+    public synchronized void setPayloadOutput(String encoding, int deferAboveBytes) {
+        this.payloadEncoding = encoding;
+        this.deferPayloadsAbove = deferAboveBytes;
+    }
+
+    // Typed decoding of the records of nfcTag events, null to leave every record undecoded
+    public synchronized void setRecordDecoders(RecordDecoders decoders) {
+        this.recordDecoders = decoders;
+    }
+
+    // Repeats of a tag seen within the dedup window are dropped before any event is built
+    public static boolean isDuplicate(TagDedupCache cache, byte[] uid, byte[][] messages, long nowMillis) {
+        if (cache == null) return false;
+
+        long fingerprint = TagDedupCache.fingerprint(uid);
+        if (cache.isIncludePayload() && messages != null) {
+            for (byte[] message : messages) {
+                fingerprint = TagDedupCache.mix(fingerprint, message, 0, message.length);
+            }
+        }
+        return !cache.shouldDeliver(fingerprint, nowMillis);
+    }
+
+    // nfcUID event, or null when the tag has no readable UID
+    public JSONObject readUid(TagTransport tag, long nowMillis) throws JSONException {
+        long encodeStart = metrics.now();
+        byte[] uid = tag.getId();
+        if (uid == null || uid.length == 0) {
+            metrics.failure(NFCMetrics.OP_UID, "EmptyUid");
+            return null;
+        }
+
+        JSONObject result = events.newEvent();
+        uidEncoder.putUidData(result, uid, tag.getTechList(), nowMillis);
+        metrics.recordSince(NFCMetrics.OP_UID, NFCMetrics.STAGE_ENCODE, encodeStart);
+        return result;
+    }
+
+    // nfcTag event for the raw NDEF messages of one tag
+    public synchronized JSONObject readNdef(byte[][] messages) throws NdefCodec.MalformedNdefException, JSONException {
+        long encodeStart = metrics.now();
+        JSONObject result = events.newEvent();
+        JSONArray messagesArray = new JSONArray();
+        boolean plain = PayloadEncoding.TEXT.equals(payloadEncoding) && deferPayloadsAbove < 0;
+        int deferred = 0;
+
+        for (byte[] bytes : messages) {
+            JSONObject messageObj = new JSONObject();
+            NdefCodec.Message decoded = NdefCodec.decode(bytes, 0, bytes.length, this.decodeBuffer);
+            NdefCompression.expand(decoded);
+            if (plain) {
+                messageObj.put("records", NdefJson.toJson(decoded, recordDecoders));
+            } else {
+                JSONArray records = new JSONArray();
+                deferred += NdefJson.toJson(decoded, payloadEncoding, deferPayloadsAbove, recordDecoders, records);
+                messageObj.put("records", records);
+            }
+            messagesArray.put(messageObj);
+        }
+
+        result.put("messages", messagesArray);
+        if (deferred > 0) {
+            result.put("readId", rememberRead(messages));
+        }
+        metrics.recordSince(NFCMetrics.OP_READ, NFCMetrics.STAGE_ENCODE, encodeStart);
+        return result;
+    }
+
+    /**
+     * The same event as readNdef plus the tag's uid and techList, written as a JSON string in
+     * one pass: no JSONObject per message and record, no String per payload, and nothing for
+     * the bridge to serialize again but the string itself. journalSeq is left out when 0.
+     */
+    public synchronized String readNdefJson(byte[] uid, String[] techList, byte[][] messages, long journalSeq)
+        throws NdefCodec.MalformedNdefException {
+        long encodeStart = metrics.now();
+        JsonEventWriter json = jsonWriter.reset();
+        json.beginObject();
+        json.name("uid").hexValue(uid, 0, uid.length);
+        json.name("techList").beginArray();
+        for (String tech : techList) {
+            json.value(tech);
+        }
+        json.endArray();
+
+        int deferred = 0;
+        json.name("messages").beginArray();
+        for (byte[] bytes : messages) {
+            NdefCodec.Message decoded = NdefCodec.decode(bytes, 0, bytes.length, this.decodeBuffer);
+            NdefCompression.expand(decoded);
+            json.beginObject().name("records");
+            deferred += NdefJson.writeRecords(json, decoded, payloadEncoding, deferPayloadsAbove, recordDecoders);
+            json.endObject();
+        }
+        json.endArray();
+
+        if (deferred > 0) {
+            json.name("readId").value(rememberRead(messages));
+        }
+        if (journalSeq > 0) {
+            json.name("journalSeq").value(journalSeq);
+        }
+        String result = json.endObject().finish();
+        metrics.recordSince(NFCMetrics.OP_READ, NFCMetrics.STAGE_ENCODE, encodeStart);
+        return result;
+    }
+
+    // The messages are fresh arrays per tap, keeping them costs no copy
+    private long rememberRead(byte[][] messages) {
+        long readId = ++lastReadId;
+        recentReads.put(readId, messages);
+        return readId;
+    }
+
+    // A payload left out of an nfcTag event, in the given encoding (the scan's when null)
+    public synchronized JSONObject getPayload(long readId, int messageIndex, int recordIndex, String encoding)
+        throws NdefCodec.MalformedNdefException, JSONException {
+        byte[][] messages = recentReads.get(readId);
+        if (messages == null) {
+            throw new IllegalArgumentException("Read " + readId + " is no longer available");
+        }
+        if (messageIndex < 0 || messageIndex >= messages.length) {
+            throw new IllegalArgumentException("No message at index " + messageIndex);
+        }
+        byte[] bytes = messages[messageIndex];
+        NdefCodec.Message decoded = NdefCodec.decode(bytes, 0, bytes.length, this.decodeBuffer);
+        NdefCompression.expand(decoded);
+        if (recordIndex < 0 || recordIndex >= decoded.size()) {
+            throw new IllegalArgumentException("No record at index " + recordIndex);
+        }
+
+        NdefCodec.Record record = decoded.get(recordIndex);
+        String outputEncoding = encoding != null ? encoding : payloadEncoding;
+        JSONObject result = events.newEvent();
+        result.put("payloadSize", record.getPayloadLength());
+        result.put("payload", PayloadEncoding.TEXT.equals(outputEncoding)
+            ? NdefJson.payloadText(record, record.isWellKnown(NdefCodec.RTD_TEXT) ? "T" : "")
+            : PayloadEncoding.encode(outputEncoding, record.payloadBuffer(), record.payloadOffset(), record.getPayloadLength()));
+        return result;
+    }
+
+    // nfcSessionRead event, handing a tag's current content to a JS session updater
+    public synchronized JSONObject sessionRead(long sessionId, byte[] uid, byte[] current, String contentHash)
+        throws NdefCodec.MalformedNdefException, JSONException {
+        JSONObject result = events.newEvent();
+        result.put("sessionId", sessionId);
+        result.put("uid", UidEncoder.toHex(uid));
+        result.put("contentHash", contentHash);
+        JSONArray messagesArray = new JSONArray();
+        if (current != null) {
+            JSONObject messageObj = new JSONObject();
+            NdefCodec.Message decoded = NdefCodec.decode(current, 0, current.length, this.decodeBuffer);
+            NdefCompression.expand(decoded);
+            messageObj.put("records", NdefJson.toJson(decoded));
+            messagesArray.put(messageObj);
+        }
+        result.put("messages", messagesArray);
+        return result;
+    }
+
+    /**
+     * Checks a message of messageSize bytes against what's known about the tag, without any I/O:
+     * the discovery data, or what an earlier presentation of the same UID showed. Returns the
+     * structured nfcError event when the write can't succeed, null when it may go ahead.
+     */
+    public JSONObject planWrite(TagTransport tag, int messageSize, String operation) throws JSONException {
+        byte[] uid = tag.getId();
+        TagCapability capability = tag.getCapability();
+        if (capability != null && capability.isFormatted()) {
+            capabilities.put(uid, capability);
+        } else {
+            // Not formatted, or no Ndef exposed at all: an earlier presentation may know better
+            TagCapability cached = capabilities.get(uid);
+            if (cached != null) capability = cached;
+        }
+
+        String reason;
+        String error;
+        if (capability == null) {
+            if (tag.hasTechnology(TagTransport.Technology.MIFARE_ULTRALIGHT) && tag.hasTechnology(TagTransport.Technology.NFC_A)) {
+                // Still writable page by page, the diff writer checks the capability container
+                return null;
+            }
+            reason = REJECT_UNSUPPORTED;
+            error = "Tag doesn't support NDEF";
+        } else if (!capability.isWritable()) {
+            reason = REJECT_READ_ONLY;
+            error = "Tag is read-only";
+        } else if (capability.getMaxSize() != TagCapability.UNKNOWN_SIZE && messageSize > capability.getMaxSize()) {
+            reason = REJECT_TOO_LARGE;
+            error = "Message is " + messageSize + " bytes, the tag holds " + capability.getMaxSize();
+        } else {
+            return null;
+        }
+
+        metrics.failure(operation, Character.toUpperCase(reason.charAt(0)) + reason.substring(1));
+        JSONObject rejection = events.newEvent();
+        rejection.put("error", error);
+        rejection.put("reason", reason);
+        rejection.put("uid", UidEncoder.toHex(uid));
+        rejection.put("messageSize", messageSize);
+        if (capability != null) {
+            rejection.put("maxSize", capability.getMaxSize());
+            rejection.put("tagType", capability.getType());
+        }
+        return rejection;
+    }
+
+    /**
+     * Writes or formats the tag. With diffWrite, NTAG / Ultralight tags only get the pages that
+     * change; other and unformatted tags get a full write. Returns the nfcWriteSuccess event,
+     * errors are thrown with a message meant for JS.
+     */
+    public JSONObject write(TagTransport tag, byte[] message, boolean diffWrite, boolean verify, String operation)
+        throws IOException, JSONException {
+        long startedAt = metrics.now();
+        JSONObject result = withRetries(tag, operation, () -> {
+            JSONObject written = null;
+            if (diffWrite && tag.hasTechnology(TagTransport.Technology.MIFARE_ULTRALIGHT)
+                && tag.hasTechnology(TagTransport.Technology.NFC_A)) {
+                // A retry reads the tag again, so it only writes the pages the failed attempt didn't
+                written = writeDiff(tag, message, verify, operation);
+            }
+            if (written == null) {
+                writeFull(tag, message, operation);
+                written = events.newEvent();
+                written.put("mode", "full");
+            }
+            return written;
+        });
+        metrics.success(operation);
+        result.put("durationMs", (metrics.now() - startedAt) / 1_000_000L);
+        return result;
+    }
+
+    // Dumps NTAG / Ultralight memory over a single NfcA connection
+    public JSONObject readRaw(TagTransport tag, boolean readSignature, boolean readCounter, int fallbackPageCount)
+        throws IOException, JSONException {
+        long startedAt = metrics.now();
+        JSONObject result = withRetries(tag, NFCMetrics.OP_RAW_READ, () -> {
+            TagIOPolicy policy = this.policy;
+            try {
+                long connectStart = metrics.now();
+                tag.connect(TagTransport.Technology.NFC_A);
+                policy.applyTimeout(tag);
+                long ioStart = metrics.recordSince(NFCMetrics.OP_RAW_READ, NFCMetrics.STAGE_CONNECT, connectStart);
+                NtagReader.Dump dump = new NtagReader(policy.timed(tag, metrics)).read(readSignature, readCounter, fallbackPageCount);
+                long encodeStart = metrics.recordSince(NFCMetrics.OP_RAW_READ, NFCMetrics.STAGE_IO, ioStart);
+
+                JSONObject dumped = events.newEvent();
+                dumped.put("uid", UidEncoder.toHex(tag.getId()));
+                dump.putJson(dumped);
+                metrics.recordSince(NFCMetrics.OP_RAW_READ, NFCMetrics.STAGE_ENCODE, encodeStart);
+                return dumped;
+            } catch (IOException | RuntimeException e) {
+                metrics.failure(NFCMetrics.OP_RAW_READ, e.getClass().getSimpleName());
+                throw new IOException("Error reading tag memory: " + e.getMessage(), e);
+            } finally {
+                tag.close();
+            }
+        });
+        result.put("durationMs", (metrics.now() - startedAt) / 1_000_000L);
+        metrics.success(NFCMetrics.OP_RAW_READ);
+        return result;
+    }
+
+    // Reads MIFARE Classic sectors over a single connection, with the key cache shared by all taps
+    public JSONObject readClassic(TagTransport tag, MifareClassicReader.Options options) throws IOException, JSONException {
+        long startedAt = metrics.now();
+        JSONObject result = withRetries(tag, NFCMetrics.OP_CLASSIC_READ, () -> {
+            try {
+                long connectStart = metrics.now();
+                tag.connect(TagTransport.Technology.MIFARE_CLASSIC);
+                long ioStart = metrics.recordSince(NFCMetrics.OP_CLASSIC_READ, NFCMetrics.STAGE_CONNECT, connectStart);
+                MifareClassicReader.Dump dump = new MifareClassicReader(tag, classicKeys, metrics).read(options);
+                long encodeStart = metrics.recordSince(NFCMetrics.OP_CLASSIC_READ, NFCMetrics.STAGE_IO, ioStart);
+
+                JSONObject dumped = events.newEvent();
+                dumped.put("uid", UidEncoder.toHex(tag.getId()));
+                dump.putJson(dumped);
+                metrics.recordSince(NFCMetrics.OP_CLASSIC_READ, NFCMetrics.STAGE_ENCODE, encodeStart);
+                return dumped;
+            } catch (IOException | RuntimeException e) {
+                metrics.failure(NFCMetrics.OP_CLASSIC_READ, e.getClass().getSimpleName());
+                throw new IOException("Error reading MIFARE Classic sectors: " + e.getMessage(), e);
+            } finally {
+                tag.close();
+            }
+        });
+        result.put("durationMs", (metrics.now() - startedAt) / 1_000_000L);
+        metrics.success(NFCMetrics.OP_CLASSIC_READ);
+        return result;
+    }
+
+    /**
+     * Read-modify-write over a single connection: reads the current message, checks it against
+     * expectedHash (when given), hands it to the updater and writes what it returns before the
+     * tag is closed. Returns the nfcSessionComplete event; a conflict or updater timeout is a
+     * status in there, tag errors are thrown with a message meant for JS. Only failures before
+     * the updater was called are retried, it's never asked twice on the same tap.
+     */
+    public JSONObject readModifyWrite(TagTransport tag, TagSession.Updater updater, String expectedHash)
+        throws IOException, JSONException {
+        String operation = NFCMetrics.OP_SESSION;
+        long startedAt = metrics.now();
+
+        boolean formatted = tag.hasTechnology(TagTransport.Technology.NDEF);
+        if (!formatted && !tag.hasTechnology(TagTransport.Technology.NDEF_FORMATABLE)) {
+            metrics.failure(operation, "Unsupported");
+            throw new TagIOPolicy.NotRetryableException("Tag doesn't support NDEF");
+        }
+
+        JSONObject result = withRetries(tag, operation, () -> modifyOnce(tag, updater, expectedHash, formatted));
+        String status = result.getString("status");
+        if (TagSession.STATUS_CONFLICT.equals(status) || TagSession.STATUS_TIMEOUT.equals(status)) {
+            metrics.failure(operation, status);
+        } else {
+            metrics.success(operation);
+        }
+        result.put("durationMs", (metrics.now() - startedAt) / 1_000_000L);
+        return result;
+    }
+
+    private JSONObject modifyOnce(TagTransport tag, TagSession.Updater updater, String expectedHash, boolean formatted)
+        throws IOException, JSONException {
+        String operation = NFCMetrics.OP_SESSION;
+        JSONObject result = events.newEvent();
+        result.put("uid", UidEncoder.toHex(tag.getId()));
+
+        String status;
+        boolean updated = false;
+        boolean readOnly = false;
+        try {
+            long connectStart = metrics.now();
+            tag.connect(formatted ? TagTransport.Technology.NDEF : TagTransport.Technology.NDEF_FORMATABLE);
+            long ioStart = metrics.recordSince(operation, NFCMetrics.STAGE_CONNECT, connectStart);
+            byte[] current = formatted ? tag.readNdefMessage() : null;
+            String hash = TagSession.contentHash(current);
+            long updateStart = metrics.recordSince(operation, NFCMetrics.STAGE_IO, ioStart);
+            result.put("previousHash", hash);
+
+            TagSession.Update update = null;
+            if (expectedHash != null && !expectedHash.equalsIgnoreCase(hash)) {
+                status = TagSession.STATUS_CONFLICT;
+            } else {
+                updated = true;
+                try {
+                    update = updater.update(tag.getId(), current, hash);
+                    status = update != null && update.message != null ? TagSession.STATUS_WRITTEN : TagSession.STATUS_UNCHANGED;
+                } catch (TagSession.UpdateTimeoutException e) {
+                    status = TagSession.STATUS_TIMEOUT;
+                    result.put("error", e.getMessage());
+                }
+                ioStart = metrics.recordSince(operation, NFCMetrics.STAGE_UPDATE, updateStart);
+            }
+
+            if (TagSession.STATUS_WRITTEN.equals(status)) {
+                // The updater may have taken a while, make sure nobody wrote the tag in between
+                if (update.expectedHash != null && formatted
+                    && !update.expectedHash.equalsIgnoreCase(TagSession.contentHash(tag.readNdefMessage()))) {
+                    status = TagSession.STATUS_CONFLICT;
+                } else if (formatted && !tag.isWritable()) {
+                    readOnly = true;
+                } else {
+                    if (formatted) {
+                        tag.writeNdefMessage(update.message);
+                    } else {
+                        tag.format(update.message);
+                    }
+                    hash = TagSession.contentHash(update.message);
+                    metrics.recordSince(operation, NFCMetrics.STAGE_IO, ioStart);
+                }
+            }
+            result.put("contentHash", hash);
+        } catch (JSONException e) {
+            throw e;
+        } catch (Exception e) {
+            // Tag errors and anything thrown by the updater
+            metrics.failure(operation, e.getClass().getSimpleName());
+            String message = "Error updating tag: " + e.getMessage();
+            throw updated ? new TagIOPolicy.NotRetryableException(message, e) : new IOException(message, e);
+        } finally {
+            tag.close();
+        }
+        if (readOnly) {
+            metrics.failure(operation, "ReadOnly");
+            throw new TagIOPolicy.NotRetryableException("Tag is read-only");
+        }
+        result.put("status", status);
+        return result;
+    }
+
+    // Returns null when the tag isn't NDEF formatted yet and needs a full write
+    private JSONObject writeDiff(TagTransport tag, byte[] message, boolean verify, String operation)
+        throws IOException, JSONException {
+        NtagDiffWriter.Result written;
+        try {
+            TagIOPolicy policy = this.policy;
+            long connectStart = metrics.now();
+            tag.connect(TagTransport.Technology.NFC_A);
+            policy.applyTimeout(tag);
+            long ioStart = metrics.recordSince(operation, NFCMetrics.STAGE_CONNECT, connectStart);
+            written = new NtagDiffWriter(policy.timed(tag, metrics)).write(message, verify);
+            metrics.recordSince(operation, NFCMetrics.STAGE_IO, ioStart);
+        } catch (NtagDiffWriter.NotFormattedException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            metrics.failure(operation, e.getClass().getSimpleName());
+            throw new IOException("Error writing to tag: " + e.getMessage(), e);
+        } finally {
+            tag.close();
+        }
+
+        JSONObject result = events.newEvent();
+        result.put("mode", "diff");
+        result.put("pagesWritten", written.pagesWritten);
+        result.put("pagesCompared", written.pagesCompared);
+        result.put("dataAreaPages", written.dataAreaPages);
+        result.put("verified", written.verified);
+        return result;
+    }
+
+    private void writeFull(TagTransport tag, byte[] message, String operation) throws IOException {
+        try {
+            if (tag.hasTechnology(TagTransport.Technology.NDEF)) {
+                boolean writable;
+                try {
+                    long connectStart = metrics.now();
+                    tag.connect(TagTransport.Technology.NDEF);
+                    long ioStart = metrics.recordSince(operation, NFCMetrics.STAGE_CONNECT, connectStart);
+                    writable = tag.isWritable();
+                    if (writable) {
+                        tag.writeNdefMessage(message);
+                        metrics.recordSince(operation, NFCMetrics.STAGE_IO, ioStart);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    metrics.failure(operation, e.getClass().getSimpleName());
+                    throw new IOException("Error writing to tag: " + e.getMessage(), e);
+                }
+                if (!writable) {
+                    TagCapability capability = tag.getCapability();
+                    if (capability != null) {
+                        capabilities.put(tag.getId(), capability.asReadOnly());
+                    }
+                    metrics.failure(operation, "ReadOnly");
+                    throw new TagIOPolicy.NotRetryableException("Tag is read-only");
+                }
+                return;
+            }
+
+            if (!tag.hasTechnology(TagTransport.Technology.NDEF_FORMATABLE)) {
+                metrics.failure(operation, "Unsupported");
+                throw new TagIOPolicy.NotRetryableException("Tag doesn't support NDEF");
+            }
+            try {
+                long connectStart = metrics.now();
+                tag.connect(TagTransport.Technology.NDEF_FORMATABLE);
+                long ioStart = metrics.recordSince(operation, NFCMetrics.STAGE_CONNECT, connectStart);
+                tag.format(message);
+                metrics.recordSince(operation, NFCMetrics.STAGE_IO, ioStart);
+            } catch (IOException | RuntimeException e) {
+                metrics.failure(operation, e.getClass().getSimpleName());
+                throw new IOException("Failed to format tag: " + e.getMessage(), e);
+            }
+        } finally {
+            tag.close();
+        }
+    }
+
+    /**
+     * Runs the attempt, and again after a retryable failure as long as the policy allows and the
+     * tag can be connected again: a tag that left the field fails that right away, so its
+     * remaining retries aren't spent on timeouts. The last error is thrown with the retry count.
+     */
+    private JSONObject withRetries(TagTransport tag, String operation, Attempt attempt) throws IOException, JSONException {
+        TagIOPolicy policy = this.policy;
+        int retries = 0;
+        while (true) {
+            try {
+                JSONObject result = attempt.run();
+                result.put("retries", retries);
+                return result;
+            } catch (IOException e) {
+                if (retries >= policy.getMaxRetries() || !TagIOPolicy.isRetryable(e) || !isPresent(tag)) {
+                    if (retries == 0) throw e;
+                    String message = e.getMessage() + " (after " + retries + (retries == 1 ? " retry)" : " retries)");
+                    throw new TagIOPolicy.NotRetryableException(message, e);
+                }
+                retries++;
+                metrics.retry(operation);
+            }
+        }
+    }
+
+    private static boolean isPresent(TagTransport tag) {
+        TagTransport.Technology technology = tag.hasTechnology(TagTransport.Technology.NFC_A) ? TagTransport.Technology.NFC_A
+            : tag.hasTechnology(TagTransport.Technology.NDEF) ? TagTransport.Technology.NDEF
+            : TagTransport.Technology.NDEF_FORMATABLE;
+        try {
+            tag.connect(technology);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        } finally {
+            tag.close();
+        }
+    }
+}
@@ -0,0 +1,703 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * What happens to a discovered tag: the armed {@link ScanState} mode decides, the tag is
+ * filtered, deduplicated and journaled as that mode needs, and the {@link TagPipeline} step runs.
+ * Results reach the {@link Listener} only while the session the tap was handled for is still
+ * armed. Sessions are armed and stopped through here as well, so whatever a replaced one still
+ * has running is released.
+ *
+ * NFC feeds it Android tags and runs tag I/O on its NFC I/O thread; the benchmark module's
+ * TapHarness feeds it simulated tags and runs the I/O inline. Monotonic times are taken from
+ * the metrics clock, wall-clock times from System.currentTimeMillis().
+ */
+public class TagRouter {
+    // Event sink, NFC hands the events on to the bridge. Events are made by the pipeline's EventFactory.
+    public interface Listener {
+        void onNdefDiscovered(JSONObject data);
+        // The nfcTag event pre-serialized, as { json }
+        void onNdefJson(JSONObject data);
+        void onUIDDiscovered(JSONObject data);
+        // First tap of an item in an inventory scan
+        void onInventoryItem(JSONObject data);
+        // Items tapped since the last summary of an inventory scan
+        void onInventorySummary(JSONObject data);
+        void onError(String error);
+        void onWriteSuccess(JSONObject data);
+        // A write refused before any tag I/O, with a machine-readable reason
+        void onWriteRejected(JSONObject data);
+        void onProvisionProgress(JSONObject data);
+        void onProvisionComplete(JSONObject data);
+        void onRawRead(JSONObject data);
+        void onClassicRead(JSONObject data);
+        void onSessionComplete(JSONObject data);
+        // Something the tap survived, e.g. a failed journal append. For the log, not for the app.
+        void onWarning(String message, Exception cause);
+    }
+
+    // Runs blocking tag I/O away from the thread the tag was discovered on
+    public interface TagIO {
+        // Returns false when the operation was rejected, e.g. because the queue is full
+        boolean execute(Operation operation);
+
+        // Drops queued operations, aborts the one in flight and suppresses its completion
+        void cancelAll();
+    }
+
+    public interface Operation {
+        void run(Ticket ticket) throws Exception;
+    }
+
+    // Handle of one queued operation
+    public interface Ticket {
+        boolean isCancelled();
+
+        // Runs the completion unless the operation was cancelled
+        void complete(Runnable completion);
+
+        // The tag, connected through this ticket so cancelAll() can abort a blocking call
+        TagTransport bind(TagTransport tag);
+    }
+
+    static final class WriteSettings {
+        final byte[] message;
+        final boolean diffWrite;
+        final boolean verify;
+
+        WriteSettings(byte[] message, boolean diffWrite, boolean verify) {
+            this.message = message;
+            this.diffWrite = diffWrite;
+            this.verify = verify;
+        }
+    }
+
+    static final class RawReadSettings {
+        final boolean readSignature;
+        final boolean readCounter;
+
+        RawReadSettings(boolean readSignature, boolean readCounter) {
+            this.readSignature = readSignature;
+            this.readCounter = readCounter;
+        }
+    }
+
+    static final class InventorySettings {
+        // Record type the item key is read from, null for none
+        final String itemKeyType;
+        // Minimum time between summaries, 0 only summarizes when the scan stops
+        final long summaryIntervalMillis;
+
+        InventorySettings(String itemKeyType, long summaryIntervalMillis) {
+            this.itemKeyType = itemKeyType;
+            this.summaryIntervalMillis = summaryIntervalMillis;
+        }
+    }
+
+    static final class SessionSettings {
+        final TagSession.Updater updater;
+        final String expectedHash;
+
+        SessionSettings(TagSession.Updater updater, String expectedHash) {
+            this.updater = updater;
+            this.expectedHash = expectedHash;
+        }
+    }
+
+    // A delivery, made only while the listener is set and the session is armed
+    private interface Delivery {
+        void deliver(Listener listener);
+    }
+
+    // The armed mode and its settings, swapped as a whole so a tap never sees half of a transition
+    private final ScanState scanState = new ScanState();
+    private final TagPipeline pipeline;
+    private final NFCMetrics metrics;
+    private final TagPipeline.EventFactory events;
+    private final TagIO io;
+    private final Runnable onFinished;
+    // Kept across inventory scans until cleared, so a count can be paused and resumed
+    private final InventoryTally inventory = new InventoryTally();
+    private volatile Listener listener;
+    private volatile TagDedupCache dedupCache;
+    private volatile TagFilter tagFilter;
+    private volatile ScanJournal journal;
+    private volatile boolean jsonEvents = false;
+    private volatile long lastInventorySummaryMillis;
+
+    // onFinished runs on the I/O thread when a session ends by itself, e.g. provisioning ran out of messages
+    public TagRouter(TagPipeline pipeline, TagIO io, Runnable onFinished) {
+        this.pipeline = pipeline;
+        this.metrics = pipeline.getMetrics();
+        this.events = pipeline.getEvents();
+        this.io = io;
+        this.onFinished = onFinished;
+    }
+
+    // Null drops every event, without building it where that can be skipped
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public ScanState getScanState() {
+        return scanState;
+    }
+
+    public InventoryTally getInventory() {
+        return inventory;
+    }
+
+    // Suppress repeated taps of the same tag, null turns suppression off
+    public void setDedupCache(TagDedupCache dedupCache) {
+        this.dedupCache = dedupCache;
+    }
+
+    public TagDedupCache getDedupCache() {
+        return dedupCache;
+    }
+
+    // Drop tags the app isn't interested in before any event is built, null delivers every tag
+    public void setTagFilter(TagFilter tagFilter) {
+        this.tagFilter = tagFilter;
+    }
+
+    public TagFilter getTagFilter() {
+        return tagFilter;
+    }
+
+    // Record every delivered tag durably, null turns the journal off. The previous one is closed.
+    public void setJournal(ScanJournal journal) {
+        ScanJournal previous = this.journal;
+        this.journal = journal;
+        if (previous != null && previous != journal) {
+            previous.close();
+        }
+    }
+
+    public ScanJournal getJournal() {
+        return journal;
+    }
+
+    // Deliver NDEF discoveries as one pre-serialized JSON string instead of an event tree
+    public void setJsonEvents(boolean jsonEvents) {
+        this.jsonEvents = jsonEvents;
+    }
+
+    // Arms a mode in place of the current one, which is released. Returns the new scan id.
+    public long arm(ScanState.Mode mode, Object settings) {
+        return arm(scanState.create(mode, settings));
+    }
+
+    // Same for a session made with getScanState().create(), e.g. when its settings need its id
+    public long arm(ScanState.Session session) {
+        if (session.mode == ScanState.Mode.INVENTORY) {
+            lastInventorySummaryMillis = elapsedMillis();
+        }
+        release(scanState.arm(session));
+        return session.id;
+    }
+
+    // Goes idle if one of the modes is armed and releases it. Returns the stopped session, or null.
+    public ScanState.Session stop(ScanState.Mode... modes) {
+        ScanState.Session stopped = scanState.stop(modes);
+        if (stopped != null) {
+            release(stopped);
+        }
+        return stopped;
+    }
+
+    // Stops whatever a stopped or replaced session still has running. Taps it already handed to
+    // the I/O thread are dropped when they complete, as the session is no longer armed.
+    private void release(ScanState.Session session) {
+        switch (session.mode) {
+            case WRITE:
+                io.cancelAll();
+                break;
+            case PROVISION:
+                io.cancelAll();
+                notifyProvisionComplete(session);
+                break;
+            case INVENTORY:
+                // Whatever was counted since the last summary
+                notifyInventorySummary(session);
+                break;
+            case SESSION:
+                TagSession.Updater updater = ((SessionSettings) session.settings).updater;
+                if (updater instanceof TagSession.Handoff) {
+                    ((TagSession.Handoff) updater).cancel();
+                }
+                io.cancelAll();
+                break;
+            default:
+                break;
+        }
+    }
+
+    // A tag from reader mode, or any other source without NDEF messages of its own
+    public void onTagDiscovered(TagTransport tag, long handOffNanos) {
+        ScanState.Session armed = scanState.current();
+
+        byte[][] messages = null;
+        if (armed.mode == ScanState.Mode.READ && tag != null) {
+            // The platform already read the message during its NDEF check.
+            // When the check is skipped the Ndef technology isn't exposed at all.
+            byte[] cached = tag.getCachedNdefMessage();
+            if (cached != null) {
+                messages = new byte[][] { cached };
+            }
+        }
+
+        handleTag(armed, tag, messages, handOffNanos);
+    }
+
+    // armed is the session when the tag was handed to us, the tap is handled for it alone
+    public void handleTag(ScanState.Session armed, TagTransport tag, byte[][] messages, long handOffNanos) {
+        // Check for multiple tags
+        // Technically Android only sends one tag in a single intent,
+        // but we add this check for consistency with iOS
+        // and in anticipation of changes to the Android API in the future
+        if (tag == null) {
+            Listener listener = this.listener;
+            if (armed != ScanState.IDLE && listener != null) {
+                listener.onError("No NFC tag detected");
+            }
+            return;
+        }
+
+        switch (armed.mode) {
+            case PROVISION:
+                provisionTag(armed, tag, handOffNanos);
+                break;
+            case SESSION:
+                runSession(armed, tag, handOffNanos);
+                break;
+            case WRITE:
+                writeNdefMessage(armed, tag, handOffNanos);
+                break;
+            case RAW_READ:
+                readRawMemory(armed, tag, handOffNanos);
+                break;
+            case CLASSIC_READ:
+                readClassicSectors(armed, tag, handOffNanos);
+                break;
+            case UID:
+                if (isFilteredOut(tag, null)) return;
+                if (isDuplicate(tag, null)) return;
+                processUIDData(armed, tag, handOffNanos);
+                break;
+            case INVENTORY:
+                if (isFilteredOut(tag, null)) return;
+                if (isDuplicate(tag, null)) return;
+                countInventoryItem(armed, tag, handOffNanos);
+                break;
+            case READ:
+                if (messages != null) {
+                    if (isFilteredOut(tag, messages)) return;
+                    if (isDuplicate(tag, messages)) return;
+                    processNdefMessages(armed, tag, messages, handOffNanos);
+                }
+                break;
+            default:
+                // Nothing armed: a tap that raced a stop
+                break;
+        }
+    }
+
+    // Evaluated on the raw tag, so rejected tags never get an event built
+    private boolean isFilteredOut(TagTransport tag, byte[][] messages) {
+        TagFilter filter = this.tagFilter;
+        if (filter == null) return false;
+
+        if (messages == null && filter.needsNdef()) {
+            // UID scans: use whatever the platform read during discovery
+            byte[] cached = tag.getCachedNdefMessage();
+            if (cached != null) {
+                messages = new byte[][] { cached };
+            }
+        }
+        return !filter.matches(tag.getId(), tag.getTechList(), messages);
+    }
+
+    // Repeats of a tag seen within the dedup window are dropped here, before any event is built
+    private boolean isDuplicate(TagTransport tag, byte[][] messages) {
+        return TagPipeline.isDuplicate(this.dedupCache, tag.getId(), messages, elapsedMillis());
+    }
+
+    private void processNdefMessages(ScanState.Session armed, TagTransport tag, byte[][] messages, long handOffNanos) {
+        if (!scanState.isArmed(armed)) return;
+        long journalSeq = appendToJournal(ScanJournal.KIND_TAG, tag, messages);
+        Listener listener = this.listener;
+        if (listener == null) return;
+
+        try {
+            if (jsonEvents) {
+                JSONObject result = events.newEvent();
+                result.put("json", pipeline.readNdefJson(tag.getId(), tag.getTechList(), messages, journalSeq));
+                result.put("scanId", armed.id);
+                if (!scanState.isArmed(armed)) return;
+                long notifyStart = metrics.now();
+                listener.onNdefJson(result);
+                metrics.recordSince(NFCMetrics.OP_READ, NFCMetrics.STAGE_NOTIFY, notifyStart);
+                metrics.recordSince(NFCMetrics.OP_READ, NFCMetrics.STAGE_TOTAL, handOffNanos);
+                metrics.success(NFCMetrics.OP_READ);
+                return;
+            }
+
+            JSONObject result = pipeline.readNdef(messages);
+            if (journalSeq > 0) {
+                result.put("journalSeq", journalSeq);
+            }
+            result.put("scanId", armed.id);
+            // Stopped or restarted while the event was built
+            if (!scanState.isArmed(armed)) return;
+            long notifyStart = metrics.now();
+            listener.onNdefDiscovered(result);
+            metrics.recordSince(NFCMetrics.OP_READ, NFCMetrics.STAGE_NOTIFY, notifyStart);
+            metrics.recordSince(NFCMetrics.OP_READ, NFCMetrics.STAGE_TOTAL, handOffNanos);
+            metrics.success(NFCMetrics.OP_READ);
+        } catch (Exception e) {
+            metrics.failure(NFCMetrics.OP_READ, e.getClass().getSimpleName());
+            listener.onError("Error processing NDEF message: " + e.getMessage());
+        }
+    }
+
+    private void processUIDData(ScanState.Session armed, TagTransport tag, long handOffNanos) {
+        if (!scanState.isArmed(armed)) return;
+        long journalSeq = appendToJournal(ScanJournal.KIND_UID, tag, null);
+        Listener listener = this.listener;
+        if (listener == null) return;
+
+        try {
+            JSONObject result = pipeline.readUid(tag, System.currentTimeMillis());
+            if (result == null) {
+                listener.onError("Tag UID tidak dapat dibaca");
+                return;
+            }
+
+            if (journalSeq > 0) {
+                result.put("journalSeq", journalSeq);
+            }
+            result.put("scanId", armed.id);
+            if (!scanState.isArmed(armed)) return;
+
+            long notifyStart = metrics.now();
+            listener.onUIDDiscovered(result);
+            metrics.recordSince(NFCMetrics.OP_UID, NFCMetrics.STAGE_NOTIFY, notifyStart);
+            metrics.recordSince(NFCMetrics.OP_UID, NFCMetrics.STAGE_TOTAL, handOffNanos);
+            metrics.success(NFCMetrics.OP_UID);
+        } catch (Exception e) {
+            metrics.failure(NFCMetrics.OP_UID, e.getClass().getSimpleName());
+            listener.onError("Error processing UID data: " + e.getMessage());
+        }
+    }
+
+    // Repeats of an item are only counted, the first tap is emitted
+    private void countInventoryItem(ScanState.Session armed, TagTransport tag, long handOffNanos) {
+        if (!scanState.isArmed(armed)) return;
+        byte[] uid = tag.getId();
+        if (uid == null || uid.length == 0) {
+            metrics.failure(NFCMetrics.OP_INVENTORY, "EmptyUid");
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onError("Tag UID tidak dapat dibaca");
+            }
+            return;
+        }
+        appendToJournal(ScanJournal.KIND_UID, tag, null);
+
+        long encodeStart = metrics.now();
+        InventorySettings settings = (InventorySettings) armed.settings;
+        // Whatever the platform read during discovery, no extra tag I/O
+        InventoryTally.ItemKeySource itemKey = settings.itemKeyType != null
+            ? () -> InventoryTally.itemKey(tag.getCachedNdefMessage(), settings.itemKeyType)
+            : null;
+
+        try {
+            JSONObject result = inventory.recordItem(uid, System.currentTimeMillis(), itemKey, events);
+            Listener listener = this.listener;
+            if (listener == null) return;
+            if (result != null) {
+                result.put("scanId", armed.id);
+                metrics.recordSince(NFCMetrics.OP_INVENTORY, NFCMetrics.STAGE_ENCODE, encodeStart);
+                if (!scanState.isArmed(armed)) return;
+                long notifyStart = metrics.now();
+                listener.onInventoryItem(result);
+                metrics.recordSince(NFCMetrics.OP_INVENTORY, NFCMetrics.STAGE_NOTIFY, notifyStart);
+            }
+
+            long now = elapsedMillis();
+            if (settings.summaryIntervalMillis > 0 && now - lastInventorySummaryMillis >= settings.summaryIntervalMillis) {
+                lastInventorySummaryMillis = now;
+                notifyInventorySummary(armed);
+            }
+            metrics.recordSince(NFCMetrics.OP_INVENTORY, NFCMetrics.STAGE_TOTAL, handOffNanos);
+            metrics.success(NFCMetrics.OP_INVENTORY);
+        } catch (Exception e) {
+            metrics.failure(NFCMetrics.OP_INVENTORY, e.getClass().getSimpleName());
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onError("Error processing inventory item: " + e.getMessage());
+            }
+        }
+    }
+
+    // Emits the items tapped since the last summary, if any
+    private void notifyInventorySummary(ScanState.Session armed) {
+        Listener listener = this.listener;
+        if (listener == null || !inventory.hasDelta()) return;
+
+        try {
+            JSONObject summary = events.newEvent();
+            inventory.putDelta(summary);
+            summary.put("scanId", armed.id);
+            listener.onInventorySummary(summary);
+        } catch (JSONException e) {
+            listener.onWarning("Error building inventory summary", e);
+        }
+    }
+
+    // Journals the tag before it's handed to the bridge, returns 0 when there's no journal
+    private long appendToJournal(String kind, TagTransport tag, byte[][] messages) {
+        ScanJournal journal = this.journal;
+        if (journal == null) return 0;
+
+        try {
+            return journal.append(kind, tag.getId(), messages, System.currentTimeMillis());
+        } catch (IOException e) {
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onWarning("Failed to journal tag", e);
+            }
+            return 0;
+        }
+    }
+
+    // Queues blocking tag I/O, reporting an error when it's rejected
+    private void runTagIO(String metricsOperation, String description, Operation operation) {
+        if (!io.execute(operation)) {
+            metrics.failure(metricsOperation, "Busy");
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onError("NFC is busy, " + description + " was rejected");
+            }
+        }
+    }
+
+    // Completes tag I/O only while the session the tap was handled for is still armed
+    private void complete(ScanState.Session armed, Ticket ticket, Delivery delivery) {
+        ticket.complete(() -> {
+            Listener listener = this.listener;
+            if (listener != null && scanState.isArmed(armed)) {
+                delivery.deliver(listener);
+            }
+        });
+    }
+
+    private void writeNdefMessage(ScanState.Session armed, TagTransport tag, long handOffNanos) {
+        WriteSettings settings = (WriteSettings) armed.settings;
+        byte[] message = settings.message;
+        // Perform check to ensure only one tag technology is available
+        // This is an approach to detect multiple tags
+        String[] techList = tag.getTechList();
+        if (techList.length == 0) {
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onError("No technologies available on this tag");
+            }
+            return;
+        }
+
+        // Fail fast on tags the message can't go to, instead of after a connect / I/O timeout
+        try {
+            JSONObject rejection = pipeline.planWrite(tag, message.length, NFCMetrics.OP_WRITE);
+            if (rejection != null) {
+                rejection.put("scanId", armed.id);
+                Listener listener = this.listener;
+                if (listener != null && scanState.isArmed(armed)) {
+                    listener.onWriteRejected(rejection);
+                }
+                return;
+            }
+        } catch (JSONException e) {
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onWarning("Write planning failed", e);
+            }
+        }
+
+        runTagIO(NFCMetrics.OP_WRITE, "write", ticket -> {
+            metrics.recordSince(NFCMetrics.OP_WRITE, NFCMetrics.STAGE_QUEUE, handOffNanos);
+            try {
+                JSONObject result = pipeline.write(
+                    ticket.bind(tag), message, settings.diffWrite, settings.verify, NFCMetrics.OP_WRITE);
+                result.put("scanId", armed.id);
+                complete(armed, ticket, listener -> listener.onWriteSuccess(result));
+            } catch (Exception e) {
+                complete(armed, ticket, listener -> listener.onError(e.getMessage()));
+            }
+            metrics.recordSince(NFCMetrics.OP_WRITE, NFCMetrics.STAGE_TOTAL, handOffNanos);
+        });
+    }
+
+    // Dumps NTAG / Ultralight memory over a single NfcA connection on the I/O thread
+    private void readRawMemory(ScanState.Session armed, TagTransport tag, long handOffNanos) {
+        if (!tag.hasTechnology(TagTransport.Technology.NFC_A)) {
+            metrics.failure(NFCMetrics.OP_RAW_READ, "Unsupported");
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onError("Tag doesn't support raw NfcA reads");
+            }
+            return;
+        }
+
+        int pageCount = tag.getFallbackPageCount();
+        RawReadSettings settings = (RawReadSettings) armed.settings;
+
+        runTagIO(NFCMetrics.OP_RAW_READ, "raw read", ticket -> {
+            metrics.recordSince(NFCMetrics.OP_RAW_READ, NFCMetrics.STAGE_QUEUE, handOffNanos);
+            try {
+                JSONObject result = pipeline.readRaw(
+                    ticket.bind(tag), settings.readSignature, settings.readCounter, pageCount);
+                result.put("scanId", armed.id);
+                long notifyStart = metrics.now();
+                complete(armed, ticket, listener -> listener.onRawRead(result));
+                metrics.recordSince(NFCMetrics.OP_RAW_READ, NFCMetrics.STAGE_NOTIFY, notifyStart);
+            } catch (Exception e) {
+                complete(armed, ticket, listener -> listener.onError(e.getMessage()));
+            }
+            metrics.recordSince(NFCMetrics.OP_RAW_READ, NFCMetrics.STAGE_TOTAL, handOffNanos);
+        });
+    }
+
+    // Authenticates and reads MIFARE Classic sectors over a single connection on the I/O thread
+    private void readClassicSectors(ScanState.Session armed, TagTransport tag, long handOffNanos) {
+        if (!tag.hasTechnology(TagTransport.Technology.MIFARE_CLASSIC)) {
+            // Also what phones without an NXP controller report for Classic cards
+            metrics.failure(NFCMetrics.OP_CLASSIC_READ, "Unsupported");
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onError("Tag isn't a MIFARE Classic card, or this device can't read them");
+            }
+            return;
+        }
+
+        runTagIO(NFCMetrics.OP_CLASSIC_READ, "MIFARE Classic read", ticket -> {
+            metrics.recordSince(NFCMetrics.OP_CLASSIC_READ, NFCMetrics.STAGE_QUEUE, handOffNanos);
+            try {
+                JSONObject result = pipeline.readClassic(ticket.bind(tag), (MifareClassicReader.Options) armed.settings);
+                result.put("scanId", armed.id);
+                long notifyStart = metrics.now();
+                complete(armed, ticket, listener -> listener.onClassicRead(result));
+                metrics.recordSince(NFCMetrics.OP_CLASSIC_READ, NFCMetrics.STAGE_NOTIFY, notifyStart);
+            } catch (Exception e) {
+                complete(armed, ticket, listener -> listener.onError(e.getMessage()));
+            }
+            metrics.recordSince(NFCMetrics.OP_CLASSIC_READ, NFCMetrics.STAGE_TOTAL, handOffNanos);
+        });
+    }
+
+    // Connects once, reads, lets the updater decide and writes before the tag is released
+    private void runSession(ScanState.Session armed, TagTransport tag, long handOffNanos) {
+        SessionSettings settings = (SessionSettings) armed.settings;
+        runTagIO(NFCMetrics.OP_SESSION, "session", ticket -> {
+            metrics.recordSince(NFCMetrics.OP_SESSION, NFCMetrics.STAGE_QUEUE, handOffNanos);
+            JSONObject result;
+            try {
+                result = pipeline.readModifyWrite(ticket.bind(tag), settings.updater, settings.expectedHash);
+            } catch (Exception e) {
+                result = events.newEvent();
+                result.put("uid", UidEncoder.toHex(tag.getId()));
+                result.put("status", TagSession.STATUS_FAILED);
+                result.put("error", e.getMessage());
+            }
+            result.put("scanId", armed.id);
+            JSONObject event = result;
+            long notifyStart = metrics.now();
+            complete(armed, ticket, listener -> listener.onSessionComplete(event));
+            metrics.recordSince(NFCMetrics.OP_SESSION, NFCMetrics.STAGE_NOTIFY, notifyStart);
+            metrics.recordSince(NFCMetrics.OP_SESSION, NFCMetrics.STAGE_TOTAL, handOffNanos);
+        });
+    }
+
+    private void provisionTag(ScanState.Session armed, TagTransport tag, long handOffNanos) {
+        ProvisioningSession session = (ProvisioningSession) armed.settings;
+        String uid = UidEncoder.toHex(tag.getId());
+        runTagIO(NFCMetrics.OP_PROVISION, "provisioning write", ticket -> {
+            metrics.recordSince(NFCMetrics.OP_PROVISION, NFCMetrics.STAGE_QUEUE, handOffNanos);
+            // The queue belongs to this session, a stopped one must not take messages from it
+            if (!scanState.isArmed(armed)) return;
+            if (session.shouldSkip(uid)) {
+                JSONObject progress = session.markSkipped(uid);
+                progress.put("scanId", armed.id);
+                complete(armed, ticket, listener -> listener.onProvisionProgress(progress));
+                return;
+            }
+
+            byte[] message = session.nextMessage();
+            if (message == null) return;
+
+            String error = null;
+            String reason = null;
+            int retries = 0;
+            try {
+                JSONObject rejection = pipeline.planWrite(tag, message.length, NFCMetrics.OP_PROVISION);
+                if (rejection != null) {
+                    // The message stays queued for the next tag
+                    error = rejection.getString("error");
+                    reason = rejection.getString("reason");
+                } else {
+                    JSONObject written = pipeline.write(ticket.bind(tag), message, false, false, NFCMetrics.OP_PROVISION);
+                    retries = written.getInt("retries");
+                }
+            } catch (Exception e) {
+                error = e.getMessage();
+            }
+            if (ticket.isCancelled()) return;
+
+            JSONObject progress = error == null ? session.markWritten(uid) : session.markFailed(uid, error);
+            if (reason != null) {
+                progress.put("reason", reason);
+            }
+            progress.put("retries", retries);
+            progress.put("scanId", armed.id);
+            Listener listener = this.listener;
+            if (listener != null && scanState.isArmed(armed)) {
+                listener.onProvisionProgress(progress);
+            }
+            metrics.recordSince(NFCMetrics.OP_PROVISION, NFCMetrics.STAGE_TOTAL, handOffNanos);
+            if (session.isFinished()) {
+                finishProvisioning(armed);
+            }
+        });
+    }
+
+    // Called on the I/O thread once the queue is used up, unless the session was stopped first
+    private void finishProvisioning(ScanState.Session armed) {
+        if (!scanState.finish(armed)) return;
+
+        onFinished.run();
+        notifyProvisionComplete(armed);
+    }
+
+    private void notifyProvisionComplete(ScanState.Session armed) {
+        Listener listener = this.listener;
+        if (listener == null) return;
+
+        try {
+            JSONObject summary = ((ProvisioningSession) armed.settings).summary();
+            summary.put("scanId", armed.id);
+            listener.onProvisionComplete(summary);
+        } catch (JSONException e) {
+            listener.onWarning("Error building provisioning summary", e);
+        }
+    }
+
+    // Same timebase as SystemClock.elapsedRealtime() on device
+    private long elapsedMillis() {
+        return metrics.now() / 1_000_000L;
+    }
+}
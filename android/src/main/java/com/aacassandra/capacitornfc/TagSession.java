@@ -0,0 +1,134 @@
+package com.aacassandra.capacitornfc;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Read-modify-write of a tag within a single tap: the tag is connected once, its NDEF content
+ * and UID go to an {@link Updater}, and the updated message is written before the connection is
+ * closed. A content hash (SHA-256 of the raw NDEF message) works as a compare-and-swap
+ * precondition, so two terminals updating the same tag can't overwrite each other's changes.
+ */
+public final class TagSession {
+    public static final String STATUS_WRITTEN = "written";
+    public static final String STATUS_UNCHANGED = "unchanged";
+    public static final String STATUS_CONFLICT = "conflict";
+    public static final String STATUS_TIMEOUT = "timeout";
+    public static final String STATUS_FAILED = "failed";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    public interface Updater {
+        // current is null on a blank tag. Returns null to leave the tag as it is.
+        Update update(byte[] uid, byte[] current, String contentHash) throws Exception;
+    }
+
+    public static final class Update {
+        final byte[] message;
+        final String expectedHash;
+
+        // With expectedHash, the tag is read again right before writing and must still match it
+        public Update(byte[] message, String expectedHash) {
+            this.message = message;
+            this.expectedHash = expectedHash;
+        }
+    }
+
+    public static class UpdateTimeoutException extends Exception {
+        public UpdateTimeoutException(String message) {
+            super(message);
+        }
+    }
+
+    private TagSession() {
+    }
+
+    // Hex SHA-256 of the raw NDEF message, a blank tag hashes like an empty message
+    public static String contentHash(byte[] message) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(message != null ? message : new byte[0]);
+            char[] out = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                out[i * 2] = HEX[(digest[i] >>> 4) & 0x0F];
+                out[i * 2 + 1] = HEX[digest[i] & 0x0F];
+            }
+            return new String(out);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Updater that hands the tag content to someone else (JS, over the bridge) and blocks the
+     * NFC I/O thread, with the tag still connected, until {@link #complete} is called with the
+     * matching session id or the timeout expires.
+     */
+    public static final class Handoff implements Updater {
+        public interface Listener {
+            void onRead(long sessionId, byte[] uid, byte[] current, String contentHash) throws Exception;
+        }
+
+        private final Listener listener;
+        private final long timeoutMillis;
+        private long lastSessionId = 0;
+        private long waitingFor = 0;
+        private boolean replied = false;
+        private boolean cancelled = false;
+        private Update reply;
+
+        public Handoff(Listener listener, long timeoutMillis) {
+            this.listener = listener;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public Update update(byte[] uid, byte[] current, String contentHash) throws Exception {
+            long sessionId;
+            synchronized (this) {
+                if (cancelled) throw new IOException("Session cancelled");
+                sessionId = ++lastSessionId;
+                waitingFor = sessionId;
+                replied = false;
+                reply = null;
+            }
+
+            try {
+                listener.onRead(sessionId, uid, current, contentHash);
+            } catch (Exception e) {
+                synchronized (this) {
+                    waitingFor = 0;
+                }
+                throw e;
+            }
+
+            synchronized (this) {
+                long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+                long remaining = timeoutMillis * 1_000_000L;
+                while (!replied && !cancelled && remaining > 0) {
+                    wait(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+                    remaining = deadline - System.nanoTime();
+                }
+                waitingFor = 0;
+                if (cancelled) throw new IOException("Session cancelled");
+                if (!replied) throw new UpdateTimeoutException("No update within " + timeoutMillis + " ms");
+                return reply;
+            }
+        }
+
+        // Returns false when no tap is waiting for this session id (it timed out or never existed)
+        public synchronized boolean complete(long sessionId, Update update) {
+            if (sessionId == 0 || sessionId != waitingFor || replied) return false;
+            reply = update;
+            replied = true;
+            notifyAll();
+            return true;
+        }
+
+        // Releases a waiting tap, and fails any later one
+        public synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.aacassandra.capacitornfc;
+
+import java.io.IOException;
+
+/**
+ * One discovered tag, as seen by the read / write / UID paths.
+ *
+ * On device this wraps android.nfc.Tag and its technologies ({@link AndroidTagTransport});
+ * {@link SimulatedTag} is an in-memory implementation for load tests on a plain JVM. A single
+ * technology is connected at a time. NfcA commands go through {@link #transceive} once
+ * {@link Technology#NFC_A} is connected, sector operations once {@link Technology#MIFARE_CLASSIC} is.
+ */
+public interface TagTransport extends NtagReader.Connection, MifareClassicReader.Connection {
+    enum Technology {
+        NFC_A,
+        MIFARE_ULTRALIGHT,
+        MIFARE_CLASSIC,
+        NDEF,
+        NDEF_FORMATABLE,
+    }
+
+    byte[] getId();
+
+    String[] getTechList();
+
+    boolean hasTechnology(Technology technology);
+
+    // NDEF message read by the platform during discovery, null when there isn't one
+    byte[] getCachedNdefMessage();
+
+    // NDEF size and writability from the discovery data, null when the tag has no NDEF support
+    TagCapability getCapability();
+
+    // Pages a raw read covers when the tag doesn't answer GET_VERSION: 44 on an Ultralight C, whose
+    // pages 0x2C-0x2F hold the 3DES key and can't be read, 16 otherwise
+    int getFallbackPageCount();
+
+    void connect(Technology technology) throws IOException;
+
+    // Closes whatever is connected, safe to call when nothing is
+    void close();
+
+    // Transceive timeout of the connected NfcA technology until it's closed, ignored otherwise
+    void setTimeout(int millis);
+
+    // The following need NDEF connected
+    boolean isWritable() throws IOException;
+
+    // Current message read from the tag, null when it holds none
+    byte[] readNdefMessage() throws IOException;
+
+    void writeNdefMessage(byte[] message) throws IOException;
+
+    // Needs NDEF_FORMATABLE connected
+    void format(byte[] message) throws IOException;
+}
@@ -0,0 +1,168 @@
+package com.aacassandra.capacitornfc;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Builds the nfcUID event payload from the raw tag UID.
+ * Only depends on org.json so the benchmark module can run it on a plain JVM.
+ *
+ * An instance keeps its scratch buffers, the last UID strings, the formatted timestamp of the
+ * current second and the tech-list arrays of recent tag types, so a steady stream of taps
+ * allocates little more than the result object itself. Instances are thread-safe.
+ */
+public final class UidEncoder {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+    private static final int TECH_CACHE_SIZE = 8;
+
+    private char[] plain = new char[20];
+    private char[] formatted = new char[30];
+    private byte[] lastUid = new byte[0];
+    private String lastHex;
+    private String lastFormatted;
+
+    private boolean epochMillisTimestamps = false;
+    // Rebuilt when the device's time zone or locale changes, the formatter keeps the ones it was made with
+    private SimpleDateFormat timestampFormat;
+    private TimeZone timestampZone;
+    private Locale timestampLocale;
+    private final Date timestampDate = new Date();
+    private long lastTimestampSecond = Long.MIN_VALUE;
+    private String lastTimestamp;
+
+    // Small round-robin cache: a station usually only ever sees a couple of tag types
+    private final String[][] techKeys = new String[TECH_CACHE_SIZE][];
+    private final JSONArray[] techArrays = new JSONArray[TECH_CACHE_SIZE];
+    private int techNext = 0;
+
+    public static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            out[i * 2] = HEX[b >>> 4];
+            out[i * 2 + 1] = HEX[b & 0x0F];
+        }
+        return new String(out);
+    }
+
+    // Parses hex as produced by toHex, ':' and space separators are ignored
+    public static byte[] fromHex(String hex) {
+        String digits = hex.replace(":", "").replace(" ", "");
+        if (digits.length() % 2 != 0) {
+            throw new IllegalArgumentException("Odd number of hex digits: " + hex);
+        }
+        byte[] out = new byte[digits.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            int high = Character.digit(digits.charAt(i * 2), 16);
+            int low = Character.digit(digits.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid hex: " + hex);
+            }
+            out[i] = (byte) ((high << 4) | low);
+        }
+        return out;
+    }
+
+    // Determine card type based on UID length (similar to desktop version)
+    public static String cardType(int uidLengthBytes) {
+        if (uidLengthBytes == 4) {
+            return "Kemungkinan MIFARE Classic 1K/4K, atau kartu 4-byte UID lainnya";
+        } else if (uidLengthBytes == 7) {
+            return "Kemungkinan MIFARE Ultralight, NTAG, atau kartu 7-byte UID lainnya";
+        }
+        return "Tidak diketahui";
+    }
+
+    // Also report timestamps as epoch milliseconds, next to the "yyyy-MM-dd HH:mm:ss" string
+    public synchronized void setEpochMillisTimestamps(boolean epochMillisTimestamps) {
+        this.epochMillisTimestamps = epochMillisTimestamps;
+    }
+
+    public synchronized void putUidData(JSONObject result, byte[] uid, String[] techList, long nowMillis)
+        throws JSONException {
+        encode(uid);
+
+        result.put("uid", lastHex);
+        result.put("uidFormatted", lastFormatted);
+        result.put("uidLength", uid.length);
+        result.put("cardType", cardType(uid.length));
+        result.put("timestamp", timestamp(nowMillis));
+        if (epochMillisTimestamps) {
+            result.put("timestampMs", nowMillis);
+        }
+        result.put("techList", techArray(techList));
+    }
+
+    // Fills lastHex ("04a12345") and lastFormatted ("04 A1 23 45") in a single pass
+    private void encode(byte[] uid) {
+        if (lastHex != null && Arrays.equals(uid, lastUid)) {
+            return;
+        }
+
+        int n = uid.length;
+        if (plain.length < n * 2) {
+            plain = new char[n * 2];
+            formatted = new char[n * 3];
+        }
+        for (int i = 0; i < n; i++) {
+            int b = uid[i] & 0xFF;
+            plain[i * 2] = HEX[b >>> 4];
+            plain[i * 2 + 1] = HEX[b & 0x0F];
+            formatted[i * 3] = HEX_UPPER[b >>> 4];
+            formatted[i * 3 + 1] = HEX_UPPER[b & 0x0F];
+            formatted[i * 3 + 2] = ' ';
+        }
+
+        lastHex = new String(plain, 0, n * 2);
+        lastFormatted = new String(formatted, 0, Math.max(0, n * 3 - 1));
+        if (lastUid.length != n) {
+            lastUid = new byte[n];
+        }
+        System.arraycopy(uid, 0, lastUid, 0, n);
+    }
+
+    // The formatter only runs once per second of wall-clock time
+    private String timestamp(long nowMillis) {
+        long second = nowMillis / 1000L;
+        if (second != lastTimestampSecond) {
+            TimeZone zone = TimeZone.getDefault();
+            Locale locale = Locale.getDefault();
+            if (timestampFormat == null || !zone.equals(timestampZone) || !locale.equals(timestampLocale)) {
+                timestampFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", locale);
+                timestampFormat.setTimeZone(zone);
+                timestampZone = zone;
+                timestampLocale = locale;
+            }
+            timestampDate.setTime(nowMillis);
+            lastTimestamp = timestampFormat.format(timestampDate);
+            lastTimestampSecond = second;
+        }
+        return lastTimestamp;
+    }
+
+    // The returned array is shared between events and must not be modified
+    private JSONArray techArray(String[] techList) {
+        for (int i = 0; i < TECH_CACHE_SIZE; i++) {
+            if (techKeys[i] != null && Arrays.equals(techKeys[i], techList)) {
+                return techArrays[i];
+            }
+        }
+
+        JSONArray techArray = new JSONArray();
+        for (String tech : techList) {
+            techArray.put(tech);
+        }
+        techKeys[techNext] = techList.clone();
+        techArrays[techNext] = techArray;
+        techNext = (techNext + 1) % TECH_CACHE_SIZE;
+        return techArray;
+    }
+}
@@ -0,0 +1,152 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import com.getcapacitor.JSObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.json.JSONArray;
+import org.junit.Test;
+
+public class EventBatcherTest {
+
+    private static JSObject tag(String uid) {
+        JSObject data = new JSObject();
+        data.put("uid", uid);
+        return data;
+    }
+
+    private static int eventCount(List<JSObject> batches) throws Exception {
+        int count = 0;
+        for (JSObject batch : batches) {
+            count += batch.getJSONArray("events").length();
+        }
+        return count;
+    }
+
+    @Test
+    public void fullBatch_isEmittedRightAway() throws Exception {
+        List<JSObject> batches = new ArrayList<>();
+        EventBatcher batcher = new EventBatcher(batches::add, 3, 60_000, 100, EventBatcher.OVERFLOW_DROP_OLDEST, 0);
+        batcher.add("nfcUID", tag("01"));
+        batcher.add("nfcUID", tag("02"));
+        assertTrue(batches.isEmpty());
+        batcher.add("nfcUID", tag("03"));
+
+        assertEquals(1, batches.size());
+        JSONArray events = batches.get(0).getJSONArray("events");
+        assertEquals(3, events.length());
+        assertEquals("02", events.getJSONObject(1).getJSONObject("data").getString("uid"));
+        assertEquals(1, batches.get(0).getLong("batchId"));
+        batcher.shutdown();
+    }
+
+    @Test
+    public void backpressure_holdsBatchesUntilAcked() throws Exception {
+        List<JSObject> batches = new ArrayList<>();
+        EventBatcher batcher = new EventBatcher(batches::add, 1, 60_000, 100, EventBatcher.OVERFLOW_DROP_OLDEST, 1);
+        batcher.add("nfcUID", tag("01"));
+        batcher.add("nfcUID", tag("02"));
+        assertEquals(1, batches.size());
+
+        batcher.ack(1);
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(1).getLong("batchId"));
+        batcher.shutdown();
+    }
+
+    @Test
+    public void overflow_dropsOldestAndCountsThem() throws Exception {
+        List<JSObject> batches = new ArrayList<>();
+        EventBatcher batcher = new EventBatcher(batches::add, 2, 60_000, 2, EventBatcher.OVERFLOW_DROP_OLDEST, 1);
+        batcher.add("nfcUID", tag("01"));
+        batcher.add("nfcUID", tag("02"));
+        batcher.add("nfcUID", tag("03"));
+        batcher.add("nfcUID", tag("04"));
+        batcher.add("nfcUID", tag("05"));
+        batcher.ack(1);
+
+        assertEquals(2, batches.size());
+        JSONArray events = batches.get(1).getJSONArray("events");
+        assertEquals("04", events.getJSONObject(0).getJSONObject("data").getString("uid"));
+        assertEquals(1, batches.get(1).getLong("dropped"));
+        batcher.shutdown();
+    }
+
+    @Test
+    public void overflow_aggregatesRepeatsOfTheSameTag() throws Exception {
+        List<JSObject> batches = new ArrayList<>();
+        EventBatcher batcher = new EventBatcher(batches::add, 2, 60_000, 2, EventBatcher.OVERFLOW_AGGREGATE, 1);
+        batcher.add("nfcUID", tag("01"));
+        batcher.add("nfcUID", tag("02"));
+        batcher.add("nfcUID", tag("03"));
+        batcher.add("nfcUID", tag("04"));
+        batcher.add("nfcUID", tag("04"));
+        batcher.add("nfcUID", tag("04"));
+        batcher.ack(1);
+
+        JSONArray events = batches.get(1).getJSONArray("events");
+        assertEquals(3, events.getJSONObject(1).getInt("count"));
+        assertEquals(2, batches.get(1).getLong("aggregated"));
+        batcher.shutdown();
+    }
+
+    @Test
+    public void shutdown_emitsEverythingDespiteBackpressure() throws Exception {
+        List<JSObject> batches = new ArrayList<>();
+        EventBatcher batcher = new EventBatcher(batches::add, 2, 60_000, 100, EventBatcher.OVERFLOW_DROP_OLDEST, 1);
+        for (int i = 0; i < 7; i++) {
+            batcher.add("nfcUID", tag("0" + i));
+        }
+        assertEquals(1, batches.size());
+
+        batcher.shutdown();
+        assertEquals(7, eventCount(batches));
+        for (int i = 0; i < batches.size(); i++) {
+            assertEquals(i + 1, batches.get(i).getLong("batchId"));
+        }
+    }
+
+    @Test
+    public void concurrentFlushes_emitInBatchIdOrder() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        EventBatcher batcher = new EventBatcher(batch -> {
+            long batchId = batch.getLong("batchId");
+            // Give another flushing thread the chance to overtake
+            Thread.yield();
+            synchronized (ids) {
+                ids.add(batchId);
+            }
+        }, 1, 1, 1000, EventBatcher.OVERFLOW_DROP_OLDEST, 0);
+
+        int threads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 500; i++) {
+                    batcher.add("nfcUID", tag(Integer.toHexString(i)));
+                    batcher.flush();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        batcher.shutdown();
+
+        assertEquals(threads * 500, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i + 1, (long) ids.get(i));
+        }
+    }
+}
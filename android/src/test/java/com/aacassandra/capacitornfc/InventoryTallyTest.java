@@ -0,0 +1,110 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class InventoryTallyTest {
+
+    private static byte[] uid(int i) {
+        return new byte[] { 0x04, 0x01, 0x02, 0x03, 0x04, (byte) (i >>> 8), (byte) i };
+    }
+
+    @Test
+    public void recordItem_emitsOnlyTheFirstTap() throws Exception {
+        InventoryTally tally = new InventoryTally();
+        JSONObject first = tally.recordItem(uid(1), 1000, null, JSONObject::new);
+        assertNotNull(first);
+        assertEquals("04010203040001", first.getString("uid"));
+        assertEquals(1, first.getInt("count"));
+        assertEquals(1, first.getInt("items"));
+
+        assertNull(tally.recordItem(uid(1), 2000, null, JSONObject::new));
+        assertEquals(2, tally.getTaps());
+        assertEquals(1, tally.size());
+    }
+
+    @Test
+    public void recordItem_readsItemKeyUntilOneIsFound() throws Exception {
+        InventoryTally tally = new InventoryTally();
+        int[] asked = { 0 };
+        tally.recordItem(uid(1), 1000, () -> {
+            asked[0]++;
+            return null;
+        }, JSONObject::new);
+        tally.recordItem(uid(1), 1000, () -> {
+            asked[0]++;
+            return "sku-1";
+        }, JSONObject::new);
+        tally.recordItem(uid(1), 1000, () -> {
+            asked[0]++;
+            return "other";
+        }, JSONObject::new);
+        assertEquals(2, asked[0]);
+
+        JSONObject tallyJson = new JSONObject();
+        tally.putJson(tallyJson);
+        assertEquals("sku-1", tallyJson.getJSONArray("itemKeys").getString(0));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() throws Exception {
+        InventoryTally tally = new InventoryTally();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                tally.record(uid(i), round);
+            }
+        }
+        assertEquals(1000, tally.size());
+        assertEquals(3000, tally.getTaps());
+
+        JSONObject json = new JSONObject();
+        tally.putJson(json);
+        assertEquals(3, json.getJSONArray("counts").getInt(999));
+        assertEquals(0, json.getJSONArray("firstSeen").getLong(999));
+        assertEquals(2, json.getJSONArray("lastSeen").getLong(999));
+    }
+
+    @Test
+    public void putDelta_coversOnlyChangedItems() throws Exception {
+        InventoryTally tally = new InventoryTally();
+        tally.record(uid(1), 0);
+        tally.record(uid(2), 0);
+        JSONObject first = new JSONObject();
+        tally.putDelta(first);
+        assertEquals(2, first.getJSONArray("uids").length());
+        assertFalse(tally.hasDelta());
+
+        tally.record(uid(2), 1);
+        tally.record(uid(2), 2);
+        JSONObject second = new JSONObject();
+        tally.putDelta(second);
+        assertEquals(1, second.getJSONArray("uids").length());
+        assertEquals(2, second.getInt("newTaps"));
+        assertEquals(3, second.getJSONArray("counts").getInt(0));
+    }
+
+    @Test
+    public void clear_forgetsItems() throws Exception {
+        InventoryTally tally = new InventoryTally();
+        tally.record(uid(1), 0);
+        tally.clear();
+        assertEquals(0, tally.size());
+        assertNotNull(tally.recordItem(uid(1), 0, null, JSONObject::new));
+    }
+
+    @Test
+    public void itemKey_decodesTextAndUriRecords() throws Exception {
+        byte[] text = NdefCodec.encode(new NdefCodec.Message().add(NdefCodec.textRecord("en", "sku-42")));
+        assertEquals("sku-42", InventoryTally.itemKey(text, "T"));
+        assertNull(InventoryTally.itemKey(text, "U"));
+
+        byte[] external = NdefCodec.encode(new NdefCodec.Message()
+            .add(NdefCodec.Record.of(NdefCodec.TNF_EXTERNAL_TYPE, "example.com:sku".getBytes(StandardCharsets.US_ASCII), null,
+                "A-1".getBytes(StandardCharsets.UTF_8))));
+        assertEquals("A-1", InventoryTally.itemKey(external, "example.com:sku"));
+        assertNull(InventoryTally.itemKey(new byte[] { 1, 2 }, "T"));
+    }
+}
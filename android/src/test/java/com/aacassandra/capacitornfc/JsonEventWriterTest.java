@@ -0,0 +1,84 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class JsonEventWriterTest {
+
+    @Test
+    public void nestedValues_areSeparatedAndParseable() throws Exception {
+        byte[] uid = { 0x04, (byte) 0xAB, 0x00 };
+        String json = new JsonEventWriter(16).reset()
+            .beginObject()
+            .name("uid").hexValue(uid, 0, uid.length)
+            .name("count").value(3L)
+            .name("ok").value(true)
+            .name("empty").beginArray().endArray()
+            .name("list").beginArray().value("a").value((String) null).beginObject().name("x").value(1L).endObject().endArray()
+            .endObject()
+            .finish();
+
+        assertEquals("{\"uid\":\"04ab00\",\"count\":3,\"ok\":true,\"empty\":[],\"list\":[\"a\",null,{\"x\":1}]}", json);
+    }
+
+    @Test
+    public void strings_areEscaped() throws Exception {
+        String value = "quote \" backslash \\ newline \n tab \t bell \u0007 separator \u2028";
+        String json = new JsonEventWriter(16).beginObject().name("v").value(value).endObject().finish();
+
+        assertTrue(json.contains("\\u0007"));
+        assertTrue(json.contains("\\u2028"));
+        assertEquals(value, new JSONObject(json).getString("v"));
+    }
+
+    @Test
+    public void utf8Value_decodesLikeTheJdk() throws Exception {
+        byte[][] inputs = {
+            "plain ascii".getBytes(StandardCharsets.UTF_8),
+            "h\u00e9llo \u20ac \ud83d\ude00".getBytes(StandardCharsets.UTF_8),
+            { 'a', (byte) 0xC3 }, // cut off
+            { (byte) 0xED, (byte) 0xA0, (byte) 0x80, 'b' }, // encoded surrogate
+            { (byte) 0xF0, (byte) 0x80, (byte) 0x80, (byte) 0x80 }, // overlong
+            { (byte) 0xFF, '"', '\n' },
+        };
+        for (byte[] input : inputs) {
+            String json = new JsonEventWriter(4).beginArray().utf8Value(input, 0, input.length).endArray().finish();
+            assertEquals(new String(input, StandardCharsets.UTF_8), new JSONArray(json).getString(0));
+        }
+    }
+
+    @Test
+    public void value_writesOrgJsonTrees() throws Exception {
+        JSONObject decoded = new JSONObject()
+            .put("uri", "https://example.com")
+            .put("titles", new JSONArray().put(new JSONObject().put("text", "Hi")))
+            .put("size", 1.5)
+            .put("none", JSONObject.NULL);
+        String json = new JsonEventWriter(16).beginObject()
+            .name("decoded").value((Object) decoded)
+            .name("nan").value((Object) Double.NaN)
+            .endObject()
+            .finish();
+
+        JSONObject parsed = new JSONObject(json).getJSONObject("decoded");
+        assertEquals("https://example.com", parsed.getString("uri"));
+        assertEquals("Hi", parsed.getJSONArray("titles").getJSONObject(0).getString("text"));
+        assertEquals(1.5, parsed.getDouble("size"), 0);
+        assertTrue(parsed.isNull("none"));
+        assertTrue(new JSONObject(json).isNull("nan"));
+    }
+
+    @Test
+    public void reset_startsOverAndBase64Encodes() throws Exception {
+        JsonEventWriter writer = new JsonEventWriter(16);
+        writer.beginObject().name("first").value(1L).endObject().finish();
+
+        byte[] payload = { 0, 1, 2, (byte) 0xFF };
+        String json = writer.reset().beginObject().name("payload").base64Value(payload, 0, payload.length).endObject().finish();
+        assertEquals("{\"payload\":\"AAEC/w==\"}", json);
+    }
+}
@@ -0,0 +1,81 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Sector reads against the {@link SimulatedTag} Classic 1K layout: sector 0 opens with the MAD
+ * key, the others with the NFC Forum key.
+ */
+public class MifareClassicReaderTest {
+    private static final byte[] UID = { 0x11, 0x22, 0x33, 0x44 };
+
+    private static MifareClassicReader.Dump read(SimulatedTag tag, ClassicKeyCache cache, MifareClassicReader.Options options)
+        throws Exception {
+        tag.tap();
+        tag.connect(TagTransport.Technology.MIFARE_CLASSIC);
+        try {
+            return new MifareClassicReader(tag, cache, new NFCMetrics(System::nanoTime)).read(options);
+        } finally {
+            tag.close();
+        }
+    }
+
+    @Test
+    public void read_remembersKeysPerProfile() throws Exception {
+        ClassicKeyCache cache = new ClassicKeyCache(ClassicKeyCache.DEFAULT_CAPACITY);
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.CLASSIC_1K, UID);
+
+        MifareClassicReader.Dump first = read(tag, cache, new MifareClassicReader.Options());
+        assertEquals(16, first.sectors.length);
+        assertEquals(1, first.sectors[0].keyIndex);
+        assertEquals(2, first.sectors[5].keyIndex);
+        assertTrue(first.failedAuthentications > 0);
+
+        MifareClassicReader.Dump second = read(new SimulatedTag(SimulatedTag.Layout.CLASSIC_1K, UID), cache, new MifareClassicReader.Options());
+        assertEquals(0, second.failedAuthentications);
+        assertEquals(16, second.cachedKeys);
+    }
+
+    @Test
+    public void read_reportsUnknownKeysPerSector() throws Exception {
+        byte[] secret = { 1, 2, 3, 4, 5, 6 };
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.CLASSIC_1K, UID).setSectorKeys(3, secret, secret);
+
+        MifareClassicReader.Dump dump = read(tag, new ClassicKeyCache(ClassicKeyCache.DEFAULT_CAPACITY), new MifareClassicReader.Options());
+        assertEquals(-1, dump.sectors[3].keyIndex);
+        assertNull(dump.sectors[3].data);
+        assertEquals(2, dump.sectors[4].keyIndex);
+    }
+
+    @Test
+    public void refusedBlock_isReportedAndOtherSectorsAreRead() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.CLASSIC_1K, UID)
+            .setReadDenied(5, true)
+            .setReadDenied(11, true);
+        MifareClassicReader.Options options = new MifareClassicReader.Options();
+        options.includeTrailers = true;
+
+        MifareClassicReader.Dump dump = read(tag, new ClassicKeyCache(ClassicKeyCache.DEFAULT_CAPACITY), options);
+        assertEquals(16, dump.sectors.length);
+
+        MifareClassicReader.Sector sector1 = dump.sectors[1];
+        assertEquals(1, sector1.unreadableBlocks);
+        assertTrue(sector1.readError.startsWith("Reading block 5 failed"));
+        assertEquals(4 * MifareClassicReader.BLOCK_SIZE, sector1.data.length);
+        // The trailer after the refused block was read with a fresh authentication
+        assertEquals(0x07, sector1.data[3 * MifareClassicReader.BLOCK_SIZE + 7]);
+
+        // A refused trailer
+        assertEquals(1, dump.sectors[2].unreadableBlocks);
+        assertNull(dump.sectors[3].readError);
+        assertEquals(2, dump.sectors[15].keyIndex);
+    }
+
+    @Test(expected = SimulatedTag.TagLostException.class)
+    public void lostCard_failsTheRead() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.CLASSIC_1K, UID).setCommandBudget(20);
+        read(tag, new ClassicKeyCache(ClassicKeyCache.DEFAULT_CAPACITY), new MifareClassicReader.Options());
+    }
+}
@@ -0,0 +1,77 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class NFCMetricsTest {
+
+    private static NFCMetrics.Histogram uniform(int fromMicros, int toMicros) {
+        NFCMetrics.Histogram histogram = new NFCMetrics.Histogram();
+        for (int micros = fromMicros; micros <= toMicros; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        return histogram;
+    }
+
+    private static void assertWithin(double expected, double actual, double tolerance) {
+        String message = actual + " not within " + tolerance + " of " + expected;
+        assertTrue(message, Math.abs(actual - expected) <= expected * tolerance);
+    }
+
+    @Test
+    public void bucketOf_isExactBelowEightThenEightPerPowerOfTwo() {
+        assertEquals(0, NFCMetrics.Histogram.bucketOf(0));
+        assertEquals(7, NFCMetrics.Histogram.bucketOf(7));
+        assertEquals(8, NFCMetrics.Histogram.bucketOf(8));
+        assertEquals(15, NFCMetrics.Histogram.bucketOf(15));
+        assertEquals(16, NFCMetrics.Histogram.bucketOf(16));
+        assertEquals(16, NFCMetrics.Histogram.bucketOf(17));
+        assertEquals(17, NFCMetrics.Histogram.bucketOf(18));
+
+        for (int bucket = 0; bucket < 231; bucket++) {
+            long low = NFCMetrics.Histogram.lowerBound(bucket);
+            assertEquals(bucket, NFCMetrics.Histogram.bucketOf(low));
+            assertEquals(bucket, NFCMetrics.Histogram.bucketOf(NFCMetrics.Histogram.lowerBound(bucket + 1) - 1));
+        }
+    }
+
+    @Test
+    public void record_clampsToTheLastBucket() {
+        long max = (1L << 31) - 1;
+        assertEquals(231, NFCMetrics.Histogram.bucketOf(max));
+        assertEquals(15L << 27, NFCMetrics.Histogram.lowerBound(231));
+
+        NFCMetrics.Histogram histogram = new NFCMetrics.Histogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5);
+        // Midpoint of the last bucket
+        assertEquals(((15L << 27) + (1L << 31) - 1) / 2, histogram.percentileMicros(1.0));
+        assertEquals(0, histogram.percentileMicros(0.5));
+    }
+
+    @Test
+    public void percentiles_areWithinTheBucketResolution() {
+        NFCMetrics.Histogram histogram = uniform(1, 10_000);
+
+        assertWithin(5_000, histogram.percentileMicros(0.50), 0.125);
+        assertWithin(9_900, histogram.percentileMicros(0.99), 0.125);
+        assertTrue(histogram.percentileMicros(1.0) <= 10_000);
+    }
+
+    @Test
+    public void reset_forgetsEverything() throws Exception {
+        NFCMetrics.Histogram histogram = uniform(100, 200);
+        assertEquals(101, histogram.toJson().getLong("count"));
+
+        histogram.reset();
+        assertEquals(0, histogram.percentileMicros(0.99));
+        assertNull(histogram.toJson());
+
+        histogram.record(3_000);
+        JSONObject json = histogram.toJson();
+        assertEquals(1, json.getLong("count"));
+        assertEquals(0.003, json.getDouble("maxMs"), 1e-9);
+    }
+}
@@ -0,0 +1,160 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Runs on the host JVM: NdefCodec has no android.nfc dependency.
+ */
+public class NdefCodecTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] out = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            out[i] = (byte) values[i];
+        }
+        return out;
+    }
+
+    @Test
+    public void textRecord_roundTrips() throws Exception {
+        NdefCodec.Message message = new NdefCodec.Message().add(NdefCodec.textRecord("en", "Hello, NFC!"));
+        byte[] encoded = NdefCodec.encode(message);
+
+        // MB | ME | SR | TNF_WELL_KNOWN, type length 1, payload length 14, "T"
+        assertEquals(0xD1, encoded[0] & 0xFF);
+        assertEquals(1, encoded[1]);
+        assertEquals(14, encoded[2]);
+        assertEquals('T', encoded[3]);
+
+        NdefCodec.Message decoded = NdefCodec.decode(encoded);
+        assertEquals(1, decoded.size());
+        assertTrue(decoded.get(0).isWellKnown(NdefCodec.RTD_TEXT));
+        assertEquals("Hello, NFC!", decoded.get(0).payloadString(3));
+    }
+
+    @Test
+    public void uriRecord_abbreviatesLongestPrefix() throws Exception {
+        NdefCodec.Record record = NdefCodec.uriRecord("https://www.example.com");
+        byte[] payload = record.copyPayload();
+        assertEquals(0x02, payload[0]);
+        assertEquals("example.com", new String(payload, 1, payload.length - 1, StandardCharsets.UTF_8));
+
+        assertEquals(0x00, NdefCodec.uriRecord("geo:0,0").copyPayload()[0]);
+    }
+
+    @Test
+    public void longRecordAndId_roundTrip() throws Exception {
+        byte[] payload = new byte[8192];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        NdefCodec.Message message = new NdefCodec.Message()
+            .add(NdefCodec.Record.of(NdefCodec.TNF_EXTERNAL_TYPE, "example.com:a".getBytes(StandardCharsets.US_ASCII), bytes(1, 2), payload))
+            .add(NdefCodec.mimeRecord("Application/JSON", "{}".getBytes(StandardCharsets.UTF_8)));
+        byte[] encoded = NdefCodec.encode(message);
+
+        // First record: MB | IL | TNF_EXTERNAL_TYPE, long payload length
+        assertEquals(0x8C, encoded[0] & 0xFF);
+        assertEquals(NdefCodec.encodedSize(message), encoded.length);
+
+        NdefCodec.Message decoded = NdefCodec.decode(encoded);
+        assertEquals(2, decoded.size());
+        assertEquals(NdefCodec.TNF_EXTERNAL_TYPE, decoded.get(0).getTnf());
+        assertEquals("example.com:a", decoded.get(0).typeString());
+        assertArrayEquals(bytes(1, 2), decoded.get(0).copyId());
+        assertArrayEquals(payload, decoded.get(0).copyPayload());
+        assertEquals("application/json", decoded.get(1).typeString());
+        assertEquals("{}", decoded.get(1).payloadString());
+    }
+
+    @Test
+    public void everyTnf_roundTrips() throws Exception {
+        NdefCodec.Message message = new NdefCodec.Message()
+            .add(NdefCodec.Record.of(NdefCodec.TNF_EMPTY, null, null, null))
+            .add(NdefCodec.Record.of(NdefCodec.TNF_WELL_KNOWN, NdefCodec.RTD_URI, null, bytes(0, 'a')))
+            .add(NdefCodec.Record.of(NdefCodec.TNF_MIME_MEDIA, "text/plain".getBytes(StandardCharsets.US_ASCII), null, bytes('x')))
+            .add(NdefCodec.Record.of(NdefCodec.TNF_ABSOLUTE_URI, "urn:x".getBytes(StandardCharsets.US_ASCII), null, null))
+            .add(NdefCodec.Record.of(NdefCodec.TNF_EXTERNAL_TYPE, "a.b:c".getBytes(StandardCharsets.US_ASCII), null, bytes(9)))
+            .add(NdefCodec.Record.of(NdefCodec.TNF_UNKNOWN, null, null, bytes(1, 2, 3)));
+
+        NdefCodec.Message decoded = NdefCodec.decode(NdefCodec.encode(message));
+        assertEquals(6, decoded.size());
+        for (int i = 0; i < decoded.size(); i++) {
+            assertEquals(message.get(i).getTnf(), decoded.get(i).getTnf());
+            assertArrayEquals(message.get(i).copyType(), decoded.get(i).copyType());
+            assertArrayEquals(message.get(i).copyPayload(), decoded.get(i).copyPayload());
+        }
+    }
+
+    @Test
+    public void chunkedRecord_isReassembled() throws Exception {
+        byte[] encoded = bytes(
+            // MB | CF | SR | TNF_MIME_MEDIA, type "a/b", payload "he"
+            0xB2, 3, 2, 'a', '/', 'b', 'h', 'e',
+            // CF | SR | TNF_UNCHANGED, payload "ll"
+            0x36, 0, 2, 'l', 'l',
+            // ME | SR | TNF_UNCHANGED, payload "o"
+            0x56, 0, 1, 'o'
+        );
+
+        NdefCodec.Message decoded = NdefCodec.decode(encoded);
+        assertEquals(1, decoded.size());
+        assertEquals("a/b", decoded.get(0).typeString());
+        assertEquals("hello", decoded.get(0).payloadString());
+    }
+
+    @Test
+    public void decode_reusesMessageAndReadsByteBufferSlices() throws Exception {
+        byte[] first = NdefCodec.encode(new NdefCodec.Message().add(NdefCodec.textRecord("en", "one")));
+        byte[] framed = new byte[first.length + 4];
+        System.arraycopy(first, 0, framed, 2, first.length);
+
+        NdefCodec.Message reuse = new NdefCodec.Message();
+        NdefCodec.Record slot = NdefCodec.decode(ByteBuffer.wrap(framed, 2, first.length), reuse).get(0);
+        assertEquals("one", slot.payloadString(3));
+
+        NdefCodec.decode(NdefCodec.encode(new NdefCodec.Message().add(NdefCodec.textRecord("en", "two"))), 0, first.length, reuse);
+        assertSame(slot, reuse.get(0));
+        assertEquals("two", reuse.get(0).payloadString(3));
+    }
+
+    @Test(expected = NdefCodec.MalformedNdefException.class)
+    public void decode_rejectsTruncatedPayload() throws Exception {
+        NdefCodec.decode(bytes(0xD1, 1, 5, 'T', 2, 'e'));
+    }
+
+    @Test(expected = NdefCodec.MalformedNdefException.class)
+    public void decode_rejectsMissingMessageEnd() throws Exception {
+        NdefCodec.decode(bytes(0x91, 1, 0, 'T'));
+    }
+
+    @Test(expected = NdefCodec.MalformedNdefException.class)
+    public void decode_rejectsUnchangedOutsideChunk() throws Exception {
+        NdefCodec.decode(bytes(0xD6, 0, 0));
+    }
+
+    @Test
+    public void typeAndId_of255BytesFit() throws Exception {
+        byte[] type = new byte[255];
+        Arrays.fill(type, (byte) 'a');
+        NdefCodec.Message decoded = NdefCodec.decode(NdefCodec.encode(
+            new NdefCodec.Message().add(NdefCodec.Record.of(NdefCodec.TNF_EXTERNAL_TYPE, type, type, bytes(1)))));
+        assertArrayEquals(type, decoded.get(0).copyType());
+        assertArrayEquals(type, decoded.get(0).copyId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void typeLongerThan255Bytes_isRejected() {
+        NdefCodec.Record.of(NdefCodec.TNF_EXTERNAL_TYPE, new byte[256], null, bytes(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void idLongerThan255Bytes_isRejected() {
+        NdefCodec.Record.of(NdefCodec.TNF_MIME_MEDIA, "a/b".getBytes(StandardCharsets.US_ASCII), new byte[300], bytes(1));
+    }
+}
@@ -0,0 +1,89 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.Test;
+
+public class NdefCompressionTest {
+
+    private static String repeated(String value, int times) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            out.append(value);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void compress_shrinksAndExpandsBack() throws Exception {
+        byte[] json = ("{\"items\":[" + repeated("{\"id\":1,\"name\":\"item\"},", 40) + "{}]}").getBytes(StandardCharsets.UTF_8);
+        NdefCodec.Message original = new NdefCodec.Message()
+            .add(NdefCodec.Record.of(NdefCodec.TNF_MIME_MEDIA, "application/json".getBytes(StandardCharsets.US_ASCII), new byte[] { 7 }, json));
+
+        NdefCodec.Message compressed = NdefCompression.compress(original, NdefCompression.DEFAULT_MIN_BYTES);
+        assertNotSame(original, compressed);
+        assertTrue(NdefCompression.isCompressed(compressed.get(0)));
+        assertArrayEquals(new byte[] { 7 }, compressed.get(0).copyId());
+        byte[] encoded = NdefCodec.encode(compressed);
+        assertTrue(encoded.length < NdefCodec.encodedSize(original));
+
+        NdefCodec.Message decoded = NdefCodec.decode(encoded);
+        assertEquals(1, NdefCompression.expand(decoded));
+        NdefCodec.Record record = decoded.get(0);
+        assertEquals(NdefCodec.TNF_MIME_MEDIA, record.getTnf());
+        assertEquals("application/json", record.typeString());
+        assertArrayEquals(new byte[] { 7 }, record.copyId());
+        assertArrayEquals(json, record.copyPayload());
+    }
+
+    @Test
+    public void compress_leavesShortAndIncompressibleRecordsAlone() {
+        byte[] noise = new byte[512];
+        new Random(1).nextBytes(noise);
+        NdefCodec.Message message = new NdefCodec.Message()
+            .add(NdefCodec.textRecord("en", "short"))
+            .add(NdefCodec.mimeRecord("application/octet-stream", noise));
+
+        assertSame(message, NdefCompression.compress(message, NdefCompression.DEFAULT_MIN_BYTES));
+    }
+
+    @Test
+    public void compress_onlyReplacesRecordsThatShrink() throws Exception {
+        NdefCodec.Message message = new NdefCodec.Message()
+            .add(NdefCodec.uriRecord("https://example.com"))
+            .add(NdefCodec.textRecord("en", repeated("abc", 100)));
+
+        NdefCodec.Message compressed = NdefCompression.compress(message, NdefCompression.DEFAULT_MIN_BYTES);
+        assertEquals(2, compressed.size());
+        assertFalse(NdefCompression.isCompressed(compressed.get(0)));
+        assertTrue(NdefCompression.isCompressed(compressed.get(1)));
+
+        NdefCodec.Message decoded = NdefCodec.decode(NdefCodec.encode(compressed));
+        assertEquals(1, NdefCompression.expand(decoded));
+        assertTrue(decoded.get(1).isWellKnown(NdefCodec.RTD_TEXT));
+        assertEquals(repeated("abc", 100), decoded.get(1).payloadString(3));
+    }
+
+    @Test(expected = NdefCodec.MalformedNdefException.class)
+    public void expand_rejectsCorruptStream() throws Exception {
+        NdefCodec.Message message = new NdefCodec.Message().add(NdefCodec.textRecord("en", repeated("abc", 100)));
+        byte[] encoded = NdefCodec.encode(NdefCompression.compress(message, NdefCompression.DEFAULT_MIN_BYTES));
+        // Deflate data at the end of the record
+        encoded[encoded.length - 3] ^= 0x5A;
+        encoded[encoded.length - 2] ^= 0x5A;
+
+        NdefCompression.expand(NdefCodec.decode(encoded));
+    }
+
+    @Test(expected = NdefCodec.MalformedNdefException.class)
+    public void expand_rejectsOversizedLength() throws Exception {
+        // Format, TNF, type length 0, then a length of 2^28 - 1
+        byte[] payload = { 1, NdefCodec.TNF_MIME_MEDIA, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F, 0x03, 0x00 };
+        NdefCodec.Message message = new NdefCodec.Message()
+            .add(NdefCodec.Record.of(NdefCodec.TNF_EXTERNAL_TYPE, NdefCompression.TYPE.getBytes(StandardCharsets.US_ASCII), null, payload));
+
+        NdefCompression.expand(message);
+    }
+}
@@ -0,0 +1,161 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Diff writes against {@link SimulatedTag} NTAG / Ultralight layouts.
+ */
+public class NtagDiffWriterTest {
+    private static final byte[] UID = { 0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66 };
+
+    private static byte[] text(String value) throws Exception {
+        return NdefCodec.encode(new NdefCodec.Message().add(NdefCodec.textRecord("en", value)));
+    }
+
+    private static NtagDiffWriter.Result write(SimulatedTag tag, byte[] message) throws IOException {
+        tag.tap();
+        tag.connect(TagTransport.Technology.NFC_A);
+        try {
+            return new NtagDiffWriter(tag).write(message, true);
+        } finally {
+            tag.close();
+        }
+    }
+
+    private static void writePage(SimulatedTag tag, int page, int... bytes) throws IOException {
+        tag.connect(TagTransport.Technology.NFC_A);
+        byte[] command = { NtagDiffWriter.CMD_WRITE, (byte) page, (byte) bytes[0], (byte) bytes[1], (byte) bytes[2], (byte) bytes[3] };
+        tag.transceive(command);
+        tag.close();
+    }
+
+    @Test
+    public void write_onlySendsChangedPages() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG215, UID);
+        write(tag, text("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+        assertEquals("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa".length() + 7, tag.getCachedNdefMessage().length);
+
+        NtagDiffWriter.Result result = write(tag, text("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab"));
+        assertEquals(1, result.pagesWritten);
+        assertTrue(result.verified);
+        assertArrayEquals(text("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab"), tag.getCachedNdefMessage());
+
+        assertEquals(0, write(tag, text("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaab")).pagesWritten);
+
+        // Longer by a byte: L = 0, the record header page, the last page, then the real length
+        assertEquals(4, write(tag, text("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaabc")).pagesWritten);
+        assertArrayEquals(text("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaabc"), tag.getCachedNdefMessage());
+    }
+
+    @Test
+    public void write_rejectsReadOnlyTagWithoutWriting() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG213, UID).setReadOnly(true);
+        byte[] before = tag.getMemory();
+        try {
+            write(tag, text("hello"));
+            fail("Wrote a read-only tag");
+        } catch (TagIOPolicy.NotRetryableException e) {
+            assertEquals("Tag is read-only", e.getMessage());
+        }
+        assertArrayEquals(before, tag.getMemory());
+        // connect and the capability container read
+        assertEquals(2, tag.getCommandCount());
+    }
+
+    @Test
+    public void pipelineWrite_rejectsReadOnlyTagWithoutRetries() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG213, UID).setReadOnly(true);
+        TagPipeline pipeline = new TagPipeline(new NFCMetrics(System::nanoTime), org.json.JSONObject::new);
+        try {
+            pipeline.write(tag, text("hello"), true, false, NFCMetrics.OP_WRITE);
+            fail("Wrote a read-only tag");
+        } catch (IOException e) {
+            assertFalse(TagIOPolicy.isRetryable(e));
+            assertFalse(e.getMessage().contains("retr"));
+        }
+    }
+
+    @Test
+    public void write_keepsControlTlvsInFrontOfNdefTlv() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG213, UID);
+        // Lock Control TLV for dynamic lock bits at page 0x2C, then an empty NDEF TLV
+        writePage(tag, 4, 0x01, 0x03, 0xB0, 0x10);
+        writePage(tag, 5, 0x44, 0x03, 0x00, 0xFE);
+
+        byte[] message = text("kept");
+        write(tag, message);
+
+        byte[] memory = tag.getMemory();
+        assertArrayEquals(new byte[] { 0x01, 0x03, (byte) 0xB0, 0x10, 0x44 }, Arrays.copyOfRange(memory, 16, 21));
+        assertEquals(NtagDiffWriter.TLV_NDEF, memory[21]);
+        assertEquals(message.length, memory[22]);
+        assertArrayEquals(message, tag.getCachedNdefMessage());
+    }
+
+    @Test
+    public void write_rejectsMessageOverlappingReservedMemory() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG213, UID);
+        // Memory Control TLV reserving 16 bytes at page 8
+        writePage(tag, 4, 0x02, 0x03, 0x80, 0x10);
+        writePage(tag, 5, 0x02, 0x03, 0x00, 0xFE);
+
+        try {
+            write(tag, text("this message runs into page 8 of the tag"));
+            fail("Overwrote reserved memory");
+        } catch (TagIOPolicy.NotRetryableException e) {
+            assertTrue(e.getMessage().contains("reserved"));
+        }
+    }
+
+    @Test
+    public void interruptedWrite_neverLeavesPartialMessage() throws Exception {
+        byte[] old = text("the old message on the tag");
+        byte[] updated = text("a longer, new message for the same tag, spanning more pages");
+
+        SimulatedTag reference = new SimulatedTag(SimulatedTag.Layout.NTAG215, UID);
+        write(reference, old);
+        write(reference, updated);
+        long commands = reference.getCommandCount();
+
+        for (int budget = 1; budget < commands; budget++) {
+            SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG215, UID);
+            write(tag, old);
+            tag.setCommandBudget(budget);
+            try {
+                write(tag, updated);
+                fail("Write survived a budget of " + budget);
+            } catch (IOException expected) {
+            }
+            // Lost during the verification read, the write itself went through
+            byte[] left = tag.getCachedNdefMessage();
+            assertTrue("Budget " + budget, left == null || Arrays.equals(old, left) || Arrays.equals(updated, left));
+        }
+    }
+
+    @Test
+    public void longMessage_usesThreeByteLength() throws Exception {
+        byte[] payload = new byte[300];
+        Arrays.fill(payload, (byte) 'x');
+        byte[] message = NdefCodec.encode(new NdefCodec.Message().add(NdefCodec.mimeRecord("a/b", payload)));
+
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG215, UID);
+        write(tag, message);
+        assertArrayEquals(message, tag.getCachedNdefMessage());
+        assertEquals((byte) 0xFF, tag.getMemory()[17]);
+    }
+
+    @Test
+    public void write_rejectsMessageLargerThanDataArea() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG213, UID);
+        byte[] message = NdefCodec.encode(new NdefCodec.Message().add(NdefCodec.mimeRecord("a/b", new byte[200])));
+        try {
+            write(tag, message);
+            fail("Wrote past the data area");
+        } catch (TagIOPolicy.NotRetryableException expected) {
+        }
+    }
+}
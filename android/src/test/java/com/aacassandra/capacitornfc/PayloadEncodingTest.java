@@ -0,0 +1,63 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import org.junit.Test;
+
+public class PayloadEncodingTest {
+
+    @Test
+    public void base64_matchesTheJdkForEveryPaddingCase() {
+        byte[] data = { (byte) 0xFB, (byte) 0xFF, 0x00, 0x3E, (byte) 0x80 };
+        for (int length = 0; length <= data.length; length++) {
+            assertEquals("length " + length, Base64.getEncoder().encodeToString(Arrays.copyOf(data, length)),
+                PayloadEncoding.base64(data, 0, length));
+        }
+    }
+
+    @Test
+    public void base64_matchesTheJdkOnRandomRanges() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            byte[] buffer = new byte[random.nextInt(300) + 1];
+            random.nextBytes(buffer);
+            int offset = random.nextInt(buffer.length);
+            int length = random.nextInt(buffer.length - offset + 1);
+
+            byte[] range = Arrays.copyOfRange(buffer, offset, offset + length);
+            assertEquals(Base64.getEncoder().encodeToString(range), PayloadEncoding.base64(buffer, offset, length));
+        }
+    }
+
+    @Test
+    public void appendBase64_appendsToWhatIsThere() {
+        StringBuilder out = new StringBuilder("x:");
+        PayloadEncoding.appendBase64(out, new byte[] { 'h', 'i' }, 0, 2);
+        assertEquals("x:aGk=", out.toString());
+    }
+
+    @Test
+    public void hex_isLowercaseAndRespectsTheRange() {
+        byte[] data = { 0x00, 0x0F, (byte) 0xA0, (byte) 0xFF, 0x7E };
+        assertEquals("000fa0ff7e", PayloadEncoding.hex(data, 0, data.length));
+        assertEquals("0fa0", PayloadEncoding.hex(data, 1, 2));
+        assertEquals("", PayloadEncoding.hex(data, 3, 0));
+    }
+
+    @Test
+    public void encode_fallsBackToText() {
+        byte[] data = "caf\u00e9".getBytes(StandardCharsets.UTF_8);
+        assertEquals("caf\u00e9", PayloadEncoding.encode(PayloadEncoding.TEXT, data, 0, data.length));
+        assertEquals("caf\u00e9", PayloadEncoding.encode(null, data, 0, data.length));
+        assertEquals("636166c3a9", PayloadEncoding.encode(PayloadEncoding.HEX, data, 0, data.length));
+        assertEquals("Y2Fmw6k=", PayloadEncoding.encode(PayloadEncoding.BASE64, data, 0, data.length));
+
+        assertTrue(PayloadEncoding.isValid(PayloadEncoding.HEX));
+        assertFalse(PayloadEncoding.isValid("utf8"));
+        assertFalse(PayloadEncoding.isValid(null));
+    }
+}
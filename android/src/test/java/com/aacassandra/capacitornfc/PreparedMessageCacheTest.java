@@ -0,0 +1,72 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class PreparedMessageCacheTest {
+
+    private static byte[] text(String value) {
+        return NdefCodec.encode(new NdefCodec.Message().add(NdefCodec.textRecord("en", value)));
+    }
+
+    @Test
+    public void put_handleIsTheContentHash() {
+        PreparedMessageCache cache = new PreparedMessageCache(4);
+        byte[] message = text("one");
+
+        String handle = cache.put(message);
+        assertEquals(TagSession.contentHash(message), handle);
+        assertSame(message, cache.get(handle));
+        assertNull(cache.get(TagSession.contentHash(text("two"))));
+        assertNull(cache.get(null));
+    }
+
+    @Test
+    public void put_reusesTheEntryOfAnIdenticalMessage() {
+        PreparedMessageCache cache = new PreparedMessageCache(4);
+        byte[] first = text("one");
+
+        String handle = cache.put(first);
+        assertEquals(handle, cache.put(text("one")));
+        assertSame(first, cache.get(handle));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvicted() {
+        PreparedMessageCache cache = new PreparedMessageCache(2);
+        String one = cache.put(text("one"));
+        String two = cache.put(text("two"));
+        // Using one makes two the eldest
+        assertNotNull(cache.get(one));
+
+        String three = cache.put(text("three"));
+        assertEquals(2, cache.size());
+        assertNull(cache.get(two));
+        assertNotNull(cache.get(one));
+        assertNotNull(cache.get(three));
+    }
+
+    @Test
+    public void zeroCapacity_usesTheDefault() {
+        PreparedMessageCache cache = new PreparedMessageCache(0);
+        for (int i = 0; i < PreparedMessageCache.DEFAULT_CAPACITY + 1; i++) {
+            cache.put(text(Integer.toString(i)));
+        }
+        assertEquals(PreparedMessageCache.DEFAULT_CAPACITY, cache.size());
+    }
+
+    @Test
+    public void prepare_putsHandleAndSize() throws Exception {
+        PreparedMessageCache cache = new PreparedMessageCache(4);
+        byte[] message = text("hello");
+
+        JSONObject result = new JSONObject();
+        assertSame(result, cache.prepare(message, result));
+        assertEquals(TagSession.contentHash(message), result.getString("handle"));
+        assertEquals(message.length, result.getInt("size"));
+        assertSame(message, cache.get(result.getString("handle")));
+    }
+}
@@ -0,0 +1,152 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class RecordDecodersTest {
+    private static final byte[] RTD_SMART_POSTER = { 0x53, 0x70 };
+
+    private static JSONObject put(RecordDecoders decoders, NdefCodec.Record record) throws Exception {
+        JSONObject recordObj = new JSONObject();
+        decoders.put(record, recordObj);
+        return recordObj;
+    }
+
+    private static NdefCodec.Record smartPoster(NdefCodec.Record... records) {
+        NdefCodec.Message nested = new NdefCodec.Message();
+        for (NdefCodec.Record record : records) {
+            nested.add(record);
+        }
+        return NdefCodec.Record.of(NdefCodec.TNF_WELL_KNOWN, RTD_SMART_POSTER, null, NdefCodec.encode(nested));
+    }
+
+    @Test
+    public void of_skipsDuplicatesAndRejectsUnknownTypes() {
+        assertNull(RecordDecoders.of());
+        assertNotNull(RecordDecoders.of(RecordDecoders.URI, RecordDecoders.URI));
+        try {
+            RecordDecoders.of("barcode");
+            fail("Accepted an unknown decoder");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unknown record decoder: barcode", e.getMessage());
+        }
+    }
+
+    @Test
+    public void uriAndText_areDecoded() throws Exception {
+        RecordDecoders decoders = RecordDecoders.of(RecordDecoders.URI, RecordDecoders.TEXT);
+
+        JSONObject uri = put(decoders, NdefCodec.uriRecord("https://www.example.com/a")).getJSONObject("decoded");
+        assertEquals("https://www.example.com/a", uri.getString("uri"));
+
+        JSONObject text = put(decoders, NdefCodec.textRecord("de", "Hallo")).getJSONObject("decoded");
+        assertEquals("Hallo", text.getString("text"));
+        assertEquals("de", text.getString("language"));
+        assertEquals("UTF-8", text.getString("encoding"));
+    }
+
+    @Test
+    public void utf16Text_honoursByteOrderMark() throws Exception {
+        byte[] body = "\uFEFFhi".getBytes(StandardCharsets.UTF_16LE);
+        byte[] payload = new byte[3 + body.length];
+        payload[0] = (byte) 0x82;
+        payload[1] = 'e';
+        payload[2] = 'n';
+        System.arraycopy(body, 0, payload, 3, body.length);
+
+        JSONObject text = put(RecordDecoders.of(RecordDecoders.TEXT), NdefCodec.Record.of(NdefCodec.TNF_WELL_KNOWN, NdefCodec.RTD_TEXT, null, payload))
+            .getJSONObject("decoded");
+        assertEquals("hi", text.getString("text"));
+        assertEquals("UTF-16", text.getString("encoding"));
+    }
+
+    @Test
+    public void onlyEnabledDecodersRun() throws Exception {
+        RecordDecoders decoders = RecordDecoders.of(RecordDecoders.JSON);
+
+        JSONObject untouched = put(decoders, NdefCodec.uriRecord("https://example.com"));
+        assertFalse(untouched.has("decoded"));
+        assertFalse(untouched.has("decodeError"));
+
+        JSONObject json = put(decoders, NdefCodec.mimeRecord("application/vnd.example+json; charset=utf-8", "{\"a\":[1,2]}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(2, json.getJSONObject("decoded").getJSONArray("a").length());
+    }
+
+    @Test
+    public void malformedRecords_getDecodeError() throws Exception {
+        RecordDecoders decoders = RecordDecoders.of(RecordDecoders.JSON, RecordDecoders.EXTERNAL, RecordDecoders.TEXT);
+
+        JSONObject json = put(decoders, NdefCodec.mimeRecord("application/json", "{\"a\":1} trailing".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(json.has("decoded"));
+        assertTrue(json.has("decodeError"));
+
+        NdefCodec.Record external = NdefCodec.Record.of(NdefCodec.TNF_EXTERNAL_TYPE, "nodomain".getBytes(StandardCharsets.US_ASCII), null, new byte[0]);
+        assertTrue(put(decoders, external).getString("decodeError").contains("isn't domain:name"));
+
+        NdefCodec.Record text = NdefCodec.Record.of(NdefCodec.TNF_WELL_KNOWN, NdefCodec.RTD_TEXT, null, new byte[] { 5, 'e' });
+        assertTrue(put(decoders, text).getString("decodeError").contains("language code"));
+    }
+
+    @Test
+    public void external_splitsDomainAndName() throws Exception {
+        NdefCodec.Record record = NdefCodec.Record.of(NdefCodec.TNF_EXTERNAL_TYPE, "Example.COM:Badge".getBytes(StandardCharsets.US_ASCII), null, new byte[0]);
+        JSONObject decoded = put(RecordDecoders.of(RecordDecoders.EXTERNAL), record).getJSONObject("decoded");
+        assertEquals("example.com", decoded.getString("domain"));
+        assertEquals("Badge", decoded.getString("name"));
+    }
+
+    @Test
+    public void smartPoster_decodesNestedRecords() throws Exception {
+        NdefCodec.Record poster = smartPoster(
+            NdefCodec.uriRecord("https://example.com"),
+            NdefCodec.textRecord("en", "Example"),
+            NdefCodec.textRecord("fr", "Exemple"),
+            NdefCodec.Record.of(NdefCodec.TNF_WELL_KNOWN, "act".getBytes(StandardCharsets.US_ASCII), null, new byte[] { 1 }),
+            NdefCodec.Record.of(NdefCodec.TNF_WELL_KNOWN, "s".getBytes(StandardCharsets.US_ASCII), null, new byte[] { 0, 0, 4, 0 }),
+            NdefCodec.mimeRecord("application/json", "[true]".getBytes(StandardCharsets.UTF_8))
+        );
+
+        JSONObject decoded = put(RecordDecoders.of(RecordDecoders.SMART_POSTER, RecordDecoders.JSON), poster).getJSONObject("decoded");
+        assertEquals("https://example.com", decoded.getString("uri"));
+        JSONArray titles = decoded.getJSONArray("titles");
+        assertEquals(2, titles.length());
+        assertEquals("fr", titles.getJSONObject(1).getString("language"));
+        assertEquals("save", decoded.getString("action"));
+        assertEquals(1024, decoded.getLong("size"));
+
+        JSONObject other = decoded.getJSONArray("records").getJSONObject(0);
+        assertEquals("application/json", other.getString("type"));
+        assertTrue(other.getJSONArray("decoded").getBoolean(0));
+    }
+
+    @Test
+    public void smartPoster_withoutUriOrNestedTooDeep_isAnError() throws Exception {
+        RecordDecoders decoders = RecordDecoders.of(RecordDecoders.SMART_POSTER);
+        assertEquals("Smart Poster has no URI record", put(decoders, smartPoster(NdefCodec.textRecord("en", "x"))).getString("decodeError"));
+
+        NdefCodec.Record poster = smartPoster(NdefCodec.uriRecord("https://example.com"));
+        for (int i = 0; i < 5; i++) {
+            poster = smartPoster(NdefCodec.uriRecord("https://example.com"), poster);
+        }
+        JSONObject outer = put(decoders, poster).getJSONObject("decoded");
+        JSONObject nested = outer;
+        for (int i = 0; i < 3; i++) {
+            nested = nested.getJSONArray("records").getJSONObject(0).getJSONObject("decoded");
+        }
+        assertEquals("Smart Poster nested too deep", nested.getJSONArray("records").getJSONObject(0).getString("decodeError"));
+    }
+
+    @Test
+    public void write_matchesPut() throws Exception {
+        RecordDecoders decoders = RecordDecoders.of(RecordDecoders.URI);
+        JsonEventWriter json = new JsonEventWriter(16).beginObject();
+        decoders.write(NdefCodec.uriRecord("tel:+123"), json);
+        JSONObject written = new JSONObject(json.endObject().finish());
+
+        assertEquals(put(decoders, NdefCodec.uriRecord("tel:+123")).toString(), written.toString());
+    }
+}
@@ -0,0 +1,162 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScanJournalTest {
+    private static final byte[] UID = { 0x04, 0x0A, 0x0B, 0x0C };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ScanJournal open(File directory, long segmentBytes, int maxSegments) throws Exception {
+        return new ScanJournal(directory, segmentBytes, maxSegments, 16, 10, true);
+    }
+
+    private static JSONObject read(ScanJournal journal, long sinceSeq, int limit) throws Exception {
+        JSONObject out = new JSONObject();
+        journal.read(sinceSeq, limit, out);
+        return out;
+    }
+
+    private static File[] segments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".log"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    @Test
+    public void appendedEntries_readBackInPages() throws Exception {
+        ScanJournal journal = open(folder.newFolder(), 4096, 8);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i + 1, journal.append(ScanJournal.KIND_TAG, UID, new byte[][] { { (byte) i } }, 1000 + i));
+        }
+
+        JSONObject first = read(journal, 0, 3);
+        JSONArray entries = first.getJSONArray("entries");
+        assertEquals(3, entries.length());
+        assertTrue(first.getBoolean("hasMore"));
+        assertEquals("040a0b0c", entries.getJSONObject(0).getString("uid"));
+        assertEquals("02", entries.getJSONObject(2).getString("ndef"));
+
+        JSONObject second = read(journal, 3, 3);
+        assertEquals(2, second.getJSONArray("entries").length());
+        assertFalse(second.getBoolean("hasMore"));
+        assertEquals(5, second.getLong("lastSeq"));
+        journal.close();
+    }
+
+    @Test
+    public void rotation_keepsEntriesAcrossSegments() throws Exception {
+        File directory = folder.newFolder();
+        ScanJournal journal = open(directory, 4096, 100);
+        byte[][] message = { new byte[500] };
+        for (int i = 0; i < 40; i++) {
+            journal.append(ScanJournal.KIND_TAG, UID, message, i);
+        }
+        assertTrue(segments(directory).length > 1);
+
+        JSONObject all = read(journal, 0, 100);
+        JSONArray entries = all.getJSONArray("entries");
+        assertEquals(40, entries.length());
+        for (int i = 0; i < entries.length(); i++) {
+            assertEquals(i + 1, entries.getJSONObject(i).getLong("seq"));
+        }
+        journal.close();
+    }
+
+    @Test
+    public void ack_deletesAcknowledgedSegmentsAndSurvivesReopen() throws Exception {
+        File directory = folder.newFolder();
+        ScanJournal journal = open(directory, 4096, 100);
+        byte[][] message = { new byte[500] };
+        for (int i = 0; i < 40; i++) {
+            journal.append(ScanJournal.KIND_TAG, UID, message, i);
+        }
+        int before = segments(directory).length;
+        journal.ack(30);
+        assertTrue(segments(directory).length < before);
+        journal.close();
+
+        ScanJournal reopened = open(directory, 4096, 100);
+        assertEquals(30, reopened.getAckedSeq());
+        assertEquals(40, reopened.getLastSeq());
+        JSONObject rest = read(reopened, 30, 100);
+        assertEquals(10, rest.getJSONArray("entries").length());
+        assertEquals(41, reopened.append(ScanJournal.KIND_UID, UID, null, 0));
+        reopened.close();
+    }
+
+    @Test
+    public void maxSegments_dropsOldestEvenUnacknowledged() throws Exception {
+        File directory = folder.newFolder();
+        ScanJournal journal = open(directory, 4096, 2);
+        byte[][] message = { new byte[1000] };
+        for (int i = 0; i < 40; i++) {
+            journal.append(ScanJournal.KIND_TAG, UID, message, i);
+        }
+        assertEquals(2, segments(directory).length);
+
+        JSONObject out = read(journal, 0, 100);
+        assertTrue(out.getLong("firstSeq") > 1);
+        assertEquals(40, out.getLong("lastSeq"));
+        journal.close();
+    }
+
+    @Test
+    public void tornWrite_isCutOffOnReopen() throws Exception {
+        File directory = folder.newFolder();
+        ScanJournal journal = open(directory, 4096, 8);
+        journal.append(ScanJournal.KIND_TAG, UID, new byte[][] { { 1 } }, 0);
+        journal.append(ScanJournal.KIND_TAG, UID, new byte[][] { { 2 } }, 0);
+        journal.close();
+
+        File segment = segments(directory)[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        ScanJournal reopened = open(directory, 4096, 8);
+        assertEquals(1, reopened.getLastSeq());
+        assertEquals(2, reopened.append(ScanJournal.KIND_TAG, UID, new byte[][] { { 3 } }, 0));
+        JSONArray entries = read(reopened, 0, 10).getJSONArray("entries");
+        assertEquals(2, entries.length());
+        assertEquals("03", entries.getJSONObject(1).getString("ndef"));
+        reopened.close();
+    }
+
+    @Test
+    public void concurrentReads_seeOnlyWholeEntries() throws Exception {
+        ScanJournal journal = open(folder.newFolder(), 4096, 1000);
+        byte[][] message = { new byte[200] };
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 2000; i++) {
+                    journal.append(ScanJournal.KIND_TAG, UID, message, i);
+                }
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            JSONObject out = read(journal, 0, 5000);
+            JSONArray entries = out.getJSONArray("entries");
+            assertTrue(entries.length() <= out.getLong("lastSeq"));
+            for (int i = 0; i < entries.length(); i++) {
+                assertEquals(i + 1, entries.getJSONObject(i).getLong("seq"));
+            }
+        }
+        writer.join();
+        assertEquals(2000, read(journal, 0, 5000).getJSONArray("entries").length());
+        journal.close();
+    }
+}
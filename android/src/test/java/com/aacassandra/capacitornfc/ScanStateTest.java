@@ -0,0 +1,128 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class ScanStateTest {
+    private final ScanState state = new ScanState();
+
+    @Test
+    public void arm_returnsTheReplacedSession() {
+        ScanState.Session read = state.create(ScanState.Mode.READ, null);
+        assertSame(ScanState.IDLE, state.arm(read));
+
+        ScanState.Session write = state.create(ScanState.Mode.WRITE, "message");
+        assertSame(read, state.arm(write));
+        assertSame(write, state.current());
+        assertTrue(write.id > read.id);
+        assertEquals("message", write.settings);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_refusesIdle() {
+        state.create(ScanState.Mode.IDLE, null);
+    }
+
+    @Test
+    public void stop_leavesAnotherModeAlone() {
+        ScanState.Session read = state.create(ScanState.Mode.READ, null);
+        state.arm(read);
+        // A write armed before the read scan's stop got to run
+        ScanState.Session write = state.create(ScanState.Mode.WRITE, null);
+        state.arm(write);
+
+        assertNull(state.stop(ScanState.Mode.READ, ScanState.Mode.UID));
+        assertSame(write, state.current());
+
+        assertSame(write, state.stop(ScanState.Mode.WRITE));
+        assertSame(ScanState.IDLE, state.current());
+        assertNull(state.stop(ScanState.Mode.WRITE));
+    }
+
+    @Test
+    public void finish_onlyEndsTheSameSession() {
+        ScanState.Session first = state.create(ScanState.Mode.PROVISION, null);
+        state.arm(first);
+        ScanState.Session second = state.create(ScanState.Mode.PROVISION, null);
+        state.arm(second);
+
+        assertFalse(state.finish(first));
+        assertSame(second, state.current());
+        assertFalse(state.finish(ScanState.IDLE));
+
+        assertTrue(state.finish(second));
+        assertSame(ScanState.IDLE, state.current());
+        assertFalse(state.finish(second));
+    }
+
+    @Test
+    public void isArmed_countsStaleResults() {
+        ScanState.Session first = state.create(ScanState.Mode.UID, null);
+        state.arm(first);
+        assertTrue(state.isArmed(first));
+        assertEquals(0, state.getStaleDropped());
+
+        state.arm(state.create(ScanState.Mode.UID, null));
+        assertFalse(state.isArmed(first));
+        assertFalse(state.isArmed(ScanState.IDLE));
+        assertEquals(2, state.getStaleDropped());
+
+        state.stop(ScanState.Mode.UID);
+        assertFalse(state.isArmed(ScanState.IDLE));
+        assertEquals(3, state.getStaleDropped());
+    }
+
+    @Test
+    public void concurrentArmAndStop_neverLoseASession() throws Exception {
+        int rounds = 20_000;
+        AtomicLong released = new AtomicLong();
+        AtomicLong armed = new AtomicLong();
+        AtomicLong wrongMode = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+
+        // Every session goes out exactly once: replaced by an arm, stopped, or still armed at the end
+        Thread arming = new Thread(() -> {
+            await(start);
+            for (int i = 0; i < rounds; i++) {
+                ScanState.Mode mode = i % 2 == 0 ? ScanState.Mode.READ : ScanState.Mode.WRITE;
+                ScanState.Session replaced = state.arm(state.create(mode, null));
+                armed.incrementAndGet();
+                if (replaced != ScanState.IDLE) {
+                    released.incrementAndGet();
+                }
+            }
+        });
+        Thread stopping = new Thread(() -> {
+            await(start);
+            for (int i = 0; i < rounds; i++) {
+                ScanState.Session stopped = state.stop(ScanState.Mode.READ);
+                if (stopped != null) {
+                    released.incrementAndGet();
+                    if (stopped.mode != ScanState.Mode.READ) {
+                        wrongMode.incrementAndGet();
+                    }
+                }
+            }
+        });
+        arming.start();
+        stopping.start();
+        start.countDown();
+        arming.join();
+        stopping.join();
+
+        long stillArmed = state.current() != ScanState.IDLE ? 1 : 0;
+        assertEquals(armed.get(), released.get() + stillArmed);
+        assertEquals(0, wrongMode.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
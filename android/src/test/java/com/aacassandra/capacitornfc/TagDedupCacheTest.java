@@ -0,0 +1,116 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TagDedupCacheTest {
+    private static final byte[] UID_A = { 0x04, 0x11, 0x22, 0x33 };
+    private static final byte[] UID_B = { 0x04, 0x11, 0x22, 0x34 };
+
+    @Test
+    public void repeatInsideTheWindow_isSuppressed() {
+        TagDedupCache cache = new TagDedupCache(1000, 16, false);
+        long a = TagDedupCache.fingerprint(UID_A);
+
+        assertTrue(cache.shouldDeliver(a, 0));
+        assertFalse(cache.shouldDeliver(a, 999));
+        assertTrue(cache.shouldDeliver(TagDedupCache.fingerprint(UID_B), 999));
+        assertEquals(2, cache.getDelivered());
+        assertEquals(1, cache.getSuppressed());
+    }
+
+    @Test
+    public void window_restartsOnSuppressedRepeats() {
+        TagDedupCache cache = new TagDedupCache(1000, 16, false);
+        long a = TagDedupCache.fingerprint(UID_A);
+
+        assertTrue(cache.shouldDeliver(a, 0));
+        // A card left on the reader keeps being seen, so it stays suppressed past the first window
+        assertFalse(cache.shouldDeliver(a, 800));
+        assertFalse(cache.shouldDeliver(a, 1600));
+        assertFalse(cache.shouldDeliver(a, 2400));
+        // Until it's been away for a whole window
+        assertTrue(cache.shouldDeliver(a, 3400));
+        assertEquals(3, cache.getSuppressed());
+    }
+
+    @Test
+    public void leastRecentlySeen_isEvicted() {
+        TagDedupCache cache = new TagDedupCache(60_000, 2, false);
+        long a = TagDedupCache.fingerprint(UID_A);
+        long b = TagDedupCache.fingerprint(UID_B);
+        long c = TagDedupCache.fingerprint(new byte[] { 0x04, 0x11, 0x22, 0x35 });
+
+        cache.shouldDeliver(a, 0);
+        cache.shouldDeliver(b, 1);
+        // Seeing a again makes b the eldest
+        assertFalse(cache.shouldDeliver(a, 2));
+        assertTrue(cache.shouldDeliver(c, 3));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvicted());
+
+        assertFalse(cache.shouldDeliver(a, 4));
+        // b was forgotten, so it's delivered again inside its window
+        assertTrue(cache.shouldDeliver(b, 5));
+        assertEquals(2, cache.getEvicted());
+    }
+
+    @Test
+    public void zeroTtl_deliversEverything() {
+        TagDedupCache cache = new TagDedupCache(0, 16, false);
+        long a = TagDedupCache.fingerprint(UID_A);
+
+        assertTrue(cache.shouldDeliver(a, 5));
+        assertTrue(cache.shouldDeliver(a, 5));
+        assertEquals(0, cache.getSuppressed());
+        assertEquals(2, cache.getDelivered());
+    }
+
+    @Test
+    public void negativeTtlAndCapacity_fallBackToDefaults() {
+        TagDedupCache cache = new TagDedupCache(-5, 0, false);
+        for (int i = 0; i < TagDedupCache.DEFAULT_CAPACITY + 10; i++) {
+            assertTrue(cache.shouldDeliver(i, 0));
+        }
+        assertEquals(TagDedupCache.DEFAULT_CAPACITY, cache.size());
+        assertEquals(10, cache.getEvicted());
+    }
+
+    @Test
+    public void mix_changesTheFingerprint() {
+        long a = TagDedupCache.fingerprint(UID_A);
+        byte[] payload = { 1, 2, 3 };
+
+        assertNotEquals(a, TagDedupCache.fingerprint(UID_B));
+        assertNotEquals(a, TagDedupCache.mix(a, payload, 0, payload.length));
+        assertEquals(a, TagDedupCache.mix(a, payload, 1, 0));
+        assertEquals(TagDedupCache.mix(a, new byte[] { 2, 3 }, 0, 2), TagDedupCache.mix(a, payload, 1, 2));
+        assertEquals(TagDedupCache.fingerprint(new byte[0]), TagDedupCache.fingerprint(null));
+    }
+
+    @Test
+    public void isDuplicate_mixesPayloadOnlyWhenAsked() {
+        byte[][] first = { { (byte) 0xD1, 0x01, 0x01, 0x54, 'a' } };
+        byte[][] rewritten = { { (byte) 0xD1, 0x01, 0x01, 0x54, 'b' } };
+
+        TagDedupCache uidOnly = new TagDedupCache(60_000, 16, false);
+        assertFalse(TagPipeline.isDuplicate(uidOnly, UID_A, first, 0));
+        assertTrue(TagPipeline.isDuplicate(uidOnly, UID_A, rewritten, 1));
+
+        TagDedupCache withPayload = new TagDedupCache(60_000, 16, true);
+        assertFalse(TagPipeline.isDuplicate(withPayload, UID_A, first, 0));
+        assertTrue(TagPipeline.isDuplicate(withPayload, UID_A, first, 1));
+        // A rewritten tag counts as new
+        assertFalse(TagPipeline.isDuplicate(withPayload, UID_A, rewritten, 2));
+        // UID scans have no messages, the UID alone is the key
+        assertFalse(TagPipeline.isDuplicate(withPayload, UID_A, null, 3));
+        assertTrue(TagPipeline.isDuplicate(withPayload, UID_A, null, 4));
+    }
+
+    @Test
+    public void isDuplicate_withoutCacheIsNever() {
+        assertFalse(TagPipeline.isDuplicate(null, UID_A, null, 0));
+        assertFalse(TagPipeline.isDuplicate(null, UID_A, null, 0));
+    }
+}
@@ -0,0 +1,96 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class TagFilterTest {
+    private static final byte[] UID = { 0x04, 0x12, 0x34, 0x56 };
+    private static final String[] TECHS = { "android.nfc.tech.NfcA", "android.nfc.tech.MifareUltralight", "android.nfc.tech.Ndef" };
+
+    private static byte[][] messages(NdefCodec.Record... records) {
+        NdefCodec.Message message = new NdefCodec.Message();
+        for (NdefCodec.Record record : records) {
+            message.add(record);
+        }
+        return new byte[][] { NdefCodec.encode(message) };
+    }
+
+    @Test
+    public void build_withoutConditionsIsNull() {
+        assertNull(new TagFilter.Builder().build());
+    }
+
+    @Test
+    public void uidPrefix_honoursMask() {
+        TagFilter exact = new TagFilter.Builder().uidPrefix(new byte[] { 0x04, 0x12 }, null).build();
+        assertTrue(exact.matches(UID, TECHS, null));
+        assertFalse(exact.matches(new byte[] { 0x04, 0x13, 0x00 }, TECHS, null));
+        assertFalse(exact.matches(new byte[] { 0x04 }, TECHS, null));
+
+        TagFilter masked = new TagFilter.Builder().uidPrefix(new byte[] { 0x04, 0x10 }, new byte[] { (byte) 0xFF, (byte) 0xF0 }).build();
+        assertTrue(masked.matches(UID, TECHS, null));
+        assertFalse(masked.matches(new byte[] { 0x04, 0x22, 0x00 }, TECHS, null));
+        assertFalse(masked.needsNdef());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void uidPrefix_rejectsMaskOfOtherLength() {
+        new TagFilter.Builder().uidPrefix(new byte[] { 0x04 }, new byte[] { (byte) 0xFF, 0x00 });
+    }
+
+    @Test
+    public void requireTech_acceptsShortAndFullNames() {
+        assertTrue(new TagFilter.Builder().requireTech("MifareUltralight").build().matches(UID, TECHS, null));
+        assertTrue(new TagFilter.Builder().requireTech("android.nfc.tech.Ndef").build().matches(UID, TECHS, null));
+        assertFalse(new TagFilter.Builder().requireTech("MifareClassic").build().matches(UID, TECHS, null));
+    }
+
+    @Test
+    public void recordRules_matchAnyRecord() {
+        TagFilter filter = new TagFilter.Builder()
+            .record(NdefCodec.TNF_EXTERNAL_TYPE, "example.com:badge", null)
+            .record(-1, "T", "VIP")
+            .build();
+        assertTrue(filter.needsNdef());
+
+        NdefCodec.Record badge = NdefCodec.Record.of(NdefCodec.TNF_EXTERNAL_TYPE, "example.com:badge".getBytes(StandardCharsets.US_ASCII), null, new byte[] { 1 });
+        assertTrue(filter.matches(UID, TECHS, messages(NdefCodec.uriRecord("https://example.com"), badge)));
+        // The prefix is compared after the language code
+        assertTrue(filter.matches(UID, TECHS, messages(NdefCodec.textRecord("en", "VIP guest"))));
+        assertFalse(filter.matches(UID, TECHS, messages(NdefCodec.textRecord("en", "guest"))));
+        assertFalse(filter.matches(UID, TECHS, null));
+        assertFalse(filter.matches(UID, TECHS, new byte[][] { { (byte) 0xD1, 0x01 } }));
+        assertEquals(2, filter.getMatched());
+        assertEquals(3, filter.getRejected());
+    }
+
+    @Test
+    public void recordRules_seeCompressedRecordsExpanded() {
+        StringBuilder text = new StringBuilder("VIP");
+        for (int i = 0; i < 50; i++) {
+            text.append(" guest");
+        }
+        NdefCodec.Message message = new NdefCodec.Message().add(NdefCodec.textRecord("en", text.toString()));
+        NdefCodec.Message compressed = NdefCompression.compress(message, NdefCompression.DEFAULT_MIN_BYTES);
+        assertTrue(NdefCompression.isCompressed(compressed.get(0)));
+
+        TagFilter filter = new TagFilter.Builder().record(NdefCodec.TNF_WELL_KNOWN, "T", "VIP").build();
+        assertTrue(filter.matches(UID, TECHS, new byte[][] { NdefCodec.encode(compressed) }));
+    }
+
+    @Test
+    public void allConditionsMustHold_cheapOnesFirst() {
+        TagFilter filter = new TagFilter.Builder()
+            .uidPrefix(new byte[] { 0x05 }, null)
+            .minRecords(1)
+            .build();
+        // Rejected on the UID, the malformed message is never decoded
+        assertFalse(filter.matches(UID, TECHS, new byte[][] { { 0x00 } }));
+
+        TagFilter twoRecords = new TagFilter.Builder().uidPrefix(new byte[] { 0x04 }, null).minRecords(2).build();
+        assertFalse(twoRecords.matches(UID, TECHS, messages(NdefCodec.uriRecord("https://example.com"))));
+        assertTrue(twoRecords.matches(UID, TECHS, messages(NdefCodec.uriRecord("https://example.com"), NdefCodec.textRecord("en", "x"))));
+    }
+}
@@ -0,0 +1,62 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class TagIOPolicyTest {
+    private final TagIOPolicy policy = TagIOPolicy.defaults();
+
+    private static void observe(TagIOPolicy policy, int count, long millis) {
+        for (int i = 0; i < count; i++) {
+            policy.observeTransceive(millis * 1_000_000L);
+        }
+    }
+
+    @Test
+    public void timeout_waitsForThirtyTwoSamples() {
+        observe(policy, 31, 50);
+        assertEquals(0, policy.getTransceiveTimeoutMillis());
+
+        observe(policy, 1, 50);
+        // 4x the p99 of 50 ms
+        assertEquals(200, policy.getTransceiveTimeoutMillis());
+    }
+
+    @Test
+    public void timeout_isRecomputedEveryThirtyTwoSamples() {
+        observe(policy, 32, 30);
+        // 4x the midpoint of the bucket holding 30 ms, 29.7 ms
+        assertEquals(119, policy.getTransceiveTimeoutMillis());
+
+        observe(policy, 31, 50);
+        assertEquals(119, policy.getTransceiveTimeoutMillis());
+        observe(policy, 1, 50);
+        assertEquals(200, policy.getTransceiveTimeoutMillis());
+    }
+
+    @Test
+    public void timeout_isKeptBetweenTheFloorAndCeiling() {
+        observe(policy, 32, 2);
+        assertEquals(TagIOPolicy.DEFAULT_MIN_TIMEOUT_MILLIS, policy.getTransceiveTimeoutMillis());
+
+        TagIOPolicy slow = TagIOPolicy.defaults();
+        observe(slow, 32, 1_000);
+        assertEquals(TagIOPolicy.DEFAULT_MAX_TIMEOUT_MILLIS, slow.getTransceiveTimeoutMillis());
+    }
+
+    @Test
+    public void timeout_staysAtThePlatformDefaultWhenNotAdaptive() {
+        TagIOPolicy fixed = new TagIOPolicy(2, 50, 500, false);
+        observe(fixed, 64, 50);
+        assertEquals(0, fixed.getTransceiveTimeoutMillis());
+    }
+
+    @Test
+    public void isRetryable_looksThroughTheCauses() {
+        assertTrue(TagIOPolicy.isRetryable(new IOException("Tag was lost")));
+        assertFalse(TagIOPolicy.isRetryable(new TagIOPolicy.NotRetryableException("Read-only")));
+        assertFalse(TagIOPolicy.isRetryable(new IOException(new IllegalStateException())));
+    }
+}
@@ -0,0 +1,367 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * The write, raw read, session and Classic paths of {@link TagPipeline} against {@link SimulatedTag},
+ * and payloads deferred out of nfcTag events.
+ */
+public class TagPipelineTest {
+    private static final byte[] UID = { 0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66 };
+
+    private final TagPipeline pipeline = new TagPipeline(new NFCMetrics(System::nanoTime), JSONObject::new);
+
+    private static byte[] text(String value) {
+        return NdefCodec.encode(new NdefCodec.Message().add(NdefCodec.textRecord("en", value)));
+    }
+
+    private JSONObject write(SimulatedTag tag, byte[] message, boolean diffWrite) throws Exception {
+        tag.tap();
+        return pipeline.write(tag, message, diffWrite, true, NFCMetrics.OP_WRITE);
+    }
+
+    private long retries(String operation) throws Exception {
+        JSONObject metrics = new JSONObject();
+        pipeline.getMetrics().putJson(metrics);
+        return metrics.getJSONObject("operations").getJSONObject(operation).getLong("retries");
+    }
+
+    private JSONObject session(SimulatedTag tag, TagSession.Updater updater, String expectedHash) throws Exception {
+        tag.tap();
+        return pipeline.readModifyWrite(tag, updater, expectedHash);
+    }
+
+    @Test
+    public void write_fullThenDiff() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG215, UID);
+
+        JSONObject full = write(tag, text("first message"), false);
+        assertEquals("full", full.getString("mode"));
+        assertEquals(0, full.getInt("retries"));
+        assertArrayEquals(text("first message"), tag.getCachedNdefMessage());
+
+        JSONObject diff = write(tag, text("first massage"), true);
+        assertEquals("diff", diff.getString("mode"));
+        assertEquals(1, diff.getInt("pagesWritten"));
+        assertTrue(diff.getBoolean("verified"));
+        assertArrayEquals(text("first massage"), tag.getCachedNdefMessage());
+    }
+
+    @Test
+    public void diffWrite_formatsBlankTag() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG213, UID).erase();
+        assertFalse(tag.hasTechnology(TagTransport.Technology.NDEF));
+
+        assertEquals("full", write(tag, text("hello"), true).getString("mode"));
+        assertArrayEquals(text("hello"), tag.getCachedNdefMessage());
+    }
+
+    @Test
+    public void write_readOnlyTagIsNotRetried() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG213, UID).setReadOnly(true);
+        try {
+            write(tag, text("hello"), false);
+            fail("Wrote a read-only tag");
+        } catch (TagIOPolicy.NotRetryableException e) {
+            assertEquals("Tag is read-only", e.getMessage());
+        }
+        assertEquals(0, retries(NFCMetrics.OP_WRITE));
+        // Remembered, so the next attempt is rejected without any I/O
+        JSONObject rejection = pipeline.planWrite(tag, 10, NFCMetrics.OP_WRITE);
+        assertEquals(TagPipeline.REJECT_READ_ONLY, rejection.getString("reason"));
+    }
+
+    // A tag Android exposes neither Ndef nor NdefFormatable for, so nothing is known without I/O
+    private static SimulatedTag withoutNdef(SimulatedTag.Layout layout, byte[] uid) {
+        return new SimulatedTag(layout, uid) {
+            @Override
+            public TagCapability getCapability() {
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void planWrite_rejectsAMessageTooLargeForTheTag() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG213, UID);
+        int maxSize = tag.getCapability().getMaxSize();
+        assertNull(pipeline.planWrite(tag, maxSize, NFCMetrics.OP_WRITE));
+
+        JSONObject rejection = pipeline.planWrite(tag, maxSize + 1, NFCMetrics.OP_WRITE);
+        assertEquals(TagPipeline.REJECT_TOO_LARGE, rejection.getString("reason"));
+        assertEquals(maxSize + 1, rejection.getInt("messageSize"));
+        assertEquals(maxSize, rejection.getInt("maxSize"));
+        assertEquals("NTAG213", rejection.getString("tagType"));
+        assertEquals(UidEncoder.toHex(UID), rejection.getString("uid"));
+        assertEquals(0, tag.getCommandCount());
+    }
+
+    @Test
+    public void planWrite_rejectsATagWithoutNdef() throws Exception {
+        SimulatedTag tag = withoutNdef(SimulatedTag.Layout.CLASSIC_1K, UID);
+        JSONObject rejection = pipeline.planWrite(tag, 10, NFCMetrics.OP_WRITE);
+        assertEquals(TagPipeline.REJECT_UNSUPPORTED, rejection.getString("reason"));
+        assertEquals("Tag doesn't support NDEF", rejection.getString("error"));
+        assertFalse(rejection.has("maxSize"));
+    }
+
+    @Test
+    public void planWrite_letsUnformattedUltralightThrough() throws Exception {
+        // Written page by page, the capability container is checked then
+        assertNull(pipeline.planWrite(withoutNdef(SimulatedTag.Layout.ULTRALIGHT, UID), 10, NFCMetrics.OP_WRITE));
+        // As is a blank tag of unknown size
+        SimulatedTag blank = new SimulatedTag(SimulatedTag.Layout.NTAG213, UID).erase();
+        assertNull(pipeline.planWrite(blank, 10_000, NFCMetrics.OP_WRITE));
+    }
+
+    @Test
+    public void planWrite_reusesTheCapabilityOfAnEarlierPresentation() throws Exception {
+        TagCapabilityCache cache = pipeline.getCapabilities();
+        SimulatedTag formatted = new SimulatedTag(SimulatedTag.Layout.NTAG213, UID);
+        assertNull(pipeline.planWrite(formatted, 10, NFCMetrics.OP_WRITE));
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getHits() + cache.getMisses());
+
+        // Presented again without Ndef, what the first presentation showed still applies
+        SimulatedTag again = withoutNdef(SimulatedTag.Layout.CLASSIC_1K, UID);
+        JSONObject rejection = pipeline.planWrite(again, 1_000, NFCMetrics.OP_WRITE);
+        assertEquals(TagPipeline.REJECT_TOO_LARGE, rejection.getString("reason"));
+        assertEquals("NTAG213", rejection.getString("tagType"));
+        assertEquals(1, cache.getHits());
+
+        // A UID never seen is a miss
+        SimulatedTag unknown = withoutNdef(SimulatedTag.Layout.CLASSIC_1K, new byte[] { 0x01, 0x02, 0x03, 0x04 });
+        rejection = pipeline.planWrite(unknown, 10, NFCMetrics.OP_WRITE);
+        assertEquals(TagPipeline.REJECT_UNSUPPORTED, rejection.getString("reason"));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void write_retriesWhileTheTagIsPresent() throws Exception {
+        pipeline.setPolicy(new TagIOPolicy(10, 50, 500, false));
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG216, UID)
+            .setFailureRate(0.05, 8)
+            .setTransientFailures(true);
+
+        JSONObject result = write(tag, text("a message long enough to take a few commands to write"), false);
+        assertTrue(result.getInt("retries") > 0);
+        assertArrayEquals(text("a message long enough to take a few commands to write"), tag.getCachedNdefMessage());
+    }
+
+    @Test
+    public void write_lostTagFailsWithoutRetries() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG215, UID).setCommandBudget(2);
+        try {
+            write(tag, text("a message long enough to take a few commands to write"), false);
+            fail("Wrote a lost tag");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof SimulatedTag.TagLostException);
+            assertFalse(e.getMessage().contains("retr"));
+        }
+        assertEquals(0, retries(NFCMetrics.OP_WRITE));
+    }
+
+    @Test
+    public void readRaw_dumpsNtagMemory() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG216, UID);
+        tag.tap();
+
+        JSONObject dump = pipeline.readRaw(tag, true, true, 0);
+        assertEquals("04112233445566", dump.getString("uid"));
+        assertEquals("NTAG216", dump.getString("product"));
+        assertEquals(231, dump.getInt("pageCount"));
+        assertEquals(231 * 8, dump.getString("memory").length());
+        assertEquals(64, dump.getString("signature").length());
+        assertEquals(1, dump.getInt("counter"));
+        // GET_VERSION, four FAST_READs, READ_SIG and READ_CNT
+        assertEquals(7, dump.getInt("transceives"));
+        assertEquals(0, dump.getInt("retries"));
+    }
+
+    @Test
+    public void readRaw_fallsBackToReadWithoutGetVersion() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.ULTRALIGHT, UID);
+        tag.tap();
+
+        JSONObject dump = pipeline.readRaw(tag, true, true, tag.getFallbackPageCount());
+        assertEquals(16, dump.getInt("pageCount"));
+        assertEquals(16 * 8, dump.getString("memory").length());
+        assertFalse(dump.has("version"));
+        assertFalse(dump.has("signature"));
+        assertFalse(dump.has("counter"));
+    }
+
+    @Test
+    public void readRaw_stopsBeforeTheUltralightCKey() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.ULTRALIGHT_C, UID);
+        write(tag, text("hello"), false);
+        assertEquals(44, tag.getFallbackPageCount());
+        tag.tap();
+
+        JSONObject dump = pipeline.readRaw(tag, true, true, tag.getFallbackPageCount());
+        assertEquals(44, dump.getInt("pageCount"));
+        String memory = dump.getString("memory");
+        assertEquals(44 * 8, memory.length());
+        assertTrue(memory.contains(UidEncoder.toHex(text("hello"))));
+        assertFalse(dump.has("version"));
+        assertEquals(0, dump.getInt("retries"));
+
+        // The key pages themselves are refused
+        tag.tap();
+        tag.connect(TagTransport.Technology.NFC_A);
+        try {
+            tag.transceive(new byte[] { NtagReader.CMD_READ, 0x2C });
+            fail("Read the 3DES key");
+        } catch (IOException e) {
+            assertEquals("Transceive failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void session_writesWhatTheUpdaterReturns() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG215, UID);
+        write(tag, text("v1"), false);
+        String before = TagSession.contentHash(text("v1"));
+
+        JSONObject result = session(tag, (uid, current, hash) -> {
+            assertArrayEquals(text("v1"), current);
+            assertEquals(before, hash);
+            return new TagSession.Update(text("v2"), hash);
+        }, before);
+        assertEquals(TagSession.STATUS_WRITTEN, result.getString("status"));
+        assertEquals(before, result.getString("previousHash"));
+        assertEquals(TagSession.contentHash(text("v2")), result.getString("contentHash"));
+        assertArrayEquals(text("v2"), tag.getCachedNdefMessage());
+
+        assertEquals(TagSession.STATUS_UNCHANGED, session(tag, (uid, current, hash) -> null, null).getString("status"));
+    }
+
+    @Test
+    public void session_conflictLeavesTheTagAlone() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG215, UID);
+        write(tag, text("v1"), false);
+
+        JSONObject result = session(tag, (uid, current, hash) -> {
+            throw new AssertionError("Updater called on a conflict");
+        }, TagSession.contentHash(text("v0")));
+        assertEquals(TagSession.STATUS_CONFLICT, result.getString("status"));
+        assertArrayEquals(text("v1"), tag.getCachedNdefMessage());
+    }
+
+    @Test
+    public void session_formatsBlankTag() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG213, UID).erase();
+
+        JSONObject result = session(tag, (uid, current, hash) -> {
+            assertNull(current);
+            return new TagSession.Update(text("new"), null);
+        }, null);
+        assertEquals(TagSession.STATUS_WRITTEN, result.getString("status"));
+        assertArrayEquals(text("new"), tag.getCachedNdefMessage());
+    }
+
+    @Test
+    public void session_neverAsksTheUpdaterTwice() throws Exception {
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.NTAG215, UID);
+        write(tag, text("v1"), false);
+        int[] calls = { 0 };
+
+        try {
+            session(tag, (uid, current, hash) -> {
+                calls[0]++;
+                throw new IOException("updater failed");
+            }, null);
+            fail("Session succeeded");
+        } catch (TagIOPolicy.NotRetryableException e) {
+            assertEquals("Error updating tag: updater failed", e.getMessage());
+        }
+        assertEquals(1, calls[0]);
+        assertArrayEquals(text("v1"), tag.getCachedNdefMessage());
+    }
+
+    @Test
+    public void readClassic_sharesKeysAcrossTaps() throws Exception {
+        byte[] uid = { 0x11, 0x22, 0x33, 0x44 };
+        SimulatedTag tag = new SimulatedTag(SimulatedTag.Layout.CLASSIC_1K, uid);
+        tag.tap();
+
+        JSONObject first = pipeline.readClassic(tag, new MifareClassicReader.Options());
+        assertEquals("11223344", first.getString("uid"));
+        assertEquals(16, first.getJSONArray("sectors").length());
+        assertTrue(first.getInt("failedAuthentications") > 0);
+
+        tag.tap();
+        JSONObject second = pipeline.readClassic(tag, new MifareClassicReader.Options());
+        assertEquals(0, second.getInt("failedAuthentications"));
+        assertEquals(16, second.getInt("cachedKeys"));
+        assertEquals(1, pipeline.getClassicKeys().size());
+    }
+
+    private static byte[] mime(byte[] payload) {
+        return NdefCodec.encode(new NdefCodec.Message()
+            .add(NdefCodec.Record.of(NdefCodec.TNF_MIME_MEDIA, "application/octet-stream".getBytes(), null, payload)));
+    }
+
+    @Test
+    public void readNdef_defersLargePayloads() throws Exception {
+        byte[] large = new byte[64];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        pipeline.setPayloadOutput(PayloadEncoding.BASE64, 16);
+
+        JSONObject event = pipeline.readNdef(new byte[][] { text("hi"), mime(large) });
+        JSONObject small = event.getJSONArray("messages").getJSONObject(0).getJSONArray("records").getJSONObject(0);
+        assertFalse(small.has("deferred"));
+        assertEquals(PayloadEncoding.base64(text("hi"), 4, 5), small.getString("payload"));
+
+        JSONObject deferred = event.getJSONArray("messages").getJSONObject(1).getJSONArray("records").getJSONObject(0);
+        assertTrue(deferred.getBoolean("deferred"));
+        assertEquals("", deferred.getString("payload"));
+        assertEquals(64, deferred.getInt("payloadSize"));
+
+        long readId = event.getLong("readId");
+        JSONObject payload = pipeline.getPayload(readId, 1, 0, null);
+        assertEquals(64, payload.getInt("payloadSize"));
+        assertEquals(PayloadEncoding.base64(large, 0, large.length), payload.getString("payload"));
+        assertEquals(PayloadEncoding.hex(large, 0, large.length),
+            pipeline.getPayload(readId, 1, 0, PayloadEncoding.HEX).getString("payload"));
+    }
+
+    @Test
+    public void readNdef_withNothingDeferredHasNoReadId() throws Exception {
+        pipeline.setPayloadOutput(PayloadEncoding.HEX, 16);
+        assertFalse(pipeline.readNdef(new byte[][] { text("hi") }).has("readId"));
+    }
+
+    @Test
+    public void getPayload_forgetsReadsPastTheLast32() throws Exception {
+        pipeline.setPayloadOutput(PayloadEncoding.HEX, 0);
+        long first = pipeline.readNdef(new byte[][] { mime(new byte[] { 1 }) }).getLong("readId");
+        long second = pipeline.readNdef(new byte[][] { mime(new byte[] { 2 }) }).getLong("readId");
+        // Fetching the first keeps it among the recent ones
+        assertEquals("01", pipeline.getPayload(first, 0, 0, null).getString("payload"));
+        for (int i = 0; i < 31; i++) {
+            pipeline.readNdef(new byte[][] { mime(new byte[] { 3 }) });
+        }
+
+        assertEquals("01", pipeline.getPayload(first, 0, 0, null).getString("payload"));
+        try {
+            pipeline.getPayload(second, 0, 0, null);
+            fail("Read still available");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Read " + second + " is no longer available", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void getPayload_refusesAMissingRecord() throws Exception {
+        pipeline.setPayloadOutput(PayloadEncoding.HEX, 0);
+        long readId = pipeline.readNdef(new byte[][] { mime(new byte[] { 1 }) }).getLong("readId");
+        pipeline.getPayload(readId, 0, 1, null);
+    }
+}
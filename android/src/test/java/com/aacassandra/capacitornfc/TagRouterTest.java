@@ -0,0 +1,285 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Taps routed to the armed mode, with tag I/O run inline.
+ */
+public class TagRouterTest {
+    private static final byte[] UID = { 0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66 };
+
+    private final TagPipeline pipeline = new TagPipeline(new NFCMetrics(System::nanoTime), JSONObject::new);
+    private final InlineIO io = new InlineIO();
+    private final List<String> finished = new ArrayList<>();
+    private final TagRouter router = new TagRouter(pipeline, io, () -> finished.add("finished"));
+    private final RecordingListener listener = new RecordingListener();
+
+    public TagRouterTest() {
+        router.setListener(listener);
+    }
+
+    private static final class InlineIO implements TagRouter.TagIO {
+        int generation = 0;
+        boolean rejecting = false;
+
+        @Override
+        public boolean execute(TagRouter.Operation operation) {
+            if (rejecting) return false;
+            int started = generation;
+            try {
+                operation.run(new TagRouter.Ticket() {
+                    @Override
+                    public boolean isCancelled() {
+                        return generation != started;
+                    }
+
+                    @Override
+                    public void complete(Runnable completion) {
+                        if (!isCancelled()) completion.run();
+                    }
+
+                    @Override
+                    public TagTransport bind(TagTransport tag) {
+                        return tag;
+                    }
+                });
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+            return true;
+        }
+
+        @Override
+        public void cancelAll() {
+            generation++;
+        }
+    }
+
+    private static final class RecordingListener implements TagRouter.Listener {
+        final List<String> kinds = new ArrayList<>();
+        final List<JSONObject> events = new ArrayList<>();
+
+        private void add(String kind, JSONObject data) {
+            kinds.add(kind);
+            events.add(data);
+        }
+
+        JSONObject last(String kind) {
+            int index = kinds.lastIndexOf(kind);
+            return index >= 0 ? events.get(index) : null;
+        }
+
+        @Override
+        public void onNdefDiscovered(JSONObject data) {
+            add("ndef", data);
+        }
+
+        @Override
+        public void onNdefJson(JSONObject data) {
+            add("json", data);
+        }
+
+        @Override
+        public void onUIDDiscovered(JSONObject data) {
+            add("uid", data);
+        }
+
+        @Override
+        public void onInventoryItem(JSONObject data) {
+            add("item", data);
+        }
+
+        @Override
+        public void onInventorySummary(JSONObject data) {
+            add("summary", data);
+        }
+
+        @Override
+        public void onError(String error) {
+            add("error", new JSONObject().put("error", error));
+        }
+
+        @Override
+        public void onWriteSuccess(JSONObject data) {
+            add("written", data);
+        }
+
+        @Override
+        public void onWriteRejected(JSONObject data) {
+            add("rejected", data);
+        }
+
+        @Override
+        public void onProvisionProgress(JSONObject data) {
+            add("progress", data);
+        }
+
+        @Override
+        public void onProvisionComplete(JSONObject data) {
+            add("complete", data);
+        }
+
+        @Override
+        public void onRawRead(JSONObject data) {
+            add("raw", data);
+        }
+
+        @Override
+        public void onClassicRead(JSONObject data) {
+            add("classic", data);
+        }
+
+        @Override
+        public void onSessionComplete(JSONObject data) {
+            add("session", data);
+        }
+
+        @Override
+        public void onWarning(String message, Exception cause) {
+            add("warning", new JSONObject());
+        }
+    }
+
+    private static byte[] text(String value) {
+        return NdefCodec.encode(new NdefCodec.Message().add(NdefCodec.textRecord("en", value)));
+    }
+
+    private static SimulatedTag tag(int last) {
+        byte[] uid = UID.clone();
+        uid[6] = (byte) last;
+        return new SimulatedTag(SimulatedTag.Layout.NTAG215, uid);
+    }
+
+    private void tap(SimulatedTag tag) {
+        tag.tap();
+        router.onTagDiscovered(tag, 0);
+    }
+
+    private ProvisioningSession provisioning(boolean skipWrittenTags, byte[]... messages) {
+        return new ProvisioningSession(messages, skipWrittenTags, System::nanoTime, JSONObject::new);
+    }
+
+    @Test
+    public void provision_writesTheQueueAndFinishes() throws Exception {
+        long scanId = router.arm(ScanState.Mode.PROVISION, provisioning(false, text("one"), text("two")));
+        SimulatedTag first = tag(1);
+        SimulatedTag second = tag(2);
+
+        tap(first);
+        JSONObject progress = listener.last("progress");
+        assertEquals("written", progress.getString("status"));
+        assertEquals(0, progress.getInt("index"));
+        assertEquals(scanId, progress.getLong("scanId"));
+        assertTrue(finished.isEmpty());
+
+        tap(second);
+        assertArrayEquals(text("one"), first.getCachedNdefMessage());
+        assertArrayEquals(text("two"), second.getCachedNdefMessage());
+        assertEquals(1, finished.size());
+        assertEquals(ScanState.IDLE, router.getScanState().current());
+        JSONObject summary = listener.last("complete");
+        assertEquals(2, summary.getInt("written"));
+        assertTrue(summary.getBoolean("finished"));
+
+        // Idle now, a further tap is ignored
+        int events = listener.kinds.size();
+        tap(tag(3));
+        assertEquals(events, listener.kinds.size());
+    }
+
+    @Test
+    public void provision_skipsWrittenTagsAndRetriesFailedMessages() throws Exception {
+        router.arm(ScanState.Mode.PROVISION, provisioning(true, text("one"), text("two")));
+        SimulatedTag written = tag(1);
+        tap(written);
+
+        tap(written);
+        assertEquals("skipped", listener.last("progress").getString("status"));
+
+        // A tag the message doesn't fit on: rejected before any I/O, the message stays queued
+        SimulatedTag tooSmall = new SimulatedTag(SimulatedTag.Layout.ULTRALIGHT, new byte[] { 0x04, 1, 2, 3, 4, 5, 6 });
+        router.stop(ScanState.Mode.PROVISION);
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            big.append("0123456789");
+        }
+        router.arm(ScanState.Mode.PROVISION, provisioning(false, text(big.toString())));
+        tap(tooSmall);
+        JSONObject failed = listener.last("progress");
+        assertEquals("failed", failed.getString("status"));
+        assertEquals(TagPipeline.REJECT_TOO_LARGE, failed.getString("reason"));
+
+        SimulatedTag roomy = tag(2);
+        tap(roomy);
+        assertEquals("written", listener.last("progress").getString("status"));
+        assertEquals(0, listener.last("progress").getInt("index"));
+        assertArrayEquals(text(big.toString()), roomy.getCachedNdefMessage());
+    }
+
+    @Test
+    public void stop_releasesTheSessionOnce() throws Exception {
+        router.arm(ScanState.Mode.PROVISION, provisioning(false, text("one")));
+        ScanState.Session stopped = router.stop(ScanState.Mode.PROVISION);
+        assertNotNull(stopped);
+        assertEquals(1, io.generation);
+        assertEquals(0, listener.last("complete").getInt("written"));
+
+        assertNull(router.stop(ScanState.Mode.PROVISION));
+        assertEquals(1, io.generation);
+    }
+
+    @Test
+    public void uid_isFilteredAndDeduplicated() throws Exception {
+        router.setTagFilter(new TagFilter.Builder().uidPrefix(new byte[] { 0x04 }, null).build());
+        router.setDedupCache(new TagDedupCache(60_000, TagDedupCache.DEFAULT_CAPACITY, false));
+        long scanId = router.arm(ScanState.Mode.UID, null);
+
+        tap(tag(1));
+        tap(tag(1));
+        tap(new SimulatedTag(SimulatedTag.Layout.NTAG215, new byte[] { 0x05, 1, 2, 3, 4, 5, 6 }));
+
+        assertEquals(1, listener.kinds.size());
+        assertEquals("04112233445501", listener.last("uid").getString("uid"));
+        assertEquals(scanId, listener.last("uid").getLong("scanId"));
+        assertEquals(1, router.getDedupCache().getSuppressed());
+        assertEquals(1, router.getTagFilter().getRejected());
+    }
+
+    @Test
+    public void read_usesTheCachedMessage() throws Exception {
+        SimulatedTag tag = tag(1);
+        pipeline.write(tag, text("hello"), false, false, NFCMetrics.OP_WRITE);
+        router.arm(ScanState.Mode.READ, null);
+
+        tap(tag);
+        assertEquals("ndef", listener.kinds.get(0));
+
+        // Nothing to read on a blank tag
+        tap(tag(2).erase());
+        assertEquals(1, listener.kinds.size());
+    }
+
+    @Test
+    public void rejectedIO_isReportedAsBusy() throws Exception {
+        io.rejecting = true;
+        router.arm(ScanState.Mode.RAW_READ, new TagRouter.RawReadSettings(false, false));
+
+        tap(tag(1));
+        assertEquals("NFC is busy, raw read was rejected", listener.last("error").getString("error"));
+    }
+
+    @Test
+    public void nullTag_isAnErrorOnlyWhileArmed() throws Exception {
+        router.onTagDiscovered(null, 0);
+        assertTrue(listener.kinds.isEmpty());
+
+        router.arm(ScanState.Mode.UID, null);
+        router.onTagDiscovered(null, 0);
+        assertEquals("No NFC tag detected", listener.last("error").getString("error"));
+    }
+}
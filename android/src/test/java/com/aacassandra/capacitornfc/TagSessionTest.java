@@ -0,0 +1,147 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class TagSessionTest {
+    private static final byte[] UID = { 0x04, 0x11, 0x22 };
+    private static final byte[] MESSAGE = { (byte) 0xD1, 0x01, 0x01, 0x54, 0x00 };
+
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+    // Session ids handed to the listener, in order
+    private final BlockingQueue<Long> reads = new ArrayBlockingQueue<>(8);
+
+    @After
+    public void shutdown() {
+        io.shutdownNow();
+    }
+
+    private TagSession.Handoff handoff(long timeoutMillis) {
+        return new TagSession.Handoff((sessionId, uid, current, contentHash) -> reads.add(sessionId), timeoutMillis);
+    }
+
+    // A tap handed to the session on the I/O thread, awaitRead() returns once it's waiting
+    private Future<TagSession.Update> tap(TagSession.Handoff handoff) {
+        return io.submit(() -> handoff.update(UID, MESSAGE, TagSession.contentHash(MESSAGE)));
+    }
+
+    private long awaitRead() throws InterruptedException {
+        Long sessionId = reads.poll(5, TimeUnit.SECONDS);
+        assertNotNull("Listener wasn't called", sessionId);
+        return sessionId;
+    }
+
+    private static Throwable failureOf(Future<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Update succeeded");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    @Test
+    public void contentHash_blankTagHashesLikeAnEmptyMessage() {
+        assertEquals(TagSession.contentHash(new byte[0]), TagSession.contentHash(null));
+        assertEquals(64, TagSession.contentHash(MESSAGE).length());
+        assertNotEquals(TagSession.contentHash(MESSAGE), TagSession.contentHash(null));
+    }
+
+    @Test
+    public void complete_handsTheUpdateToTheWaitingTap() throws Exception {
+        TagSession.Handoff handoff = handoff(5_000);
+        Future<TagSession.Update> tap = tap(handoff);
+        long sessionId = awaitRead();
+
+        TagSession.Update update = new TagSession.Update(MESSAGE, "hash");
+        assertTrue(handoff.complete(sessionId, update));
+        assertSame(update, tap.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void complete_refusesWrongStaleAndZeroIds() throws Exception {
+        TagSession.Handoff handoff = handoff(5_000);
+        assertFalse("Nothing is waiting yet", handoff.complete(1, null));
+
+        Future<TagSession.Update> first = tap(handoff);
+        long firstId = awaitRead();
+        assertTrue(handoff.complete(firstId, null));
+        assertNull(first.get(5, TimeUnit.SECONDS));
+
+        Future<TagSession.Update> second = tap(handoff);
+        long secondId = awaitRead();
+        assertEquals(firstId + 1, secondId);
+        assertFalse(handoff.complete(0, null));
+        assertFalse(handoff.complete(firstId, null));
+        assertFalse(handoff.complete(secondId + 1, null));
+
+        assertTrue(handoff.complete(secondId, null));
+        second.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void complete_isOnlyTakenOnce() throws Exception {
+        TagSession.Handoff handoff = handoff(5_000);
+        Future<TagSession.Update> tap = tap(handoff);
+        long sessionId = awaitRead();
+
+        TagSession.Update first = new TagSession.Update(MESSAGE, null);
+        assertTrue(handoff.complete(sessionId, first));
+        assertFalse(handoff.complete(sessionId, new TagSession.Update(null, null)));
+        assertSame(first, tap.get(5, TimeUnit.SECONDS));
+        // Nor after the tap took it
+        assertFalse(handoff.complete(sessionId, null));
+    }
+
+    @Test
+    public void update_timesOut() throws Exception {
+        TagSession.Handoff handoff = handoff(50);
+        Future<TagSession.Update> tap = tap(handoff);
+        long sessionId = awaitRead();
+
+        Throwable failure = failureOf(tap);
+        assertTrue(failure instanceof TagSession.UpdateTimeoutException);
+        assertEquals("No update within 50 ms", failure.getMessage());
+        // Too late, the tap is gone
+        assertFalse(handoff.complete(sessionId, null));
+    }
+
+    @Test
+    public void cancel_wakesTheWaitingTapAndFailsLaterOnes() throws Exception {
+        TagSession.Handoff handoff = handoff(60_000);
+        Future<TagSession.Update> tap = tap(handoff);
+        awaitRead();
+
+        long cancelledAt = System.nanoTime();
+        handoff.cancel();
+        Throwable failure = failureOf(tap);
+        assertTrue(failure instanceof IOException);
+        assertEquals("Session cancelled", failure.getMessage());
+        assertTrue(System.nanoTime() - cancelledAt < TimeUnit.SECONDS.toNanos(5));
+
+        // The listener isn't called for a tap after the cancel
+        assertEquals("Session cancelled", failureOf(tap(handoff)).getMessage());
+        assertTrue(reads.isEmpty());
+    }
+
+    @Test
+    public void listenerFailure_failsTheTapWithoutWaiting() throws Exception {
+        TagSession.Handoff handoff = new TagSession.Handoff((sessionId, uid, current, contentHash) -> {
+            throw new IOException("bridge gone");
+        }, 60_000);
+
+        assertEquals("bridge gone", failureOf(tap(handoff)).getMessage());
+        assertFalse(handoff.complete(1, null));
+    }
+}
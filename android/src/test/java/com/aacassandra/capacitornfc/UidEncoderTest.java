@@ -0,0 +1,85 @@
+package com.aacassandra.capacitornfc;
+
+import static org.junit.Assert.*;
+
+import java.util.TimeZone;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+public class UidEncoderTest {
+    private static final String[] TECH = { "android.nfc.tech.NfcA", "android.nfc.tech.Ndef" };
+    // 2024-01-02 03:04:05 UTC
+    private static final long NOW = 1704164645000L;
+
+    private final UidEncoder encoder = new UidEncoder();
+    private final TimeZone defaultZone = TimeZone.getDefault();
+
+    @After
+    public void restoreTimeZone() {
+        TimeZone.setDefault(defaultZone);
+    }
+
+    private JSONObject encode(byte[] uid, long nowMillis) throws Exception {
+        JSONObject result = new JSONObject();
+        encoder.putUidData(result, uid, TECH, nowMillis);
+        return result;
+    }
+
+    @Test
+    public void uid_isLowercaseHexAndFormattedIsUppercase() throws Exception {
+        JSONObject four = encode(new byte[] { (byte) 0xDE, (byte) 0xAD, 0x0B, (byte) 0xEF }, NOW);
+        assertEquals("dead0bef", four.getString("uid"));
+        assertEquals("DE AD 0B EF", four.getString("uidFormatted"));
+        assertEquals(4, four.getInt("uidLength"));
+        assertEquals(UidEncoder.cardType(4), four.getString("cardType"));
+
+        JSONObject seven = encode(new byte[] { 0x04, (byte) 0xA1, 0x23, 0x45, 0x67, (byte) 0x89, (byte) 0xAB }, NOW);
+        assertEquals("04a123456789ab", seven.getString("uid"));
+        assertEquals("04 A1 23 45 67 89 AB", seven.getString("uidFormatted"));
+        assertEquals(7, seven.getInt("uidLength"));
+
+        byte[] tenBytes = { 0x08, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88, (byte) 0x99 };
+        JSONObject ten = encode(tenBytes, NOW);
+        assertEquals("08112233445566778899", ten.getString("uid"));
+        assertEquals("08 11 22 33 44 55 66 77 88 99", ten.getString("uidFormatted"));
+        assertEquals(UidEncoder.cardType(10), ten.getString("cardType"));
+    }
+
+    @Test
+    public void repeatTap_givesTheSameStrings() throws Exception {
+        byte[] uid = { 0x04, 0x11, 0x22, 0x33, 0x44, 0x55, 0x66 };
+        JSONObject first = encode(uid, NOW);
+        JSONObject second = encode(uid.clone(), NOW + 10);
+        assertEquals("04112233445566", second.getString("uid"));
+        assertEquals("04 11 22 33 44 55 66", second.getString("uidFormatted"));
+        assertEquals(first.getString("timestamp"), second.getString("timestamp"));
+
+        // A shorter UID after a longer one doesn't keep any of its digits
+        JSONObject shorter = encode(new byte[] { 0x01, 0x02, 0x03, 0x04 }, NOW + 20);
+        assertEquals("01020304", shorter.getString("uid"));
+        assertEquals("01 02 03 04", shorter.getString("uidFormatted"));
+        assertEquals("04112233445566", encode(uid, NOW + 30).getString("uid"));
+    }
+
+    @Test
+    public void timestamp_followsTheDefaultTimeZone() throws Exception {
+        byte[] uid = { 0x04, 0x11, 0x22, 0x33 };
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        assertEquals("2024-01-02 03:04:05", encode(uid, NOW).getString("timestamp"));
+
+        TimeZone.setDefault(TimeZone.getTimeZone("GMT+07:00"));
+        assertEquals("2024-01-02 10:04:06", encode(uid, NOW + 1000).getString("timestamp"));
+    }
+
+    @Test
+    public void epochMillis_onlyWhenAsked() throws Exception {
+        byte[] uid = { 0x04, 0x11, 0x22, 0x33 };
+        assertFalse(encode(uid, NOW).has("timestampMs"));
+
+        encoder.setEpochMillisTimestamps(true);
+        JSONObject result = encode(uid, NOW);
+        assertEquals(NOW, result.getLong("timestampMs"));
+        assertEquals(2, result.getJSONArray("techList").length());
+    }
+}
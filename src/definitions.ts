@@ -3,14 +3,48 @@ import type { PluginListenerHandle } from '@capacitor/core';
 export interface NFCPlugin {
   /**
    * Starts the NFC scanning session.
+   * @param options Optional scan settings (Android only).
    */
-  startScan(): Promise<void>;
+  startScan(options?: ScanOptions): Promise<ScanStarted>;
 
   /**
    * Starts scanning for NFC tags to read their UID (unique identifier).
    * This is useful for card identification without requiring NDEF data.
+   * @param options Optional scan settings (Android only).
    */
-  startUIDScan(): Promise<void>;
+  startUIDScan(options?: ScanOptions): Promise<ScanStarted>;
+
+  /**
+   * Android only. Starts reading the raw memory of NTAG21x / MIFARE Ultralight tags.
+   * Each tag presented is dumped over a single connection (GET_VERSION, then FAST_READ over page ranges)
+   * and reported through `nfcRawRead`.
+   */
+  startRawRead(options?: RawReadOptions): Promise<ScanStarted>;
+
+  /**
+   * Android only. Starts reading the sectors of MIFARE Classic cards. Each sector is
+   * authenticated with the first candidate key that works and its blocks are read over the same
+   * connection. The result is reported through `nfcClassicRead`. Keys that worked are remembered
+   * per card profile, so later cards of the same profile don't try the wrong keys first. Needs a
+   * phone whose NFC controller supports MIFARE Classic.
+   */
+  startClassicRead(options?: ClassicReadOptions): Promise<ScanStarted>;
+
+  /**
+   * Android only. Forgets the MIFARE Classic keys remembered per card profile.
+   */
+  clearClassicKeys(): Promise<void>;
+
+  /**
+   * Android only. Every item counted by inventory scans (`startUIDScan` with `inventory`) since
+   * the tally was last cleared, in one payload.
+   */
+  getInventory(): Promise<Inventory>;
+
+  /**
+   * Android only. Forgets the items counted by inventory scans.
+   */
+  clearInventory(): Promise<void>;
 
   /**
    * Stops the current NFC scanning session.
@@ -21,7 +55,127 @@ export interface NFCPlugin {
    * Writes an NDEF message to an NFC tag.
    * @param options The NDEF message to write.
    */
-  writeNDEF(options: NDEFWriteOptions): Promise<void>;
+  writeNDEF(options: NDEFWriteOptions): Promise<ScanStarted>;
+
+  /**
+   * Android only. Validates and encodes a message once and returns a handle for `writeNDEF` and
+   * `completeSession`. Handles are kept in a bounded LRU cache (64 messages); writing an evicted
+   * handle fails and the message has to be prepared again.
+   */
+  prepareNDEF(options: { records: NDEFRecord[] }): Promise<PreparedNDEF>;
+
+  /**
+   * Android only. Starts a bulk provisioning session: each tag presented receives the next
+   * message from the queue, without re-arming from JS between tags.
+   * Progress is reported through `nfcProvisionProgress`, the end of the session through `nfcProvisionComplete`.
+   * `stopScan()` ends the session early.
+   * @param options The messages, or a template expanded into messages.
+   */
+  startProvisioning(options: ProvisioningOptions): Promise<ScanStarted>;
+
+  /**
+   * Android only. Starts a read-modify-write session: each tag presented is connected once, its
+   * current content is sent through `nfcSessionRead`, and the records passed to
+   * `completeSession()` are written before the tag is released. The outcome of each tap is
+   * reported through `nfcSessionComplete`. `stopScan()` ends the session.
+   */
+  startSession(options?: SessionOptions): Promise<ScanStarted>;
+
+  /**
+   * Android only. Answers an `nfcSessionRead` event while the tag is still connected.
+   * Without `records` the tag is left unchanged.
+   */
+  completeSession(options: SessionUpdate): Promise<void>;
+
+  /**
+   * Android only. Returns counters of the current scan, including repeats suppressed by `dedup`.
+   */
+  getScanStats(): Promise<ScanStats>;
+
+  /**
+   * Android only. Fetches a payload left out of an `nfcTag` event because it was larger than
+   * `deferPayloadsAbove`. Available for the last 32 reads with deferred payloads.
+   */
+  getPayload(options: PayloadRequest): Promise<RecordPayload>;
+
+  /**
+   * Android only. Turns on the durable scan journal: every tag delivered through `nfcTag` /
+   * `nfcUID` is first appended to a file, so discoveries missed by a busy or reloading
+   * WebView can be caught up with `readJournal()`. Entries survive app restarts.
+   */
+  configureJournal(options: JournalOptions): Promise<void>;
+
+  /**
+   * Android only. Returns journal entries after `sinceSeq`, by default every entry not acknowledged yet.
+   */
+  readJournal(options?: JournalReadOptions): Promise<JournalPage>;
+
+  /**
+   * Android only. Marks every entry up to `seq` as processed, so its storage can be reclaimed.
+   */
+  ackJournal(options: { seq: number }): Promise<void>;
+
+  /**
+   * Android only. Sets how writes, raw reads and sessions retry on the same tap after a glitch,
+   * and how the NfcA transceive timeout adapts to the latency of the tags seen.
+   */
+  configureRetries(options: RetryOptions): Promise<void>;
+
+  /**
+   * Android only. Writes larger payloads as deflate-compressed records, for messages written,
+   * prepared or provisioned after the call. Compressed records are always expanded when read,
+   * so events show the original records.
+   */
+  configureCompression(options: CompressionOptions): Promise<void>;
+
+  /**
+   * Android only. Returns per-operation success / failure counts and per-stage latency
+   * percentiles since the last `resetMetrics()`.
+   */
+  getMetrics(): Promise<NFCMetrics>;
+
+  /**
+   * Android only. Clears all counters and histograms and starts a new metrics window.
+   */
+  resetMetrics(): Promise<void>;
+
+  /**
+   * Android only. Emits `nfcMetrics` events periodically. An `intervalMs` of 0 stops them.
+   */
+  configureMetricsEvents(options: MetricsEventOptions): Promise<void>;
+
+  /**
+   * Adds a listener for periodic metrics set up with `configureMetricsEvents`.
+   */
+  addListener(
+    eventName: 'nfcMetrics',
+    listenerFunc: (metrics: NFCMetrics) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
+  /**
+   * Android only. Chooses how `nfcTag` / `nfcUID` discoveries reach JS: one event per tag
+   * (`immediate`, the default) or coalesced into `nfcBatch` events (`batched`).
+   */
+  configureEventDelivery(options: EventDeliveryOptions): Promise<void>;
+
+  /**
+   * Android only. Sends buffered discoveries now instead of waiting for the batch size or latency window.
+   */
+  flushEvents(): Promise<void>;
+
+  /**
+   * Android only. Acknowledges every batch up to and including `batchId`.
+   * Only needed when `maxUnackedBatches` is set.
+   */
+  ackEvents(options: { batchId: number }): Promise<void>;
+
+  /**
+   * Adds a listener for coalesced discoveries when event delivery is `batched`.
+   */
+  addListener(
+    eventName: 'nfcBatch',
+    listenerFunc: (batch: NFCBatch) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
 
   /**
    * Adds a listener for NFC tag detection events (NDEF format).
@@ -31,6 +185,15 @@ export interface NFCPlugin {
     listenerFunc: (data: NDEFMessages) => void,
   ): Promise<PluginListenerHandle> & PluginListenerHandle;
 
+  /**
+   * Android only. Adds a listener for tags read with `eventFormat: 'json'`, which arrive here
+   * instead of `nfcTag`.
+   */
+  addListener(
+    eventName: 'nfcTagJson',
+    listenerFunc: (data: NFCTagJson) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
   /**
    * Adds a listener for NFC UID detection events.
    * This event is triggered when a card UID is detected during UID scanning.
@@ -40,6 +203,39 @@ export interface NFCPlugin {
     listenerFunc: (data: NFCUIDData) => void,
   ): Promise<PluginListenerHandle> & PluginListenerHandle;
 
+  /**
+   * Android only. Adds a listener for the first tap of each item in an inventory scan.
+   */
+  addListener(
+    eventName: 'nfcInventoryItem',
+    listenerFunc: (item: NFCInventoryItem) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
+  /**
+   * Android only. Adds a listener for the items tapped since the previous summary of an
+   * inventory scan, new ones and repeats.
+   */
+  addListener(
+    eventName: 'nfcInventorySummary',
+    listenerFunc: (summary: NFCInventorySummary) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
+  /**
+   * Adds a listener for raw memory dumps started with `startRawRead`.
+   */
+  addListener(
+    eventName: 'nfcRawRead',
+    listenerFunc: (data: NFCRawReadData) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
+  /**
+   * Adds a listener for MIFARE Classic sector reads started with `startClassicRead`.
+   */
+  addListener(
+    eventName: 'nfcClassicRead',
+    listenerFunc: (data: NFCClassicReadData) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
   /**
    * Adds a listener for NFC tag write events.
    * @param eventName The name of the event ('nfcWriteSuccess').
@@ -47,7 +243,40 @@ export interface NFCPlugin {
    */
   addListener(
     eventName: 'nfcWriteSuccess',
-    listenerFunc: () => void,
+    listenerFunc: (result: NFCWriteResult) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
+  /**
+   * Adds a listener for per-tag progress of a provisioning session.
+   */
+  addListener(
+    eventName: 'nfcProvisionProgress',
+    listenerFunc: (progress: ProvisioningProgress) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
+  /**
+   * Adds a listener for the summary sent when a provisioning session finishes or is stopped.
+   */
+  addListener(
+    eventName: 'nfcProvisionComplete',
+    listenerFunc: (summary: ProvisioningSummary) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
+  /**
+   * Adds a listener for the current content of a tag in a read-modify-write session.
+   * Answer it with `completeSession()` within the session's `timeoutMs`.
+   */
+  addListener(
+    eventName: 'nfcSessionRead',
+    listenerFunc: (data: NFCSessionRead) => void,
+  ): Promise<PluginListenerHandle> & PluginListenerHandle;
+
+  /**
+   * Adds a listener for the outcome of each tap in a read-modify-write session.
+   */
+  addListener(
+    eventName: 'nfcSessionComplete',
+    listenerFunc: (result: NFCSessionResult) => void,
   ): Promise<PluginListenerHandle> & PluginListenerHandle;
 
   /**
@@ -73,65 +302,1057 @@ export interface NFCPlugin {
   isNFCSupported(): Promise<boolean>;
 }
 
-export interface NDEFMessages {
-  messages: NDEFMessage[];
+export type NFCTechnology = 'nfcA' | 'nfcB' | 'nfcF' | 'nfcV' | 'barcode';
+
+export interface ScanStarted {
+  /**
+   * Android only. Id of the scan that was armed, 0 when nothing was (the reason comes as
+   * `nfcError`). Every start call arms a new scan in place of the previous one; events of a
+   * scan carry its id, and taps still in progress when their scan is stopped or replaced are
+   * dropped instead of being delivered.
+   */
+  scanId?: number;
 }
 
-export interface NDEFMessage {
-  records: NDEFRecord[];
+export interface ScanEvent {
+  /**
+   * Android only. Id of the scan the tap was handled for, as returned by the start call.
+   */
+  scanId?: number;
 }
 
-export interface NDEFRecord {
+export interface ScanOptions {
   /**
-   * The type of the record.
+   * Android only. Use `NfcAdapter.enableReaderMode` instead of foreground dispatch.
+   * Tags are delivered without the intent round trip, which lowers tap-to-event latency.
+   * Writing always uses foreground dispatch.
    */
-  type: string;
+  readerMode?: boolean;
 
   /**
-   * The payload of the record.
+   * Android reader mode only. Technologies to poll for. Defaults to NFC-A, B, F and V.
+   * `barcode` needs Android 7.0 (API 24) and is ignored on older versions.
+   */
+  technologies?: NFCTechnology[];
+
+  /**
+   * Android reader mode only. Skip the platform's NDEF check for faster discovery.
+   * Only useful for UID scans: NDEF content is not available when the check is skipped.
+   */
+  skipNdefCheck?: boolean;
+
+  /**
+   * Android reader mode only. Don't play the platform sound on tag discovery.
+   */
+  noPlatformSounds?: boolean;
+
+  /**
+   * Android reader mode only. Delay in milliseconds between presence checks of a tag in the field.
+   */
+  presenceCheckDelay?: number;
+
+  /**
+   * Android only, UID scans. With `epochMillis`, events also carry `NFCUIDData.timestampMs`
+   * next to the local `yyyy-MM-dd HH:mm:ss` string in `timestamp`.
+   */
+  timestampFormat?: 'formatted' | 'epochMillis';
+
+  /**
+   * Android only, `startUIDScan`. Count items natively instead of emitting `nfcUID` for every
+   * tap: only the first tap of each item is emitted, as `nfcInventoryItem`, repeats are tallied
+   * and reported in `nfcInventorySummary` events.
+   */
+  inventory?: InventoryOptions;
+
+  /**
+   * Android only. Suppress repeated discoveries of the same tag natively,
+   * so they never reach `nfcTag` / `nfcUID` listeners.
+   */
+  dedup?: DedupOptions;
+
+  /**
+   * Android only. Only deliver tags matching this filter. Evaluated natively before the event
+   * is built, so other tags never reach `nfcTag` / `nfcUID` listeners.
+   */
+  filter?: ScanFilter;
+
+  /**
+   * Android only. How `nfcTag` records carry their content. `text` (the default) decodes
+   * payloads as UTF-8, which corrupts binary MIME and external-type records. `base64` and
+   * `hex` deliver the payload, raw type and id bytes unchanged, plus the TNF.
+   */
+  payloadEncoding?: PayloadEncoding;
+
+  /**
+   * Android only. Payloads larger than this many bytes are not sent with `nfcTag`: the record
+   * has `deferred: true` and an empty payload, fetch it with `getPayload()` when needed.
+   */
+  deferPayloadsAbove?: number;
+
+  /**
+   * Android only. `json` delivers NDEF discoveries as `nfcTagJson` events holding the event
+   * pre-serialized as one string, written natively in a single pass instead of building an
+   * object per message and record. Cheaper for tags with many records. Defaults to `object`.
+   */
+  eventFormat?: 'object' | 'json';
+
+  /**
+   * Android only. Record types to decode natively into `NDEFRecord.decoded`, e.g.
+   * `['uri', 'smartPoster']`. Records of other types are passed through undecoded.
+   */
+  decode?: RecordDecoderType[];
+}
+
+export interface NFCTagJson extends ScanEvent {
+  /**
+   * `JSON.parse` it to get an `NFCTagJsonData`.
+   */
+  json: string;
+}
+
+export interface NFCTagJsonData extends NDEFMessages {
+  /**
+   * The tag UID as lowercase hex.
+   */
+  uid: string;
+  techList: string[];
+}
+
+export type PayloadEncoding = 'text' | 'base64' | 'hex';
+
+/**
+ * `uri`: URI records as `{ uri }` with the prefix expanded. `text`: Text records as
+ * `DecodedText`. `smartPoster`: Smart Posters as `DecodedSmartPoster`. `external`: external
+ * type records as `{ domain, name }`. `json`: the parsed payload of `application/json` and
+ * `+json` MIME records.
+ */
+export type RecordDecoderType = 'uri' | 'text' | 'smartPoster' | 'external' | 'json';
+
+export interface DecodedText {
+  text: string;
+  /**
+   * IANA language code, e.g. `en`.
+   */
+  language: string;
+  encoding: 'UTF-8' | 'UTF-16';
+}
+
+export interface DecodedSmartPoster {
+  uri: string;
+  titles: DecodedText[];
+  action?: 'exec' | 'save' | 'edit';
+
+  /**
+   * Size in bytes of what the URI points to.
+   */
+  size?: number;
+
+  /**
+   * MIME type of what the URI points to.
+   */
+  mimeType?: string;
+
+  /**
+   * Other records of the poster, e.g. icons, with their decoded value when one of the
+   * enabled decoders takes them.
    */
+  records?: { tnf: number; type: string; payloadSize: number; decoded?: any; decodeError?: string }[];
+}
+
+export interface PayloadRequest {
+  /**
+   * `readId` of the `nfcTag` event.
+   */
+  readId: number;
+
+  /**
+   * Index of the message, defaults to 0.
+   */
+  message?: number;
+
+  /**
+   * Index of the record in the message.
+   */
+  record: number;
+
+  /**
+   * Defaults to the scan's `payloadEncoding`.
+   */
+  encoding?: PayloadEncoding;
+}
+
+export interface RecordPayload {
   payload: string;
+  payloadSize: number;
 }
 
-export interface NFCError {
+export interface ScanFilter {
   /**
-   * The error message.
+   * The UID must start with these bytes, as hex (e.g. `04:A2` or `04A2`).
    */
-  error: string;
+  uidPrefix?: string;
+
+  /**
+   * Bits of `uidPrefix` to compare, as hex of the same length. Defaults to all bits.
+   */
+  uidMask?: string;
+
+  /**
+   * Technologies the tag must all have, e.g. `MifareUltralight` or `android.nfc.tech.IsoDep`.
+   */
+  techs?: string[];
+
+  /**
+   * Minimum number of NDEF records on the tag.
+   */
+  minRecords?: number;
+
+  /**
+   * The tag must have at least one record matching one of these.
+   */
+  records?: RecordFilter[];
 }
 
-export interface NDEFWriteOptions {
-  records: NDEFRecord[];
+export interface RecordFilter {
+  /**
+   * Type name format, e.g. 1 (well-known), 2 (MIME type) or 4 (external type).
+   */
+  tnf?: number;
+
+  /**
+   * Record type, e.g. `T`, `text/plain` or `example.com:badge`.
+   */
+  type?: string;
+
+  /**
+   * The payload must start with this text, compared with the payload as delivered in `nfcTag`
+   * (after the language code of text records).
+   */
+  payloadPrefix?: string;
 }
 
-export interface NFCUIDData {
+export interface InventoryOptions {
   /**
-   * The unique identifier of the NFC card in hexadecimal format.
+   * Record type whose content becomes the item key, e.g. `T` or `example.com:sku`. Read from
+   * the NDEF content the platform got during discovery, so keep the NDEF check enabled.
    */
+  itemKeyType?: string;
+
+  /**
+   * Minimum time between `nfcInventorySummary` events, which are only sent on a tap and once
+   * more when the scan stops. 0 only sends the one when it stops. Defaults to 1000.
+   */
+  summaryIntervalMs?: number;
+
+  /**
+   * Start a new count instead of adding to the items counted so far.
+   */
+  clear?: boolean;
+}
+
+export interface NFCInventoryItem extends ScanEvent {
   uid: string;
+  count: number;
 
   /**
-   * The UID formatted with spaces (e.g., "04 A1 23 45").
+   * Epoch milliseconds.
    */
-  uidFormatted: string;
+  firstSeen: number;
+  lastSeen: number;
+  itemKey?: string;
 
   /**
-   * The length of the UID in bytes.
+   * Items counted so far.
    */
-  uidLength: number;
+  items: number;
+}
+
+/**
+ * Items tapped since the previous summary, as columns: `uids[i]` was tapped `counts[i]` times
+ * in total, last at `lastSeen[i]`.
+ */
+export interface NFCInventorySummary extends ScanEvent {
+  items: number;
+  taps: number;
 
   /**
-   * The detected card type based on UID length.
+   * Taps since the previous summary.
    */
-  cardType: string;
+  newTaps: number;
+  uids: string[];
+  counts: number[];
+  lastSeen: number[];
+}
+
+/**
+ * The whole tally as columns, in the order the items were first seen.
+ */
+export interface Inventory {
+  items: number;
+  taps: number;
+  uids: string[];
+  counts: number[];
+  firstSeen: number[];
+  lastSeen: number[];
+  itemKeys: (string | null)[];
+}
 
+export interface DedupOptions {
   /**
-   * Timestamp when the card was detected.
+   * A tag seen again within this many milliseconds of its last sighting is suppressed.
+   * The window restarts on every sighting. Defaults to 2000.
    */
-  timestamp: string;
+  ttlMs?: number;
 
   /**
-   * Additional technical information about the card.
+   * Maximum number of tags remembered; the least recently seen one is evicted first. Defaults to 256.
    */
-  techList?: string[];
+  capacity?: number;
+
+  /**
+   * Include the NDEF content in the tag identity, so a tag whose content changed is reported again.
+   * Only applies to `startScan`. Defaults to false.
+   */
+  includePayload?: boolean;
+}
+
+export interface ScanStats {
+  /**
+   * Tags delivered to JS since the scan started.
+   */
+  delivered: number;
+
+  /**
+   * Repeats suppressed by the dedup cache since the scan started.
+   */
+  suppressed: number;
+  dedupCacheSize: number;
+  dedupEvictions: number;
+
+  /**
+   * Tags dropped by the scan `filter`.
+   */
+  filtered: number;
+
+  /**
+   * Current adaptive NfcA transceive timeout, 0 while the platform default is used.
+   */
+  transceiveTimeoutMs: number;
+
+  /**
+   * Card profiles with remembered MIFARE Classic keys.
+   */
+  classicKeyProfiles: number;
+
+  /**
+   * Id of the armed scan, 0 when nothing is armed.
+   */
+  scanId: number;
+
+  /**
+   * Tap results dropped because their scan was stopped or replaced before they were delivered.
+   */
+  staleDropped: number;
+}
+
+export interface RetryOptions {
+  /**
+   * Retries of a failed write, raw read or session on the same tap. Defaults to 2, 0 turns
+   * retries off. A tag that can't be connected again has left the field and isn't retried.
+   */
+  maxRetries?: number;
+
+  /**
+   * Adapt the NfcA transceive timeout to 4x the p99 latency of recent commands. Defaults to true.
+   */
+  adaptiveTimeout?: boolean;
+
+  /**
+   * Bounds of the adaptive timeout. Default to 50 and 500 ms.
+   */
+  minTimeoutMs?: number;
+  maxTimeoutMs?: number;
+}
+
+export interface CompressionOptions {
+  /**
+   * Defaults to true. `false` writes records uncompressed again.
+   */
+  enabled?: boolean;
+
+  /**
+   * Payloads shorter than this are written as they are. Defaults to 64 bytes. Records that don't
+   * come out smaller are never compressed.
+   */
+  minBytes?: number;
+}
+
+export interface JournalOptions {
+  /**
+   * Defaults to true. `false` closes the journal, entries on disk are kept.
+   */
+  enabled?: boolean;
+
+  /**
+   * Also store the raw NDEF bytes of each tag, not just their digest. Defaults to false.
+   */
+  includeNdef?: boolean;
+
+  /**
+   * Size at which a journal file is closed and a new one started. Defaults to 1 MiB.
+   */
+  segmentBytes?: number;
+
+  /**
+   * Number of files kept; beyond it the oldest is deleted even if not acknowledged. Defaults to 16.
+   */
+  maxSegments?: number;
+
+  /**
+   * Entries are synced to disk in groups, once this many are pending or after `syncIntervalMs`. Defaults to 32.
+   */
+  syncEveryEvents?: number;
+
+  /**
+   * Milliseconds after the first pending entry at which the group is synced anyway. Defaults to 200.
+   */
+  syncIntervalMs?: number;
+}
+
+export interface JournalReadOptions {
+  /**
+   * Return entries after this sequence number. Defaults to the last acknowledged one.
+   */
+  sinceSeq?: number;
+
+  /**
+   * Maximum number of entries. Defaults to 500.
+   */
+  limit?: number;
+}
+
+export interface JournalPage {
+  entries: JournalEntry[];
+
+  /**
+   * Oldest entry still kept. Greater than `sinceSeq + 1` when unacknowledged entries were dropped.
+   */
+  firstSeq: number;
+  lastSeq: number;
+  ackedSeq: number;
+
+  /**
+   * More entries follow the ones returned, read again from the last `seq`.
+   */
+  hasMore: boolean;
+}
+
+export interface JournalEntry {
+  seq: number;
+
+  /**
+   * Epoch milliseconds of the discovery.
+   */
+  timestamp: number;
+  kind: 'tag' | 'uid';
+  uid: string;
+
+  /**
+   * 64-bit hash of the raw NDEF bytes, as hex.
+   */
+  digest: string;
+
+  /**
+   * Raw NDEF message as hex, with `includeNdef`.
+   */
+  ndef?: string;
+}
+
+export interface MetricsEventOptions {
+  /**
+   * Interval between `nfcMetrics` events in milliseconds, 0 turns them off.
+   */
+  intervalMs: number;
+
+  /**
+   * Reset the metrics after each event, so every event covers one interval.
+   * @default false
+   */
+  resetAfterEvent?: boolean;
+}
+
+export interface NFCMetrics {
+  /**
+   * Time covered by these metrics, since the plugin loaded or the last reset.
+   */
+  windowMs: number;
+
+  /**
+   * Keyed by operation: `read`, `uid`, `write`, `rawRead`, `classicRead`, `provision`.
+   */
+  operations: { [operation: string]: NFCOperationMetrics };
+
+  /**
+   * Latencies keyed by `operation.stage`, e.g. `write.connect`. Stages are `queue` (tag
+   * hand-off until the I/O thread picks it up), `connect`, `io`, `encode` (building the event),
+   * `notify` (handing the event to the bridge) and `total` (hand-off until delivery).
+   */
+  stages: { [stage: string]: NFCStageMetrics };
+}
+
+export interface NFCOperationMetrics {
+  succeeded: number;
+
+  /**
+   * Failed attempts, including those that succeeded on a retry.
+   */
+  failed: number;
+  retries: number;
+
+  /**
+   * Successful operations per second over the window.
+   */
+  perSecond: number;
+
+  /**
+   * Failure counts by error class, e.g. `TagLostException`, `Busy` or `ReadOnly`.
+   */
+  errors: { [errorClass: string]: number };
+}
+
+export interface NFCStageMetrics {
+  count: number;
+  meanMs: number;
+  p50Ms: number;
+  p95Ms: number;
+  p99Ms: number;
+  maxMs: number;
+}
+
+export interface NDEFMessages extends ScanEvent {
+  messages: NDEFMessage[];
+
+  /**
+   * Android only, with the journal on. Sequence number of this tag's journal entry.
+   */
+  journalSeq?: number;
+
+  /**
+   * Android only. Set when payloads were deferred, pass it to `getPayload()`.
+   */
+  readId?: number;
+}
+
+export interface NDEFMessage {
+  records: NDEFRecord[];
+}
+
+export interface NDEFRecord {
+  /**
+   * The type of the record.
+   */
+  type: string;
+
+  /**
+   * The payload of the record.
+   */
+  payload: string;
+
+  /**
+   * Android only, with `payloadEncoding` or `deferPayloadsAbove`. Type name format (TNF) of the record.
+   */
+  tnf?: number;
+
+  /**
+   * Android only, base64 / hex encodings. The record type bytes, in the same encoding as the payload.
+   */
+  rawType?: string;
+
+  /**
+   * Android only, with `payloadEncoding` or `deferPayloadsAbove`. The record ID, when it has one.
+   */
+  id?: string;
+  payloadSize?: number;
+
+  /**
+   * Android only. The payload was left out, see `deferPayloadsAbove`.
+   */
+  deferred?: boolean;
+
+  /**
+   * Android only. The record decoded by one of the `decode` decoders of the scan.
+   */
+  decoded?: any;
+
+  /**
+   * Android only. Why an enabled decoder couldn't decode the record.
+   */
+  decodeError?: string;
+}
+
+export interface NFCError extends ScanEvent {
+  /**
+   * The error message.
+   */
+  error: string;
+
+  /**
+   * Android only: set when a write was refused before any tag I/O.
+   */
+  reason?: WriteRejectReason;
+  uid?: string;
+
+  /**
+   * Size of the encoded message in bytes.
+   */
+  messageSize?: number;
+
+  /**
+   * NDEF capacity of the tag in bytes, -1 when it isn't known.
+   */
+  maxSize?: number;
+  tagType?: string;
+}
+
+/**
+ * Why a write was refused: the message doesn't fit, the tag is locked, or the tag has no NDEF
+ * support at all.
+ */
+export type WriteRejectReason = 'tooLarge' | 'readOnly' | 'unsupported';
+
+export interface NDEFWriteOptions {
+  /**
+   * The message to write. Required unless `handle` is given.
+   */
+  records?: NDEFRecord[];
+
+  /**
+   * Android only. A message prepared with `prepareNDEF()`, written without any parsing or encoding.
+   */
+  handle?: string;
+
+  /**
+   * Android only. On NTAG / MIFARE Ultralight tags, read the current NDEF area first and only
+   * rewrite the 4-byte pages that change. Other tags, and tags without an NDEF capability
+   * container, get a regular full write. Ignored for provisioning messages.
+   * @default false
+   */
+  diffWrite?: boolean;
+
+  /**
+   * Android only. With `diffWrite`, read the written pages back and fail with an `nfcError` if
+   * they don't match.
+   * @default false
+   */
+  verify?: boolean;
+}
+
+export interface PreparedNDEF {
+  /**
+   * SHA-256 of the encoded message as hex, the same value a tag's `contentHash` has once it is
+   * written. Preparing the same message again returns the same handle.
+   */
+  handle: string;
+
+  /**
+   * Encoded size in bytes.
+   */
+  size: number;
+}
+
+export interface NFCWriteResult extends ScanEvent {
+  /**
+   * `diff` when the page-diff write was used, `full` otherwise.
+   */
+  mode: 'full' | 'diff';
+
+  /**
+   * Pages actually written (diff writes only). 0 when the tag already held the message.
+   */
+  pagesWritten?: number;
+
+  /**
+   * Pages covered by the new message (diff writes only).
+   */
+  pagesCompared?: number;
+
+  /**
+   * Size of the tag's NDEF data area in pages (diff writes only).
+   */
+  dataAreaPages?: number;
+
+  /**
+   * Whether the written pages were read back and matched (diff writes only).
+   */
+  verified?: boolean;
+
+  /**
+   * Android only. Time spent talking to the tag.
+   */
+  durationMs?: number;
+
+  /**
+   * Android only. Attempts that failed before the write succeeded on the same tap.
+   */
+  retries?: number;
+}
+
+export interface NFCUIDData extends ScanEvent {
+  /**
+   * The unique identifier of the NFC card in hexadecimal format.
+   */
+  uid: string;
+
+  /**
+   * The UID formatted with spaces (e.g., "04 A1 23 45").
+   */
+  uidFormatted: string;
+
+  /**
+   * The length of the UID in bytes.
+   */
+  uidLength: number;
+
+  /**
+   * The detected card type based on UID length.
+   */
+  cardType: string;
+
+  /**
+   * Timestamp when the card was detected.
+   */
+  timestamp: string;
+
+  /**
+   * Android only. When the card was detected, in epoch milliseconds. Only present when the scan
+   * was started with `timestampFormat: 'epochMillis'`.
+   */
+  timestampMs?: number;
+
+  /**
+   * Additional technical information about the card.
+   */
+  techList?: string[];
+
+  /**
+   * Android only, with the journal on. Sequence number of this tag's journal entry.
+   */
+  journalSeq?: number;
+}
+
+export interface ProvisioningOptions {
+  /**
+   * The messages to write, one per tag, in order.
+   */
+  messages?: NDEFWriteOptions[];
+
+  /**
+   * A message template expanded into `count` messages. Used when `messages` is not given.
+   */
+  template?: ProvisioningTemplate;
+
+  /**
+   * Don't write again to a tag (by UID) that already received a message in this session.
+   * Defaults to true.
+   */
+  skipWrittenTags?: boolean;
+}
+
+export interface ProvisioningTemplate {
+  records: NDEFRecord[];
+
+  /**
+   * Text replaced by the serial number in every record payload. Defaults to `{serial}`.
+   */
+  placeholder?: string;
+
+  /**
+   * First serial number. Defaults to 1.
+   */
+  start?: number;
+
+  /**
+   * Number of messages to generate.
+   */
+  count: number;
+
+  /**
+   * Minimum number of digits, zero-padded. Defaults to no padding.
+   */
+  padding?: number;
+}
+
+export interface ProvisioningProgress extends ScanEvent {
+  /**
+   * Index of the message in the queue.
+   */
+  index: number;
+  total: number;
+  uid: string;
+  status: 'written' | 'skipped' | 'failed';
+  error?: string;
+
+  /**
+   * Set when the tag was refused before writing, the message then stays queued for the next tag.
+   */
+  reason?: WriteRejectReason;
+  retries?: number;
+}
+
+export interface ProvisioningSummary extends ScanEvent {
+  total: number;
+  written: number;
+  skipped: number;
+  failed: number;
+  remaining: number;
+
+  /**
+   * True when every message was written, false when the session was stopped early.
+   */
+  finished: boolean;
+  durationMs: number;
+}
+
+export interface SessionOptions {
+  /**
+   * Only update tags whose current `contentHash` matches, others end with `status: 'conflict'`
+   * without an `nfcSessionRead` event.
+   */
+  expectedHash?: string;
+
+  /**
+   * How long the tag is held waiting for `completeSession()`. Defaults to 3000.
+   */
+  timeoutMs?: number;
+}
+
+export interface SessionUpdate {
+  sessionId: number;
+
+  /**
+   * The new message. Leave out, along with `handle`, to keep the tag as it is.
+   */
+  records?: NDEFRecord[];
+
+  /**
+   * A message prepared with `prepareNDEF()`, instead of `records`.
+   */
+  handle?: string;
+
+  /**
+   * Compare-and-swap: the tag is read again right before writing and only written when its
+   * content still has this hash, otherwise the tap ends with `status: 'conflict'`.
+   */
+  expectedHash?: string;
+}
+
+export interface NFCSessionRead extends ScanEvent {
+  sessionId: number;
+  uid: string;
+
+  /**
+   * SHA-256 of the raw NDEF message as hex. A blank tag hashes like an empty message.
+   */
+  contentHash: string;
+
+  /**
+   * The current message, empty for a blank tag.
+   */
+  messages: NDEFMessage[];
+}
+
+export interface NFCSessionResult extends ScanEvent {
+  uid: string;
+  status: 'written' | 'unchanged' | 'conflict' | 'timeout' | 'failed';
+
+  /**
+   * Hash of the content found on the tag.
+   */
+  previousHash?: string;
+
+  /**
+   * Hash of the content on the tag when the tap ended.
+   */
+  contentHash?: string;
+  error?: string;
+  durationMs?: number;
+  retries?: number;
+}
+
+export interface EventDeliveryOptions {
+  mode: 'immediate' | 'batched';
+
+  /**
+   * Flush as soon as this many discoveries are buffered. Defaults to 20.
+   */
+  maxBatchSize?: number;
+
+  /**
+   * Flush at most this many milliseconds after the first buffered discovery. Defaults to 100.
+   */
+  maxLatencyMs?: number;
+
+  /**
+   * Maximum number of discoveries held natively while JS is behind. Defaults to 500.
+   */
+  maxBuffered?: number;
+
+  /**
+   * What happens when `maxBuffered` is reached: drop the oldest discovery (default), drop the new one,
+   * or merge repeats of the same tag into one entry with a `count`.
+   */
+  overflow?: 'dropOldest' | 'dropNewest' | 'aggregate';
+
+  /**
+   * When greater than 0, no new batch is sent while this many batches are waiting for `ackEvents`.
+   * Defaults to 0 (no acknowledgements needed).
+   */
+  maxUnackedBatches?: number;
+}
+
+export interface NFCBatchEvent {
+  event: 'nfcTag' | 'nfcTagJson' | 'nfcUID';
+  data: NDEFMessages | NFCTagJson | NFCUIDData;
+
+  /**
+   * Number of aggregated discoveries, present when greater than 1.
+   */
+  count?: number;
+}
+
+export interface NFCBatch {
+  batchId: number;
+  events: NFCBatchEvent[];
+
+  /**
+   * Discoveries dropped because of overflow since the previous batch.
+   */
+  dropped: number;
+
+  /**
+   * Discoveries merged into an existing entry since the previous batch.
+   */
+  aggregated: number;
+}
+
+export interface RawReadOptions extends ScanOptions {
+  /**
+   * Read the 32-byte originality signature (READ_SIG). Defaults to true.
+   */
+  readSignature?: boolean;
+
+  /**
+   * Read the NFC counter of NTAG213/215/216 (READ_CNT), when enabled on the tag. Defaults to true.
+   */
+  readCounter?: boolean;
+}
+
+export interface ClassicReadOptions extends ScanOptions {
+  /**
+   * Candidate keys as 12 hex digits, tried in order. Defaults to the transport key
+   * `FFFFFFFFFFFF`, the MAD key `A0A1A2A3A4A5`, the NFC Forum key `D3F7D3F7D3F7` and
+   * `000000000000`.
+   */
+  keys?: string[];
+
+  /**
+   * Also try every key as key B when none works as key A. Defaults to false.
+   */
+  tryKeyB?: boolean;
+
+  /**
+   * Sectors to read, defaults to all.
+   */
+  sectors?: number[];
+
+  /**
+   * Include the sector trailers in `data`. Their keys read back as zeros. Defaults to false.
+   */
+  includeTrailers?: boolean;
+
+  /**
+   * Name of the card layout the remembered keys belong to, e.g. `access-card-v2`. Defaults to
+   * the card size (`classic-16` for 1K cards). Use separate profiles for card families that
+   * share a size but not their keys.
+   */
+  profile?: string;
+}
+
+export interface ClassicSector {
+  sector: number;
+  authenticated: boolean;
+
+  /**
+   * Index of the key that worked in `keys`, and whether it worked as key A or B.
+   */
+  keyIndex?: number;
+  keyType?: 'A' | 'B';
+
+  /**
+   * The key was remembered from an earlier card of the same profile.
+   */
+  cachedKey?: boolean;
+
+  /**
+   * The sector's blocks as hex, 32 hex digits per block, absent when not authenticated.
+   */
+  data?: string;
+
+  /**
+   * Why a block of the sector couldn't be read although the sector was authenticated, usually
+   * access bits refusing the key that opened it. Unreadable blocks are zeros in `data`.
+   */
+  readError?: string;
+  unreadableBlocks?: number;
+
+  /**
+   * Authentication attempts for this sector, failed ones included.
+   */
+  authentications: number;
+  durationMs: number;
+}
+
+export interface NFCClassicReadData extends ScanEvent {
+  uid: string;
+  profile: string;
+  sectorCount: number;
+  sectors: ClassicSector[];
+  authentications: number;
+  failedAuthentications: number;
+
+  /**
+   * Sectors opened on the first try with a remembered key.
+   */
+  cachedKeys: number;
+  durationMs: number;
+  retries: number;
+}
+
+export interface NFCRawReadData extends ScanEvent {
+  uid: string;
+
+  /**
+   * Detected product, e.g. `NTAG216`, or `Unknown`.
+   */
+  product: string;
+  pageCount: number;
+
+  /**
+   * Tag memory from page 0, as a hex string (8 hex digits per page).
+   */
+  memory: string;
+
+  /**
+   * GET_VERSION response as hex, absent on tags that don't support it.
+   */
+  version?: string;
+  counter?: number;
+  signature?: string;
+
+  /**
+   * Number of commands sent to the tag for this dump.
+   */
+  transceives: number;
+  durationMs: number;
+  retries: number;
 }
@@ -1,6 +1,44 @@
 import { WebPlugin } from '@capacitor/core';
 
-import type { NDEFMessages, NDEFWriteOptions, NFCError, NFCPlugin, NFCUIDData } from './definitions';
+import type {
+  EventDeliveryOptions,
+  Inventory,
+  JournalOptions,
+  JournalPage,
+  JournalReadOptions,
+  MetricsEventOptions,
+  NDEFMessages,
+  NDEFRecord,
+  NFCBatch,
+  NFCRawReadData,
+  NFCClassicReadData,
+  NDEFWriteOptions,
+  NFCError,
+  NFCInventoryItem,
+  NFCInventorySummary,
+  NFCMetrics,
+  NFCPlugin,
+  NFCUIDData,
+  NFCWriteResult,
+  PayloadRequest,
+  PreparedNDEF,
+  RetryOptions,
+  CompressionOptions,
+  ProvisioningOptions,
+  ProvisioningProgress,
+  ProvisioningSummary,
+  RecordPayload,
+  NFCSessionRead,
+  NFCSessionResult,
+  NFCTagJson,
+  RawReadOptions,
+  ClassicReadOptions,
+  ScanOptions,
+  ScanStarted,
+  ScanStats,
+  SessionOptions,
+  SessionUpdate,
+} from './definitions';
 
 /**
  * Implementasi Web NFC untuk plugin Capacitor NFC
@@ -23,7 +61,8 @@ export class NFCWeb extends WebPlugin implements NFCPlugin {
   private scanActive = false;
   private uidScanActive = false; // Flag untuk UID scanning mode
 
-  async startScan(): Promise<void> {
+  // ScanOptions only apply to Android reader mode, Web NFC has no equivalent
+  async startScan(_options?: ScanOptions): Promise<ScanStarted> {
     // Implementasi NDEF scanning untuk Web NFC
     if (!await this.isNFCSupported()) {
       throw this.createError('Web NFC is not supported in this browser');
@@ -50,9 +89,12 @@ export class NFCWeb extends WebPlugin implements NFCPlugin {
     this.nfcReader.onerror = (event: any) => {
       this.notifyListeners('nfcError', { error: event.error?.message || 'NFC NDEF scan error' });
     };
+
+    // Scan ids are Android only
+    return {};
   }
 
-  async startUIDScan(): Promise<void> {
+  async startUIDScan(_options?: ScanOptions): Promise<ScanStarted> {
     // Implementasi UID scanning untuk Web NFC
     if (!await this.isNFCSupported()) {
       throw this.createError('Web NFC is not supported in this browser');
@@ -77,6 +119,8 @@ export class NFCWeb extends WebPlugin implements NFCPlugin {
     this.nfcReader.onerror = (event: any) => {
       this.notifyListeners('nfcError', { error: event.error?.message || 'NFC UID scan error' });
     };
+
+    return {};
   }
 
   async stopScan(): Promise<void> {
@@ -88,12 +132,16 @@ export class NFCWeb extends WebPlugin implements NFCPlugin {
     }
   }
 
-  async writeNDEF(options: NDEFWriteOptions): Promise<void> {
+  async writeNDEF(options: NDEFWriteOptions): Promise<ScanStarted> {
     // Implementasi penulisan NDEF untuk Web NFC
     if (!await this.isNFCSupported()) {
       throw this.createError('Web NFC is not supported in this browser');
     }
     
+    if (!options.records) {
+      throw this.createError('Prepared NDEF handles are only available on Android');
+    }
+
     const writer = new (window as any).NDEFReader();
     
     try {
@@ -107,16 +155,116 @@ export class NFCWeb extends WebPlugin implements NFCPlugin {
       
       // Tulis NDEF message ke tag
       await writer.write(ndefMessage);
-      this.notifyListeners('nfcWriteSuccess', {});
+      this.notifyListeners('nfcWriteSuccess', { mode: 'full' });
     } catch (error: any) {
       this.notifyListeners('nfcError', { error: error.message || 'NFC write error' });
     }
+    return {};
+  }
+
+  async prepareNDEF(_options: { records: NDEFRecord[] }): Promise<PreparedNDEF> {
+    throw this.unimplemented('Prepared NDEF messages are only available on Android');
+  }
+
+  async startProvisioning(_options: ProvisioningOptions): Promise<ScanStarted> {
+    throw this.unimplemented('Bulk provisioning is only available on Android');
+  }
+
+  async startSession(_options?: SessionOptions): Promise<ScanStarted> {
+    throw this.unimplemented('Read-modify-write sessions are only available on Android');
+  }
+
+  async completeSession(_options: SessionUpdate): Promise<void> {
+    throw this.unimplemented('Read-modify-write sessions are only available on Android');
+  }
+
+  async startRawRead(_options?: RawReadOptions): Promise<ScanStarted> {
+    throw this.unimplemented('Raw memory reads are only available on Android');
+  }
+
+  async startClassicRead(_options?: ClassicReadOptions): Promise<ScanStarted> {
+    throw this.unimplemented('MIFARE Classic reads are only available on Android');
+  }
+
+  async clearClassicKeys(): Promise<void> {
+    throw this.unimplemented('MIFARE Classic reads are only available on Android');
+  }
+
+  async getInventory(): Promise<Inventory> {
+    throw this.unimplemented('Inventory scans are only available on Android');
+  }
+
+  async clearInventory(): Promise<void> {
+    throw this.unimplemented('Inventory scans are only available on Android');
+  }
+
+  async getScanStats(): Promise<ScanStats> {
+    throw this.unimplemented('Scan stats are only available on Android');
+  }
+
+  async getPayload(_options: PayloadRequest): Promise<RecordPayload> {
+    throw this.unimplemented('Deferred payloads are only available on Android');
+  }
+
+  async configureJournal(_options: JournalOptions): Promise<void> {
+    throw this.unimplemented('The scan journal is only available on Android');
+  }
+
+  async readJournal(_options?: JournalReadOptions): Promise<JournalPage> {
+    throw this.unimplemented('The scan journal is only available on Android');
+  }
+
+  async ackJournal(_options: { seq: number }): Promise<void> {
+    throw this.unimplemented('The scan journal is only available on Android');
+  }
+
+  async configureRetries(_options: RetryOptions): Promise<void> {
+    throw this.unimplemented('Retries are only available on Android');
+  }
+
+  async configureCompression(_options: CompressionOptions): Promise<void> {
+    throw this.unimplemented('Compression is only available on Android');
+  }
+
+  async getMetrics(): Promise<NFCMetrics> {
+    throw this.unimplemented('Metrics are only available on Android');
+  }
+
+  async resetMetrics(): Promise<void> {
+    // No metrics are collected on web
+  }
+
+  async configureMetricsEvents(_options: MetricsEventOptions): Promise<void> {
+    throw this.unimplemented('Metrics are only available on Android');
+  }
+
+  async configureEventDelivery(_options: EventDeliveryOptions): Promise<void> {
+    throw this.unimplemented('Batched event delivery is only available on Android');
+  }
+
+  async flushEvents(): Promise<void> {
+    // Nothing is buffered on web
+  }
+
+  async ackEvents(_options: { batchId: number }): Promise<void> {
+    // Nothing is buffered on web
   }
 
   // NFCPlugin interface expects these signatures
+  addListener(eventName: 'nfcMetrics', listenerFunc: (metrics: NFCMetrics) => void): Promise<any> & any;
+  addListener(eventName: 'nfcBatch', listenerFunc: (batch: NFCBatch) => void): Promise<any> & any;
   addListener(eventName: 'nfcTag', listenerFunc: (data: NDEFMessages) => void): Promise<any> & any;
+  addListener(eventName: 'nfcTagJson', listenerFunc: (data: NFCTagJson) => void): Promise<any> & any;
   addListener(eventName: 'nfcUID', listenerFunc: (data: NFCUIDData) => void): Promise<any> & any;
-  addListener(eventName: 'nfcWriteSuccess', listenerFunc: () => void): Promise<any> & any;
+  addListener(eventName: 'nfcInventoryItem', listenerFunc: (item: NFCInventoryItem) => void): Promise<any> & any;
+  addListener(eventName: 'nfcInventorySummary', listenerFunc: (summary: NFCInventorySummary) => void): Promise<any> & any;
+  addListener(eventName: 'nfcRawRead', listenerFunc: (data: NFCRawReadData) => void): Promise<any> & any;
+  addListener(eventName: 'nfcClassicRead', listenerFunc: (data: NFCClassicReadData) => void): Promise<any> & any;
+  addListener(eventName: 'nfcWriteSuccess', listenerFunc: (result: NFCWriteResult) => void): Promise<any> & any;
+  addListener(eventName: 'nfcProvisionProgress', listenerFunc: (progress: ProvisioningProgress) => void): Promise<any> & any;
+  addListener(eventName: 'nfcProvisionComplete', listenerFunc: (summary: ProvisioningSummary) => void): Promise<any> & any;
+  addListener(eventName: 'nfcSessionRead', listenerFunc: (data: NFCSessionRead) => void): Promise<any> & any;
+  addListener(eventName: 'nfcSessionComplete', listenerFunc: (result: NFCSessionResult) => void): Promise<any> & any;
   addListener(eventName: 'nfcError', listenerFunc: (error: NFCError) => void): Promise<any> & any;
   addListener(eventName: string, listenerFunc: (data: any) => void): Promise<any> & any {
     return super.addListener(eventName, listenerFunc);